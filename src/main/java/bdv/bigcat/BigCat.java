@@ -7,6 +7,7 @@ import java.awt.event.WindowListener;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JOptionPane;
 import javax.swing.WindowConstants;
@@ -24,6 +25,7 @@ import bdv.bigcat.composite.CompositeCopy;
 import bdv.bigcat.control.AnnotationsController;
 import bdv.bigcat.control.ConfirmSegmentController;
 import bdv.bigcat.control.DrawProjectAndIntersectController;
+import bdv.bigcat.control.FillTaskExecutor;
 import bdv.bigcat.control.LabelBrushController;
 import bdv.bigcat.control.LabelFillController;
 import bdv.bigcat.control.LabelPersistenceController;
@@ -33,8 +35,9 @@ import bdv.bigcat.control.SelectionController;
 import bdv.bigcat.control.TranslateZController;
 import bdv.bigcat.label.PairLabelMultiSetLongIdPicker;
 import bdv.bigcat.ui.ARGBConvertedLabelPairSource;
-import bdv.bigcat.ui.Util;
 import bdv.bigcat.util.DirtyInterval;
+import bdv.bigcat.util.EditJournal;
+import bdv.bigcat.util.SparseLongCanvas;
 import bdv.img.SetCache;
 import bdv.img.h5.H5LabelMultisetSetupImageLoader;
 import bdv.img.h5.H5UnsignedByteSetupImageLoader;
@@ -46,8 +49,6 @@ import bdv.util.LocalIdService;
 import ch.systemsx.cisd.hdf5.HDF5Factory;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import net.imglib2.algorithm.neighborhood.DiamondShape;
-import net.imglib2.img.cell.CellImg;
-import net.imglib2.img.cell.CellImgFactory;
 import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.RealViews;
@@ -71,6 +72,12 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 		@Parameter( names = { "--outfile", "-o" }, description = "Output file path" )
 		public String outFile;
 
+		@Parameter( names = { "--autosave" }, description = "Autosave interval in seconds, 0 to disable" )
+		public long autosave = 300;
+
+		@Parameter( names = { "--binarylut" }, description = "Save the fragment-segment assignment in the compact binary format" )
+		public boolean binaryLut = false;
+
 		@Override
 		public void init()
 		{
@@ -85,13 +92,23 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 	final protected long[] maxRawDimensions = new long[ 3 ];
 
 	/**
-	 * canvas that gets modified by brush TODO this has to change into a virtual
-	 * container with temporary storage
+	 * canvas that gets modified by brush, only painted cells are stored
 	 */
-	protected CellImg< LongType, ? > canvas = null;
+	protected SparseLongCanvas canvas = null;
 
 	/** interval in which pixels were modified */
-	final protected DirtyInterval dirtyLabelsInterval = new DirtyInterval();
+	final protected DirtyInterval dirtyLabelsInterval = new DirtyInterval( cellDimensions );
+
+	/**
+	 * Path of the journal of unsaved edits.
+	 *
+	 * @param params
+	 * @return
+	 */
+	static public String journalPath( final Parameters params )
+	{
+		return params.outFile + ".journal";
+	}
 
 	/** controllers */
 	protected LabelPersistenceController persistenceController;
@@ -131,7 +148,8 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 	 * depend on previous members initialized.
 	 *
 	 * <ol>
-	 * <li>Load raw and canvas,</li>
+	 * <li>Create cache,</li>
+	 * <li>load raw and canvas,</li>
 	 * <li>setup IdService,</li>
 	 * <li>setup assignments,</li>
 	 * <li>load labels and create label+canvas compositions.</li>
@@ -143,6 +161,7 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 	@Override
 	protected void init( final P params ) throws IOException
 	{
+		initCache( params );
 		initRaw( params );
 		initCanvas( params );
 		initIdService( params );
@@ -167,7 +186,7 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 		for ( final String raw : params.raws )
 			if ( reader.exists( raw ) )
 			{
-				final H5UnsignedByteSetupImageLoader rawLoader = new H5UnsignedByteSetupImageLoader( reader, raw, setupId++, cellDimensions, cache );
+				final H5UnsignedByteSetupImageLoader rawLoader = createRawLoader( reader, raw );
 				raws.add( rawLoader );
 				max( maxRawDimensions, Intervals.dimensionsAsLongArray( rawLoader.getVolatileImage( 0, 0 ) ) );
 			}
@@ -188,20 +207,37 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 
 		/* canvas (to which the brush paints) */
 		if ( reader.exists( params.canvas ) )
-			canvas = H5Utils.loadUnsignedLong( reader, params.canvas, cellDimensions );
+			canvas = H5Utils.loadSparseUnsignedLong( reader, params.canvas, cellDimensions );
 		else
-		{
-			canvas = new CellImgFactory< LongType >( cellDimensions ).create( maxRawDimensions, new LongType() );
-			for ( final LongType t : canvas )
-				t.set( Label.TRANSPARENT );
-		}
+			canvas = new SparseLongCanvas( maxRawDimensions, cellDimensions );
 
 		reader.close();
 	}
 
+	/**
+	 * Load assignments and replay assignment edits that were not saved
+	 * before the last session ended.
+	 *
+	 * @param params
+	 */
+	@Override
+	protected void initAssignments( final P params )
+	{
+		super.initAssignments( params );
+		try
+		{
+			EditJournal.replayAssignment( journalPath( params ), assignment, idService );
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+		}
+	}
+
 	/**
 	 * Initialize ID service, load max id from file or find max id in labels and
-	 * canvas.
+	 * canvas.  Replay canvas edits that were not saved before the last session
+	 * ended and include their ids.
 	 *
 	 * @param params
 	 * @throws IOException
@@ -223,7 +259,8 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 				maxId = maxId( labelLoader, maxId );
 
 			if ( reader.exists( params.canvas ) )
-				maxId = maxId( canvas, maxId );
+				for ( final long[] cell : canvas.cellData() )
+					maxId = maxId( cell, maxId );
 		}
 		else
 			maxId = nextIdObject.longValue() - 1;
@@ -231,6 +268,9 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 		idService.invalidate( maxId );
 
 		reader.close();
+
+		/* edits that were not saved before the last session ended */
+		EditJournal.replayCanvas( journalPath( params ), canvas, dirtyLabelsInterval, idService );
 	}
 
 	/**
@@ -267,15 +307,7 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 
 		final String windowTitle = "BigCAT";
 
-		bdv = Util.createViewer(
-				windowTitle,
-				raws,
-				convertedLabels,
-				cacheLoaders,
-				composites,
-				config );
-
-		bdv.getViewerFrame().setVisible( true );
+		createViewer( windowTitle, raws, cacheLoaders, composites );
 		bdv.getViewerFrame().setSize( 1248, 656 );
 
 		final TriggerBehaviourBindings bindings = bdv.getViewerFrame().getTriggerbindings();
@@ -299,7 +331,9 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 													canvas,
 													new LongType( Label.OUTSIDE ) ) ),
 									new NearestNeighborInterpolatorFactory< Pair< LabelMultisetType, LongType > >() ),
-							labels.get( 0 ).getMipmapTransforms()[ 0 ] ) );
+							labels.get( 0 ).getMipmapTransforms()[ 0 ] ),
+					labels.get( 0 ),
+					canvas );
 
 			selectionController = new SelectionController(
 					bdv.getViewer(),
@@ -320,6 +354,11 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 					bdv.getViewerFrame().getKeybindings(),
 					config );
 
+			final FillTaskExecutor fillTaskExecutor = new FillTaskExecutor(
+					bdv.getViewer(),
+					config,
+					bdv.getViewerFrame().getKeybindings() );
+
 			/* TODO fix to deal with correct transform */
 			brushController = new LabelBrushController(
 					bdv.getViewer(),
@@ -328,6 +367,7 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 					labels.get( 0 ).getMipmapTransforms()[ 0 ],
 					assignment,
 					selectionController,
+					fillTaskExecutor,
 					cellDimensions,
 					config );
 
@@ -351,6 +391,14 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 					config,
 					bdv.getViewerFrame().getKeybindings() );
 
+			final EditJournal journal = new EditJournal( journalPath( params ), canvas );
+			dirtyLabelsInterval.addListener( journal::touched );
+			assignment.addListener( journal );
+			persistenceController.setJournal( journal );
+			persistenceController.setBinaryAssignment( params.binaryLut );
+			if ( params.autosave > 0 )
+				persistenceController.startAutosave( params.autosave );
+
 			/* TODO fix to deal with more than one label set */
 			final LabelFillController fillController = new LabelFillController(
 					bdv.getViewer(),
@@ -362,6 +410,7 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 					selectionController,
 					new DiamondShape( 1 ),
 					idPicker,
+					fillTaskExecutor,
 					config );
 
 			/* splitter (and more) */
@@ -378,6 +427,7 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 					assignment,
 					colorStream,
 					selectionController,
+					fillTaskExecutor,
 					bdv.getViewerFrame().getKeybindings(),
 					bindings,
 					"shift T" );
@@ -432,6 +482,7 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 					if ( reallyClose )
 					{
 						bdv.getViewerFrame().getViewerPanel().stop();
+						closeReaderPools();
 						bdv.getViewerFrame().setVisible( false );
 						// TODO really shouldn't kill the whole jvm in case some
 						// other process (e.g. fiji eventually) calls bigcat
@@ -495,14 +546,7 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 			final String labelDataset ) throws IOException
 	{
 		/* labels */
-		final H5LabelMultisetSetupImageLoader labelLoader =
-				new H5LabelMultisetSetupImageLoader(
-						reader,
-						null,
-						labelDataset,
-						setupId++,
-						cellDimensions,
-						cache );
+		final H5LabelMultisetSetupImageLoader labelLoader = createLabelLoader( reader, labelDataset );
 
 		/* pair labels */
 		final RandomAccessiblePair< VolatileLabelMultisetType, LongType > labelCanvasPair =
@@ -546,9 +590,20 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 		{
 			bdv.getViewerFrame().setCursor( Cursor.getPredefinedCursor( Cursor.WAIT_CURSOR ) );
 			annotationsController.saveAnnotations();
-			persistenceController.saveNextId();
-			persistenceController.saveFragmentSegmentAssignment();
-			persistenceController.savePaintedLabels();
+			persistenceController.checkpoint();
+		}
+
+		/* unsaved edits are discarded on purpose */
+		if ( reallyClose && persistenceController.getJournal() != null )
+		{
+			try
+			{
+				persistenceController.getJournal().discard();
+			}
+			catch ( final InterruptedException | ExecutionException e )
+			{
+				e.printStackTrace();
+			}
 		}
 		return reallyClose;
 	}
@@ -2,6 +2,7 @@ package bdv.bigcat;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -27,14 +28,17 @@ import bdv.bigcat.ui.ARGBConvertedLabelsSource;
 import bdv.bigcat.ui.ModalGoldenAngleSaturatedARGBStream;
 import bdv.bigcat.ui.Util;
 import bdv.img.SetCache;
+import bdv.img.cache.DiskBlockCache;
 import bdv.img.dvid.LabelblkMultisetSetupImageLoader;
 import bdv.img.dvid.Uint8blkImageLoader;
 import bdv.labels.labelset.LabelMultisetType;
+import bdv.labels.labelset.VolatileLabelMultisetType;
 import bdv.util.LocalIdService;
 import bdv.util.dvid.DatasetKeyValue;
 import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
 import net.imglib2.realtransform.RealViews;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
 import net.imglib2.view.Views;
 
 public class BigCatDvidViewer extends BigCatViewer< BigCatDvidViewer.Parameters >
@@ -47,6 +51,15 @@ public class BigCatDvidViewer extends BigCatViewer< BigCatDvidViewer.Parameters
 		@Parameter( names = { "--uuid" }, description = "UUID" )
 		public String uuid = "";
 
+		@Parameter( names = { "--blocksperrequest" }, description = "number of label blocks along x to request at once from the /blocks endpoint, individually from /raw if <= 1" )
+		public int blocksPerRequest = 1;
+
+		@Parameter( names = { "--diskcache" }, description = "directory of the persistent block cache, none if not set" )
+		public String diskCache = null;
+
+		@Parameter( names = { "--diskcachebudget" }, description = "size limit of the persistent block cache in MiB" )
+		public long diskCacheBudget = 4096;
+
 		public Parameters()
 		{
 			raws = Arrays.asList( new String[] { "grayscale" } );
@@ -62,6 +75,9 @@ public class BigCatDvidViewer extends BigCatViewer< BigCatDvidViewer.Parameters
 	/** loaded segments */
 	final protected ArrayList< LabelblkMultisetSetupImageLoader > labels = new ArrayList<>();
 
+	/** persistent block cache, may be null */
+	protected DiskBlockCache diskCache = null;
+
 	public static void main( final String[] args ) throws Exception
 	{
 		final Parameters params = new Parameters();
@@ -79,6 +95,30 @@ public class BigCatDvidViewer extends BigCatViewer< BigCatDvidViewer.Parameters
 	}
 
 
+	/**
+	 * Create the cell cache and open the persistent block cache.
+	 *
+	 * @param params
+	 */
+	@Override
+	protected void initCache( final Parameters params )
+	{
+		super.initCache( params );
+
+		if ( params.diskCache != null )
+		{
+			try
+			{
+				diskCache = new DiskBlockCache( Paths.get( params.diskCache ), params.diskCacheBudget << 20 );
+				System.out.println( "Block cache " + params.diskCache + " holds " + ( diskCache.size() >> 20 ) + " MiB" );
+			}
+			catch ( final IOException e )
+			{
+				System.out.println( "Could not open block cache " + params.diskCache + ": " + e.getMessage() );
+			}
+		}
+	}
+
 	/**
 	 * Load raw data and labels and initialize canvas
 	 *
@@ -93,10 +133,16 @@ public class BigCatDvidViewer extends BigCatViewer< BigCatDvidViewer.Parameters
 		/* raw pixels */
 		for ( final String raw : params.raws )
 		{
+			final int rawSetupId = setupId++;
 			final Uint8blkImageLoader rawLoader = new Uint8blkImageLoader(
 					params.url,
 					params.uuid,
-					raw);
+					raw,
+					rawSetupId,
+					diskCache,
+					cachePolicy,
+					cache );
+			prefetcher.addSource( rawSetupId, rawLoader, rawLoader.getArrayLoader(), new VolatileUnsignedByteType() );
 
 			raws.add( rawLoader );
 		}
@@ -157,14 +203,20 @@ public class BigCatDvidViewer extends BigCatViewer< BigCatDvidViewer.Parameters
 			{
 				/* labels */
 //				final DatasetKeyValue datasetKeyValue = new DatasetKeyValue( repo.getRootNode(), label );
+				final int labelSetupId = setupId++;
 				final LabelblkMultisetSetupImageLoader labelLoader = new LabelblkMultisetSetupImageLoader(
-						setupId++,
+						labelSetupId,
 						params.url,
 						params.uuid,
 						label,
 						resolutions,
 //						new DatasetKeyValue[]{ datasetKeyValue } );
-						new DatasetKeyValue[ 0 ] );
+						new DatasetKeyValue[ 0 ],
+						params.blocksPerRequest,
+						diskCache,
+						cachePolicy,
+						cache );
+				prefetcher.addSource( labelSetupId, labelLoader, labelLoader::getArrayLoader, new VolatileLabelMultisetType() );
 
 				/* converted labels */
 				final ARGBConvertedLabelsSource convertedLabelsSource =
@@ -213,15 +265,7 @@ public class BigCatDvidViewer extends BigCatViewer< BigCatDvidViewer.Parameters
 
 		final String windowTitle = "BigCAT";
 
-		bdv = Util.createViewer(
-				windowTitle,
-				raws,
-				convertedLabels,
-				cacheLoaders,
-				composites,
-				config );
-
-		bdv.getViewerFrame().setVisible( true );
+		createViewer( windowTitle, raws, cacheLoaders, composites );
 
 		final TriggerBehaviourBindings bindings = bdv.getViewerFrame().getTriggerbindings();
 
@@ -239,7 +283,8 @@ public class BigCatDvidViewer extends BigCatViewer< BigCatDvidViewer.Parameters
 											labels.get( 0 ).getImage( 0 ),
 											new LabelMultisetType() ),
 									new NearestNeighborInterpolatorFactory< LabelMultisetType >() ),
-							labels.get( 0 ).getMipmapTransforms()[ 0 ] ) );
+							labels.get( 0 ).getMipmapTransforms()[ 0 ] ),
+					labels.get( 0 ) );
 
 			selectionController = new SelectionController(
 					bdv.getViewer(),
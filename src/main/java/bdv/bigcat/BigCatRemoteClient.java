@@ -24,13 +24,14 @@ import bdv.bigcat.control.AgglomerationClientController;
 import bdv.bigcat.control.AnnotationsController;
 import bdv.bigcat.control.ConfirmSegmentController;
 import bdv.bigcat.control.DrawProjectAndIntersectController;
+import bdv.bigcat.control.FillTaskExecutor;
 import bdv.bigcat.control.LabelBrushController;
 import bdv.bigcat.control.LabelFillController;
 import bdv.bigcat.control.LabelPersistenceController;
 import bdv.bigcat.control.SelectionController;
 import bdv.bigcat.control.TranslateZController;
 import bdv.bigcat.label.PairLabelMultiSetLongIdPicker;
-import bdv.bigcat.ui.Util;
+import bdv.bigcat.util.EditJournal;
 import bdv.img.SetCache;
 import bdv.img.h5.H5LabelMultisetSetupImageLoader;
 import bdv.img.h5.H5UnsignedByteSetupImageLoader;
@@ -114,15 +115,7 @@ public class BigCatRemoteClient extends BigCat< BigCatRemoteClient.Parameters >
 
 		final String windowTitle = "BigCAT";
 
-		bdv = Util.createViewer(
-				windowTitle,
-				raws,
-				convertedLabels,
-				cacheLoaders,
-				composites,
-				config );
-
-		bdv.getViewerFrame().setVisible( true );
+		createViewer( windowTitle, raws, cacheLoaders, composites );
 
 		final TriggerBehaviourBindings bindings = bdv.getViewerFrame().getTriggerbindings();
 
@@ -145,7 +138,9 @@ public class BigCatRemoteClient extends BigCat< BigCatRemoteClient.Parameters >
 													canvas,
 													new LongType( Label.OUTSIDE) ) ),
 									new NearestNeighborInterpolatorFactory< Pair< LabelMultisetType, LongType > >() ),
-							labels.get( 0 ).getMipmapTransforms()[ 0 ] )
+							labels.get( 0 ).getMipmapTransforms()[ 0 ] ),
+					labels.get( 0 ),
+					canvas
 					);
 
 			selectionController = new SelectionController(
@@ -172,12 +167,18 @@ public class BigCatRemoteClient extends BigCat< BigCatRemoteClient.Parameters >
 					idPicker,
 					selectionController,
 					assignment,
+					colorStream,
 					ctx,
 					params.brokerConfig.solver_url,
 					config,
 					bdv.getViewerFrame().getKeybindings(),
 					config);
 
+			final FillTaskExecutor fillTaskExecutor = new FillTaskExecutor(
+					bdv.getViewer(),
+					config,
+					bdv.getViewerFrame().getKeybindings() );
+
 			/* TODO fix to deal with correct transform */
 			brushController = new LabelBrushController(
 					bdv.getViewer(),
@@ -186,6 +187,7 @@ public class BigCatRemoteClient extends BigCat< BigCatRemoteClient.Parameters >
 					labels.get( 0 ).getMipmapTransforms()[ 0 ],
 					assignment,
 					selectionController,
+					fillTaskExecutor,
 					cellDimensions,
 					config);
 
@@ -209,6 +211,14 @@ public class BigCatRemoteClient extends BigCat< BigCatRemoteClient.Parameters >
 					config,
 					bdv.getViewerFrame().getKeybindings() );
 
+			final EditJournal journal = new EditJournal( journalPath( params ), canvas );
+			dirtyLabelsInterval.addListener( journal::touched );
+			assignment.addListener( journal );
+			persistenceController.setJournal( journal );
+			persistenceController.setBinaryAssignment( params.binaryLut );
+			if ( params.autosave > 0 )
+				persistenceController.startAutosave( params.autosave );
+
 			/* TODO fix to deal with more than one label set */
 			final LabelFillController fillController = new LabelFillController(
 					bdv.getViewer(),
@@ -220,6 +230,7 @@ public class BigCatRemoteClient extends BigCat< BigCatRemoteClient.Parameters >
 					selectionController,
 					new DiamondShape( 1 ),
 					idPicker,
+					fillTaskExecutor,
 					config );
 
 			/* splitter (and more) */
@@ -236,6 +247,7 @@ public class BigCatRemoteClient extends BigCat< BigCatRemoteClient.Parameters >
 					assignment,
 					colorStream,
 					selectionController,
+					fillTaskExecutor,
 					bdv.getViewerFrame().getKeybindings(),
 					bindings,
 					"shift T" );
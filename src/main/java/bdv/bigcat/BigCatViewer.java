@@ -1,10 +1,15 @@
 package bdv.bigcat;
 
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import org.scijava.ui.behaviour.io.InputTriggerConfig;
 import org.scijava.ui.behaviour.io.InputTriggerDescription;
@@ -15,11 +20,13 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 
 import bdv.BigDataViewer;
+import bdv.ViewerSetupImgLoader;
 import bdv.bigcat.composite.ARGBCompositeAlphaYCbCr;
 import bdv.bigcat.composite.Composite;
 import bdv.bigcat.composite.CompositeCopy;
 import bdv.bigcat.control.ConfirmSegmentController;
 import bdv.bigcat.control.MergeController;
+import bdv.bigcat.control.NavigationPrefetcher;
 import bdv.bigcat.control.SelectionController;
 import bdv.bigcat.control.TranslateZController;
 import bdv.bigcat.label.FragmentAssignment;
@@ -30,23 +37,35 @@ import bdv.bigcat.ui.AbstractARGBConvertedLabelsSource;
 import bdv.bigcat.ui.ModalGoldenAngleSaturatedARGBStream;
 import bdv.bigcat.ui.Util;
 import bdv.img.SetCache;
+import bdv.img.cache.BoundedArrayCache.Eviction;
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.CachePolicy;
 import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.img.h5.H5ByteArrayLoader;
+import bdv.img.h5.H5ReaderPool;
 import bdv.img.h5.H5LabelMultisetSetupImageLoader;
 import bdv.img.h5.H5UnsignedByteSetupImageLoader;
 import bdv.img.h5.H5Utils;
 import bdv.labels.labelset.Label;
 import bdv.labels.labelset.LabelMultisetType;
-import bdv.labels.labelset.Multiset;
+import bdv.labels.labelset.LongMappedAccess;
+import bdv.labels.labelset.LongMappedAccessData;
+import bdv.labels.labelset.MappedAccessData;
+import bdv.labels.labelset.VolatileLabelMultisetArray;
+import bdv.labels.labelset.VolatileLabelMultisetType;
 import bdv.util.IdService;
 import bdv.util.LocalIdService;
 import ch.systemsx.cisd.hdf5.HDF5Factory;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import gnu.trove.map.hash.TLongLongHashMap;
 import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
 import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
 import net.imglib2.realtransform.RealViews;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.NumericType;
 import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
 import net.imglib2.view.Views;
 
 public class BigCatViewer< P extends BigCatViewer.Parameters >
@@ -71,6 +90,33 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 		@Parameter( names = { "--complete", "-f" }, description = "complete fragments" )
 		public String completeFragments = "/complete_fragments";
 
+		@Parameter( names = { "--cachebudget" }, description = "memory budget of the cell cache in MiB, unbounded if <= 0" )
+		public long cacheBudget = 0;
+
+		@Parameter( names = { "--cacheeviction" }, description = "cell cache eviction strategy, LRU or LFU" )
+		public Eviction cacheEviction = Eviction.LRU;
+
+		@Parameter( names = { "--fetcherthreads" }, description = "number of cell fetcher threads" )
+		public int numFetcherThreads = 12;
+
+		@Parameter( names = { "--fetchpriorities" }, description = "number of cell fetch queue priority levels, at least the number of mipmap levels" )
+		public int numFetchPriorities = 8;
+
+		@Parameter( names = { "--readers" }, description = "number of HDF5 readers per file, the number of fetcher threads if <= 0" )
+		public int numReaders = 0;
+
+		@Parameter( names = { "--offheaplists" }, description = "store label multiset lists outside of the Java heap" )
+		public boolean offHeapLists = false;
+
+		@Parameter( names = { "--cachestats" }, description = "interval in seconds to log cache statistics, never if <= 0" )
+		public int cacheStatsInterval = 0;
+
+		@Parameter( names = { "--prefetch" }, description = "number of navigation steps to prefetch cells for, no prefetching if <= 0" )
+		public int prefetchLookahead = 2;
+
+		@Parameter( names = { "--prefetchbudget" }, description = "maximum MiB of cells to prefetch per navigation step" )
+		public long prefetchBudget = 64;
+
 		public void init()
 		{
 			if ( inFileLabels == null )
@@ -105,7 +151,21 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 	/** compositions of labels and canvas that are displayed */
 	final protected ArrayList< AbstractARGBConvertedLabelsSource > convertedLabels = new ArrayList<>();
 
-	final protected VolatileGlobalCellCache cache;
+	/** cell cache configuration and metrics */
+	protected CachePolicy cachePolicy;
+
+	protected VolatileGlobalCellCache cache;
+
+	/** requests cells along the navigation direction */
+	protected NavigationPrefetcher prefetcher;
+
+	/** readers for concurrent cell loading by file */
+	final protected IdentityHashMap< IHDF5Reader, H5ReaderPool > readerPools = new IdentityHashMap<>();
+
+	protected int numReaders = 1;
+
+	/** storage of label multiset lists */
+	protected MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory = LongMappedAccessData.factory;
 
 	/** main BDV instance */
 	protected BigDataViewer bdv;
@@ -129,15 +189,14 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 	{
 		Util.initUI();
 		this.config = getInputTriggerConfig();
-		cache = new VolatileGlobalCellCache( 1, 12 );
-
 	}
 
 	/**
 	 * Initialize BigCatViewer, order is important because individual initializers depend on previous members initialized.
 	 *
 	 * <ol>
-	 * <li>Load raw,</li>
+	 * <li>Create cache,</li>
+	 * <li>load raw,</li>
 	 * <li>setup IdService,</li>
 	 * <li>setup assignments,</li>
 	 * <li>load labels and create label+canvas compositions.</li>
@@ -148,12 +207,104 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 	 */
 	protected void init( final P params ) throws IOException
 	{
+		initCache( params );
 		initRaw( params );
 		initIdService( params );
 		initAssignments( params );
 		initLabels( params );
 	}
 
+	/**
+	 * Create the cell cache and prefetcher, and start logging cache
+	 * statistics if requested.
+	 *
+	 * @param params
+	 */
+	protected void initCache( final P params )
+	{
+		cachePolicy = new CachePolicy(
+				params.numFetchPriorities,
+				params.numFetcherThreads,
+				params.cacheBudget << 20,
+				params.cacheEviction );
+		cache = cachePolicy.createCache();
+		numReaders = params.numReaders > 0 ? params.numReaders : params.numFetcherThreads;
+		listDataFactory = params.offHeapLists ? LongMappedAccessData.offHeapFactory : LongMappedAccessData.factory;
+		prefetcher = new NavigationPrefetcher(
+				params.prefetchLookahead,
+				params.prefetchBudget << 20 );
+
+		if ( params.cacheStatsInterval > 0 )
+		{
+			final long interval = params.cacheStatsInterval * 1000L;
+			new Timer( "cache-stats", true ).schedule(
+					new TimerTask()
+					{
+						@Override
+						public void run()
+						{
+							System.out.print( cachePolicy );
+						}
+					},
+					interval,
+					interval );
+		}
+	}
+
+	/**
+	 * Get the pool of readers for loading cells from the file of reader.
+	 *
+	 * @param reader
+	 * @return
+	 */
+	protected H5ReaderPool readerPool( final IHDF5Reader reader )
+	{
+		return readerPools.computeIfAbsent( reader, r -> new H5ReaderPool( r, numReaders ) );
+	}
+
+	/**
+	 * Create a loader for a raw dataset whose cells are loaded through the
+	 * {@link #cachePolicy} and prefetched.
+	 *
+	 * @param reader
+	 * @param raw
+	 * @return
+	 * @throws IOException
+	 */
+	protected H5UnsignedByteSetupImageLoader createRawLoader(
+			final IHDF5Reader reader,
+			final String raw ) throws IOException
+	{
+		final int rawSetupId = setupId++;
+		final CacheArrayLoader< VolatileByteArray > arrayLoader = cachePolicy.wrap( new H5ByteArrayLoader( readerPool( reader ), raw ) );
+		final H5UnsignedByteSetupImageLoader rawLoader =
+				new H5UnsignedByteSetupImageLoader( reader, raw, rawSetupId, cellDimensions, arrayLoader, cache );
+		prefetcher.addSource( rawSetupId, rawLoader, arrayLoader, new VolatileUnsignedByteType() );
+		return rawLoader;
+	}
+
+	/**
+	 * Create a loader for a label dataset whose cells are loaded through the
+	 * {@link #cachePolicy} and prefetched.
+	 *
+	 * @param reader
+	 * @param labelDataset
+	 * @return
+	 * @throws IOException
+	 */
+	protected H5LabelMultisetSetupImageLoader createLabelLoader(
+			final IHDF5Reader reader,
+			final String labelDataset ) throws IOException
+	{
+		final int labelSetupId = setupId++;
+		final CacheArrayLoader< VolatileLabelMultisetArray > arrayLoader =
+				cachePolicy.wrap( H5LabelMultisetSetupImageLoader.typedLoader( readerPool( reader ), null, labelDataset, listDataFactory ) );
+		final H5LabelMultisetSetupImageLoader labelLoader =
+				new H5LabelMultisetSetupImageLoader( reader, null, labelDataset, labelSetupId, cellDimensions, arrayLoader, cache );
+		prefetcher.addSource( labelSetupId, labelLoader, arrayLoader, new VolatileLabelMultisetType() );
+		return labelLoader;
+	}
+
 	/**
 	 * Load raw data and labels and initialize canvas
 	 *
@@ -170,7 +321,7 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 		{
 			if ( reader.exists( raw ) )
 			{
-				final H5UnsignedByteSetupImageLoader rawLoader = new H5UnsignedByteSetupImageLoader( reader, raw, setupId++, cellDimensions, cache );
+				final H5UnsignedByteSetupImageLoader rawLoader = createRawLoader( reader, raw );
 				raws.add( rawLoader );
 			}
 			else
@@ -253,6 +404,65 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 				System.out.println( "no label dataset '" + label + "' found" );
 	}
 
+	/**
+	 * Create and show the viewer for rawDataLoaders and
+	 * {@link #convertedLabels}, and start prefetching.  Sources request their
+	 * mipmap levels at different fetch priorities, so {@link #cache} is
+	 * replaced by a cache with a priority per level if the sources have more
+	 * levels than it has priorities.  Images that were taken from the loaders
+	 * before keep using the previous cache.
+	 *
+	 * Modifies {@link #bdv}, {@link #cache}.
+	 *
+	 * @param windowTitle
+	 * @param rawDataLoaders
+	 * @param cacheLoaders
+	 * @param composites
+	 */
+	protected < A extends ViewerSetupImgLoader< ? extends NumericType< ? >, ? > & SetCache > void createViewer(
+			final String windowTitle,
+			final List< A > rawDataLoaders,
+			final List< ? extends SetCache > cacheLoaders,
+			final List< Composite< ARGBType, ARGBType > > composites )
+	{
+		int numMipmapLevels = 1;
+		for ( final SetCache loader : cacheLoaders )
+			if ( loader instanceof ViewerSetupImgLoader )
+				numMipmapLevels = Math.max( numMipmapLevels, ( ( ViewerSetupImgLoader< ?, ? > )loader ).numMipmapLevels() );
+		if ( numMipmapLevels > cachePolicy.getNumPriorities() )
+			cache = cachePolicy.createCache( numMipmapLevels );
+
+		bdv = Util.createViewer(
+				windowTitle,
+				rawDataLoaders,
+				convertedLabels,
+				cacheLoaders,
+				composites,
+				config,
+				cache );
+
+		bdv.getViewerFrame().setVisible( true );
+		prefetcher.install( bdv.getViewer(), cache, cachePolicy.numPriorities( numMipmapLevels ) - 1 );
+
+		bdv.getViewerFrame().addWindowListener( new WindowAdapter()
+		{
+			@Override
+			public void windowClosing( final WindowEvent we )
+			{
+				closeReaderPools();
+			}
+		} );
+	}
+
+	/**
+	 * Close the additional readers of all {@link #readerPools}.
+	 */
+	protected void closeReaderPools()
+	{
+		for ( final H5ReaderPool readerPool : readerPools.values() )
+			readerPool.close();
+	}
+
 	/**
 	 * Create tool.
 	 *
@@ -286,15 +496,7 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 
 		final String windowTitle = "BigCAT";
 
-		bdv = Util.createViewer(
-				windowTitle,
-				raws,
-				convertedLabels,
-				cacheLoaders,
-				composites,
-				config );
-
-		bdv.getViewerFrame().setVisible( true );
+		createViewer( windowTitle, raws, cacheLoaders, composites );
 
 		final TriggerBehaviourBindings bindings = bdv.getViewerFrame().getTriggerbindings();
 
@@ -312,7 +514,8 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 											labels.get( 0 ).getImage( 0 ),
 											new LabelMultisetType() ),
 									new NearestNeighborInterpolatorFactory< LabelMultisetType >() ),
-							labels.get( 0 ).getMipmapTransforms()[ 0 ] ) );
+							labels.get( 0 ).getMipmapTransforms()[ 0 ] ),
+					labels.get( 0 ) );
 
 			selectionController = new SelectionController(
 					bdv.getViewer(),
@@ -384,14 +587,7 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 			final String labelDataset ) throws IOException
 	{
 		/* labels */
-		final H5LabelMultisetSetupImageLoader labelLoader =
-				new H5LabelMultisetSetupImageLoader(
-						reader,
-						null,
-						labelDataset,
-						setupId++,
-						cellDimensions,
-						cache );
+		final H5LabelMultisetSetupImageLoader labelLoader = createLabelLoader( reader, labelDataset );
 
 		/* converted labels */
 		final ARGBConvertedLabelsSource convertedLabelsSource =
@@ -442,9 +638,9 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 	{
 		for ( final LabelMultisetType t : Views.iterable( labelLoader.getImage( 0 ) ) )
 		{
-			for ( final Multiset.Entry< Label > v : t.entrySet() )
+			for ( int i = t.numEntries() - 1; i >= 0; --i )
 			{
-				final long id = v.getElement().id();
+				final long id = t.idAt( i );
 				if ( Label.regular( id ) && IdService.greaterThan( id, maxId ) )
 					maxId = id;
 			}
@@ -466,4 +662,17 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 
 		return maxId;
 	}
+
+	final static protected long maxId(
+			final long[] labels,
+			long maxId )
+	{
+		for ( final long id : labels )
+		{
+			if ( Label.regular( id ) && IdService.greaterThan( id, maxId ) )
+				maxId = id;
+		}
+
+		return maxId;
+	}
 }
@@ -37,7 +37,13 @@ public class CombinedImgLoader implements ViewerImgLoader
 
 	final VolatileGlobalCellCache cache;
 
-	public CombinedImgLoader( final CombinedImgLoader.SetupIdAndLoader... loaders )
+	/**
+	 * @param cache
+	 *            shared cache, created with one fetch priority per mipmap
+	 *            level and 10 fetcher threads if null
+	 * @param loaders
+	 */
+	public CombinedImgLoader( final VolatileGlobalCellCache cache, final CombinedImgLoader.SetupIdAndLoader... loaders )
 	{
 		setupImgLoaders = new HashMap< Integer, ViewerSetupImgLoader< ?, ? > >();
 		int maxNumLevels = 1;
@@ -47,7 +53,12 @@ public class CombinedImgLoader implements ViewerImgLoader
 			setupImgLoaders.put( il.setupId, il.loader );
 		}
 
-		cache = new VolatileGlobalCellCache( maxNumLevels, 10 );
+		this.cache = cache == null ? new VolatileGlobalCellCache( maxNumLevels, 10 ) : cache;
+	}
+
+	public CombinedImgLoader( final CombinedImgLoader.SetupIdAndLoader... loaders )
+	{
+		this( null, loaders );
 	}
 
 	@Override
@@ -23,31 +23,44 @@ import net.imglib2.type.numeric.ARGBType;
  *
  * @author Stephan Saalfeld <saalfelds@janelia.hhmi.org>
  */
-public class ARGBCompositeAlphaAdd implements Composite< ARGBType, ARGBType >
+public class ARGBCompositeAlphaAdd implements Composite< ARGBType, ARGBType >, ArrayComposite
 {
-	@Override
-	public void compose( final ARGBType a, final ARGBType b )
+	final static public int compose( final int argbA, final int argbB )
 	{
-		final int argbA = a.get();
-		final int argbB = b.get();
-
-		final int rA = ARGBType.red( argbA );
-		final int rB = ARGBType.red( argbB );
-		final int gA = ARGBType.green( argbA );
-		final int gB = ARGBType.green( argbB );
-		final int bA = ARGBType.blue( argbA );
-		final int bB = ARGBType.blue( argbB );
-
-		final double aA = ARGBType.alpha( argbA ) / 255.0;
-		final double aB = ARGBType.alpha( argbB ) / 255.0;
+		final int rA = ( argbA >> 16 ) & 0xff;
+		final int gA = ( argbA >> 8 ) & 0xff;
+		final int bA = argbA & 0xff;
+		final int rB = ( argbB >> 16 ) & 0xff;
+		final int gB = ( argbB >> 8 ) & 0xff;
+		final int bB = argbB & 0xff;
+
+		final int aA = argbA >>> 24;
+		final int aB = argbB >>> 24;
 //		final double aB = ( rB == gB || gB == bB ) ? ARGBType.alpha( argbB ) / 255.0 : ARGBType.alpha( argbB ) / 255.0 * 0.125;
 
-		final double aTarget = aA + aB - aA * aB;
+		final int aTarget = aA + aB - ( aA * aB + 127 ) / 255;
+
+		final int rTarget = Math.min( 255, rA + ( rB * aB + 127 ) / 255 );
+		final int gTarget = Math.min( 255, gA + ( gB * aB + 127 ) / 255 );
+		final int bTarget = Math.min( 255, bA + ( bB * aB + 127 ) / 255 );
+
+		return ( aTarget << 24 ) | ( rTarget << 16 ) | ( gTarget << 8 ) | bTarget;
+	}
 
-		final int rTarget = Math.min( 255, ( int )Math.round( rA + rB * aB ) );
-		final int gTarget = Math.min( 255, ( int )Math.round( gA + gB * aB ) );
-		final int bTarget = Math.min( 255, ( int )Math.round( bA + bB * aB ) );
+	@Override
+	public void compose( final ARGBType a, final ARGBType b )
+	{
+		a.set( compose( a.get(), b.get() ) );
+	}
 
-		a.set( ARGBType.rgba( rTarget, gTarget, bTarget, ( int )( aTarget * 255 ) ) );
+	@Override
+	public void compose( final int[] a, final int aOffset, final int[] b, final int bOffset, final int length )
+	{
+		for ( int i = 0; i < length; ++i )
+		{
+			final int argbB = b[ bOffset + i ];
+			if ( ( argbB & 0xff000000 ) != 0 )
+				a[ aOffset + i ] = compose( a[ aOffset + i ], argbB );
+		}
 	}
 }
@@ -22,9 +22,13 @@ import net.imglib2.type.numeric.ARGBType;
  * Combines the Y-channel of a with the Cb and Cr channels of b, and mixes the result
  * into a weighted by b's alpha value.
  *
+ * Uses fixed point arithmetic, RGB to YCbCr contributions of all channel
+ * values are precomputed with 8 fractional bits, the inverse transform uses
+ * coefficients with 14 fractional bits.
+ *
  * @author Stephan Saalfeld <saalfelds@janelia.hhmi.org>
  */
-public class ARGBCompositeAlphaYCbCr implements Composite< ARGBType, ARGBType >
+public class ARGBCompositeAlphaYCbCr implements Composite< ARGBType, ARGBType >, ArrayComposite
 {
 	final static private double det( final double[] a )
 	{
@@ -81,77 +85,98 @@ public class ARGBCompositeAlphaYCbCr implements Composite< ARGBType, ARGBType >
 	final static double[] ycbcr2rgb = rgb2ycbcr.clone();
 	static { invert( ycbcr2rgb ); }
 
-	final static private double rgb2y( final double r, final double g, final double b )
+	final static private int COLOR_BITS = 8;
+	final static private int COEFFICIENT_BITS = 14;
+	final static private int SHIFT = COLOR_BITS + COEFFICIENT_BITS;
+	final static private int ROUND = 1 << ( SHIFT - 1 );
+
+	final static private int[] yr = table( rgb2ycbcr[ 0 ] );
+	final static private int[] yg = table( rgb2ycbcr[ 1 ] );
+	final static private int[] yb = table( rgb2ycbcr[ 2 ] );
+	final static private int[] cbr = table( rgb2ycbcr[ 3 ] );
+	final static private int[] cbg = table( rgb2ycbcr[ 4 ] );
+	final static private int[] cbb = table( rgb2ycbcr[ 5 ] );
+	final static private int[] crr = table( rgb2ycbcr[ 6 ] );
+	final static private int[] crg = table( rgb2ycbcr[ 7 ] );
+	final static private int[] crb = table( rgb2ycbcr[ 8 ] );
+
+	final static private int ry = coefficient( ycbcr2rgb[ 0 ] );
+	final static private int rcb = coefficient( ycbcr2rgb[ 1 ] );
+	final static private int rcr = coefficient( ycbcr2rgb[ 2 ] );
+	final static private int gy = coefficient( ycbcr2rgb[ 3 ] );
+	final static private int gcb = coefficient( ycbcr2rgb[ 4 ] );
+	final static private int gcr = coefficient( ycbcr2rgb[ 5 ] );
+	final static private int by = coefficient( ycbcr2rgb[ 6 ] );
+	final static private int bcb = coefficient( ycbcr2rgb[ 7 ] );
+	final static private int bcr = coefficient( ycbcr2rgb[ 8 ] );
+
+	final static private int[] table( final double coefficient )
 	{
-		return rgb2ycbcr[ 0 ] * r + rgb2ycbcr[ 1 ] * g + rgb2ycbcr[ 2 ] * b;
+		final int[] table = new int[ 256 ];
+		for ( int i = 0; i < 256; ++i )
+			table[ i ] = ( int )Math.round( coefficient * i * ( 1 << COLOR_BITS ) );
+		return table;
 	}
 
-	final static private double rgb2cb( final double r, final double g, final double b )
+	final static private int coefficient( final double coefficient )
 	{
-		return rgb2ycbcr[ 3 ] * r + rgb2ycbcr[ 4 ] * g + rgb2ycbcr[ 5 ] * b;
+		return ( int )Math.round( coefficient * ( 1 << COEFFICIENT_BITS ) );
 	}
 
-	final static private double rgb2cr( final double r, final double g, final double b )
+	final static private int clamp( final int value )
 	{
-		return rgb2ycbcr[ 6 ] * r + rgb2ycbcr[ 7 ] * g + rgb2ycbcr[ 8 ] * b;
+		return value < 0 ? 0 : value > 255 ? 255 : value;
 	}
 
-
-	final static private double ycbcr2r( final double y, final double cb, final double cr )
+	final static public int compose( final int argbA, final int argbB )
 	{
-		return ycbcr2rgb[ 0 ] * y + ycbcr2rgb[ 1 ] * cb + ycbcr2rgb[ 2 ] * cr;
-	}
+		final int rA = ( argbA >> 16 ) & 0xff;
+		final int gA = ( argbA >> 8 ) & 0xff;
+		final int bA = argbA & 0xff;
+		final int rB = ( argbB >> 16 ) & 0xff;
+		final int gB = ( argbB >> 8 ) & 0xff;
+		final int bB = argbB & 0xff;
 
-	final static private double ycbcr2g( final double y, final double cb, final double cr )
-	{
-		return ycbcr2rgb[ 3 ] * y + ycbcr2rgb[ 4 ] * cb + ycbcr2rgb[ 5 ] * cr;
-	}
+		final int aA = argbA >>> 24;
+		final int aB = argbB >>> 24;
 
-	final static private double ycbcr2b( final double y, final double cb, final double cr )
-	{
-		return ycbcr2rgb[ 6 ] * y + ycbcr2rgb[ 7 ] * cb + ycbcr2rgb[ 8 ] * cr;
-	}
+		final int aTarget = aA + aB - ( aA * aB + 127 ) / 255;
 
+		final int yA = yr[ rA ] + yg[ gA ] + yb[ bA ];
+		final int cbA = cbr[ rA ] + cbg[ gA ] + cbb[ bA ];
+		final int crA = crr[ rA ] + crg[ gA ] + crb[ bA ];
 
-	@Override
-	public void compose( final ARGBType a, final ARGBType b )
-	{
-		final int argbA = a.get();
-		final int argbB = b.get();
+		final int cbB = cbr[ rB ] + cbg[ gB ] + cbb[ bB ];
+		final int crB = crr[ rB ] + crg[ gB ] + crb[ bB ];
 
-		final double rA = ARGBType.red( argbA ) / 255.0;
-		final double rB = ARGBType.red( argbB ) / 255.0;
-		final double gA = ARGBType.green( argbA ) / 255.0;
-		final double gB = ARGBType.green( argbB ) / 255.0;
-		final double bA = ARGBType.blue( argbA ) / 255.0;
-		final double bB = ARGBType.blue( argbB ) / 255.0;
+		final int cbTarget = cbA + ( cbB - cbA ) * aB / 255;
+		final int crTarget = crA + ( crB - crA ) * aB / 255;
 
-		final double aA = ARGBType.alpha( argbA ) / 255.0;
-		final double aB = ARGBType.alpha( argbB ) / 255.0;
-//		final double aB = ( rB == gB || gB == bB ) ? ARGBType.alpha( argbB ) / 255.0 * 0.5 : ARGBType.alpha( argbB ) / 255.0 * 0.125;
+		final int rTarget = clamp( ( ry * yA + rcb * cbTarget + rcr * crTarget + ROUND ) >> SHIFT );
+		final int gTarget = clamp( ( gy * yA + gcb * cbTarget + gcr * crTarget + ROUND ) >> SHIFT );
+		final int bTarget = clamp( ( by * yA + bcb * cbTarget + bcr * crTarget + ROUND ) >> SHIFT );
 
-		final double aTarget = aA + aB - aA * aB;
-
-		final double yA = rgb2y( rA, gA, bA );
-		final double cbA = rgb2cb( rA, gA, bA );
-		final double crA = rgb2cr( rA, gA, bA );
-
-		final double cbB = rgb2cb( rB, gB, bB );
-		final double crB = rgb2cr( rB, gB, bB );
+		return ( aTarget << 24 ) | ( rTarget << 16 ) | ( gTarget << 8 ) | bTarget;
+	}
 
-		final double aBInv = 1.0 - aB;
+	@Override
+	public void compose( final ARGBType a, final ARGBType b )
+	{
+		a.set( compose( a.get(), b.get() ) );
+	}
 
-		final double cbTarget = cbA * aBInv + cbB * aB;
-		final double crTarget = crA * aBInv + crB * aB;
+	@Override
+	public void compose( final int[] a, final int aOffset, final int[] b, final int bOffset, final int length )
+	{
+		for ( int i = 0; i < length; ++i )
+		{
+			final int argbB = b[ bOffset + i ];
 
-		final double rTarget = ycbcr2r( yA, cbTarget, crTarget );
-		final double gTarget = ycbcr2g( yA, cbTarget, crTarget );
-		final double bTarget = ycbcr2b( yA, cbTarget, crTarget );
+			/* fully transparent b leaves the color of a unchanged */
+			if ( ( argbB & 0xff000000 ) == 0 )
+				continue;
 
-		a.set( ARGBType.rgba(
-				Math.max( 0,  Math.min( 255, ( int )Math.round( rTarget * 255 ) ) ),
-				Math.max( 0,  Math.min( 255, ( int )Math.round( gTarget * 255 ) ) ),
-				Math.max( 0,  Math.min( 255, ( int )Math.round( bTarget * 255 ) ) ),
-				( int )( aTarget * 255 ) ) );
+			a[ aOffset + i ] = compose( a[ aOffset + i ], argbB );
+		}
 	}
 }
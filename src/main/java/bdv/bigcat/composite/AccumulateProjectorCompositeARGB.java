@@ -1,6 +1,7 @@
 package bdv.bigcat.composite;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.concurrent.ExecutorService;
 
 import bdv.viewer.Source;
@@ -17,7 +18,7 @@ public class AccumulateProjectorCompositeARGB extends AccumulateProjector< ARGBT
 	public static AccumulateProjectorFactory< ARGBType > factory = new AccumulateProjectorFactory< ARGBType >()
 	{
 		@Override
-		public AccumulateProjectorCompositeARGB createAccumulateProjector(
+		public VolatileProjector createAccumulateProjector(
 				ArrayList< VolatileProjector > sourceProjectors,
 				ArrayList< Source< ? > > sources,
 				ArrayList< ? extends RandomAccessible< ? extends ARGBType > > sourceScreenImages,
@@ -25,6 +26,20 @@ public class AccumulateProjectorCompositeARGB extends AccumulateProjector< ARGBT
 				int numThreads,
 				ExecutorService executorService )
 		{
+			/* compose int[] scanlines if possible */
+			final ArrayCompositeProjector arrayProjector = ArrayCompositeProjector.create(
+					sourceProjectors,
+					sourceScreenImages,
+					Collections.nCopies( sourceScreenImages.size(), composite ),
+					targetScreenImage,
+					numThreads,
+					executorService );
+			if ( arrayProjector != null )
+			{
+				arrayProjector.setBackground( 0xff000000 );
+				return arrayProjector;
+			}
+
 			return new AccumulateProjectorCompositeARGB(
 					sourceProjectors,
 					sourceScreenImages,
@@ -0,0 +1,34 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.bigcat.composite;
+
+/**
+ * Composes whole scanlines of ARGB pixels packed into int[] arrays.
+ */
+public interface ArrayComposite
+{
+	/**
+	 * Composes b[bOffset, bOffset + length) into a[aOffset, aOffset + length).
+	 *
+	 * @param a
+	 * @param aOffset
+	 * @param b
+	 * @param bOffset
+	 * @param length
+	 */
+	public void compose( final int[] a, final int aOffset, final int[] b, final int bOffset, final int length );
+}
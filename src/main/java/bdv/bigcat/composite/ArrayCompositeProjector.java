@@ -0,0 +1,279 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.bigcat.composite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import bdv.viewer.render.VolatileProjector;
+import net.imglib2.RandomAccessible;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+
+/**
+ * Composes the screen images of several sources into a target screen image
+ * scanline by scanline on the underlying int[] arrays.  Used instead of
+ * {@link CompositeProjector} and {@link AccumulateProjectorCompositeARGB}
+ * when all screen images are int[] backed {@link ArrayImg ArrayImgs} and all
+ * composites are {@link ArrayComposite ArrayComposites}, which avoids
+ * cursors and a virtual call per pixel and composite.
+ */
+public class ArrayCompositeProjector implements VolatileProjector
+{
+	final protected ArrayList< VolatileProjector > sourceProjectors;
+
+	final protected int[][] sources;
+
+	final protected int[] sourceWidths;
+
+	final protected ArrayComposite[] composites;
+
+	final protected int[] target;
+
+	final protected int width;
+
+	final protected int height;
+
+	final protected int numThreads;
+
+	final protected ExecutorService executorService;
+
+	/*
+	 * Used by all projectors that are not given an executor service, such
+	 * that rendering a frame does not create and shut down a thread pool.
+	 */
+	final static protected ExecutorService sharedExecutorService = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(),
+			r -> {
+				final Thread thread = new Thread( r, "array-composite-projector" );
+				thread.setDaemon( true );
+				return thread;
+			} );
+
+	final protected AtomicBoolean interrupted = new AtomicBoolean();
+
+	/* fill the target with background before composing if true */
+	protected boolean clearTarget = false;
+
+	protected int background = 0xff000000;
+
+	protected volatile boolean valid = false;
+
+	protected long lastFrameRenderNanoTime;
+
+	protected ArrayCompositeProjector(
+			final ArrayList< VolatileProjector > sourceProjectors,
+			final int[][] sources,
+			final int[] sourceWidths,
+			final ArrayComposite[] composites,
+			final int[] target,
+			final int width,
+			final int height,
+			final int numThreads,
+			final ExecutorService executorService )
+	{
+		this.sourceProjectors = sourceProjectors;
+		this.sources = sources;
+		this.sourceWidths = sourceWidths;
+		this.composites = composites;
+		this.target = target;
+		this.width = width;
+		this.height = height;
+		this.numThreads = numThreads;
+		this.executorService = executorService == null ? sharedExecutorService : executorService;
+	}
+
+	/**
+	 * Get the int[] backing an ARGB screen image.
+	 *
+	 * @param image
+	 * @return the array or null if the image is not an int[] backed
+	 *         {@link ArrayImg}
+	 */
+	static public int[] intArray( final RandomAccessible< ? > image )
+	{
+		if ( image instanceof ArrayImg && image.numDimensions() == 2 )
+		{
+			final Object access = ( ( ArrayImg< ?, ? > )image ).update( null );
+			if ( access instanceof IntArray )
+				return ( ( IntArray )access ).getCurrentStorageArray();
+		}
+		return null;
+	}
+
+	/**
+	 * Create an {@link ArrayCompositeProjector} if all source screen images
+	 * and the target are int[] backed and all composites are
+	 * {@link ArrayComposite ArrayComposites}.
+	 *
+	 * @return the projector or null if the array path is not applicable
+	 */
+	static public ArrayCompositeProjector create(
+			final ArrayList< VolatileProjector > sourceProjectors,
+			final List< ? extends RandomAccessible< ? > > sourceScreenImages,
+			final List< ? > composites,
+			final RandomAccessible< ? > targetScreenImage,
+			final int numThreads,
+			final ExecutorService executorService )
+	{
+		final int[] target = intArray( targetScreenImage );
+		if ( target == null || composites.size() != sourceScreenImages.size() )
+			return null;
+
+		final ArrayImg< ?, ? > targetImg = ( ArrayImg< ?, ? > )targetScreenImage;
+		final int width = ( int )targetImg.dimension( 0 );
+		final int height = ( int )targetImg.dimension( 1 );
+
+		final int n = sourceScreenImages.size();
+		final int[][] sources = new int[ n ][];
+		final int[] sourceWidths = new int[ n ];
+		final ArrayComposite[] arrayComposites = new ArrayComposite[ n ];
+		for ( int i = 0; i < n; ++i )
+		{
+			final RandomAccessible< ? > sourceScreenImage = sourceScreenImages.get( i );
+			sources[ i ] = intArray( sourceScreenImage );
+			if ( sources[ i ] == null )
+				return null;
+			final ArrayImg< ?, ? > sourceImg = ( ArrayImg< ?, ? > )sourceScreenImage;
+			if ( sourceImg.dimension( 0 ) < width || sourceImg.dimension( 1 ) < height )
+				return null;
+			sourceWidths[ i ] = ( int )sourceImg.dimension( 0 );
+
+			final Object composite = composites.get( i );
+			if ( !( composite instanceof ArrayComposite ) )
+				return null;
+			arrayComposites[ i ] = ( ArrayComposite )composite;
+		}
+
+		return new ArrayCompositeProjector(
+				sourceProjectors,
+				sources,
+				sourceWidths,
+				arrayComposites,
+				target,
+				width,
+				height,
+				numThreads,
+				executorService );
+	}
+
+	/**
+	 * Fill the target with a background color before composing.
+	 *
+	 * @param background
+	 */
+	public void setBackground( final int background )
+	{
+		this.background = background;
+		clearTarget = true;
+	}
+
+	protected void composeRows( final int minY, final int maxY )
+	{
+		for ( int y = minY; y < maxY; ++y )
+		{
+			if ( interrupted.get() )
+				return;
+
+			final int targetOffset = y * width;
+			if ( clearTarget )
+				Arrays.fill( target, targetOffset, targetOffset + width, background );
+			for ( int i = 0; i < composites.length; ++i )
+				composites[ i ].compose( target, targetOffset, sources[ i ], y * sourceWidths[ i ], width );
+		}
+	}
+
+	@Override
+	public boolean map()
+	{
+		return map( true );
+	}
+
+	@Override
+	public boolean map( final boolean clearUntouchedTargetPixels )
+	{
+		interrupted.set( false );
+
+		final long t0 = System.nanoTime();
+
+		boolean sourcesValid = true;
+		for ( final VolatileProjector p : sourceProjectors )
+			if ( !p.isValid() )
+			{
+				if ( !p.map( clearUntouchedTargetPixels ) )
+					return false;
+				sourcesValid &= p.isValid();
+			}
+
+		final int numTasks = numThreads <= 1 ? 1 : Math.min( numThreads * 10, height );
+		if ( numTasks <= 1 )
+			composeRows( 0, height );
+		else
+		{
+			final double taskHeight = ( double )height / numTasks;
+			final ArrayList< Callable< Void > > tasks = new ArrayList<>( numTasks );
+			for ( int t = 0; t < numTasks; ++t )
+			{
+				final int minY = ( int )( t * taskHeight );
+				final int maxY = t == numTasks - 1 ? height : ( int )( ( t + 1 ) * taskHeight );
+				tasks.add( () -> {
+					composeRows( minY, maxY );
+					return null;
+				} );
+			}
+			try
+			{
+				executorService.invokeAll( tasks );
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				interrupted.set( true );
+			}
+		}
+
+		lastFrameRenderNanoTime = System.nanoTime() - t0;
+		valid = sourcesValid && !interrupted.get();
+
+		return !interrupted.get();
+	}
+
+	@Override
+	public void cancel()
+	{
+		interrupted.set( true );
+		for ( final VolatileProjector p : sourceProjectors )
+			p.cancel();
+	}
+
+	@Override
+	public long getLastFrameRenderNanoTime()
+	{
+		return lastFrameRenderNanoTime;
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return valid;
+	}
+}
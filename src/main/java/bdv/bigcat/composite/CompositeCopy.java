@@ -23,11 +23,17 @@ import net.imglib2.type.Type;
  *
  * @author Stephan Saalfeld <saalfelds@janelia.hhmi.org>
  */
-public class CompositeCopy< A extends Type< A > > implements Composite< A, A >
+public class CompositeCopy< A extends Type< A > > implements Composite< A, A >, ArrayComposite
 {
 	@Override
 	public void compose( final A a, final A b )
 	{
 		a.set( b );
 	}
+
+	@Override
+	public void compose( final int[] a, final int aOffset, final int[] b, final int bOffset, final int length )
+	{
+		System.arraycopy( b, bOffset, a, aOffset, length );
+	}
 }
@@ -43,16 +43,27 @@ public class CompositeProjector< A extends Type< A > > extends AccumulateProject
 				final int numThreads,
 				final ExecutorService executorService )
 		{
-			final CompositeProjector< A > projector = new CompositeProjector< A >(
+			final ArrayList< Composite< A, A > > activeComposites = new ArrayList< Composite< A, A > >();
+			for ( final Source< ? > activeSource : sources )
+				activeComposites.add( composites.get( activeSource ) );
+
+			/* compose int[] scanlines if possible */
+			final ArrayCompositeProjector arrayProjector = ArrayCompositeProjector.create(
 					sourceProjectors,
 					sourceScreenImages,
+					activeComposites,
 					targetScreenImage,
 					numThreads,
 					executorService );
+			if ( arrayProjector != null )
+				return arrayProjector;
 
-			final ArrayList< Composite< A, A > > activeComposites = new ArrayList< Composite< A, A > >();
-			for ( final Source< ? > activeSource : sources )
-				activeComposites.add( composites.get( activeSource ) );
+			final CompositeProjector< A > projector = new CompositeProjector< A >(
+					sourceProjectors,
+					sourceScreenImages,
+					targetScreenImage,
+					numThreads,
+					executorService );
 
 			projector.setComposites( activeComposites );
 
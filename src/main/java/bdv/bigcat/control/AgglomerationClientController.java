@@ -16,7 +16,13 @@
  */
 package bdv.bigcat.control;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.lang.reflect.Type;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
@@ -46,7 +52,9 @@ import com.google.gson.JsonSerializer;
 
 import bdv.bigcat.label.FragmentSegmentAssignment;
 import bdv.bigcat.label.IdPicker;
+import bdv.bigcat.ui.AbstractARGBStream;
 import bdv.labels.labelset.Label;
+import bdv.util.LongLongLutCodec;
 import bdv.viewer.ViewerPanel;
 import gnu.trove.map.hash.TLongLongHashMap;
 import gnu.trove.set.TLongSet;
@@ -64,6 +72,16 @@ public class AgglomerationClientController
 	final protected FragmentSegmentAssignment assignment;
 	final protected Socket socket;
 	final protected SocketListener socketListener;
+	final protected AbstractARGBStream colorStream;
+
+	final static protected long UNKNOWN_VERSION = LongLongLutCodec.NO_VERSION;
+
+	/* solver version of the current lookup, only accessed by the socket listener */
+	protected long remoteVersion = UNKNOWN_VERSION;
+
+	/* a full lookup has been requested, deltas are dropped until it arrives,
+	 * only accessed by the socket listener */
+	protected boolean resyncPending = false;
 
 	// for behavioUrs
 	private final BehaviourMap behaviourMap = new BehaviourMap();
@@ -142,10 +160,17 @@ public class AgglomerationClientController
 		}
 	}
 
+	static private class Message
+	{
+		private String type;
+	}
+
 	static private class FragmentSegmentLutMessage
 	{
 		private class Data
 		{
+			/* solver version of the lookup, null if not versioned */
+			private Long version;
 			private long[] fragments;
 			private long[] segments;
 		}
@@ -159,14 +184,123 @@ public class AgglomerationClientController
 		}
 	}
 
+	/**
+	 * Changes of the fragment-segment-lut from solver version baseVersion to
+	 * version, fragments[i] are assigned to segments[i].
+	 */
+	static private class FragmentSegmentLutDeltaMessage
+	{
+		private class Data
+		{
+			private long baseVersion;
+			private long version;
+			private long[] fragments;
+			private long[] segments;
+		}
+
+		private Data data;
+	}
+
+	/**
+	 * Asks for the current fragment-segment-lut, in "binary" (default) or
+	 * "json" format.
+	 */
+	static private class FragmentSegmentLutRequestMessage
+	{
+		private class Data
+		{
+			private String format = "binary";
+		}
+
+		private Data data;
+	}
+
 	protected class SocketListener extends Thread
 	{
+		final void handleLut( final TLongLongHashMap lut, final long version )
+		{
+			System.out.println( "Received fragment-segment-lut with " + lut.size() + " entries, version " + version );
+
+			assignment.initLut( lut );
+			remoteVersion = version;
+			resyncPending = false;
+			colorStream.clearCache();
+			viewer.requestRepaint();
+		}
+
+		/**
+		 * Apply a delta if it continues the last received version, otherwise
+		 * ask the solver for the full lookup.  Deltas are accepted as they
+		 * come if the version of the current lookup is unknown, and dropped
+		 * while a requested full lookup has not arrived.
+		 *
+		 * @param deltaMsg
+		 */
+		final void handleDelta( final FragmentSegmentLutDeltaMessage deltaMsg )
+		{
+			final FragmentSegmentLutDeltaMessage.Data data = deltaMsg.data;
+			if ( resyncPending )
+				return;
+
+			if ( remoteVersion != UNKNOWN_VERSION && data.baseVersion != remoteVersion )
+			{
+				System.out.println( "fragment-segment-lut versions diverged (" + remoteVersion + " != " + data.baseVersion + "), requesting resync" );
+				remoteVersion = UNKNOWN_VERSION;
+				resyncPending = true;
+				socket.send( "{\"type\":\"fragment-segment-lut-request\",\"data\":{\"format\":\"binary\"}}" );
+				return;
+			}
+
+			final int n = Math.min( data.fragments.length, data.segments.length );
+			final long[] affectedSegments = assignment.assign(
+					Arrays.copyOf( data.fragments, n ),
+					Arrays.copyOf( data.segments, n ) );
+			remoteVersion = data.version;
+			colorStream.clearCache( affectedSegments );
+			viewer.requestRepaint();
+		}
+
+		/**
+		 * Binary lookup table as written by {@link LongLongLutCodec}.
+		 *
+		 * @param bytes
+		 */
+		final void handleBinaryMessage( final byte[] bytes )
+		{
+			final TLongLongHashMap lut = new TLongLongHashMap();
+			final long version;
+			try
+			{
+				version = LongLongLutCodec.read( Channels.newChannel( new ByteArrayInputStream( bytes ) ), lut );
+			}
+			catch ( final IOException e )
+			{
+				System.err.println( "Could not read binary fragment-segment-lut: " + e.getMessage() );
+				return;
+			}
+			handleLut( lut, version );
+		}
+
 		final void handleMessage( final String json )
 		{
-			final FragmentSegmentLutMessage lutMsg = gson.fromJson( json, FragmentSegmentLutMessage.class );
+			final Message msg = gson.fromJson( json, Message.class );
+
+			System.out.println( "Message received: " + msg.type );
 
-			System.out.println( "Message received" );
-			System.out.println( gson.toJson( lutMsg ) );
+			if ( "fragment-segment-lut-request".equals( msg.type ) )
+			{
+				final FragmentSegmentLutRequestMessage requestMsg = gson.fromJson( json, FragmentSegmentLutRequestMessage.class );
+				sendLut( requestMsg.data == null ? "binary" : requestMsg.data.format );
+				return;
+			}
+
+			if ( "fragment-segment-lut-delta".equals( msg.type ) )
+			{
+				handleDelta( gson.fromJson( json, FragmentSegmentLutDeltaMessage.class ) );
+				return;
+			}
+
+			final FragmentSegmentLutMessage lutMsg = gson.fromJson( json, FragmentSegmentLutMessage.class );
 
 			final TLongLongHashMap lut = new TLongLongHashMap();
 			final long[] fragments = lutMsg.data.fragments;
@@ -175,8 +309,40 @@ public class AgglomerationClientController
 			for ( int i = 0; i < n; ++i )
 				lut.put( fragments[ i ], segments[ i ] );
 
-			assignment.initLut( lut );
-			viewer.requestRepaint();
+			handleLut( lut, lutMsg.data.version == null ? UNKNOWN_VERSION : lutMsg.data.version );
+		}
+
+		/**
+		 * Send the current fragment-segment-lut with the solver version it
+		 * is based on.  JSON is generated only on request and streamed
+		 * without building a JSON tree.
+		 *
+		 * @param format
+		 */
+		final void sendLut( final String format )
+		{
+			final TLongLongHashMap lut = assignment.getLut();
+			try
+			{
+				if ( "json".equals( format ) )
+				{
+					final StringWriter json = new StringWriter();
+					json.write( "{\"type\":\"fragment-segment-lut\",\"data\":" );
+					LongLongLutCodec.writeJson( lut, remoteVersion, json );
+					json.write( "}" );
+					socket.send( json.toString() );
+				}
+				else
+				{
+					final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					LongLongLutCodec.write( lut, remoteVersion, Channels.newChannel( bytes ) );
+					socket.send( bytes.toByteArray() );
+				}
+			}
+			catch ( final IOException e )
+			{
+				e.printStackTrace();
+			}
 		}
 
 		@Override
@@ -184,8 +350,13 @@ public class AgglomerationClientController
 		{
 			while ( !isInterrupted() )
 			{
-				final String json = socket.recvStr();
-				handleMessage( json );
+				final byte[] bytes = socket.recv();
+				if ( bytes == null )
+					continue;
+				if ( LongLongLutCodec.isBinaryLut( bytes ) )
+					handleBinaryMessage( bytes );
+				else
+					handleMessage( new String( bytes, StandardCharsets.UTF_8 ) );
 			}
 		}
 	}
@@ -218,6 +389,7 @@ public class AgglomerationClientController
 			final IdPicker idPicker,
 			final SelectionController selectionController,
 			final FragmentSegmentAssignment assignment,
+			final AbstractARGBStream colorStream,
 			final ZContext ctx,
 			final String solverUrl,
 			final InputTriggerConfig config,
@@ -228,6 +400,7 @@ public class AgglomerationClientController
 		this.idPicker = idPicker;
 		this.selectionController = selectionController;
 		this.assignment = assignment;
+		this.colorStream = colorStream;
 
 		inputAdder = config.inputTriggerAdder( inputTriggerMap, "merge" );
 		ksKeyStrokeAdder = keyProperties.keyStrokeAdder( ksInputMap, "merge" );
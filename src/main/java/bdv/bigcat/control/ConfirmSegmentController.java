@@ -108,7 +108,6 @@ public class ConfirmSegmentController
 			synchronized ( viewer )
 			{
 				modeWheel.advance();
-				colorStream.clearCache();
 			}
 			viewer.requestRepaint();
 		}
@@ -127,7 +126,6 @@ public class ConfirmSegmentController
 			synchronized ( viewer )
 			{
 				modeWheel.regress();
-				colorStream.clearCache();
 			}
 			viewer.requestRepaint();
 		}
@@ -120,6 +120,8 @@ public class DrawProjectAndIntersectController implements TransformListener< Aff
 
 	private final SelectionController selectionController;
 
+	private final FillTaskExecutor fillTaskExecutor;
+
 	public DrawProjectAndIntersectController(
 			final BigDataViewer bdv,
 			final IdService idService,
@@ -132,6 +134,7 @@ public class DrawProjectAndIntersectController implements TransformListener< Aff
 			final FragmentSegmentAssignment assignment,
 			final AbstractSaturatedARGBStream colorStream,
 			final SelectionController selectionController,
+			final FillTaskExecutor fillTaskExecutor,
 			final InputActionBindings inputActionBindings,
 			final TriggerBehaviourBindings bindings,
 			final String... activateModeKeys )
@@ -145,6 +148,7 @@ public class DrawProjectAndIntersectController implements TransformListener< Aff
 		this.assignment = assignment;
 		this.colorStream = colorStream;
 		this.selectionController = selectionController;
+		this.fillTaskExecutor = fillTaskExecutor;
 
 		viewer.addTransformListener( this );
 
@@ -708,33 +712,47 @@ public class DrawProjectAndIntersectController implements TransformListener< Aff
 		@Override
 		public void doOnUnToggle( final int x, final int y )
 		{
+			final Point p;
+			final RandomAccessibleOnRealRandomAccessible< ByteType > interpolatedAndTransformed;
+			final byte overlayValueAtPoint;
+			final long fillLabel;
 			synchronized ( viewer )
 			{
-				viewer.setCursor( Cursor.getPredefinedCursor( Cursor.WAIT_CURSOR ) );
 				setCoordinates( x, y );
 
-				final Point p = new Point( Math.round( labelLocation.getDoublePosition( 0 ) ), Math.round( labelLocation.getDoublePosition( 1 ) ), Math.round( labelLocation.getDoublePosition( 2 ) ) );
+				p = new Point( Math.round( labelLocation.getDoublePosition( 0 ) ), Math.round( labelLocation.getDoublePosition( 1 ) ), Math.round( labelLocation.getDoublePosition( 2 ) ) );
 
-				final ArrayImg< ByteType, ByteArray > img = wrapBufferedImage( filledPixelsOverlay.img );
+				/* copy because the overlay will be reused while the fill is running */
+				final ArrayImg< ByteType, ? > img = wrapBufferedImage( filledPixelsOverlay.img ).copy();
 				final ArrayRandomAccess< ByteType > imgAccess = img.randomAccess();
 				imgAccess.setPosition( new int[] { x, y } );
 
-				final byte overlayValueAtPoint = imgAccess.get().get();
+				overlayValueAtPoint = imgAccess.get().get();
 
 				final ExtendedRandomAccessibleInterval< ByteType, IntervalView< ByteType > > borderExtended = Views.extendBorder( Views.interval( Views.addDimension( img ), new FinalInterval( img.dimension( 0 ), img.dimension( 1 ), overlayValueAtPoint ) ) );
 
-				final RandomAccessibleOnRealRandomAccessible< ByteType > interpolatedAndTransformed =
+				interpolatedAndTransformed =
 						Views.raster( RealViews.transform( Views.interpolate( borderExtended, new NearestNeighborInterpolatorFactory<>() ), labelTransform.inverse().copy().concatenate( viewerToGlobalCoordinatesTransform.inverse() )// toLabelSpace
 								) );
 
+				fillLabel = selectionController.getActiveFragmentId();
+			}
+			action.run();
+
+			fillTaskExecutor.submit( "Filling", isCancelled -> {
 				final long seedFragmentLabel = LabelFillController.getBiggestLabel( labels, p );
-				System.out.println( seedFragmentLabel + " " + overlayValueAtPoint + " " + getColor().getRGB() );
+				System.out.println( seedFragmentLabel + " " + overlayValueAtPoint );
 				final RandomAccess< LongType > paintedLabelAccess = paintedLabels.randomAccess();
 				paintedLabelAccess.setPosition( p );
 				final long paintedLabel = paintedLabelAccess.get().get();
 				final long segmentLabel = assignment.getSegment( seedFragmentLabel );
 				final long comparison = paintedLabel == TRANSPARENT ? segmentLabel : paintedLabel;
-				final long[] fragmentsContainedInSegment = assignment.getFragments( segmentLabel );
+
+				/* neither painted nor any fragment at the seed, e.g. not loaded yet */
+				if ( !Label.regular( comparison ) )
+					return;
+
+				final long[] fragmentsContainedInSegment = LabelFillController.fragmentsOf( seedFragmentLabel, assignment );
 
 				final Filter< Pair< Pair< LabelMultisetType, ByteType >, LongType >, Pair< Pair< LabelMultisetType, ByteType >, LongType > > filter = ( p1, p2 ) -> {
 
@@ -758,8 +776,6 @@ public class DrawProjectAndIntersectController implements TransformListener< Aff
 					return false;
 				};
 
-				final long t0 = System.currentTimeMillis();
-
 				final AccessBoxRandomAccessible< LongType > accessTrackingExtendedPaintedLabels =
 						new AccessBoxRandomAccessible<>(
 							Views.extendValue(
@@ -772,19 +788,14 @@ public class DrawProjectAndIntersectController implements TransformListener< Aff
 						accessTrackingExtendedPaintedLabels,
 						p,
 						new ValuePair<>( new LabelMultisetType(), new ByteType( overlayValueAtPoint ) ),
-						new LongType( selectionController.getActiveFragmentId() ),
+						new LongType( fillLabel ),
 						new DiamondShape( 1 ),
-						filter );
+						FillTaskExecutor.cancellable( filter, isCancelled ) );
 
 				dirtyLabelsInterval.touch( accessTrackingExtendedPaintedLabels.createAccessInterval() );
 
-				final long t1 = System.currentTimeMillis();
-				System.out.println( "Filling took " + ( t1 - t0 ) + " ms" );
 				System.out.println( "  modified box: " + Util.printInterval( dirtyLabelsInterval.getDirtyInterval() ) );
-				viewer.setCursor( Cursor.getPredefinedCursor( Cursor.DEFAULT_CURSOR ) );
-				viewer.requestRepaint();
-			}
-			action.run();
+			} );
 		}
 	}
 
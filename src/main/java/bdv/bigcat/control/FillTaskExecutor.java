@@ -0,0 +1,217 @@
+package bdv.bigcat.control;
+
+import java.awt.Cursor;
+import java.awt.event.ActionEvent;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.ActionMap;
+import javax.swing.InputMap;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import org.scijava.ui.behaviour.KeyStrokeAdder;
+import org.scijava.ui.behaviour.io.InputTriggerConfig;
+import org.scijava.ui.behaviour.util.AbstractNamedAction;
+import org.scijava.ui.behaviour.util.InputActionBindings;
+
+import bdv.viewer.ViewerPanel;
+import net.imglib2.algorithm.fill.Filter;
+
+/**
+ * Runs fills and other long running canvas edits off the event dispatch
+ * thread.  Tasks are executed one at a time in the order they were submitted
+ * so that they never write the canvas concurrently.  While a task is running,
+ * the viewer is repainted periodically to show the progress and all running
+ * and queued tasks can be cancelled with shift ESC (plain ESC leaves modes
+ * such as draw-project-and-intersect).  Short edits such as brush strokes are
+ * {@link #execute(Runnable) executed} on the same thread so that they are
+ * ordered with the fills and never race with them.
+ *
+ * Cancellation is cooperative, tasks pass their {@link Filter Filters}
+ * through {@link #cancellable(Filter, BooleanSupplier)} which rejects all
+ * further pixels once cancelled.  Pixels filled before cancellation remain.
+ */
+public class FillTaskExecutor
+{
+	public interface Task
+	{
+		/**
+		 * @param isCancelled
+		 *            becomes true when the task was cancelled
+		 */
+		public void run( final BooleanSupplier isCancelled );
+	}
+
+	final static protected int REPAINT_INTERVAL = 200;
+
+	final protected ViewerPanel viewer;
+
+	final protected ExecutorService executor = Executors.newSingleThreadExecutor(
+			r -> {
+				final Thread thread = new Thread( r, "fill-task" );
+				thread.setDaemon( true );
+				return thread;
+			} );
+
+	/* tasks with a generation <= cancelledGeneration are cancelled */
+	final protected AtomicLong generation = new AtomicLong( 0 );
+
+	protected volatile long cancelledGeneration = 0;
+
+	final protected AtomicInteger pending = new AtomicInteger( 0 );
+
+	final protected Timer repaintTimer;
+
+	// for keystroke actions
+	private final ActionMap ksActionMap = new ActionMap();
+
+	private final InputMap ksInputMap = new InputMap();
+
+	private final KeyStrokeAdder ksKeyStrokeAdder;
+
+	public FillTaskExecutor(
+			final ViewerPanel viewer,
+			final InputTriggerConfig config,
+			final InputActionBindings inputActionBindings )
+	{
+		this.viewer = viewer;
+		repaintTimer = new Timer( REPAINT_INTERVAL, e -> viewer.requestRepaint() );
+		ksKeyStrokeAdder = config.keyStrokeAdder( ksInputMap, "fill tasks" );
+
+		new CancelTasks( "cancel fill", "shift ESCAPE" ).register();
+
+		inputActionBindings.addActionMap( "fill tasks", ksActionMap );
+		inputActionBindings.addInputMap( "fill tasks", ksInputMap );
+	}
+
+	private abstract class SelfRegisteringAction extends AbstractNamedAction
+	{
+		private final String[] defaultTriggers;
+
+		public SelfRegisteringAction( final String name, final String ... defaultTriggers )
+		{
+			super( name );
+			this.defaultTriggers = defaultTriggers;
+		}
+
+		public void register()
+		{
+			put( ksActionMap );
+			ksKeyStrokeAdder.put( name(), defaultTriggers );
+		}
+	}
+
+	private class CancelTasks extends SelfRegisteringAction
+	{
+		public CancelTasks( final String name, final String ... defaultTriggers )
+		{
+			super( name, defaultTriggers );
+		}
+
+		@Override
+		public void actionPerformed( final ActionEvent e )
+		{
+			if ( cancel() )
+				viewer.showMessage( "cancelled fill" );
+		}
+	}
+
+	/**
+	 * Queue a task.
+	 *
+	 * @param name
+	 *            reported when cancelled
+	 * @param task
+	 * @return
+	 */
+	public Future< ? > submit( final String name, final Task task )
+	{
+		final long taskGeneration = generation.incrementAndGet();
+		final BooleanSupplier isCancelled = () -> taskGeneration <= cancelledGeneration;
+
+		if ( pending.getAndIncrement() == 0 )
+			SwingUtilities.invokeLater( () -> {
+				viewer.setCursor( Cursor.getPredefinedCursor( Cursor.WAIT_CURSOR ) );
+				repaintTimer.start();
+			} );
+
+		return executor.submit( () -> {
+			try
+			{
+				if ( !isCancelled.getAsBoolean() )
+				{
+					task.run( isCancelled );
+					if ( isCancelled.getAsBoolean() )
+						System.out.println( name + " cancelled" );
+				}
+			}
+			catch ( final RuntimeException e )
+			{
+				e.printStackTrace();
+			}
+			finally
+			{
+				if ( pending.decrementAndGet() == 0 )
+					SwingUtilities.invokeLater( () -> {
+						repaintTimer.stop();
+						viewer.setCursor( Cursor.getPredefinedCursor( Cursor.DEFAULT_CURSOR ) );
+					} );
+				viewer.requestRepaint();
+			}
+		} );
+	}
+
+	/**
+	 * Run a short canvas edit, e.g. a brush stroke, after all queued tasks.
+	 * The edit cannot be cancelled and does not change the cursor.
+	 *
+	 * @param edit
+	 */
+	public void execute( final Runnable edit )
+	{
+		executor.execute( () -> {
+			try
+			{
+				edit.run();
+			}
+			catch ( final RuntimeException e )
+			{
+				e.printStackTrace();
+			}
+		} );
+	}
+
+	/**
+	 * Cancel the running and all queued tasks.
+	 *
+	 * @return true if there was a task to cancel
+	 */
+	public boolean cancel()
+	{
+		cancelledGeneration = generation.get();
+		return pending.get() > 0;
+	}
+
+	public boolean isBusy()
+	{
+		return pending.get() > 0;
+	}
+
+	/**
+	 * Wrap a {@link Filter} such that it rejects everything once the task is
+	 * cancelled, which lets flood fills terminate early.
+	 *
+	 * @param filter
+	 * @param isCancelled
+	 * @return
+	 */
+	static public < T, U > Filter< T, U > cancellable( final Filter< T, U > filter, final BooleanSupplier isCancelled )
+	{
+		return ( current, reference ) -> !isCancelled.getAsBoolean() && filter.accept( current, reference );
+	}
+}
@@ -46,7 +46,7 @@ public class LabelBrushController
 	final protected AffineTransform3D labelTransform;
 	final protected FragmentSegmentAssignment assignment;
 	final protected SelectionController selectionController;
-	final protected RealPoint labelLocation;
+	final protected FillTaskExecutor fillTaskExecutor;
 	final protected BrushOverlay brushOverlay;
 
 	final protected int[] labelsH5CellDimensions;
@@ -87,6 +87,7 @@ public class LabelBrushController
 			final AffineTransform3D labelTransform,
 			final FragmentSegmentAssignment assignment,
 			final SelectionController selectionController,
+			final FillTaskExecutor fillTaskExecutor,
 			final int[] labelsH5CellDimensions,
 			final InputTriggerConfig config,
 			final int brushNormalAxis )
@@ -98,13 +99,12 @@ public class LabelBrushController
 		this.labelTransform = labelTransform;
 		this.assignment = assignment;
 		this.selectionController = selectionController;
+		this.fillTaskExecutor = fillTaskExecutor;
 		this.labelsH5CellDimensions = labelsH5CellDimensions;
 		this.brushNormalAxis = brushNormalAxis;
 		brushOverlay = new BrushOverlay( viewer );
 		inputAdder = config.inputTriggerAdder( inputTriggerMap, "brush" );
 
-		labelLocation = new RealPoint( 3 );
-
 		new Paint( "paint", "SPACE button1" ).register();
 		new Erase( "erase", "SPACE button2", "SPACE button3" ).register();
 		new ChangeBrushRadius( "change brush radius", "SPACE scroll" ).register();
@@ -118,14 +118,16 @@ public class LabelBrushController
 			final AffineTransform3D labelTransform,
 			final FragmentSegmentAssignment assignment,
 			final SelectionController selectionController,
+			final FillTaskExecutor fillTaskExecutor,
 			final int[] labelsH5CellDimensions,
 			final InputTriggerConfig config )
 	{
-		this( viewer, labels, dirtyLabelsInterval, labelTransform, assignment, selectionController, labelsH5CellDimensions, config, 2 );
+		this( viewer, labels, dirtyLabelsInterval, labelTransform, assignment, selectionController, fillTaskExecutor, labelsH5CellDimensions, config, 2 );
 	}
 
-	private void setCoordinates( final int x, final int y )
+	private RealPoint labelLocation( final int x, final int y )
 	{
+		final RealPoint labelLocation = new RealPoint( 3 );
 		labelLocation.setPosition( x, 0 );
 		labelLocation.setPosition( y, 1 );
 		labelLocation.setPosition( 0, 2 );
@@ -133,6 +135,8 @@ public class LabelBrushController
 		viewer.displayToGlobalCoordinates( labelLocation );
 
 		labelTransform.applyInverse( labelLocation, labelLocation );
+
+		return labelLocation;
 	}
 
 	private abstract class SelfRegisteringBehaviour implements Behaviour
@@ -166,7 +170,11 @@ public class LabelBrushController
 			super( name, defaultTriggers );
 		}
 
-		protected void paint( final RealLocalizable coords)
+		/**
+		 * Paint a sphere into the canvas, called on the
+		 * {@link FillTaskExecutor} thread.
+		 */
+		protected void paint( final RealLocalizable coords, final long value, final int radius )
 		{
 			final AccessBoxRandomAccessible< LongType > accessBoxExtendedLabels = new AccessBoxRandomAccessible<>( extendedLabels );
 			final RandomAccessible< LongType > labelSource = Views.hyperSlice( accessBoxExtendedLabels, brushNormalAxis, Math.round( coords.getDoublePosition( 2 ) ) );
@@ -176,29 +184,39 @@ public class LabelBrushController
 							new long[]{
 									Math.round( coords.getDoublePosition( brushNormalAxis == 0 ? 1 : 0 ) ),
 									Math.round( coords.getDoublePosition( brushNormalAxis == 2 ? 1 : 2 ) ) },
-							Math.round( brushRadius / Affine3DHelpers.extractScale( labelTransform, brushNormalAxis == 0 ? 1 : 0 ) ),
+							Math.round( radius / Affine3DHelpers.extractScale( labelTransform, brushNormalAxis == 0 ? 1 : 0 ) ),
 							labelSource.randomAccess() );
 
 			for ( final LongType t : sphere )
-				t.set( getValue() );
+				t.set( value );
 
 			dirtyLabelsInterval.touch( accessBoxExtendedLabels.createAccessInterval() );
 		}
 
+		/**
+		 * Queue painting at a screen location.  Brush strokes are written on
+		 * the {@link FillTaskExecutor} thread such that they never race with
+		 * fills writing the same canvas.
+		 */
 		protected void paint( final int x, final int y )
 		{
-			setCoordinates( x, y );
-			paint( labelLocation );
+			final RealPoint labelLocation = labelLocation( x, y );
+			final long value = getValue();
+			final int radius = brushRadius;
+
+			fillTaskExecutor.execute( () -> {
+				paint( labelLocation, value, radius );
+				viewer.requestRepaint();
+			} );
 		}
 
 		protected void paint( final int x1, final int y1, final int x2, final int y2 )
 		{
-			setCoordinates( x1, y1 );
 			final double[] p1 = new double[ 3 ];
 			final RealPoint rp1 = RealPoint.wrap( p1 );
-			labelLocation.localize( p1 );
+			labelLocation( x1, y1 ).localize( p1 );
 
-			setCoordinates( x2, y2 );
+			final RealPoint labelLocation = labelLocation( x2, y2 );
 			final double[] d = new double[ 3 ];
 			labelLocation.localize( d );
 
@@ -207,12 +225,18 @@ public class LabelBrushController
 			final double l = LinAlgHelpers.length( d );
 			LinAlgHelpers.normalize( d );
 
-			for ( int i = 1; i < l; ++i )
-			{
-				LinAlgHelpers.add( p1, d, p1 );
-				paint( rp1 );
-			}
-			paint( labelLocation );
+			final long value = getValue();
+			final int radius = brushRadius;
+
+			fillTaskExecutor.execute( () -> {
+				for ( int i = 1; i < l; ++i )
+				{
+					LinAlgHelpers.add( p1, d, p1 );
+					paint( rp1, value, radius );
+				}
+				paint( labelLocation, value, radius );
+				viewer.requestRepaint();
+			} );
 		}
 
 		abstract protected long getValue();
@@ -228,8 +252,6 @@ public class LabelBrushController
 
 			paint( x, y );
 
-			viewer.requestRepaint();
-
 			// System.out.println( getName() + " drag start (" + oX + ", " + oY + ")" );
 		}
 
@@ -246,8 +268,6 @@ public class LabelBrushController
 				oY = y;
 			}
 
-			viewer.requestRepaint();
-
 			// System.out.println( getName() + " drag by (" + dX + ", " + dY + ")" );
 		}
 
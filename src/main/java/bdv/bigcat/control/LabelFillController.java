@@ -1,6 +1,6 @@
 package bdv.bigcat.control;
 
-import java.awt.Cursor;
+import java.util.function.BooleanSupplier;
 
 import org.apache.commons.lang.math.NumberUtils;
 import org.scijava.ui.behaviour.Behaviour;
@@ -16,10 +16,11 @@ import bdv.bigcat.util.DirtyInterval;
 import bdv.img.AccessBoxRandomAccessible;
 import bdv.img.GrowingStoreRandomAccessibleSingletonAccess;
 import bdv.labels.labelset.Label;
+import bdv.labels.labelset.LabelMultisetCanvasFill;
 import bdv.labels.labelset.LabelMultisetType;
-import bdv.labels.labelset.Multiset;
 import bdv.util.Affine3DHelpers;
 import bdv.viewer.ViewerPanel;
+import net.imglib2.Interval;
 import net.imglib2.Localizable;
 import net.imglib2.Point;
 import net.imglib2.RandomAccess;
@@ -75,6 +76,10 @@ public class LabelFillController
 
 	final protected Shape shape;
 
+	final protected FillTaskExecutor fillTaskExecutor;
+
+	final protected LabelMultisetCanvasFill canvasFill;
+
 	// for behavioUrs
 	private final BehaviourMap behaviourMap = new BehaviourMap();
 
@@ -106,6 +111,7 @@ public class LabelFillController
 			final SelectionController selectionController,
 			final Shape shape,
 			final IdPicker idPicker,
+			final FillTaskExecutor fillTaskExecutor,
 			final InputTriggerConfig config )
 	{
 		this.viewer = viewer;
@@ -117,6 +123,8 @@ public class LabelFillController
 		this.selectionController = selectionController;
 		this.shape = shape;
 		this.idPicker = idPicker;
+		this.fillTaskExecutor = fillTaskExecutor;
+		canvasFill = new LabelMultisetCanvasFill( labels, paintedLabels );
 		inputAdder = config.inputTriggerAdder( inputTriggerMap, "fill" );
 
 		labelLocation = new RealPoint( 3 );
@@ -171,45 +179,43 @@ public class LabelFillController
 		@Override
 		public void click( final int x, final int y )
 		{
+			final Point p;
+			final long fillLabel;
 			synchronized ( viewer )
 			{
 				if ( idPicker.getIdAtDisplayCoordinate( x, y ) == Label.OUTSIDE )
 					return;
-				viewer.setCursor( Cursor.getPredefinedCursor( Cursor.WAIT_CURSOR ) );
 				setCoordinates( x, y );
-				System.out.println( "Filling " + labelLocation + " with " + selectionController.getActiveFragmentId() );
-
-				final Point p = new Point( Math.round( labelLocation.getDoublePosition( 0 ) ), Math.round( labelLocation.getDoublePosition( 1 ) ), Math.round( labelLocation.getDoublePosition( 2 ) ) );
+				fillLabel = selectionController.getActiveFragmentId();
+				System.out.println( "Filling " + labelLocation + " with " + fillLabel );
 
-				final AccessBoxRandomAccessible< LongType > accessTrackingExtendedPaintedLabels =
-						new AccessBoxRandomAccessible<>(
-							Views.extendValue(
-									paintedLabels,
-									new LongType( Label.TRANSPARENT ) ) );
+				p = new Point( Math.round( labelLocation.getDoublePosition( 0 ) ), Math.round( labelLocation.getDoublePosition( 1 ) ), Math.round( labelLocation.getDoublePosition( 2 ) ) );
+			}
 
-				final RandomAccess< LongType > paintAccess = accessTrackingExtendedPaintedLabels.randomAccess();
+			fillTaskExecutor.submit( "Filling", isCancelled -> {
+				final RandomAccess< LongType > paintAccess =
+						Views.extendValue(
+								paintedLabels,
+								new LongType( Label.TRANSPARENT ) ).randomAccess();
 				paintAccess.setPosition( p );
 				final long seedPaint = paintAccess.get().getIntegerLong();
 				final long seedFragmentLabel = getBiggestLabel( labels, p );
+				final long comparison = seedPaint == Label.TRANSPARENT ? seedFragmentLabel : seedPaint;
 
-				final long t0 = System.currentTimeMillis();
-				FloodFill.fill(
-						Views.extendValue( labels, new LabelMultisetType() ),
-						accessTrackingExtendedPaintedLabels,
-						p,
-						new LabelMultisetType(),
-						new LongType( selectionController.getActiveFragmentId() ),
-						new DiamondShape( 1 ),
-						new SegmentAndPaintFilter1( seedPaint, seedFragmentLabel, assignment ) );
-
-				dirtyLabelsInterval.touch( accessTrackingExtendedPaintedLabels.createAccessInterval() );
+				/* neither painted nor any fragment at the seed, e.g. not loaded yet */
+				if ( !Label.regular( comparison ) )
+					return;
 
-				final long t1 = System.currentTimeMillis();
-				System.out.println( "Filling took " + ( t1 - t0 ) + " ms" );
-				System.out.println( "  modified box: " + Util.printInterval( dirtyLabelsInterval.getDirtyInterval() ) );
-				viewer.setCursor( Cursor.getPredefinedCursor( Cursor.DEFAULT_CURSOR ) );
-				viewer.requestRepaint();
-			}
+				final Interval filledInterval = canvasFill.fill(
+						p,
+						fillLabel,
+						comparison,
+						assignment.getFragments( assignment.getSegment( comparison ) ),
+						isCancelled );
+
+				if ( filledInterval != null )
+					dirtyLabelsInterval.touch( filledInterval );
+			} );
 		}
 	}
 
@@ -224,63 +230,63 @@ public class LabelFillController
 		@Override
 		public void click( final int x, final int y )
 		{
+			final AffineTransform3D transform = new AffineTransform3D();
+			final double scale;
+			final Point p;
+			final long label;
 			synchronized ( viewer )
 			{
 				if ( idPicker.getIdAtDisplayCoordinate( x, y ) == Label.OUTSIDE )
 					return;
-				final AffineTransform3D transform = new AffineTransform3D();
 				viewer.getState().getViewerTransform( transform );
-				final double scale = Affine3DHelpers.extractScale( transform, 0 ) * minLabelScale / Math.sqrt( 3 );
+				scale = Affine3DHelpers.extractScale( transform, 0 ) * minLabelScale / Math.sqrt( 3 );
 				System.out.println( labelTransform );
 				final int xScale = ( int ) Math.round( x / scale );
 				final int yScale = ( int ) Math.round( y / scale );
-				final long[] initialMin = { xScale - 16, yScale - 16 };
-				final long[] initialMax = { xScale + 15, yScale + 15 };
-				viewer.setCursor( Cursor.getPredefinedCursor( Cursor.WAIT_CURSOR ) );
 				setCoordinates( x, y );
-				System.out.println( "Filling " + labelLocation + " with " + selectionController.getActiveFragmentId() + " (2D)" );
+				label = selectionController.getActiveFragmentId();
+				System.out.println( "Filling " + labelLocation + " with " + label + " (2D)" );
 
 				final RealPoint rp = new RealPoint( 3 );
 				transform.apply( labelLocation, rp );
-				final Point p = new Point( xScale, yScale );
+				p = new Point( xScale, yScale );
 
 				System.out.println( x + " " + y + " " + p + " " + rp );
+			}
 
-				final AffineTransform3D tf = labelTransform.copy();
-				tf.preConcatenate( transform );
-				tf.preConcatenate( new Scale3D( 1.0 / scale, 1.0 / scale, 1.0 / scale ) );
+			final long[] initialMin = { p.getLongPosition( 0 ) - 16, p.getLongPosition( 1 ) - 16 };
+			final long[] initialMax = { p.getLongPosition( 0 ) + 15, p.getLongPosition( 1 ) + 15 };
 
-				final AffineTransform3D tfFront = tf.copy().preConcatenate( new Translation3D( 0, 0, -1.0 / Math.sqrt( 3 ) ) );
-				final AffineTransform3D tfBack = tf.copy().preConcatenate( new Translation3D( 0, 0, 1.0 / Math.sqrt( 3 ) ) );
+			final AffineTransform3D tf = labelTransform.copy();
+			tf.preConcatenate( transform );
+			tf.preConcatenate( new Scale3D( 1.0 / scale, 1.0 / scale, 1.0 / scale ) );
 
-				final long t0 = System.currentTimeMillis();
+			final AffineTransform3D tfFront = tf.copy().preConcatenate( new Translation3D( 0, 0, -1.0 / Math.sqrt( 3 ) ) );
+			final AffineTransform3D tfBack = tf.copy().preConcatenate( new Translation3D( 0, 0, 1.0 / Math.sqrt( 3 ) ) );
 
+			fillTaskExecutor.submit( "Filling (2D)", isCancelled -> {
 				final BitType notVisited = new BitType( false );
 				final BitType fillLabel = new BitType( true );
 
-				final GrowingStoreRandomAccessibleSingletonAccess< BitType > tmpFillFront = fillMask( tfFront, initialMin, initialMax, p, notVisited.copy(), fillLabel.copy() );
-				final GrowingStoreRandomAccessibleSingletonAccess< BitType > tmpFillBack = fillMask( tfBack, initialMin, initialMax, p, notVisited.copy(), fillLabel.copy() );
+				final GrowingStoreRandomAccessibleSingletonAccess< BitType > tmpFillFront = fillMask( tfFront, initialMin, initialMax, p, label, notVisited.copy(), fillLabel.copy(), isCancelled );
+				final GrowingStoreRandomAccessibleSingletonAccess< BitType > tmpFillBack = fillMask( tfBack, initialMin, initialMax, p, label, notVisited.copy(), fillLabel.copy(), isCancelled );
 
-				final long label = selectionController.getActiveFragmentId();
+				if ( isCancelled.getAsBoolean() )
+					return;
 
 				writeMask( tmpFillFront, tfFront, label );
 				writeMask( tmpFillBack, tfBack, label );
 
-				final long t1 = System.currentTimeMillis();
-				System.out.println( "Filling took " + ( t1 - t0 ) + " ms" );
 				System.out.println( "  modified box: " + Util.printInterval( dirtyLabelsInterval.getDirtyInterval() ) );
-				viewer.setCursor( Cursor.getPredefinedCursor( Cursor.DEFAULT_CURSOR ) );
-				viewer.requestRepaint();
-
-			}
+			} );
 		}
 
-		private < T extends BooleanType< T > & NativeType< T > > GrowingStoreRandomAccessibleSingletonAccess< T > fillMask( final AffineTransform3D tf, final long[] initialMin, final long[] initialMax, final Point p, final T notVisited, final T fillLabel )
+		private < T extends BooleanType< T > & NativeType< T > > GrowingStoreRandomAccessibleSingletonAccess< T > fillMask( final AffineTransform3D tf, final long[] initialMin, final long[] initialMax, final Point p, final long label, final T notVisited, final T fillLabel, final BooleanSupplier isCancelled )
 		{
-			return fillMask( tf, initialMin, initialMax, p, new GrowingStoreRandomAccessibleSingletonAccess.SimpleArrayImgFactory< T >( notVisited ), notVisited, fillLabel );
+			return fillMask( tf, initialMin, initialMax, p, label, new GrowingStoreRandomAccessibleSingletonAccess.SimpleArrayImgFactory< T >( notVisited ), notVisited, fillLabel, isCancelled );
 		}
 
-		private < T extends BooleanType< T > > GrowingStoreRandomAccessibleSingletonAccess< T > fillMask( final AffineTransform3D tf, final long[] initialMin, final long[] initialMax, final Point p, final GrowingStoreRandomAccessibleSingletonAccess.Factory< T > factory, final T notVisited, final T fillLabel )
+		private < T extends BooleanType< T > > GrowingStoreRandomAccessibleSingletonAccess< T > fillMask( final AffineTransform3D tf, final long[] initialMin, final long[] initialMax, final Point p, final long label, final GrowingStoreRandomAccessibleSingletonAccess.Factory< T > factory, final T notVisited, final T fillLabel, final BooleanSupplier isCancelled )
 		{
 			final GrowingStoreRandomAccessibleSingletonAccess< T > tmpFill = new GrowingStoreRandomAccessibleSingletonAccess<>( initialMin, initialMax, factory, notVisited.createVariable() );
 
@@ -307,7 +313,11 @@ public class LabelFillController
 			final long seedPaint = pairAccess.get().getB().getIntegerLong();
 			final long seedFragmentLabel = getBiggestLabel( pairAccess.getA() );
 
-			FloodFill.fill( labelsPaintedLabelsPair, tmpFill, p, new ValuePair< LabelMultisetType, LongType >( new LabelMultisetType(), new LongType( selectionController.getActiveFragmentId() ) ), fillLabel, new DiamondShape( 1 ), new SegmentAndPaintFilter2D< T >( seedPaint, seedFragmentLabel, assignment ), new TypeWriter<>() );
+			/* neither painted nor any fragment at the seed, leave the mask empty */
+			if ( seedPaint == Label.TRANSPARENT && !Label.regular( seedFragmentLabel ) )
+				return tmpFill;
+
+			FloodFill.fill( labelsPaintedLabelsPair, tmpFill, p, new ValuePair< LabelMultisetType, LongType >( new LabelMultisetType(), new LongType( label ) ), fillLabel, new DiamondShape( 1 ), FillTaskExecutor.cancellable( new SegmentAndPaintFilter2D< T >( seedPaint, seedFragmentLabel, assignment ), isCancelled ), new TypeWriter<>() );
 
 			dirtyLabelsInterval.touch( accessTrackingExtendedPaintedLabels.createAccessInterval() );
 
@@ -344,6 +354,23 @@ public class LabelFillController
 
 	}
 
+	/**
+	 * The fragments of the segment of id, none if id is not
+	 * {@link Label#regular(long) regular}, e.g. {@link Label#TRANSPARENT} for
+	 * an empty or not yet loaded seed.
+	 *
+	 * @param id
+	 * @param assignment
+	 * @return
+	 */
+	public static long[] fragmentsOf( final long id, final FragmentSegmentAssignment assignment )
+	{
+		if ( !Label.regular( id ) )
+			return new long[ 0 ];
+		final long[] fragments = assignment.getFragments( assignment.getSegment( id ) );
+		return fragments == null ? new long[ 0 ] : fragments;
+	}
+
 	public static class SegmentAndPaintFilter1 implements Filter< Pair< LabelMultisetType, LongType >, Pair< LabelMultisetType, LongType > >
 	{
 		private final long comparison;
@@ -353,7 +380,7 @@ public class LabelFillController
 		public SegmentAndPaintFilter1( final long seedPaint, final long seedFragmentLabel, final FragmentSegmentAssignment assignment )
 		{
 			this.comparison = seedPaint == Label.TRANSPARENT ? seedFragmentLabel : seedPaint;
-			this.fragmentsContainedInSeedSegment = assignment.getFragments( assignment.getSegment( comparison ) );
+			this.fragmentsContainedInSeedSegment = fragmentsOf( comparison, assignment );
 		}
 
 		@Override
@@ -388,7 +415,7 @@ public class LabelFillController
 		public SegmentAndPaintFilter2D( final long seedPaint, final long seedFragmentLabel, final FragmentSegmentAssignment assignment )
 		{
 			this.comparison = seedPaint == Label.TRANSPARENT ? seedFragmentLabel : seedPaint;
-			this.fragmentsContainedInSeedSegment = assignment.getFragments( assignment.getSegment( comparison ) );
+			this.fragmentsContainedInSeedSegment = fragmentsOf( comparison, assignment );
 			System.out.println( "Comparison=" + this.comparison );
 		}
 
@@ -455,18 +482,7 @@ public class LabelFillController
 
 	public static long getBiggestLabel( final LabelMultisetType t )
 	{
-		int maxCount = Integer.MIN_VALUE;
-		long maxLabel = -1;
-		for ( final Multiset.Entry< Label > e : t.entrySet() )
-		{
-			final int c = e.getCount();
-			if ( c > maxCount )
-			{
-				maxLabel = e.getElement().id();
-				maxCount = c;
-			}
-		}
-		return maxLabel;
+		return t.argMax();
 	}
 
 }
@@ -3,6 +3,11 @@ package bdv.bigcat.control;
 import java.awt.Cursor;
 import java.awt.event.ActionEvent;
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.ActionMap;
 import javax.swing.InputMap;
@@ -15,10 +20,12 @@ import org.scijava.ui.behaviour.util.InputActionBindings;
 import bdv.bigcat.label.FragmentAssignment;
 import bdv.bigcat.label.FragmentSegmentAssignment;
 import bdv.bigcat.util.DirtyInterval;
+import bdv.bigcat.util.EditJournal;
 import bdv.img.h5.H5Utils;
 import bdv.labels.labelset.LabelMultisetType;
 import bdv.util.IdService;
 import bdv.viewer.ViewerPanel;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.integer.LongType;
 
@@ -47,6 +54,22 @@ public class LabelPersistenceController
 	final protected String assignmentDataset;
 	final protected String completeFragmentsDataset;
 
+	/* journal of unsaved edits, may be null */
+	protected EditJournal journal = null;
+
+	/* save the assignment in the compact binary format */
+	protected boolean binaryAssignment = false;
+
+	/* assignment version at the last save or at construction */
+	protected long savedAssignmentVersion;
+
+	final protected ScheduledExecutorService saveExecutor = Executors.newSingleThreadScheduledExecutor(
+			r -> {
+				final Thread thread = new Thread( r, "save" );
+				thread.setDaemon( true );
+				return thread;
+			} );
+
 	// for keystroke actions
 	private final ActionMap ksActionMap = new ActionMap();
 	private final InputMap ksInputMap = new InputMap();
@@ -86,6 +109,8 @@ public class LabelPersistenceController
 		this.labelsCellDimensions = labelsH5CellDimensions;
 		this.assignmentDataset = assignmentDataset;
 		this.completeFragmentsDataset = completeFragmentsDataset;
+		/* the loaded (and replayed) assignment needs no save */
+		savedAssignmentVersion = assignment.getVersion();
 		ksKeyStrokeAdder = config.keyStrokeAdder( ksInputMap, "persistence" );
 
 		// TODO use compled assignments
@@ -114,6 +139,96 @@ public class LabelPersistenceController
 		}
 	}
 
+	/**
+	 * Set the journal that records edits until they are saved by
+	 * {@link #checkpoint()}.
+	 *
+	 * @param journal
+	 */
+	public void setJournal( final EditJournal journal )
+	{
+		this.journal = journal;
+	}
+
+	public EditJournal getJournal()
+	{
+		return journal;
+	}
+
+	/**
+	 * Save the fragment-segment assignment as a binary uint8 dataset (see
+	 * {@link bdv.util.LongLongLutCodec}) instead of a 2xN uint64 dataset.
+	 *
+	 * @param binaryAssignment
+	 */
+	public void setBinaryAssignment( final boolean binaryAssignment )
+	{
+		this.binaryAssignment = binaryAssignment;
+	}
+
+	/**
+	 * Save the next id, the fragment-segment assignment, and the cells of
+	 * the painted labels modified since the last save.  Edits recorded in
+	 * the journal before the save are deleted after saving successfully.
+	 * The viewer is not locked, edits during the save are recorded for the
+	 * next save.
+	 */
+	public synchronized void checkpoint()
+	{
+		int segment = -1;
+		if ( journal != null )
+		{
+			try
+			{
+				segment = journal.rotate();
+			}
+			catch ( final InterruptedException | ExecutionException e )
+			{
+				e.printStackTrace();
+			}
+		}
+
+		final long version = assignment.getVersion();
+		saveNextId();
+		saveFragmentSegmentAssignment();
+		savePaintedLabels();
+		savedAssignmentVersion = version;
+
+		if ( segment >= 0 )
+			journal.deleteSegmentsBefore( segment );
+	}
+
+	/**
+	 * Periodically {@link #checkpoint() save} in the background if anything
+	 * was modified since the last save.
+	 *
+	 * @param seconds
+	 *            interval between saves
+	 */
+	public void startAutosave( final long seconds )
+	{
+		saveExecutor.scheduleWithFixedDelay(
+				() -> {
+					try
+					{
+						if ( dirtyLabelSourceInterval.hasDirtyCells() || assignment.getVersion() != savedAssignmentVersion )
+						{
+							final long t0 = System.currentTimeMillis();
+							checkpoint();
+							final long t1 = System.currentTimeMillis();
+							System.out.println( "Autosave took " + ( t1 - t0 ) + " ms" );
+						}
+					}
+					catch ( final RuntimeException e )
+					{
+						e.printStackTrace();
+					}
+				},
+				seconds,
+				seconds,
+				TimeUnit.SECONDS );
+	}
+
 	public void saveNextId()
 	{
 		System.out.println( "Saving next id " + h5Path + ":/next_id" );
@@ -127,11 +242,18 @@ public class LabelPersistenceController
 	public void saveFragmentSegmentAssignment()
 	{
 		System.out.println( "Saving fragment-segment assignments " + h5Path + ":" + assignmentDataset );
-		H5Utils.saveLongLongLut(
-				assignment.getLut(),
-				h5Path,
-				assignmentDataset,
-				1024 );
+		if ( binaryAssignment )
+			H5Utils.saveBinaryLongLongLut(
+					assignment.getLut(),
+					h5Path,
+					assignmentDataset,
+					1 << 16 );
+		else
+			H5Utils.saveLongLongLut(
+					assignment.getLut(),
+					h5Path,
+					assignmentDataset,
+					1024 );
 	}
 
 	public void saveCompleteFragmentsAssignment()
@@ -144,16 +266,33 @@ public class LabelPersistenceController
 				1024 );
 	}
 
+	/**
+	 * Save the cells of the painted labels that have been touched since the
+	 * last save.  Cells that are touched while saving remain dirty for the
+	 * next save.
+	 */
 	public void savePaintedLabels()
 	{
 		System.out.println( "Saving painted labels into " + h5Path + ":" + paintedLabelsDataset );
 
 		final File file = new File( h5Path );
-		H5Utils.saveUnsignedLong(
-				labelSource,
-				file,
-				paintedLabelsDataset,
-				labelsCellDimensions );
+		final List< Interval > dirtyCells = dirtyLabelSourceInterval.takeDirtyCells();
+		try
+		{
+			H5Utils.saveUnsignedLongCells(
+					labelSource,
+					file,
+					paintedLabelsDataset,
+					labelsCellDimensions,
+					dirtyCells );
+		}
+		catch ( final RuntimeException e )
+		{
+			if ( dirtyCells != null )
+				for ( final Interval cell : dirtyCells )
+					dirtyLabelSourceInterval.touch( cell );
+			throw e;
+		}
 		H5Utils.saveDoubleArrayAttribute(
 				new double[]{labelResolution[2], labelResolution[1], labelResolution[0]},
 				file,
@@ -244,15 +383,19 @@ public class LabelPersistenceController
 		@Override
 		public void actionPerformed( final ActionEvent e )
 		{
-			synchronized ( viewer )
-			{
-				viewer.setCursor( Cursor.getPredefinedCursor( Cursor.WAIT_CURSOR ) );
-				saveNextId();
-				saveFragmentSegmentAssignment();
-				savePaintedLabels();
-				viewer.setCursor( Cursor.getPredefinedCursor( Cursor.DEFAULT_CURSOR ) );
-			}
-			viewer.showMessage( "Saved fragment-segment assignments and painted labels." );
+			viewer.showMessage( "Saving fragment-segment assignments and painted labels..." );
+			saveExecutor.submit( () -> {
+				try
+				{
+					checkpoint();
+					viewer.showMessage( "Saved fragment-segment assignments and painted labels." );
+				}
+				catch ( final RuntimeException ex )
+				{
+					ex.printStackTrace();
+					viewer.showMessage( "Saving failed: " + ex.getMessage() );
+				}
+			} );
 		}
 	}
 
@@ -129,6 +129,8 @@ public class LabelRestrictToSegmentController
 
 	final protected Shape shape;
 
+	final protected FillTaskExecutor fillTaskExecutor;
+
 	// for behavioUrs
 	private final BehaviourMap behaviourMap = new BehaviourMap();
 
@@ -154,6 +156,7 @@ public class LabelRestrictToSegmentController
 			final FragmentSegmentAssignment assignment,
 			final SelectionController selectionController,
 			final Shape shape,
+			final FillTaskExecutor fillTaskExecutor,
 			final InputTriggerConfig config )
 	{
 		this.viewer = viewer;
@@ -163,6 +166,7 @@ public class LabelRestrictToSegmentController
 		this.assignment = assignment;
 		this.selectionController = selectionController;
 		this.shape = shape;
+		this.fillTaskExecutor = fillTaskExecutor;
 		inputAdder = config.inputTriggerAdder( inputTriggerMap, "restrict" );
 
 		labelLocation = new RealPoint( 3 );
@@ -215,61 +219,60 @@ public class LabelRestrictToSegmentController
 		@Override
 		public void click( final int x, final int y )
 		{
+			final Point p;
 			synchronized ( viewer )
 			{
-				viewer.setCursor( java.awt.Cursor.getPredefinedCursor( java.awt.Cursor.WAIT_CURSOR ) );
 				setCoordinates( x, y );
 				System.out.println( "Intersecting " + labelLocation + " with " + selectionController.getActiveFragmentId() );
 
-				final Point p = new Point(
+				p = new Point(
 						Math.round( labelLocation.getDoublePosition( 0 ) ),
 						Math.round( labelLocation.getDoublePosition( 1 ) ),
 						Math.round( labelLocation.getDoublePosition( 2 ) ) );
+			}
 
+			fillTaskExecutor.submit( "Intersecting", isCancelled -> {
 				final RandomAccess< LongType > paintAccess = paintedLabels.randomAccess();
 				paintAccess.setPosition( p );
 				final long seedPaint = paintAccess.get().getIntegerLong();
 
-                if ( seedPaint != Label.TRANSPARENT ) {
-                    final long seedFragmentLabel = getBiggestLabel(labels, p);
-                    final long seedSegmentLabel = assignment.getSegment(seedFragmentLabel);
-                    final long[] fragmentsInSeedSegment = assignment.getFragments(seedSegmentLabel);
-
-                    final long t0 = System.currentTimeMillis();
-                    // current work around: fill intersect with dummy color, then
-                    // fill dummy color with initial color
-                    FloodFill.fill(
-                            Views.extendValue(labels, new LabelMultisetType()),
-                            Views.extendValue(paintedLabels, new LongType(Label.TRANSPARENT)),
-                            p,
-                            new LabelMultisetType(),
-                            new LongType(DUMMY_PAINT),
-                            new DiamondShape(1),
-                            new LabelFillController.SegmentAndPaintFilter1(
-                                    seedPaint,
-                                    seedFragmentLabel,
-                                    assignment));
-                    final long t1 = System.currentTimeMillis();
-                    // current work around: fill intersect with dummy color, then
-                    // fill dummy color with initial color
-                    intersect(
-                            Views.extendValue(labels, new LabelMultisetType()),
-                            Views.extendValue(paintedLabels, new LongType(Label.TRANSPARENT)),
-                            Views.extendValue(paintedLabels, new LongType(Label.TRANSPARENT)),
-                            new DiamondShape(1),
-                            p,
-                            new ValuePair<>(new ValuePair<>(new LabelMultisetType(), new LongType(DUMMY_PAINT)), new LongType(DUMMY_PAINT)),
-                            LABEL_FILTER,
-                            new WriteTransparentIfDifferentSegment<>(fragmentsInSeedSegment, DUMMY_PAINT, seedPaint) // to
-                            // proper
-                            // newPaint
-                    );
-                    System.out.println( "Intersecting took " + ( t1 - t0 ) + " ms" );
-                }
-
-                viewer.setCursor( java.awt.Cursor.getPredefinedCursor( java.awt.Cursor.DEFAULT_CURSOR ) );
-                viewer.requestRepaint();
-			}
+				final long seedFragmentLabel = getBiggestLabel( labels, p );
+
+				/* restricting requires paint and a segment at the seed */
+				if ( seedPaint != Label.TRANSPARENT && Label.regular( seedFragmentLabel ) )
+				{
+					final long seedSegmentLabel = assignment.getSegment( seedFragmentLabel );
+					final long[] fragmentsInSeedSegment = assignment.getFragments( seedSegmentLabel );
+
+					// current work around: fill intersect with dummy color, then
+					// fill dummy color with initial color
+					FloodFill.fill(
+							Views.extendValue( labels, new LabelMultisetType() ),
+							Views.extendValue( paintedLabels, new LongType( Label.TRANSPARENT ) ),
+							p,
+							new LabelMultisetType(),
+							new LongType( DUMMY_PAINT ),
+							new DiamondShape( 1 ),
+							FillTaskExecutor.cancellable(
+									new LabelFillController.SegmentAndPaintFilter1(
+											seedPaint,
+											seedFragmentLabel,
+											assignment ),
+									isCancelled ) );
+
+					// not cancellable, replaces all dummy paint written so far
+					// with proper newPaint
+					intersect(
+							Views.extendValue( labels, new LabelMultisetType() ),
+							Views.extendValue( paintedLabels, new LongType( Label.TRANSPARENT ) ),
+							Views.extendValue( paintedLabels, new LongType( Label.TRANSPARENT ) ),
+							new DiamondShape( 1 ),
+							p,
+							new ValuePair<>( new ValuePair<>( new LabelMultisetType(), new LongType( DUMMY_PAINT ) ), new LongType( DUMMY_PAINT ) ),
+							LABEL_FILTER,
+							new WriteTransparentIfDifferentSegment<>( fragmentsInSeedSegment, DUMMY_PAINT, seedPaint ) );
+				}
+			} );
 		}
 	}
 
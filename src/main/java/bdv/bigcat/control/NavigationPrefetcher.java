@@ -0,0 +1,512 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.bigcat.control;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
+
+import bdv.ViewerSetupImgLoader;
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.util.Affine3DHelpers;
+import bdv.viewer.ViewerPanel;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
+import net.imglib2.ui.TransformListener;
+
+/**
+ * Prefetches the cells that are about to become visible while navigating.
+ * The translation of the screen center between the last two viewer
+ * transforms is extrapolated {@link #lookahead} steps ahead, and the cells
+ * of the current mipmap level that intersect the extrapolated screens are
+ * requested with {@link LoadingStrategy#VOLATILE volatile} loading at a low
+ * queue priority such that they never delay loading of visible cells.
+ * At most {@link #budget} bytes of cells that are not cached yet are
+ * requested per viewer transform change, nearer steps first.
+ *
+ * Rotation and zoom reset the prediction.
+ */
+public class NavigationPrefetcher implements TransformListener< AffineTransform3D >
+{
+	/**
+	 * A setup to prefetch from and the {@link CacheArrayLoader
+	 * CacheArrayLoaders} that load the cells of its levels.
+	 */
+	static protected class PrefetchSource< V extends Volatile< ? > & NativeType< V >, A extends VolatileAccess >
+	{
+		final protected int setupId;
+
+		final protected ViewerSetupImgLoader< ?, V > setupLoader;
+
+		final protected IntFunction< CacheArrayLoader< A > > loaders;
+
+		final protected V type;
+
+		/* per level, lazily created with prefetch cache hints */
+		final protected RandomAccessibleInterval< V >[] imgs;
+
+		/* per level, lazily created with cache hints that do not load */
+		final protected RandomAccessibleInterval< V >[] probes;
+
+		final protected CellGrid[] grids;
+
+		@SuppressWarnings( "unchecked" )
+		protected PrefetchSource(
+				final int setupId,
+				final ViewerSetupImgLoader< ?, V > setupLoader,
+				final IntFunction< CacheArrayLoader< A > > loaders,
+				final V type )
+		{
+			this.setupId = setupId;
+			this.setupLoader = setupLoader;
+			this.loaders = loaders;
+			this.type = type;
+			final int numLevels = setupLoader.numMipmapLevels();
+			imgs = new RandomAccessibleInterval[ numLevels ];
+			probes = new RandomAccessibleInterval[ numLevels ];
+			grids = new CellGrid[ numLevels ];
+		}
+
+		/**
+		 * @return a target for the cells of level or null if the level is
+		 *         not a cell image
+		 */
+		synchronized protected Target target(
+				final int level,
+				final VolatileGlobalCellCache cache,
+				final CacheHints cacheHints,
+				final CacheHints probeHints )
+		{
+			if ( imgs[ level ] == null )
+			{
+				final RandomAccessibleInterval< V > img = setupLoader.getVolatileImage( 0, level );
+				if ( !( img instanceof AbstractCellImg ) )
+					return null;
+				final CacheArrayLoader< A > loader = loaders.apply( level );
+				grids[ level ] = ( ( AbstractCellImg< ?, ?, ?, ? > )img ).getCellGrid();
+				imgs[ level ] = cache.createImg( grids[ level ], 0, setupId, level, cacheHints, loader, type.createVariable() );
+				probes[ level ] = cache.createImg( grids[ level ], 0, setupId, level, probeHints, loader, type.createVariable() );
+			}
+			return new CellTarget<>(
+					setupLoader.getMipmapTransforms()[ level ],
+					grids[ level ],
+					loaders.apply( level ).getBytesPerElement(),
+					imgs[ level ],
+					probes[ level ] );
+		}
+	}
+
+	/* set on install */
+	protected VolatileGlobalCellCache cache = null;
+
+	protected CacheHints cacheHints = null;
+
+	protected CacheHints probeHints = null;
+
+	final protected int lookahead;
+
+	final protected long budget;
+
+	final protected ArrayList< PrefetchSource< ?, ? > > sources = new ArrayList<>();
+
+	protected ViewerPanel viewer = null;
+
+	/* previous viewer transform */
+	final protected AffineTransform3D previous = new AffineTransform3D();
+
+	protected boolean hasPrevious = false;
+
+	/* only the most recent prediction is executed */
+	final protected AtomicReference< Runnable > pending = new AtomicReference<>();
+
+	final protected ExecutorService executor = Executors.newSingleThreadExecutor(
+			r -> {
+				final Thread thread = new Thread( r, "prefetch" );
+				thread.setDaemon( true );
+				thread.setPriority( Thread.MIN_PRIORITY );
+				return thread;
+			} );
+
+	/**
+	 * @param lookahead
+	 *            number of navigation steps to predict
+	 * @param budget
+	 *            maximum bytes of cells requested per transform change
+	 */
+	public NavigationPrefetcher(
+			final int lookahead,
+			final long budget )
+	{
+		this.lookahead = lookahead;
+		this.budget = budget;
+	}
+
+	public < V extends Volatile< ? > & NativeType< V >, A extends VolatileAccess > void addSource(
+			final int setupId,
+			final ViewerSetupImgLoader< ?, V > setupLoader,
+			final CacheArrayLoader< A > loader,
+			final V type )
+	{
+		addSource( setupId, setupLoader, level -> loader, type );
+	}
+
+	/**
+	 * Add a setup whose levels are loaded by different
+	 * {@link CacheArrayLoader CacheArrayLoaders}.
+	 *
+	 * @param setupId
+	 * @param setupLoader
+	 * @param loaders
+	 *            the loader of each level
+	 * @param type
+	 */
+	public < V extends Volatile< ? > & NativeType< V >, A extends VolatileAccess > void addSource(
+			final int setupId,
+			final ViewerSetupImgLoader< ?, V > setupLoader,
+			final IntFunction< CacheArrayLoader< A > > loaders,
+			final V type )
+	{
+		synchronized ( sources )
+		{
+			sources.add( new PrefetchSource<>( setupId, setupLoader, loaders, type ) );
+		}
+	}
+
+	/**
+	 * Start listening to the viewer's transform changes.  Sources must be
+	 * added before.
+	 *
+	 * @param viewer
+	 * @param cache
+	 *            the cache used by the viewer
+	 * @param priority
+	 *            fetch queue priority of prefetched cells, should be the
+	 *            lowest priority of the cache
+	 */
+	public void install( final ViewerPanel viewer, final VolatileGlobalCellCache cache, final int priority )
+	{
+		this.cache = cache;
+		cacheHints = new CacheHints( LoadingStrategy.VOLATILE, priority, false );
+		probeHints = new CacheHints( LoadingStrategy.DONTLOAD, priority, false );
+		this.viewer = viewer;
+		viewer.addTransformListener( this );
+	}
+
+	@Override
+	public void transformChanged( final AffineTransform3D transform )
+	{
+		final AffineTransform3D current = transform.copy();
+
+		final double[] shift = new double[ 3 ];
+		final boolean translated;
+		synchronized ( previous )
+		{
+			translated = hasPrevious && translation( previous, current, shift );
+			previous.set( current );
+			hasPrevious = true;
+		}
+
+		if ( !translated || lookahead < 1 || viewer == null )
+			return;
+
+		final int width = viewer.getDisplay().getWidth();
+		final int height = viewer.getDisplay().getHeight();
+		final Runnable prediction = () -> prefetch( current, shift, width, height );
+		if ( pending.getAndSet( prediction ) == null )
+			executor.submit( () -> {
+				final Runnable latest = pending.getAndSet( null );
+				if ( latest != null )
+					latest.run();
+			} );
+	}
+
+	/**
+	 * Translation of the screen center in global coordinates from a to b.
+	 *
+	 * @return false if a and b differ by more than a translation
+	 */
+	static protected boolean translation( final AffineTransform3D a, final AffineTransform3D b, final double[] shift )
+	{
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 3; ++c )
+				if ( Math.abs( a.get( r, c ) - b.get( r, c ) ) > 1e-9 * Math.abs( a.get( r, c ) ) + 1e-12 )
+					return false;
+
+		final double[] origin = new double[ 3 ];
+		final double[] pa = new double[ 3 ];
+		final double[] pb = new double[ 3 ];
+		a.applyInverse( pa, origin );
+		b.applyInverse( pb, origin );
+
+		boolean moved = false;
+		for ( int d = 0; d < 3; ++d )
+		{
+			shift[ d ] = pb[ d ] - pa[ d ];
+			moved |= shift[ d ] != 0;
+		}
+		return moved;
+	}
+
+	/**
+	 * Coarsest level whose voxels are not larger than a screen pixel.
+	 *
+	 * @param viewerTransform
+	 * @param mipmapTransforms
+	 * @return
+	 */
+	static public int bestLevel( final AffineTransform3D viewerTransform, final AffineTransform3D[] mipmapTransforms )
+	{
+		int best = 0;
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		for ( int level = 0; level < mipmapTransforms.length; ++level )
+		{
+			sourceToScreen.set( viewerTransform );
+			sourceToScreen.concatenate( mipmapTransforms[ level ] );
+			if ( Affine3DHelpers.extractScale( sourceToScreen, 0 ) <= 1.0 + 1e-6 )
+				best = level;
+		}
+		return best;
+	}
+
+	/**
+	 * Cells of one source at the current level that were considered for one
+	 * prediction.
+	 */
+	static abstract protected class Target
+	{
+		final protected AffineTransform3D mipmapTransform;
+
+		final protected int[] cellDimensions = new int[ 3 ];
+
+		final protected long[] gridDimensions;
+
+		final protected long cellBytes;
+
+		final protected TLongHashSet touched = new TLongHashSet();
+
+		protected Target(
+				final AffineTransform3D mipmapTransform,
+				final CellGrid grid,
+				final int bytesPerElement )
+		{
+			this.mipmapTransform = mipmapTransform;
+			grid.cellDimensions( cellDimensions );
+			gridDimensions = grid.getGridDimensions();
+			cellBytes = ( long )cellDimensions[ 0 ] * cellDimensions[ 1 ] * cellDimensions[ 2 ] * bytesPerElement;
+		}
+
+		/**
+		 * @param cellMin
+		 * @return true if the cell at cellMin is loaded
+		 */
+		abstract protected boolean isCached( long[] cellMin );
+
+		/**
+		 * Enqueue the cell at cellMin for loading.
+		 *
+		 * @param cellMin
+		 */
+		abstract protected void request( long[] cellMin );
+	}
+
+	/**
+	 * {@link Target} that probes and requests cells through cell images of
+	 * the {@link VolatileGlobalCellCache}.
+	 */
+	static protected class CellTarget< V extends Volatile< ? > > extends Target
+	{
+		final protected RandomAccess< V > access;
+
+		final protected RandomAccess< V > probe;
+
+		protected CellTarget(
+				final AffineTransform3D mipmapTransform,
+				final CellGrid grid,
+				final int bytesPerElement,
+				final RandomAccessibleInterval< V > img,
+				final RandomAccessibleInterval< V > probeImg )
+		{
+			super( mipmapTransform, grid, bytesPerElement );
+			access = img.randomAccess();
+			probe = probeImg.randomAccess();
+		}
+
+		@Override
+		protected boolean isCached( final long[] cellMin )
+		{
+			probe.setPosition( cellMin );
+			return probe.get().isValid();
+		}
+
+		@Override
+		protected void request( final long[] cellMin )
+		{
+			access.setPosition( cellMin );
+			/* enqueues the cell if it is not cached */
+			access.get();
+		}
+	}
+
+	protected void prefetch(
+			final AffineTransform3D viewerTransform,
+			final double[] shift,
+			final int width,
+			final int height )
+	{
+		final ArrayList< Target > targets = new ArrayList<>();
+		synchronized ( sources )
+		{
+			for ( final PrefetchSource< ?, ? > source : sources )
+			{
+				final int level = bestLevel( viewerTransform, source.setupLoader.getMipmapTransforms() );
+				final Target target = source.target( level, cache, cacheHints, probeHints );
+				if ( target != null )
+					targets.add( target );
+			}
+		}
+
+		prefetch( viewerTransform, shift, width, height, lookahead, budget, targets, () -> pending.get() != null );
+	}
+
+	/**
+	 * Request the cells of targets that intersect the screen extrapolated by
+	 * 1 to lookahead steps of shift, nearer steps first.  Cached cells are
+	 * skipped and not charged to the budget.  Stops before the requested
+	 * cells would exceed budget bytes, and after a step if superseded.
+	 *
+	 * @param viewerTransform
+	 * @param shift
+	 *            translation of the screen per step in global coordinates
+	 * @param width
+	 *            of the screen
+	 * @param height
+	 *            of the screen
+	 * @param lookahead
+	 *            number of steps
+	 * @param budget
+	 *            in bytes
+	 * @param targets
+	 * @param superseded
+	 * @return bytes requested
+	 */
+	static protected long prefetch(
+			final AffineTransform3D viewerTransform,
+			final double[] shift,
+			final int width,
+			final int height,
+			final int lookahead,
+			final long budget,
+			final List< ? extends Target > targets,
+			final BooleanSupplier superseded )
+	{
+		final double[][] corners = new double[][]{
+			{ 0, 0, 0 },
+			{ width, 0, 0 },
+			{ 0, height, 0 },
+			{ width, height, 0 } };
+
+		final double[] global = new double[ 3 ];
+		final double[] local = new double[ 3 ];
+		final long[] gridMin = new long[ 3 ];
+		final long[] gridMax = new long[ 3 ];
+		final long[] gridPosition = new long[ 3 ];
+		final long[] cellMin = new long[ 3 ];
+
+		long requested = 0;
+		for ( int k = 1; k <= lookahead; ++k )
+		{
+			for ( final Target target : targets )
+			{
+				/* bounding box of the extrapolated screen in cell coordinates */
+				for ( int d = 0; d < 3; ++d )
+				{
+					gridMin[ d ] = Long.MAX_VALUE;
+					gridMax[ d ] = Long.MIN_VALUE;
+				}
+				for ( final double[] corner : corners )
+				{
+					viewerTransform.applyInverse( global, corner );
+					for ( int d = 0; d < 3; ++d )
+						global[ d ] += k * shift[ d ];
+					target.mipmapTransform.applyInverse( local, global );
+					for ( int d = 0; d < 3; ++d )
+					{
+						final long cell = ( long )Math.floor( local[ d ] / target.cellDimensions[ d ] );
+						gridMin[ d ] = Math.min( gridMin[ d ], cell );
+						gridMax[ d ] = Math.max( gridMax[ d ], cell );
+					}
+				}
+
+				boolean outside = false;
+				for ( int d = 0; d < 3; ++d )
+				{
+					gridMin[ d ] = Math.max( 0, gridMin[ d ] );
+					gridMax[ d ] = Math.min( target.gridDimensions[ d ] - 1, gridMax[ d ] );
+					outside |= gridMin[ d ] > gridMax[ d ];
+				}
+				if ( outside )
+					continue;
+
+				System.arraycopy( gridMin, 0, gridPosition, 0, 3 );
+				for ( int d = 0; d < 3; )
+				{
+					final long index = gridPosition[ 0 ] + target.gridDimensions[ 0 ] * ( gridPosition[ 1 ] + target.gridDimensions[ 1 ] * gridPosition[ 2 ] );
+					if ( target.touched.add( index ) )
+					{
+						for ( int e = 0; e < 3; ++e )
+							cellMin[ e ] = gridPosition[ e ] * target.cellDimensions[ e ];
+						if ( !target.isCached( cellMin ) )
+						{
+							if ( requested + target.cellBytes > budget )
+								return requested;
+							requested += target.cellBytes;
+							target.request( cellMin );
+						}
+					}
+
+					for ( d = 0; d < 3; ++d )
+					{
+						++gridPosition[ d ];
+						if ( gridPosition[ d ] <= gridMax[ d ] )
+							break;
+						else
+							gridPosition[ d ] = gridMin[ d ];
+					}
+				}
+			}
+
+			/* a newer prediction supersedes this one */
+			if ( superseded.getAsBoolean() )
+				return requested;
+		}
+		return requested;
+	}
+}
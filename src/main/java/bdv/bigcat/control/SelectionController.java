@@ -240,7 +240,6 @@ public class SelectionController
 		public void actionPerformed( final ActionEvent e )
 		{
 			colorStream.incSeed();
-			colorStream.clearCache();
 			viewer.requestRepaint();
 		}
 	}
@@ -256,7 +255,6 @@ public class SelectionController
 		public void actionPerformed( final ActionEvent e )
 		{
 			colorStream.decSeed();
-			colorStream.clearCache();
 			viewer.requestRepaint();
 		}
 	}
@@ -17,10 +17,10 @@
 package bdv.bigcat.label;
 
 import java.lang.reflect.Type;
+import java.util.Arrays;
 import java.util.Map.Entry;
 import java.util.Set;
-
-import org.apache.commons.lang.ArrayUtils;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
@@ -36,12 +36,13 @@ import com.google.gson.JsonSerializer;
 import bdv.labels.labelset.Label;
 import bdv.util.IdService;
 import bdv.util.LocalIdService;
+import bdv.util.LockFreeLongLongHashMap;
 import gnu.trove.impl.Constants;
-import gnu.trove.iterator.TLongLongIterator;
 import gnu.trove.iterator.TLongObjectIterator;
 import gnu.trove.list.array.TLongArrayList;
 import gnu.trove.map.hash.TLongLongHashMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
 
 /**
  *
@@ -68,12 +69,10 @@ public class FragmentSegmentAssignment
 		public JsonElement serialize( final FragmentSegmentAssignment src, final Type typeOfSrc, final JsonSerializationContext context )
 		{
 			final JsonObject jsonLut = new JsonObject();
-			final TLongLongIterator lutIterator = src.lut.iterator();
-			while ( lutIterator.hasNext() )
-			{
-				lutIterator.advance();
-				jsonLut.addProperty( Long.toString( lutIterator.key() ), lutIterator.value() );
-			}
+			src.lut.forEachEntry( ( fragmentId, segmentId ) -> {
+				jsonLut.addProperty( Long.toString( fragmentId ), segmentId );
+				return true;
+			} );
 
 			final JsonObject jsonObject = new JsonObject();
 			jsonObject.add( "lut", jsonLut );
@@ -94,7 +93,8 @@ public class FragmentSegmentAssignment
 	 *
 	 * TODO number of elements and bodies is limited by implementation to
 	 * 2<sup>31</sup> and most likely significantly less due to memory
-	 * consumption on {@link JsonPrimitive} creation per each number.
+	 * consumption on {@link JsonPrimitive} creation per each number.  Use
+	 * {@link bdv.util.LongLongLutCodec} for large lookup tables.
 	 */
 	static public class SegmentBodyListSerializer implements JsonSerializer< FragmentSegmentAssignment >
 	{
@@ -103,13 +103,11 @@ public class FragmentSegmentAssignment
 		{
 			final JsonArray fragments = new JsonArray();
 			final JsonArray segments = new JsonArray();
-			final TLongLongIterator lutIterator = src.lut.iterator();
-			while ( lutIterator.hasNext() )
-			{
-				lutIterator.advance();
-				fragments.add( new JsonPrimitive( lutIterator.key() ) );
-				segments.add( new JsonPrimitive( lutIterator.value() ) );
-			}
+			src.lut.forEachEntry( ( fragmentId, segmentId ) -> {
+				fragments.add( new JsonPrimitive( fragmentId ) );
+				segments.add( new JsonPrimitive( segmentId ) );
+				return true;
+			} );
 
 			final JsonObject jsonObject = new JsonObject();
 			jsonObject.add( "fragments", fragments );
@@ -139,13 +137,18 @@ public class FragmentSegmentAssignment
 			final Gson gson = new Gson();
 
 			final JsonObject jsonILut = new JsonObject();
-			final TLongObjectIterator< long[] > ilutIterator = src.ilut.iterator();
-			while ( ilutIterator.hasNext() )
+			synchronized ( src )
 			{
-				ilutIterator.advance();
-				jsonILut.add(
-						Long.toString( ilutIterator.key() ),
-						gson.toJsonTree( ilutIterator.value() ) );
+				final TLongObjectIterator< TLongHashSet > ilutIterator = src.ilut.iterator();
+				while ( ilutIterator.hasNext() )
+				{
+					ilutIterator.advance();
+					if ( ilutIterator.value().isEmpty() )
+						continue;
+					jsonILut.add(
+							Long.toString( ilutIterator.key() ),
+							gson.toJsonTree( ilutIterator.value().toArray() ) );
+				}
 			}
 
 			final JsonObject jsonObject = new JsonObject();
@@ -288,11 +291,60 @@ A:					for ( final Entry< String, JsonElement > entry : ilutJsonEntrySet )
 		}
 	}
 
-	final protected TLongLongHashMap lut = new TLongLongHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, Label.TRANSPARENT, Label.TRANSPARENT);
-	final protected TLongObjectHashMap< long[] > ilut = new TLongObjectHashMap< long[] >(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, Label.TRANSPARENT);
+	/**
+	 * Notified of each modification while holding the lock of the
+	 * assignment, i.e. in the order of modifications.  Implementations must
+	 * return quickly and must not modify the assignment.
+	 */
+	public interface Listener
+	{
+		/**
+		 * fragments[i] have been assigned to segments[i].
+		 *
+		 * @param version
+		 *            version after the modification
+		 * @param fragments
+		 * @param segments
+		 */
+		public void assigned( final long version, final long[] fragments, final long[] segments );
+
+		/**
+		 * The entire lookup has been replaced by fragments[i] to
+		 * segments[i].
+		 *
+		 * @param version
+		 *            version after the modification
+		 * @param fragments
+		 * @param segments
+		 */
+		public void replaced( final long version, final long[] fragments, final long[] segments );
+	}
+
+	/**
+	 * Fragment to segment lookup.  Renderer threads read it without locking,
+	 * all modifications happen while holding the lock of this assignment.
+	 * Fragments that have no entry are implicitly assigned to a segment with
+	 * the fragment's id.
+	 */
+	final protected LockFreeLongLongHashMap lut = new LockFreeLongLongHashMap( Label.TRANSPARENT, Label.TRANSPARENT );
+
+	/**
+	 * Segment to fragments lookup, guarded by the lock of this assignment.
+	 * Implicit single fragment segments have no entry.  Merging moves the
+	 * fragments of the smaller set into the larger one, detaching removes a
+	 * single fragment, neither copies whole segments.
+	 */
+	final protected TLongObjectHashMap< TLongHashSet > ilut = new TLongObjectHashMap< TLongHashSet >(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, Label.TRANSPARENT);
+
+	/**
+	 * Incremented after each completed modification of the assignment.
+	 */
+	protected volatile long version = 0;
 
 	protected IdService idService;
 
+	final protected CopyOnWriteArrayList< Listener > listeners = new CopyOnWriteArrayList<>();
+
 	public FragmentSegmentAssignment( final IdService idService )
 	{
 		this.idService = idService;
@@ -302,17 +354,32 @@ A:					for ( final Entry< String, JsonElement > entry : ilutJsonEntrySet )
 	{
 		assert fragments.length == segments.length : "segments and bodies must be of same length";
 
-		for ( int i = 0; i < fragments.length; ++i )
-			lut.put( fragments[ i ], segments[ i ] );
+		lut.putAll( fragments, segments );
 
 		this.idService = idService;
 
 		syncILut();
 	}
 
-	public TLongLongHashMap getLut()
+	/**
+	 * Get a copy of the current fragment to segment lookup.
+	 *
+	 * @return
+	 */
+	public synchronized TLongLongHashMap getLut()
+	{
+		return lut.toTLongLongHashMap();
+	}
+
+	/**
+	 * Get the version of the assignment.  The version is incremented after
+	 * each modification.
+	 *
+	 * @return
+	 */
+	public long getVersion()
 	{
-		return lut;
+		return version;
 	}
 
 	public void setIdService( final IdService idService )
@@ -320,16 +387,83 @@ A:					for ( final Entry< String, JsonElement > entry : ilutJsonEntrySet )
 		this.idService = idService;
 	}
 
-	public void initLut( final TLongLongHashMap lut )
+	public void addListener( final Listener listener )
+	{
+		listeners.add( listener );
+	}
+
+	public void removeListener( final Listener listener )
+	{
+		listeners.remove( listener );
+	}
+
+	protected void notifyAssigned( final long[] fragments, final long segmentId )
+	{
+		if ( listeners.isEmpty() || fragments == null )
+			return;
+
+		final long[] segments = new long[ fragments.length ];
+		Arrays.fill( segments, segmentId );
+		for ( final Listener listener : listeners )
+			listener.assigned( version, fragments, segments );
+	}
+
+	public synchronized void initLut( final TLongLongHashMap lut )
 	{
 		this.lut.clear();
 		this.ilut.clear();
 		this.lut.putAll( lut );
 		syncILut();
+		++version;
+
+		if ( !listeners.isEmpty() )
+		{
+			final long[] fragments = lut.keys();
+			final long[] segments = lut.values();
+			for ( final Listener listener : listeners )
+				listener.replaced( version, fragments, segments );
+		}
 
 		System.out.println( "Done" );
 	}
 
+	static protected TLongHashSet newFragmentSet()
+	{
+		return new TLongHashSet( 4, Constants.DEFAULT_LOAD_FACTOR, Label.TRANSPARENT );
+	}
+
+	/**
+	 * Add a fragment to the inverse lookup of a segment.
+	 *
+	 * @param segmentId
+	 * @param fragmentId
+	 */
+	protected void addToILut( final long segmentId, final long fragmentId )
+	{
+		TLongHashSet fragments = ilut.get( segmentId );
+		if ( fragments == null )
+		{
+			fragments = newFragmentSet();
+			ilut.put( segmentId, fragments );
+		}
+		fragments.add( fragmentId );
+	}
+
+	/**
+	 * Remove a fragment from the inverse lookup of a segment.  A segment that
+	 * loses its last fragment stays in the inverse lookup as an empty
+	 * segment, it does not become the implicit segment of a fragment.
+	 *
+	 * @param segmentId
+	 * @param fragmentId
+	 */
+	protected void removeFromILut( final long segmentId, final long fragmentId )
+	{
+		final TLongHashSet fragments = ilut.get( segmentId );
+		if ( fragments != null )
+			fragments.remove( fragmentId );
+	}
+
 	/**
 	 * Synchronize the inverse Lookup (segment > [fragments]) with the current
 	 * forward lookup (fragment > segment)).  The current state of the inverse
@@ -338,41 +472,69 @@ A:					for ( final Entry< String, JsonElement > entry : ilutJsonEntrySet )
 	protected void syncILut()
 	{
 		ilut.clear();
-		final TLongLongIterator lutIterator =  lut.iterator();
-		while ( lutIterator.hasNext() )
+		ilut.ensureCapacity( lut.size() );
+		lut.forEachEntry( ( fragmentId, segmentId ) -> {
+			addToILut( segmentId, fragmentId );
+			return true;
+		} );
+	}
+
+	/**
+	 * Get the fragments of a segment including the implicit single fragment
+	 * segment of fragments that were never assigned.  Segments that lost all
+	 * their fragments are empty.  Must be called while
+	 * holding the lock of this assignment.  The returned set may be the one
+	 * stored in the inverse lookup.
+	 *
+	 * @param segmentId
+	 * @return the fragments or null if the segment does not exist
+	 */
+	protected TLongHashSet fragmentsOf( final long segmentId )
+	{
+		final TLongHashSet fragments = ilut.get( segmentId );
+		if ( fragments == null && !lut.containsKey( segmentId ) && Label.regular( segmentId ) )
 		{
-			lutIterator.advance();
-			final long fragmentId = lutIterator.key();
-			final long segmentId = lutIterator.value();
-			long[] fragments = ilut.get( segmentId );
-			if ( fragments == null )
-				fragments = new long[]{ fragmentId };
-			else
-				fragments = ArrayUtils.add( fragments, fragmentId );
-			ilut.put( segmentId, fragments);
+			final TLongHashSet implicitFragments = newFragmentSet();
+			implicitFragments.add( segmentId );
+			return implicitFragments;
 		}
+		return fragments;
 	}
 
 	/**
-	 * Get the body that is assigned to a fragment id.
+	 * Union of two fragment sets, adds the smaller into the larger set.
 	 *
-	 * @param id
+	 * @param fragments1
+	 * @param fragments2
+	 * @return the union, either fragments1 or fragments2, or null if both are
+	 *         null
 	 */
-	public long getSegment( final long fragmentId )
+	static protected TLongHashSet union( final TLongHashSet fragments1, final TLongHashSet fragments2 )
 	{
-		final long id;
-		synchronized ( this )
+		if ( fragments1 == null )
+			return fragments2;
+		if ( fragments2 == null )
+			return fragments1;
+		if ( fragments1.size() < fragments2.size() )
 		{
-			final long segmentId = lut.get( fragmentId );
-			if ( segmentId == lut.getNoEntryValue() ) {
-				id = fragmentId;
-				lut.put( fragmentId, id );
-				ilut.put( id, new long[]{ fragmentId } );
-			}
-			else
-				id = segmentId;
+			fragments2.addAll( fragments1 );
+			return fragments2;
 		}
-		return id;
+		fragments1.addAll( fragments2 );
+		return fragments1;
+	}
+
+	/**
+	 * Get the body that is assigned to a fragment id.  Does not lock and does
+	 * not modify the assignment, fragments that were never assigned map to
+	 * themselves.
+	 *
+	 * @param id
+	 */
+	public long getSegment( final long fragmentId )
+	{
+		final long segmentId = lut.get( fragmentId );
+		return segmentId == lut.getNoEntryValue() ? fragmentId : segmentId;
 	}
 
 	/**
@@ -382,12 +544,11 @@ A:					for ( final Entry< String, JsonElement > entry : ilutJsonEntrySet )
 	 */
 	public long[] getFragments( final long segmentId )
 	{
-		final long[] fragments;
 		synchronized ( this )
 		{
-			fragments = ilut.get( segmentId );
+			final TLongHashSet fragments = fragmentsOf( segmentId );
+			return fragments == null ? null : fragments.toArray();
 		}
-		return fragments;
 	}
 
 	/**
@@ -403,15 +564,79 @@ A:					for ( final Entry< String, JsonElement > entry : ilutJsonEntrySet )
 
 		synchronized ( this )
 		{
-			final long[] fragments1 = ilut.get( segmentId1 );
-			final long[] fragments2 = ilut.get( segmentId2 );
-			for ( final long fragmentId : fragments1 )
+			final TLongHashSet fragments1 = fragmentsOf( segmentId1 );
+			if ( fragments1 == null )
+				return;
+
+			final TLongHashSet fragments2 = fragmentsOf( segmentId2 );
+			final long[] movedFragments;
+			if ( fragments2 != null && !ilut.containsKey( segmentId2 ) )
+			{
+				/* segmentId2 is a fragment that was never assigned, store it
+				 * in its own segment and report it with the moved fragments */
+				movedFragments = Arrays.copyOf( fragments1.toArray(), fragments1.size() + 1 );
+				movedFragments[ fragments1.size() ] = segmentId2;
+			}
+			else
+				movedFragments = fragments1.toArray();
+			for ( final long fragmentId : movedFragments )
 				lut.put( fragmentId, segmentId2 );
-			ilut.put( segmentId2, ArrayUtils.addAll( fragments1, fragments2 ) );
-			ilut.remove( segmentId1 );
+			ilut.put( segmentId1, newFragmentSet() );
+			ilut.put( segmentId2, union( fragments1, fragments2 ) );
+			++version;
+			notifyAssigned( movedFragments, segmentId2 );
 		}
 	}
 
+	/**
+	 * Assign fragments[i] to segments[i], e.g. to apply a delta received
+	 * from a remote solver.  Takes time proportional to the number of
+	 * fragments, independent of the size of the affected segments.  Only the
+	 * passed fragments are assigned, segment ids are not added as fragments
+	 * of their own segments.
+	 *
+	 * @param fragments
+	 * @param segments
+	 * @return the segments that lost or gained fragments
+	 */
+	public long[] assign( final long[] fragments, final long[] segments )
+	{
+		assert fragments.length == segments.length : "fragments and segments must be of same length";
+
+		final TLongHashSet affected = new TLongHashSet();
+
+		synchronized ( this )
+		{
+			for ( int i = 0; i < fragments.length; ++i )
+			{
+				final long fragmentId = fragments[ i ];
+				final long segmentId = segments[ i ];
+				final long oldSegmentId = lut.put( fragmentId, segmentId );
+				if ( oldSegmentId == segmentId )
+					continue;
+
+				if ( oldSegmentId != lut.getNoEntryValue() )
+				{
+					removeFromILut( oldSegmentId, fragmentId );
+					affected.add( oldSegmentId );
+				}
+				addToILut( segmentId, fragmentId );
+				affected.add( segmentId );
+			}
+
+			if ( idService != null && segments.length > 0 )
+				idService.invalidate( IdService.max( segments ) );
+
+			++version;
+
+			if ( !listeners.isEmpty() )
+				for ( final Listener listener : listeners )
+					listener.assigned( version, fragments, segments );
+		}
+
+		return affected.toArray();
+	}
+
 	/**
 	 * Merge two segments.
 	 *
@@ -426,14 +651,18 @@ A:					for ( final Entry< String, JsonElement > entry : ilutJsonEntrySet )
 		final long mergedSegmentId = idService.next();
 		synchronized ( this )
 		{
-			final long[] fragments1 = ilut.get( segmentId1 );
-			final long[] fragments2 = ilut.get( segmentId2 );
-			final long[] fragments = ArrayUtils.addAll( fragments1, fragments2 );
-			for ( final long fragmentId : fragments )
+			final TLongHashSet fragments = union( fragmentsOf( segmentId1 ), fragmentsOf( segmentId2 ) );
+			if ( fragments == null )
+				return;
+
+			final long[] mergedFragments = fragments.toArray();
+			for ( final long fragmentId : mergedFragments )
 				lut.put( fragmentId, mergedSegmentId );
-			ilut.put( mergedSegmentId, fragments );
 			ilut.remove( segmentId1 );
 			ilut.remove( segmentId2 );
+			ilut.put( mergedSegmentId, fragments );
+			++version;
+			notifyAssigned( mergedFragments, mergedSegmentId );
 		}
 	}
 
@@ -461,15 +690,18 @@ A:					for ( final Entry< String, JsonElement > entry : ilutJsonEntrySet )
 		synchronized ( this )
 		{
 			final long segmentId = lut.get( fragmentId );
-			final long[] fragments = ilut.get( segmentId );
-			if ( fragments != null && fragments.length > 1 )
+			final TLongHashSet fragments = ilut.get( segmentId );
+			if ( fragments != null && fragments.size() > 1 )
 			{
-				final long[] newFragments = ArrayUtils.removeElement( fragments, fragmentId );
-				ilut.put( segmentId, newFragments );
+				fragments.remove( fragmentId );
 
 				final long newSegmentId = fragmentId;
 				lut.put( fragmentId, newSegmentId );
-				ilut.put( newSegmentId, new long[]{ fragmentId } );
+				final TLongHashSet newFragments = newFragmentSet();
+				newFragments.add( fragmentId );
+				ilut.put( newSegmentId, newFragments );
+				++version;
+				notifyAssigned( new long[]{ fragmentId }, newSegmentId );
 			}
 		}
 	}
@@ -16,18 +16,13 @@
  */
 package bdv.bigcat.label;
 
-import bdv.labels.labelset.Label;
+import bdv.ViewerSetupImgLoader;
 import bdv.labels.labelset.LabelMultisetType;
-import bdv.labels.labelset.Multiset.Entry;
+import bdv.labels.labelset.VolatileLabelMultisetType;
 import bdv.viewer.ViewerPanel;
 import gnu.trove.set.hash.TLongHashSet;
-import net.imglib2.FinalInterval;
 import net.imglib2.RealRandomAccess;
 import net.imglib2.RealRandomAccessible;
-import net.imglib2.realtransform.AffineTransform3D;
-import net.imglib2.realtransform.RealViews;
-import net.imglib2.view.IntervalView;
-import net.imglib2.view.Views;
 
 /**
  * @author Stephan Saalfeld &lt;saalfelds@janelia.hhmi.org&gt;
@@ -37,32 +32,30 @@ public class LabelMultiSetIdPicker implements IdPicker
 	final protected ViewerPanel viewer;
 	final protected RealRandomAccessible< LabelMultisetType > labels;
 	final protected RealRandomAccess< LabelMultisetType > labelAccess;
+	final protected ViewerSetupImgLoader< LabelMultisetType, VolatileLabelMultisetType > labelLoader;
 
+	/**
+	 * @param viewer
+	 * @param labels
+	 *            in global coordinates
+	 * @param labelLoader
+	 *            the loader of labels whose cached cells are searched for
+	 *            visible ids
+	 */
 	public LabelMultiSetIdPicker(
 			final ViewerPanel viewer,
-			final RealRandomAccessible< LabelMultisetType > labels )
+			final RealRandomAccessible< LabelMultisetType > labels,
+			final ViewerSetupImgLoader< LabelMultisetType, VolatileLabelMultisetType > labelLoader )
 	{
 		this.viewer = viewer;
 		this.labels = labels;
+		this.labelLoader = labelLoader;
 		labelAccess = labels.realRandomAccess();
 	}
 
 	final static public long getMostSignificantId( final LabelMultisetType t )
 	{
-		long fragmentId = Label.TRANSPARENT;
-		long maxCount = 0;
-		for ( final Entry< Label > entry : t.entrySet() )
-		{
-			final Label label = entry.getElement();
-			final long count = entry.getCount();
-
-			if ( count > maxCount )
-			{
-				maxCount = count;
-				fragmentId = label.id();
-			}
-		}
-		return fragmentId;
+		return t.argMax();
 	}
 
 	@Override
@@ -88,25 +81,16 @@ public class LabelMultiSetIdPicker implements IdPicker
 	}
 
 	@Override
-	public synchronized TLongHashSet getVisibleIds()
+	public TLongHashSet getVisibleIds()
 	{
-		final TLongHashSet visibleIds = new TLongHashSet();
-		final int w = viewer.getWidth();
-		final int h = viewer.getHeight();
-		final AffineTransform3D viewerTransform = new AffineTransform3D();
-		viewer.getState().getViewerTransform( viewerTransform );
-		IntervalView< LabelMultisetType > screenLabels =
-				Views.interval(
-						Views.hyperSlice(
-								RealViews.affine( labels, viewerTransform ), 2, 0 ),
-						new FinalInterval( w, h ) );
-
-		for ( final LabelMultisetType pixel : Views.iterable( screenLabels ) )
-		{
-			for ( final Entry< Label > entry : pixel.entrySet() )
-					visibleIds.add( entry.getElement().id() );
-		}
-
-		return visibleIds;
+		return VisibleIds.collect(
+				viewer,
+				labelLoader,
+				VolatileLabelMultisetType::isValid,
+				( pixel, ids ) -> {
+					final LabelMultisetType multiset = pixel.get();
+					for ( int i = multiset.numEntries() - 1; i >= 0; --i )
+						ids.add( multiset.idAt( i ) );
+				} );
 	}
 }
@@ -16,26 +16,26 @@
  */
 package bdv.bigcat.label;
 
+import bdv.ViewerSetupImgLoader;
 import bdv.bigcat.ui.GoldenAngleSaturatedARGBStream;
 import bdv.bigcat.ui.PairLabelMultisetLongARGBConverter;
 import bdv.labels.labelset.Label;
 import bdv.labels.labelset.LabelMultisetType;
-import bdv.labels.labelset.Multiset.Entry;
+import bdv.labels.labelset.VolatileLabelMultisetType;
 import bdv.util.LocalIdService;
 import bdv.viewer.ViewerPanel;
 import gnu.trove.set.hash.TLongHashSet;
-import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealRandomAccess;
 import net.imglib2.RealRandomAccessible;
 import net.imglib2.converter.Converters;
 import net.imglib2.img.display.imagej.ImageJFunctions;
 import net.imglib2.realtransform.AffineTransform3D;
-import net.imglib2.realtransform.RealViews;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.integer.LongType;
 import net.imglib2.util.Pair;
-import net.imglib2.view.IntervalView;
+import net.imglib2.view.RandomAccessiblePair;
 import net.imglib2.view.Views;
 
 /**
@@ -46,13 +46,29 @@ public class PairLabelMultiSetLongIdPicker implements IdPicker
 	final protected ViewerPanel viewer;
 	final protected RealRandomAccessible< Pair< LabelMultisetType, LongType > > labels;
 	final protected RealRandomAccess< Pair< LabelMultisetType, LongType > > labelAccess;
+	final protected ViewerSetupImgLoader< LabelMultisetType, VolatileLabelMultisetType > labelLoader;
+	final protected RandomAccessible< LongType > canvas;
 
+	/**
+	 * @param viewer
+	 * @param labels
+	 *            in global coordinates
+	 * @param labelLoader
+	 *            the loader of the labels whose cached level 0 cells are
+	 *            searched for visible ids
+	 * @param canvas
+	 *            painted over level 0 of the labels, transparent outside
+	 */
 	public PairLabelMultiSetLongIdPicker(
 			final ViewerPanel viewer,
-			final RealRandomAccessible< Pair< LabelMultisetType, LongType > > labels )
+			final RealRandomAccessible< Pair< LabelMultisetType, LongType > > labels,
+			final ViewerSetupImgLoader< LabelMultisetType, VolatileLabelMultisetType > labelLoader,
+			final RandomAccessibleInterval< LongType > canvas )
 	{
 		this.viewer = viewer;
 		this.labels = labels;
+		this.labelLoader = labelLoader;
+		this.canvas = Views.extendValue( canvas, new LongType( Label.TRANSPARENT ) );
 		labelAccess = labels.realRandomAccess();
 	}
 
@@ -89,34 +105,36 @@ public class PairLabelMultiSetLongIdPicker implements IdPicker
 		return getId();
 	}
 
+	/**
+	 * The label canvas pair is rendered at level 0 only, so the ids are
+	 * collected from the cached level 0 cells of the labels.
+	 */
 	@Override
-	public synchronized TLongHashSet getVisibleIds()
+	public TLongHashSet getVisibleIds()
 	{
-		final TLongHashSet visibleIds = new TLongHashSet();
-		final int w = viewer.getWidth();
-		final int h = viewer.getHeight();
 		final AffineTransform3D viewerTransform = new AffineTransform3D();
 		viewer.getState().getViewerTransform( viewerTransform );
-		final IntervalView< Pair< LabelMultisetType, LongType > > screenLabels =
-				Views.interval(
-						Views.hyperSlice(
-								RealViews.affine( labels, viewerTransform ), 2, 0 ),
-						new FinalInterval( w, h ) );
-
-		for ( final Pair< LabelMultisetType, LongType > pixel : Views.iterable( screenLabels ) )
-		{
-			final long b = pixel.getB().get();
-			if ( b == Label.TRANSPARENT )
-			{
-				final LabelMultisetType a = pixel.getA();
-				for ( final Entry< Label > entry : a.entrySet() )
-					visibleIds.add( entry.getElement().id() );
-			}
-			else
-				visibleIds.add( b );
-		}
-
-		return visibleIds;
+		final RandomAccessibleInterval< VolatileLabelMultisetType > img = labelLoader.getVolatileImage( 0, 0 );
+		return VisibleIds.collect(
+				viewerTransform,
+				viewer.getWidth(),
+				viewer.getHeight(),
+				new RandomAccessiblePair<>( img, canvas ),
+				VisibleIds.cellGrid( img ),
+				labelLoader.getMipmapTransforms()[ 0 ],
+				pixel -> pixel.getA().isValid(),
+				( pixel, ids ) -> {
+					final long b = pixel.getB().get();
+					if ( b == Label.TRANSPARENT )
+					{
+						final LabelMultisetType a = pixel.getA().get();
+						for ( int i = a.numEntries() - 1; i >= 0; --i )
+							ids.add( a.idAt( i ) );
+					}
+					else
+						ids.add( b );
+				},
+				VisibleIds.executor );
 	}
 
 	/**
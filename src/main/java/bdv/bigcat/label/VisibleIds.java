@@ -0,0 +1,317 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.bigcat.label;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import bdv.ViewerSetupImgLoader;
+import bdv.bigcat.control.NavigationPrefetcher;
+import bdv.viewer.ViewerPanel;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Collects the ids visible in a {@link ViewerPanel} from the cells of one
+ * mipmap level, typically the level that the viewer renders.  Only cells
+ * whose bounding box intersects the screen plane are visited, each in its
+ * own task with its own access and id set, and cells that are not cached
+ * are skipped as a whole.  Within a cell, each row of voxels is clipped to
+ * the voxels that intersect the screen plane within the screen bounds and
+ * iterated in memory order, which is cheaper than resampling every screen
+ * pixel through the viewer transform.  The sets are merged at the end.
+ */
+public class VisibleIds
+{
+	/**
+	 * Cell size of the grid used for images that are not cell images.
+	 */
+	final static public int DEFAULT_CELL_SIZE = 64;
+
+	/**
+	 * Adds the ids of a pixel to a set.
+	 */
+	public static interface IdCollector< T >
+	{
+		public void collect( T pixel, TLongHashSet ids );
+	}
+
+	/**
+	 * Daemon threads that collect visible ids, separate from the common
+	 * {@link java.util.concurrent.ForkJoinPool} such that collecting does
+	 * not compete with parallel streams of other tasks.
+	 */
+	final static protected ExecutorService executor = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(),
+			r -> {
+				final Thread thread = new Thread( r, "visible-ids" );
+				thread.setDaemon( true );
+				return thread;
+			} );
+
+	/**
+	 * The cell grid of img if it is a cell image, otherwise a grid of
+	 * {@link #DEFAULT_CELL_SIZE} cells over img.
+	 *
+	 * @param img
+	 * @return
+	 */
+	static public CellGrid cellGrid( final RandomAccessibleInterval< ? > img )
+	{
+		if ( img instanceof AbstractCellImg )
+			return ( ( AbstractCellImg< ?, ?, ?, ? > )img ).getCellGrid();
+
+		final long[] dimensions = new long[ img.numDimensions() ];
+		img.dimensions( dimensions );
+		final int[] cellDimensions = new int[ dimensions.length ];
+		for ( int d = 0; d < dimensions.length; ++d )
+			cellDimensions[ d ] = ( int )Math.min( DEFAULT_CELL_SIZE, dimensions[ d ] );
+		return new CellGrid( dimensions, cellDimensions );
+	}
+
+	/**
+	 * Collect the ids of labels visible in viewer from the cached cells of
+	 * the mipmap level that viewer renders.
+	 *
+	 * @param viewer
+	 * @param labels
+	 * @param cached
+	 *            tested with the first voxel of a cell, cells for which it
+	 *            fails are skipped
+	 * @param collector
+	 * @return
+	 */
+	static public < V > TLongHashSet collect(
+			final ViewerPanel viewer,
+			final ViewerSetupImgLoader< ?, V > labels,
+			final Predicate< V > cached,
+			final IdCollector< V > collector )
+	{
+		final AffineTransform3D viewerTransform = new AffineTransform3D();
+		viewer.getState().getViewerTransform( viewerTransform );
+		final AffineTransform3D[] mipmapTransforms = labels.getMipmapTransforms();
+		final int level = NavigationPrefetcher.bestLevel( viewerTransform, mipmapTransforms );
+		final RandomAccessibleInterval< V > img = labels.getVolatileImage( 0, level );
+		return collect(
+				viewerTransform,
+				viewer.getWidth(),
+				viewer.getHeight(),
+				img,
+				cellGrid( img ),
+				mipmapTransforms[ level ],
+				cached,
+				collector,
+				executor );
+	}
+
+	/**
+	 * Collect the ids of labels visible in a screen of width x height
+	 * pixels.
+	 *
+	 * @param viewerTransform
+	 *            from global to screen coordinates
+	 * @param width
+	 * @param height
+	 * @param labels
+	 *            one mipmap level in its own coordinates, with its origin at
+	 *            the origin of grid
+	 * @param grid
+	 *            cell grid of labels
+	 * @param mipmapTransform
+	 *            from labels to global coordinates
+	 * @param cached
+	 *            tested with the first voxel of a cell, cells for which it
+	 *            fails are skipped
+	 * @param collector
+	 * @param executor
+	 * @return
+	 */
+	static public < T > TLongHashSet collect(
+			final AffineTransform3D viewerTransform,
+			final int width,
+			final int height,
+			final RandomAccessible< T > labels,
+			final CellGrid grid,
+			final AffineTransform3D mipmapTransform,
+			final Predicate< T > cached,
+			final IdCollector< T > collector,
+			final ExecutorService executor )
+	{
+		final AffineTransform3D sourceToScreen = viewerTransform.copy();
+		sourceToScreen.concatenate( mipmapTransform );
+
+		/* half extents of a voxel in screen coordinates */
+		final double[] extents = new double[ 3 ];
+		for ( int r = 0; r < 3; ++r )
+			extents[ r ] = 0.5 * ( Math.abs( sourceToScreen.get( r, 0 ) ) + Math.abs( sourceToScreen.get( r, 1 ) ) + Math.abs( sourceToScreen.get( r, 2 ) ) );
+
+		final double[] screenMin = new double[]{ -extents[ 0 ], -extents[ 1 ], -extents[ 2 ] };
+		final double[] screenMax = new double[]{ width - 1 + extents[ 0 ], height - 1 + extents[ 1 ], extents[ 2 ] };
+
+		/* bounding box of the screen slab in voxel coordinates */
+		final long[] dimensions = grid.getImgDimensions();
+		final long[] min = new long[ 3 ];
+		final long[] max = new long[ 3 ];
+		final double[] screen = new double[ 3 ];
+		final double[] source = new double[ 3 ];
+		final double[] sourceMin = new double[]{ Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+		final double[] sourceMax = new double[]{ Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		for ( int corner = 0; corner < 8; ++corner )
+		{
+			for ( int d = 0; d < 3; ++d )
+				screen[ d ] = ( corner & ( 1 << d ) ) == 0 ? screenMin[ d ] : screenMax[ d ];
+			sourceToScreen.applyInverse( source, screen );
+			for ( int d = 0; d < 3; ++d )
+			{
+				sourceMin[ d ] = Math.min( sourceMin[ d ], source[ d ] );
+				sourceMax[ d ] = Math.max( sourceMax[ d ], source[ d ] );
+			}
+		}
+		for ( int d = 0; d < 3; ++d )
+		{
+			min[ d ] = Math.max( 0, ( long )Math.ceil( sourceMin[ d ] ) );
+			max[ d ] = Math.min( dimensions[ d ] - 1, ( long )Math.floor( sourceMax[ d ] ) );
+			if ( min[ d ] > max[ d ] )
+				return new TLongHashSet();
+		}
+
+		final int[] cellDimensions = new int[ 3 ];
+		grid.cellDimensions( cellDimensions );
+		final long[] gridMin = new long[ 3 ];
+		final long[] gridMax = new long[ 3 ];
+		for ( int d = 0; d < 3; ++d )
+		{
+			gridMin[ d ] = min[ d ] / cellDimensions[ d ];
+			gridMax[ d ] = max[ d ] / cellDimensions[ d ];
+		}
+
+		final ArrayList< Future< TLongHashSet > > tasks = new ArrayList<>();
+		final long[] gridPosition = gridMin.clone();
+		for ( int d = 0; d < 3; )
+		{
+			final long[] cellMin = new long[ 3 ];
+			final long[] cellMax = new long[ 3 ];
+			for ( int e = 0; e < 3; ++e )
+			{
+				cellMin[ e ] = Math.max( min[ e ], gridPosition[ e ] * cellDimensions[ e ] );
+				cellMax[ e ] = Math.min( max[ e ], ( gridPosition[ e ] + 1 ) * cellDimensions[ e ] - 1 );
+			}
+			tasks.add( executor.submit( () -> collect( labels, cellMin, cellMax, sourceToScreen, screenMin, screenMax, cached, collector ) ) );
+
+			for ( d = 0; d < 3; ++d )
+			{
+				++gridPosition[ d ];
+				if ( gridPosition[ d ] <= gridMax[ d ] )
+					break;
+				else
+					gridPosition[ d ] = gridMin[ d ];
+			}
+		}
+
+		final TLongHashSet visibleIds = new TLongHashSet();
+		try
+		{
+			for ( final Future< TLongHashSet > task : tasks )
+				visibleIds.addAll( task.get() );
+		}
+		catch ( final InterruptedException | ExecutionException e )
+		{
+			for ( final Future< TLongHashSet > task : tasks )
+				task.cancel( true );
+			throw new RuntimeException( e );
+		}
+
+		return visibleIds;
+	}
+
+	/**
+	 * Collect the ids of voxels in [cellMin, cellMax] whose screen
+	 * coordinates are in [screenMin, screenMax].  Screen coordinates are
+	 * linear along a row of voxels, so the range of each row is clipped
+	 * against the screen bounds and not tested per voxel.
+	 */
+	static private < T > TLongHashSet collect(
+			final RandomAccessible< T > labels,
+			final long[] cellMin,
+			final long[] cellMax,
+			final AffineTransform3D sourceToScreen,
+			final double[] screenMin,
+			final double[] screenMax,
+			final Predicate< T > cached,
+			final IdCollector< T > collector )
+	{
+		final TLongHashSet ids = new TLongHashSet();
+		final RandomAccess< T > access = labels.randomAccess();
+		access.setPosition( cellMin );
+		if ( !cached.test( access.get() ) )
+			return ids;
+
+		final double[] voxel = new double[ 3 ];
+		final double[] screen = new double[ 3 ];
+		for ( long z = cellMin[ 2 ]; z <= cellMax[ 2 ]; ++z )
+		{
+A:			for ( long y = cellMin[ 1 ]; y <= cellMax[ 1 ]; ++y )
+			{
+				voxel[ 0 ] = cellMin[ 0 ];
+				voxel[ 1 ] = y;
+				voxel[ 2 ] = z;
+				sourceToScreen.apply( voxel, screen );
+
+				/* screen[ r ] + x * sourceToScreen( r, 0 ) in [screenMin[ r ], screenMax[ r ]] */
+				double xMin = 0;
+				double xMax = cellMax[ 0 ] - cellMin[ 0 ];
+				for ( int r = 0; r < 3; ++r )
+				{
+					final double dx = sourceToScreen.get( r, 0 );
+					if ( dx == 0 )
+					{
+						if ( screen[ r ] < screenMin[ r ] || screen[ r ] > screenMax[ r ] )
+							continue A;
+					}
+					else
+					{
+						final double x1 = ( screenMin[ r ] - screen[ r ] ) / dx;
+						final double x2 = ( screenMax[ r ] - screen[ r ] ) / dx;
+						xMin = Math.max( xMin, Math.min( x1, x2 ) );
+						xMax = Math.min( xMax, Math.max( x1, x2 ) );
+					}
+				}
+
+				final long x0 = cellMin[ 0 ] + ( long )Math.ceil( xMin );
+				final long x1 = cellMin[ 0 ] + ( long )Math.floor( xMax );
+				if ( x0 > x1 )
+					continue;
+
+				access.setPosition( x0, 0 );
+				access.setPosition( y, 1 );
+				access.setPosition( z, 2 );
+				for ( long x = x0; x <= x1; ++x, access.fwd( 0 ) )
+					collector.collect( access.get(), ids );
+			}
+		}
+		return ids;
+	}
+}
@@ -18,8 +18,7 @@ package bdv.bigcat.ui;
 
 import bdv.bigcat.label.FragmentSegmentAssignment;
 import bdv.labels.labelset.Label;
-import gnu.trove.impl.Constants;
-import gnu.trove.map.hash.TLongIntHashMap;
+import bdv.util.LockFreeLongIntCache;
 
 
 /**
@@ -33,7 +32,7 @@ abstract public class AbstractARGBStream implements ARGBStream
 	final static protected double[] gs = new double[]{ 0, 1, 1, 1, 0, 0, 0 };
 	final static protected double[] bs = new double[]{ 0, 0, 0, 1, 1, 1, 0 };
 
-	protected long seed = 0;
+	protected volatile long seed = 0;
 	protected int alpha = 0x20000000;
 	protected int activeFragmentAlpha = 0xd0000000;
 	protected int activeSegmentAlpha = 0x80000000;
@@ -48,11 +47,14 @@ abstract public class AbstractARGBStream implements ARGBStream
 		this.assignment = assignment;
 	}
 
-	protected TLongIntHashMap argbCache = new TLongIntHashMap(
-			Constants.DEFAULT_CAPACITY ,
-			Constants.DEFAULT_LOAD_FACTOR,
-			Label.TRANSPARENT,
-			0 );
+	/**
+	 * Colors by {@code seed + segmentId}, which is all a color depends on,
+	 * with an opaque alpha channel such that black is distinct from a miss.
+	 * Alpha is applied on lookup, so changing the seed, the alpha values or
+	 * the mode of a stream does not require clearing the cache.  Renderer
+	 * threads read and fill the cache without locking.
+	 */
+	final protected LockFreeLongIntCache argbCache = new LockFreeLongIntCache( Label.TRANSPARENT, 0 );
 
 	final static protected int argb( final int r, final int g, final int b, final int alpha )
 	{
@@ -61,6 +63,33 @@ abstract public class AbstractARGBStream implements ARGBStream
 
 	abstract protected double getDouble( final long id );
 
+	/**
+	 * Generate the color for an id, alpha is ignored.
+	 *
+	 * @param id
+	 * @return
+	 */
+	abstract protected int rgb( final long id );
+
+	/**
+	 * Get the color of a segment for the current seed without alpha, from
+	 * the cache or generated by {@link #rgb(long)}.
+	 *
+	 * @param segmentId
+	 * @return
+	 */
+	final protected int cachedRGB( final long segmentId )
+	{
+		final long id = seed + segmentId;
+		int argb = argbCache.get( id );
+		if ( argb == 0x00000000 )
+		{
+			argb = rgb( id ) | 0xff000000;
+			argbCache.put( id, argb );
+		}
+		return argb & 0x00ffffff;
+	}
+
 	/**
 	 * Change the seed.
 	 *
@@ -127,8 +156,26 @@ abstract public class AbstractARGBStream implements ARGBStream
 		this.activeSegmentAlpha = alpha << 24;
 	}
 
+	/**
+	 * Remove all cached colors.  Cached colors do not change with the seed,
+	 * alpha or mode, this only releases memory.
+	 */
 	public void clearCache()
 	{
 		argbCache.clear();
 	}
+
+	/**
+	 * Remove the cached colors of some segments for the current seed only.
+	 * Does not lock, e.g. to be called with the segments affected by a
+	 * {@link FragmentSegmentAssignment} change.
+	 *
+	 * @param segmentIds
+	 */
+	public void clearCache( final long[] segmentIds )
+	{
+		final long seed = this.seed;
+		for ( final long segmentId : segmentIds )
+			argbCache.remove( seed + segmentId );
+	}
 }
\ No newline at end of file
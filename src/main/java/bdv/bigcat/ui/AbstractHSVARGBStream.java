@@ -39,18 +39,19 @@ abstract public class AbstractHSVARGBStream extends AbstractARGBStream
 		if ( fragmentId == Label.TRANSPARENT )
 			return 0;
 		final long segmentId = assignment.getSegment( fragmentId );
-		int argb = argbCache.get( segmentId );
-		if ( argb == 0x00000000 )
-		{
-			argb = id2argb( seed + segmentId );
-			argbCache.put( segmentId, argb );
-		}
+		final int rgb = cachedRGB( segmentId );
 		if ( activeFragment == fragmentId )
-			argb = argb & 0x00ffffff | activeFragmentAlpha;
+			return rgb | activeFragmentAlpha;
 		else if ( activeSegment == segmentId )
-			argb = argb & 0x00ffffff | activeSegmentAlpha;
+			return rgb | activeSegmentAlpha;
+		else
+			return rgb | alpha;
+	}
 
-		return argb;
+	@Override
+	protected int rgb( final long id )
+	{
+		return id2argb( id ) & 0x00ffffff;
 	}
 
 	protected final static int hsva2argb( double h, double s, double v, final int alpha )
@@ -40,37 +40,34 @@ abstract public class AbstractSaturatedARGBStream extends AbstractARGBStream
 	}
 
 	@Override
-	public int argb( final long fragmentId )
+	protected int rgb( final long id )
 	{
-		final long segmentId = assignment.getSegment( fragmentId );
-		int argb = argbCache.get( segmentId );
-		if ( argb == 0x00000000 )
-		{
-			double x = getDouble( seed + segmentId );
-			x *= 6.0;
-			final int k = ( int )x;
-			final int l = k + 1;
-			final double u = x - k;
-			final double v = 1.0 - u;
+		double x = getDouble( id );
+		x *= 6.0;
+		final int k = ( int )x;
+		final int l = k + 1;
+		final double u = x - k;
+		final double v = 1.0 - u;
 
-			final int r = interpolate( rs, k, l, u, v );
-			final int g = interpolate( gs, k, l, u, v );
-			final int b = interpolate( bs, k, l, u, v );
+		final int r = interpolate( rs, k, l, u, v );
+		final int g = interpolate( gs, k, l, u, v );
+		final int b = interpolate( bs, k, l, u, v );
 
-			argb = argb( r, g, b, alpha );
+		return argb( r, g, b, 0 );
+	}
 
-			synchronized ( argbCache )
-			{
-				argbCache.put( segmentId, argb );
-			}
-		}
+	@Override
+	public int argb( final long fragmentId )
+	{
+		final long segmentId = assignment.getSegment( fragmentId );
+		final int rgb = cachedRGB( segmentId );
 		if ( Label.INVALID == segmentId )
-			argb = argb & 0x00ffffff | invalidSegmentAlpha;
+			return rgb | invalidSegmentAlpha;
 		else if ( activeFragment == fragmentId )
-			argb = argb & 0x00ffffff | activeFragmentAlpha;
+			return rgb | activeFragmentAlpha;
 		else if ( activeSegment == segmentId )
-			argb = argb & 0x00ffffff | activeSegmentAlpha;
-
-		return argb;
+			return rgb | activeSegmentAlpha;
+		else
+			return rgb | alpha;
 	}
 }
@@ -80,45 +80,26 @@ public class ModalGoldenAngleSaturatedARGBStream extends GoldenAngleSaturatedARG
 		/* TODO confusing because mixing segment assignment with display logic, instead track 'confirmed' segments separately */
 		if ( Label.INVALID == segmentId && mode != HIDE_CONFIRMED )
 			segmentId = fragmentId;
-		int argb = argbCache.get( segmentId );
-		if ( argb == 0x00000000 )
-		{
-			double x = getDouble( seed + segmentId );
-			x *= 6.0;
-			final int k = ( int )x;
-			final int l = k + 1;
-			final double u = x - k;
-			final double v = 1.0 - u;
-
-			final int r = interpolate( rs, k, l, u, v );
-			final int g = interpolate( gs, k, l, u, v );
-			final int b = interpolate( bs, k, l, u, v );
-
-			argb = argb( r, g, b, alpha );
-
-			synchronized ( argbCache )
-			{
-				argbCache.put( segmentId, argb );
-			}
-		}
+		final int rgb = cachedRGB( segmentId );
 		if ( mode == SELECTED_ONLY )
 		{
-			argb = argb & 0x00ffffff;
 			if ( activeFragment == fragmentId )
-				argb = argb | activeFragmentAlpha;
+				return rgb | activeFragmentAlpha;
 			else if ( activeSegment == segmentId )
-				argb = argb | activeSegmentAlpha;
+				return rgb | activeSegmentAlpha;
+			else
+				return rgb;
 		}
 		else
 		{
 			if ( Label.INVALID == segmentId )
-				argb = argb & 0x00ffffff | invalidSegmentAlpha;
+				return rgb | invalidSegmentAlpha;
 			else if ( activeFragment == fragmentId )
-				argb = argb & 0x00ffffff | activeFragmentAlpha;
+				return rgb | activeFragmentAlpha;
 			else if ( activeSegment == segmentId )
-				argb = argb & 0x00ffffff | activeSegmentAlpha;
+				return rgb | activeSegmentAlpha;
+			else
+				return rgb | alpha;
 		}
-
-		return argb;
 	}
 }
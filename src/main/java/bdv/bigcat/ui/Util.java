@@ -52,6 +52,7 @@ import bdv.bigcat.CombinedImgLoader;
 import bdv.bigcat.composite.Composite;
 import bdv.bigcat.composite.CompositeProjector;
 import bdv.img.SetCache;
+import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.spimdata.SequenceDescriptionMinimal;
 import bdv.spimdata.SpimDataMinimal;
 import bdv.tools.brightness.ConverterSetup;
@@ -158,6 +159,22 @@ public class Util
 			final List< ? extends SetCache > cacheLoaders,
 			final List< Composite< ARGBType, ARGBType > > composites,
 			final InputTriggerConfig config)
+	{
+		return createViewer( windowTitle, rawDataLoaders, labelSources, cacheLoaders, composites, config, null );
+	}
+
+	/**
+	 * @param cache
+	 *            shared by all sources, a default cache is created if null
+	 */
+	public static < A extends ViewerSetupImgLoader< ? extends NumericType< ? >, ? > & SetCache > BigDataViewer createViewer(
+			final String windowTitle,
+			final List< A > rawDataLoaders,
+			final List< ? extends AbstractARGBConvertedLabelsSource > labelSources,
+			final List< ? extends SetCache > cacheLoaders,
+			final List< Composite< ARGBType, ARGBType > > composites,
+			final InputTriggerConfig config,
+			final VolatileGlobalCellCache cache )
 	{
 		/* raw */
 		final CombinedImgLoader.SetupIdAndLoader[] loaders = new CombinedImgLoader.SetupIdAndLoader[ rawDataLoaders.size() ];
@@ -165,7 +182,7 @@ public class Util
 		for ( int i = 0; i < rawDataLoaders.size(); ++i )
 			loaders[ i ] = setupIdAndLoader( setupId++, rawDataLoaders.get( i ) );
 
-		final CombinedImgLoader imgLoader = new CombinedImgLoader( loaders );
+		final CombinedImgLoader imgLoader = new CombinedImgLoader( cache, loaders );
 
 		final ArrayList< TimePoint > timePointsList = new ArrayList< >();
 		final Map< Integer, BasicViewSetup > setups = new HashMap< >();
@@ -16,8 +16,7 @@
  */
 package bdv.bigcat.ui;
 
-import bdv.labels.labelset.Label;
-import bdv.labels.labelset.Multiset.Entry;
+import bdv.labels.labelset.LabelMultisetType;
 import bdv.labels.labelset.VolatileLabelMultisetType;
 import net.imglib2.converter.Converter;
 import net.imglib2.type.numeric.ARGBType;
@@ -48,11 +47,13 @@ public class VolatileLabelMultisetARGBConverter implements Converter< VolatileLa
 		double b = 0;
 		double alphaCountSize = 0;
 
-		for ( final Entry< Label > entry : input.get().entrySet() )
+		final LabelMultisetType multiset = input.get();
+		final int numEntries = multiset.numEntries();
+		for ( int i = 0; i < numEntries; ++i )
 		{
-			final int argb = argbSource.argb( entry.getElement().id() );
+			final int argb = argbSource.argb( multiset.idAt( i ) );
 			final double alpha = ARGBType.alpha( argb );
-			final double alphaCount = alpha * iFF * entry.getCount();
+			final double alphaCount = alpha * iFF * multiset.countAt( i );
 			a += alphaCount * alpha;
 			r += alphaCount * ARGBType.red( argb );
 			g += alphaCount * ARGBType.green( argb );
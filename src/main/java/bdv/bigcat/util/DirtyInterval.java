@@ -16,12 +16,26 @@
  */
 package bdv.bigcat.util;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.set.hash.TLongHashSet;
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.util.Intervals;
 
 /**
- * Tracks the interval that
+ * Tracks the interval that has been modified.  Thread safe, fills running in
+ * the background touch it while the viewer reads it.
+ *
+ * If constructed with cell dimensions, it also tracks the cells that have
+ * been touched since they were last {@link #takeDirtyCells() taken}, e.g. to
+ * save only those cells.  Cell grid coordinates are packed into a long with
+ * 63 / n bits per dimension, i.e. the grid can have at most 2<sup>21</sup>
+ * cells per dimension in 3D.  Cells at negative coordinates are ignored.
  *
  * @author Stephan Saalfeld &lt;saalfelds@janelia.hhmi.org&gt;
  */
@@ -29,20 +43,142 @@ public class DirtyInterval
 {
 	protected FinalInterval dirtyInterval = null;
 
-	public void touch( final Interval interval )
+	final protected int[] cellDimensions;
+
+	final protected TLongHashSet dirtyCells = new TLongHashSet();
+
+	final protected CopyOnWriteArrayList< Consumer< Interval > > listeners = new CopyOnWriteArrayList<>();
+
+	public DirtyInterval()
+	{
+		this( null );
+	}
+
+	/**
+	 * @param cellDimensions
+	 *            cell grid for tracking dirty cells, null for no tracking
+	 */
+	public DirtyInterval( final int[] cellDimensions )
+	{
+		this.cellDimensions = cellDimensions;
+	}
+
+	final protected int bitsPerDimension()
+	{
+		return 63 / cellDimensions.length;
+	}
+
+	public synchronized void touch( final Interval interval )
 	{
 		if ( dirtyInterval == null )
 			dirtyInterval = new FinalInterval( interval );
 		else
 			dirtyInterval = Intervals.union( dirtyInterval, interval );
+
+		if ( cellDimensions != null )
+			touchCells( interval );
+
+		for ( final Consumer< Interval > listener : listeners )
+			listener.accept( interval );
+	}
+
+	/**
+	 * Add a listener that is notified of each touched interval.  Listeners
+	 * are called while holding the lock, i.e. in the order of modifications
+	 * and before the touched cells can be {@link #takeDirtyCells() taken}.
+	 *
+	 * @param listener
+	 */
+	public void addListener( final Consumer< Interval > listener )
+	{
+		listeners.add( listener );
+	}
+
+	public void removeListener( final Consumer< Interval > listener )
+	{
+		listeners.remove( listener );
+	}
+
+	protected void touchCells( final Interval interval )
+	{
+		final int n = cellDimensions.length;
+		final int bits = bitsPerDimension();
+		final long[] gridMin = new long[ n ];
+		final long[] gridMax = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			if ( interval.max( d ) < 0 )
+				return;
+			gridMin[ d ] = Math.max( 0, interval.min( d ) ) / cellDimensions[ d ];
+			gridMax[ d ] = interval.max( d ) / cellDimensions[ d ];
+			assert gridMax[ d ] < 1L << bits : "cell grid too large for dirty cell tracking";
+		}
+
+		final long[] gridPosition = gridMin.clone();
+		for ( int d = 0; d < n; )
+		{
+			long key = 0;
+			for ( int e = n - 1; e >= 0; --e )
+				key = ( key << bits ) | gridPosition[ e ];
+			dirtyCells.add( key );
+
+			for ( d = 0; d < n; ++d )
+			{
+				++gridPosition[ d ];
+				if ( gridPosition[ d ] <= gridMax[ d ] )
+					break;
+				else
+					gridPosition[ d ] = gridMin[ d ];
+			}
+		}
+	}
+
+	/**
+	 * Get the intervals of all cells that have been touched since the last
+	 * call and clear them.  Cells at the upper border may extend beyond the
+	 * modified image.
+	 *
+	 * @return dirty cells or null if cells are not tracked
+	 */
+	public synchronized List< Interval > takeDirtyCells()
+	{
+		if ( cellDimensions == null )
+			return null;
+
+		final int n = cellDimensions.length;
+		final int bits = bitsPerDimension();
+		final long mask = ( 1L << bits ) - 1;
+		final ArrayList< Interval > cells = new ArrayList<>( dirtyCells.size() );
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( final TLongIterator it = dirtyCells.iterator(); it.hasNext(); )
+		{
+			long key = it.next();
+			for ( int d = 0; d < n; ++d )
+			{
+				min[ d ] = ( key & mask ) * cellDimensions[ d ];
+				max[ d ] = min[ d ] + cellDimensions[ d ] - 1;
+				key >>>= bits;
+			}
+			cells.add( new FinalInterval( min, max ) );
+		}
+		dirtyCells.clear();
+
+		return cells;
+	}
+
+	public synchronized boolean hasDirtyCells()
+	{
+		return !dirtyCells.isEmpty();
 	}
 
-	public void clear()
+	public synchronized void clear()
 	{
 		dirtyInterval = null;
+		dirtyCells.clear();
 	}
 
-	public FinalInterval getDirtyInterval()
+	public synchronized FinalInterval getDirtyInterval()
 	{
 		return dirtyInterval;
 	}
@@ -0,0 +1,470 @@
+package bdv.bigcat.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+import bdv.bigcat.label.FragmentSegmentAssignment;
+import bdv.labels.labelset.Label;
+import bdv.util.IdService;
+import gnu.trove.map.hash.TLongLongHashMap;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Append-only journal of canvas and fragment segment assignment edits that
+ * have not yet been saved.
+ *
+ * Canvas edits are recorded as the run length encoded content of each
+ * touched interval, assignment edits as fragment segment pairs.  Records are
+ * encoded and appended in the order of modification by a background thread.
+ * Canvas content is read when the record is written, which may be later than
+ * the modification but never earlier, so replaying all records in order
+ * restores the final state.
+ *
+ * The journal is split into numbered segment files
+ * <code>&lt;path&gt;.&lt;index&gt;</code>.  Before saving, the journal is
+ * {@link #rotate() rotated} into a new segment, after saving successfully,
+ * all previous segments are {@link #deleteSegmentsBefore(int) deleted}.
+ * Records are flushed to the file system individually and forced to disk on
+ * rotation.  A record that was not completely written when the application
+ * crashed is detected by its checksum and ends the replay of its segment.
+ */
+public class EditJournal implements FragmentSegmentAssignment.Listener
+{
+	final static public byte CANVAS = 1;
+
+	final static public byte ASSIGN = 2;
+
+	final static public byte REPLACE = 3;
+
+	public interface RecordHandler
+	{
+		public void record( final byte type, final DataInputStream payload ) throws IOException;
+	}
+
+	final protected String path;
+
+	final protected RandomAccessibleInterval< LongType > canvas;
+
+	final protected ExecutorService executor = Executors.newSingleThreadExecutor(
+			r -> {
+				final Thread thread = new Thread( r, "edit-journal" );
+				thread.setDaemon( true );
+				return thread;
+			} );
+
+	/* only accessed by the executor thread */
+	protected FileOutputStream fileOut;
+
+	protected DataOutputStream out;
+
+	protected int segment;
+
+	final protected CRC32 crc = new CRC32();
+
+	/**
+	 * Open a new segment after the existing segments of a journal.
+	 *
+	 * @param path
+	 * @param canvas
+	 * @throws IOException
+	 */
+	public EditJournal( final String path, final RandomAccessibleInterval< LongType > canvas ) throws IOException
+	{
+		this.path = path;
+		this.canvas = canvas;
+		final int[] segments = segments( path );
+		segment = segments.length == 0 ? 0 : segments[ segments.length - 1 ] + 1;
+		open();
+	}
+
+	static protected File segmentFile( final String path, final int segment )
+	{
+		return new File( path + "." + segment );
+	}
+
+	/**
+	 * Indices of existing segments in increasing order.
+	 *
+	 * @param path
+	 * @return
+	 */
+	static public int[] segments( final String path )
+	{
+		final File base = new File( path ).getAbsoluteFile();
+		final String prefix = base.getName() + ".";
+		final String[] names = base.getParentFile().list();
+		if ( names == null )
+			return new int[ 0 ];
+
+		final ArrayList< Integer > segments = new ArrayList<>();
+		for ( final String name : names )
+			if ( name.startsWith( prefix ) )
+			{
+				try
+				{
+					segments.add( Integer.parseInt( name.substring( prefix.length() ) ) );
+				}
+				catch ( final NumberFormatException e ) {}
+			}
+
+		final int[] array = new int[ segments.size() ];
+		for ( int i = 0; i < array.length; ++i )
+			array[ i ] = segments.get( i );
+		Arrays.sort( array );
+		return array;
+	}
+
+	protected void open() throws IOException
+	{
+		fileOut = new FileOutputStream( segmentFile( path, segment ), true );
+		out = new DataOutputStream( new BufferedOutputStream( fileOut ) );
+	}
+
+	protected void closeSegment() throws IOException
+	{
+		out.flush();
+		fileOut.getChannel().force( false );
+		out.close();
+	}
+
+	protected void append( final byte type, final byte[] payload )
+	{
+		crc.reset();
+		crc.update( type );
+		crc.update( payload );
+		try
+		{
+			out.writeByte( type );
+			out.writeInt( payload.length );
+			out.write( payload );
+			out.writeInt( ( int )crc.getValue() );
+			out.flush();
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+		}
+	}
+
+	protected byte[] encodeCanvas( final Interval interval ) throws IOException
+	{
+		final int n = canvas.numDimensions();
+		final FinalInterval intersection = Intervals.intersect( canvas, interval );
+		for ( int d = 0; d < n; ++d )
+			if ( intersection.min( d ) > intersection.max( d ) )
+				return null;
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream data = new DataOutputStream( bytes );
+		for ( int d = 0; d < n; ++d )
+			data.writeLong( intersection.min( d ) );
+		for ( int d = 0; d < n; ++d )
+			data.writeLong( intersection.max( d ) );
+
+		final Cursor< LongType > cursor = Views.flatIterable( Views.interval( canvas, intersection ) ).cursor();
+		long value = cursor.next().get();
+		int length = 1;
+		while ( cursor.hasNext() )
+		{
+			final long next = cursor.next().get();
+			if ( next == value && length < Integer.MAX_VALUE )
+				++length;
+			else
+			{
+				data.writeLong( value );
+				data.writeInt( length );
+				value = next;
+				length = 1;
+			}
+		}
+		data.writeLong( value );
+		data.writeInt( length );
+		data.flush();
+
+		return bytes.toByteArray();
+	}
+
+	static protected byte[] encodeAssignment( final long[] fragments, final long[] segments ) throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream( 4 + 16 * fragments.length );
+		final DataOutputStream data = new DataOutputStream( bytes );
+		data.writeInt( fragments.length );
+		for ( int i = 0; i < fragments.length; ++i )
+		{
+			data.writeLong( fragments[ i ] );
+			data.writeLong( segments[ i ] );
+		}
+		data.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Queue the content of a canvas interval.  Call after the interval was
+	 * modified, e.g. as a {@link DirtyInterval} listener.
+	 *
+	 * @param interval
+	 */
+	public void touched( final Interval interval )
+	{
+		final FinalInterval copy = new FinalInterval( interval );
+		executor.submit( () -> {
+			try
+			{
+				final byte[] payload = encodeCanvas( copy );
+				if ( payload != null )
+					append( CANVAS, payload );
+			}
+			catch ( final IOException e )
+			{
+				e.printStackTrace();
+			}
+		} );
+	}
+
+	@Override
+	public void assigned( final long version, final long[] fragments, final long[] segments )
+	{
+		executor.submit( () -> {
+			try
+			{
+				append( ASSIGN, encodeAssignment( fragments, segments ) );
+			}
+			catch ( final IOException e )
+			{
+				e.printStackTrace();
+			}
+		} );
+	}
+
+	@Override
+	public void replaced( final long version, final long[] fragments, final long[] segments )
+	{
+		executor.submit( () -> {
+			try
+			{
+				append( REPLACE, encodeAssignment( fragments, segments ) );
+			}
+			catch ( final IOException e )
+			{
+				e.printStackTrace();
+			}
+		} );
+	}
+
+	/**
+	 * Start a new segment after all records queued so far.
+	 *
+	 * @return index of the new segment
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	public int rotate() throws InterruptedException, ExecutionException
+	{
+		return executor.submit( () -> {
+			closeSegment();
+			++segment;
+			open();
+			return segment;
+		} ).get();
+	}
+
+	/**
+	 * Delete all segments before a segment, e.g. after their records have
+	 * been saved.
+	 *
+	 * @param segment
+	 */
+	public void deleteSegmentsBefore( final int segment )
+	{
+		for ( final int s : segments( path ) )
+			if ( s < segment )
+				segmentFile( path, s ).delete();
+	}
+
+	/**
+	 * Write all queued records and close the journal.
+	 *
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	public void close() throws InterruptedException, ExecutionException
+	{
+		executor.submit( () -> {
+			closeSegment();
+			return null;
+		} ).get();
+		executor.shutdown();
+	}
+
+	/**
+	 * Close the journal and delete all segments, e.g. when discarding all
+	 * unsaved edits.
+	 *
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	public void discard() throws InterruptedException, ExecutionException
+	{
+		close();
+		deleteSegmentsBefore( Integer.MAX_VALUE );
+	}
+
+	/**
+	 * Read all complete records of all segments of a journal in order.
+	 *
+	 * @param path
+	 * @param handler
+	 * @return number of records
+	 * @throws IOException
+	 */
+	static public long replay( final String path, final RecordHandler handler ) throws IOException
+	{
+		final CRC32 crc = new CRC32();
+		long numRecords = 0;
+		for ( final int segment : segments( path ) )
+		{
+			try ( final DataInputStream in = new DataInputStream( new FileInputStream( segmentFile( path, segment ) ) ) )
+			{
+				while ( true )
+				{
+					final byte type;
+					final byte[] payload;
+					try
+					{
+						type = in.readByte();
+						final int length = in.readInt();
+						if ( length < 0 || length > in.available() )
+							break;
+						payload = new byte[ length ];
+						in.readFully( payload );
+						crc.reset();
+						crc.update( type );
+						crc.update( payload );
+						if ( in.readInt() != ( int )crc.getValue() )
+						{
+							System.out.println( "Skipping corrupt end of journal segment " + segmentFile( path, segment ) );
+							break;
+						}
+					}
+					catch ( final EOFException e )
+					{
+						break;
+					}
+					handler.record( type, new DataInputStream( new ByteArrayInputStream( payload ) ) );
+					++numRecords;
+				}
+			}
+		}
+		return numRecords;
+	}
+
+	/**
+	 * Replay all canvas records of a journal, touch their intervals, and
+	 * invalidate all replayed ids.
+	 *
+	 * @param path
+	 * @param canvas
+	 * @param dirtyInterval
+	 * @param idService
+	 * @throws IOException
+	 */
+	static public void replayCanvas(
+			final String path,
+			final RandomAccessibleInterval< LongType > canvas,
+			final DirtyInterval dirtyInterval,
+			final IdService idService ) throws IOException
+	{
+		final int n = canvas.numDimensions();
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		final long[] maxId = new long[ 1 ];
+		final long[] numRecords = new long[ 1 ];
+		replay( path, ( type, payload ) -> {
+			if ( type != CANVAS )
+				return;
+
+			for ( int d = 0; d < n; ++d )
+				min[ d ] = payload.readLong();
+			for ( int d = 0; d < n; ++d )
+				max[ d ] = payload.readLong();
+			final FinalInterval interval = new FinalInterval( min, max );
+
+			final Cursor< LongType > cursor = Views.flatIterable( Views.interval( canvas, interval ) ).cursor();
+			while ( cursor.hasNext() )
+			{
+				final long value = payload.readLong();
+				if ( Label.regular( value ) )
+					maxId[ 0 ] = IdService.max( maxId[ 0 ], value );
+				for ( int length = payload.readInt(); length > 0; --length )
+					cursor.next().set( value );
+			}
+			dirtyInterval.touch( interval );
+			++numRecords[ 0 ];
+		} );
+		if ( numRecords[ 0 ] > 0 )
+		{
+			idService.invalidate( maxId[ 0 ] );
+			System.out.println( "Replayed " + numRecords[ 0 ] + " canvas edits from " + path );
+		}
+	}
+
+	/**
+	 * Replay all assignment records of a journal and invalidate all replayed
+	 * ids.
+	 *
+	 * @param path
+	 * @param assignment
+	 * @param idService
+	 * @throws IOException
+	 */
+	static public void replayAssignment(
+			final String path,
+			final FragmentSegmentAssignment assignment,
+			final IdService idService ) throws IOException
+	{
+		final TLongLongHashMap lut = assignment.getLut();
+		final long[] maxId = new long[ 1 ];
+		final long[] numRecords = new long[ 1 ];
+		replay( path, ( type, payload ) -> {
+			if ( type == REPLACE )
+				lut.clear();
+			else if ( type != ASSIGN )
+				return;
+
+			for ( int i = payload.readInt(); i > 0; --i )
+			{
+				final long fragmentId = payload.readLong();
+				final long segmentId = payload.readLong();
+				lut.put( fragmentId, segmentId );
+				maxId[ 0 ] = IdService.max( maxId[ 0 ], IdService.max( fragmentId, segmentId ) );
+			}
+			++numRecords[ 0 ];
+		} );
+		if ( numRecords[ 0 ] > 0 )
+		{
+			assignment.initLut( lut );
+			idService.invalidate( maxId[ 0 ] );
+			System.out.println( "Replayed " + numRecords[ 0 ] + " assignment edits from " + path );
+		}
+	}
+}
@@ -0,0 +1,385 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.bigcat.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+import bdv.labels.labelset.Label;
+import net.imglib2.AbstractInterval;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.basictypeaccess.LongAccess;
+import net.imglib2.type.numeric.integer.LongType;
+
+/**
+ * A sparse painting canvas of {@link LongType} labels.  Cells are allocated
+ * on first write, cells that were never written read as
+ * {@link Label#TRANSPARENT} without occupying memory.  Memory is therefore
+ * proportional to the painted volume, not to the size of the canvas.
+ *
+ * Cells are stored as flat long[] of the full cell dimensions (x fastest),
+ * cells at the upper border are padded.  The canvas can be read and written
+ * from multiple threads, cells are created atomically.  Writes into a cell
+ * are not synchronized, as with any other {@link RandomAccessibleInterval}.
+ *
+ * Accesses outside of the interval read {@link Label#TRANSPARENT} and
+ * writes are ignored.
+ */
+public class SparseLongCanvas extends AbstractInterval implements RandomAccessibleInterval< LongType >
+{
+	final protected int[] cellDimensions;
+
+	final protected long[] gridDimensions;
+
+	final protected int cellSize;
+
+	final protected ConcurrentHashMap< Long, long[] > cells = new ConcurrentHashMap<>();
+
+	public SparseLongCanvas( final long[] dimensions, final int[] cellDimensions )
+	{
+		super( dimensions );
+		this.cellDimensions = cellDimensions.clone();
+		gridDimensions = new long[ n ];
+		long size = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			gridDimensions[ d ] = ( dimensions[ d ] + cellDimensions[ d ] - 1 ) / cellDimensions[ d ];
+			size *= cellDimensions[ d ];
+		}
+		assert size <= Integer.MAX_VALUE : "Cells must have less than 2^31 elements.";
+		cellSize = ( int )size;
+	}
+
+	public int[] getCellDimensions()
+	{
+		return cellDimensions.clone();
+	}
+
+	public long[] getCellGridDimensions()
+	{
+		return gridDimensions.clone();
+	}
+
+	/**
+	 * Linear index of the cell at a grid position, x fastest.
+	 *
+	 * @param gridPosition
+	 * @return
+	 */
+	public long cellIndex( final long[] gridPosition )
+	{
+		long i = 0;
+		for ( int d = n - 1; d >= 0; --d )
+			i = i * gridDimensions[ d ] + gridPosition[ d ];
+		return i;
+	}
+
+	/**
+	 * The interval covered by a cell, cropped to the canvas.
+	 *
+	 * @param cellIndex
+	 * @return
+	 */
+	public Interval cellInterval( final long cellIndex )
+	{
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		long i = cellIndex;
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = ( i % gridDimensions[ d ] ) * cellDimensions[ d ];
+			max[ d ] = Math.min( min[ d ] + cellDimensions[ d ], dimension( d ) ) - 1;
+			i /= gridDimensions[ d ];
+		}
+		return new FinalInterval( min, max );
+	}
+
+	/**
+	 * Get the data of a cell.
+	 *
+	 * @param cellIndex
+	 * @return the data or null if the cell was never written
+	 */
+	public long[] getCell( final long cellIndex )
+	{
+		return cells.get( cellIndex );
+	}
+
+	/**
+	 * Set the data of a cell, e.g. when loading a saved canvas.
+	 *
+	 * @param cellIndex
+	 * @param data
+	 *            flat long[] of the full cell dimensions
+	 */
+	public void putCell( final long cellIndex, final long[] data )
+	{
+		assert data.length == cellSize : "Cell data must have " + cellSize + " elements.";
+
+		cells.put( cellIndex, data );
+	}
+
+	/**
+	 * Drop a cell, it will read as {@link Label#TRANSPARENT}.
+	 *
+	 * @param cellIndex
+	 */
+	public void removeCell( final long cellIndex )
+	{
+		cells.remove( cellIndex );
+	}
+
+	public boolean isImplicit( final long cellIndex )
+	{
+		return !cells.containsKey( cellIndex );
+	}
+
+	/**
+	 * Are all cells that intersect an interval implicit, i.e. does the
+	 * interval read as {@link Label#TRANSPARENT} only?
+	 *
+	 * @param interval
+	 * @return
+	 */
+	public boolean isImplicit( final Interval interval )
+	{
+		if ( cells.isEmpty() )
+			return true;
+
+		final long[] gridMin = new long[ n ];
+		final long[] gridMax = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			gridMin[ d ] = Math.max( 0, interval.min( d ) ) / cellDimensions[ d ];
+			gridMax[ d ] = Math.min( dimension( d ) - 1, interval.max( d ) ) / cellDimensions[ d ];
+			if ( interval.max( d ) < 0 || gridMin[ d ] > gridMax[ d ] )
+				return true;
+		}
+
+		final long[] gridPosition = gridMin.clone();
+		for ( int d = 0; d < n; )
+		{
+			if ( cells.containsKey( cellIndex( gridPosition ) ) )
+				return false;
+
+			for ( d = 0; d < n; ++d )
+			{
+				++gridPosition[ d ];
+				if ( gridPosition[ d ] <= gridMax[ d ] )
+					break;
+				else
+					gridPosition[ d ] = gridMin[ d ];
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the indices of all cells that have been written.
+	 *
+	 * @return
+	 */
+	public long[] cellIndices()
+	{
+		final long[] indices = new long[ cells.size() ];
+		int i = 0;
+		for ( final Long index : cells.keySet() )
+		{
+			if ( i == indices.length )
+				break;
+			indices[ i++ ] = index;
+		}
+		return i == indices.length ? indices : Arrays.copyOf( indices, i );
+	}
+
+	/**
+	 * Get the data of all cells that have been written.
+	 *
+	 * @return
+	 */
+	public Collection< long[] > cellData()
+	{
+		return cells.values();
+	}
+
+	public int numCells()
+	{
+		return cells.size();
+	}
+
+	protected long[] createCell( final long cellIndex )
+	{
+		return cells.computeIfAbsent( cellIndex, k -> {
+			final long[] data = new long[ cellSize ];
+			Arrays.fill( data, Label.TRANSPARENT );
+			return data;
+		} );
+	}
+
+	public class SparseRandomAccess extends Point implements RandomAccess< LongType >
+	{
+		final protected LongType type;
+
+		/* bounds of the current cell, cropped to the canvas */
+		final protected long[] cellMin;
+
+		final protected long[] cellMax;
+
+		/* -1 if outside of the canvas */
+		protected long cellIndex = -1;
+
+		/* null if the current cell had not been written when last looked up */
+		protected long[] data = null;
+
+		protected SparseRandomAccess( final long[] position )
+		{
+			super( position.clone() );
+			cellMin = new long[ n ];
+			cellMax = new long[ n ];
+
+			/* empty cell, the first access locates */
+			Arrays.fill( cellMax, -1 );
+			type = new LongType( new LongAccess()
+			{
+				@Override
+				public long getValue( final int index )
+				{
+					final int i = locate();
+					long[] cellData = data;
+					if ( cellData == null && cellIndex >= 0 )
+					{
+						/* the cell may have been written through another access since */
+						cellData = cells.get( cellIndex );
+						data = cellData;
+					}
+					return cellData == null ? Label.TRANSPARENT : cellData[ i ];
+				}
+
+				@Override
+				public void setValue( final int index, final long value )
+				{
+					final int i = locate();
+					if ( data == null )
+					{
+						if ( cellIndex < 0 )
+							return;
+						data = createCell( cellIndex );
+					}
+					data[ i ] = value;
+				}
+			} );
+		}
+
+		public SparseRandomAccess()
+		{
+			this( new long[ SparseLongCanvas.this.n ] );
+		}
+
+		/**
+		 * Find the cell of the current position if it changed.
+		 *
+		 * @return index in the current cell
+		 */
+		protected int locate()
+		{
+			for ( int d = 0; d < n; ++d )
+			{
+				if ( position[ d ] < cellMin[ d ] || position[ d ] > cellMax[ d ] )
+				{
+					switchCell();
+					break;
+				}
+			}
+
+			int i = 0;
+			for ( int d = n - 1; d >= 0; --d )
+				i = i * cellDimensions[ d ] + ( int )( position[ d ] - cellMin[ d ] );
+			return i;
+		}
+
+		protected void switchCell()
+		{
+			boolean outside = false;
+			long index = 0;
+			for ( int d = n - 1; d >= 0; --d )
+			{
+				final long p = position[ d ];
+				if ( p < 0 || p >= dimension( d ) )
+				{
+					outside = true;
+					break;
+				}
+				final long g = p / cellDimensions[ d ];
+				index = index * gridDimensions[ d ] + g;
+				cellMin[ d ] = g * cellDimensions[ d ];
+				cellMax[ d ] = Math.min( cellMin[ d ] + cellDimensions[ d ], dimension( d ) ) - 1;
+			}
+
+			if ( outside )
+			{
+				/* a single voxel "cell" without data */
+				for ( int d = 0; d < n; ++d )
+				{
+					cellMin[ d ] = position[ d ];
+					cellMax[ d ] = position[ d ];
+				}
+				cellIndex = -1;
+				data = null;
+			}
+			else
+			{
+				cellIndex = index;
+				data = cells.get( index );
+			}
+		}
+
+		@Override
+		public LongType get()
+		{
+			return type;
+		}
+
+		@Override
+		public SparseRandomAccess copy()
+		{
+			return new SparseRandomAccess( position );
+		}
+
+		@Override
+		public SparseRandomAccess copyRandomAccess()
+		{
+			return copy();
+		}
+	}
+
+	@Override
+	public SparseRandomAccess randomAccess()
+	{
+		return new SparseRandomAccess();
+	}
+
+	@Override
+	public SparseRandomAccess randomAccess( final Interval interval )
+	{
+		return randomAccess();
+	}
+}
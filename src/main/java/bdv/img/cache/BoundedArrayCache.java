@@ -0,0 +1,250 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.img.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps loaded cell data strongly referenced up to a byte budget.  Entries
+ * beyond the budget are evicted either least recently used first
+ * ({@link Eviction#LRU}) or least frequently used first
+ * ({@link Eviction#LFU}, ties are broken by age).
+ *
+ * Evictions are counted in the {@link CacheMetrics} of the entry's setup.
+ */
+public class BoundedArrayCache
+{
+	public enum Eviction
+	{
+		LRU, LFU
+	}
+
+	static public class Key
+	{
+		final protected int timepoint;
+
+		final protected int setup;
+
+		final protected int level;
+
+		final protected long[] min;
+
+		final protected int hashCode;
+
+		public Key( final int timepoint, final int setup, final int level, final long[] min )
+		{
+			this.timepoint = timepoint;
+			this.setup = setup;
+			this.level = level;
+			this.min = min.clone();
+
+			int h = Arrays.hashCode( min );
+			h = 31 * h + level;
+			h = 31 * h + setup;
+			h = 31 * h + timepoint;
+			hashCode = h;
+		}
+
+		@Override
+		public boolean equals( final Object other )
+		{
+			if ( this == other )
+				return true;
+			if ( !( other instanceof Key ) )
+				return false;
+			final Key key = ( Key )other;
+			return
+					timepoint == key.timepoint &&
+					setup == key.setup &&
+					level == key.level &&
+					Arrays.equals( min, key.min );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+	}
+
+	static protected class Entry
+	{
+		final protected Key key;
+
+		final protected Object data;
+
+		final protected long size;
+
+		protected int frequency = 1;
+
+		protected Entry( final Key key, final Object data, final long size )
+		{
+			this.key = key;
+			this.data = data;
+			this.size = size;
+		}
+	}
+
+	final protected long budget;
+
+	final protected Eviction eviction;
+
+	final protected CacheMetrics metrics;
+
+	/* access ordered for LRU, insertion ordered for LFU */
+	final protected LinkedHashMap< Key, Entry > entries;
+
+	/* LFU only: entries by frequency, each bucket in the order of last use */
+	final protected TreeMap< Integer, LinkedHashMap< Key, Entry > > frequencies = new TreeMap<>();
+
+	protected long size = 0;
+
+	/**
+	 * @param budget
+	 *            in bytes
+	 * @param eviction
+	 * @param metrics
+	 */
+	public BoundedArrayCache( final long budget, final Eviction eviction, final CacheMetrics metrics )
+	{
+		this.budget = budget;
+		this.eviction = eviction;
+		this.metrics = metrics;
+		entries = new LinkedHashMap<>( 16, 0.75f, eviction == Eviction.LRU );
+	}
+
+	public long getBudget()
+	{
+		return budget;
+	}
+
+	synchronized public long size()
+	{
+		return size;
+	}
+
+	synchronized public int numEntries()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * Get cached data.
+	 *
+	 * @param key
+	 * @return the data or null if not cached
+	 */
+	synchronized public Object get( final Key key )
+	{
+		final Entry entry = entries.get( key );
+		if ( entry == null )
+			return null;
+
+		if ( eviction == Eviction.LFU )
+		{
+			removeFromBucket( entry );
+			++entry.frequency;
+			addToBucket( entry );
+		}
+		return entry.data;
+	}
+
+	/**
+	 * Cache data and evict other entries until the budget is met.  Data
+	 * that alone exceeds the budget is not cached.
+	 *
+	 * @param key
+	 * @param data
+	 * @param size
+	 *            in bytes
+	 */
+	synchronized public void put( final Key key, final Object data, final long size )
+	{
+		if ( size > budget )
+			return;
+
+		final Entry old = entries.remove( key );
+		if ( old != null )
+			remove( old );
+
+		final Entry entry = new Entry( key, data, size );
+		entries.put( key, entry );
+		this.size += size;
+		if ( eviction == Eviction.LFU )
+			addToBucket( entry );
+
+		while ( this.size > budget )
+		{
+			final Entry victim = victim( entry );
+			entries.remove( victim.key );
+			remove( victim );
+			metrics.get( victim.key.setup ).evict( victim.size );
+		}
+	}
+
+	synchronized public void clear()
+	{
+		entries.clear();
+		frequencies.clear();
+		size = 0;
+	}
+
+	/**
+	 * Find the next entry to evict, never the one that was just added.
+	 *
+	 * @param added
+	 * @return
+	 */
+	protected Entry victim( final Entry added )
+	{
+		final Iterable< LinkedHashMap< Key, Entry > > buckets =
+				eviction == Eviction.LFU ?
+						frequencies.values() :
+						Collections.singletonList( entries );
+
+		for ( final LinkedHashMap< Key, Entry > bucket : buckets )
+			for ( final Entry entry : bucket.values() )
+				if ( entry != added )
+					return entry;
+
+		return null;
+	}
+
+	protected void remove( final Entry entry )
+	{
+		size -= entry.size;
+		if ( eviction == Eviction.LFU )
+			removeFromBucket( entry );
+	}
+
+	protected void addToBucket( final Entry entry )
+	{
+		frequencies.computeIfAbsent( entry.frequency, k -> new LinkedHashMap<>() ).put( entry.key, entry );
+	}
+
+	protected void removeFromBucket( final Entry entry )
+	{
+		final Map< Key, Entry > bucket = frequencies.get( entry.frequency );
+		bucket.remove( entry.key );
+		if ( bucket.isEmpty() )
+			frequencies.remove( entry.frequency );
+	}
+}
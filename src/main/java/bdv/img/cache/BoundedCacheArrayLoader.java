@@ -0,0 +1,127 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.img.cache;
+
+import java.lang.reflect.Array;
+
+import bdv.labels.labelset.VolatileLabelMultisetArray;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+
+/**
+ * Wraps a {@link CacheArrayLoader} to count restored and loaded cells, and
+ * load latency per setup and, optionally, to keep loaded cells in a
+ * {@link BoundedArrayCache} such that cells whose soft references were
+ * cleared by the garbage collector are not loaded again.
+ */
+public class BoundedCacheArrayLoader< A extends VolatileAccess > implements CacheArrayLoader< A >
+{
+	final protected CacheArrayLoader< A > loader;
+
+	/* may be null, then only metrics are collected */
+	final protected BoundedArrayCache arrayCache;
+
+	final protected CacheMetrics metrics;
+
+	public BoundedCacheArrayLoader(
+			final CacheArrayLoader< A > loader,
+			final BoundedArrayCache arrayCache,
+			final CacheMetrics metrics )
+	{
+		this.loader = loader;
+		this.arrayCache = arrayCache;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public int getBytesPerElement()
+	{
+		return loader.getBytesPerElement();
+	}
+
+	@Override
+	public EmptyArrayCreator< A > getEmptyArrayCreator()
+	{
+		return loader.getEmptyArrayCreator();
+	}
+
+	@SuppressWarnings( "unchecked" )
+	@Override
+	public A loadArray(
+			final int timepoint,
+			final int setup,
+			final int level,
+			final int[] dimensions,
+			final long[] min ) throws InterruptedException
+	{
+		final CacheMetrics.Counters counters = metrics.get( setup );
+
+		final BoundedArrayCache.Key key;
+		if ( arrayCache == null )
+			key = null;
+		else
+		{
+			key = new BoundedArrayCache.Key( timepoint, setup, level, min );
+			final Object cached = arrayCache.get( key );
+			if ( cached != null )
+			{
+				counters.restore();
+				return ( A )cached;
+			}
+		}
+
+		final long t0 = System.nanoTime();
+		final A data = loader.loadArray( timepoint, setup, level, dimensions, min );
+		final long t1 = System.nanoTime();
+
+		long numElements = 1;
+		for ( final int d : dimensions )
+			numElements *= d;
+		final long size = sizeInBytes( data, numElements, getBytesPerElement() );
+		counters.load( t1 - t0, size );
+
+		if ( key != null && data != null && data.isValid() )
+			arrayCache.put( key, data, size );
+
+		return data;
+	}
+
+	/**
+	 * Estimate the memory occupied by loaded cell data.  For
+	 * {@link VolatileLabelMultisetArray}, this includes the list data.
+	 *
+	 * @param data
+	 * @param numElements
+	 * @param bytesPerElement
+	 * @return
+	 */
+	static public long sizeInBytes( final Object data, final long numElements, final int bytesPerElement )
+	{
+		if ( data instanceof VolatileLabelMultisetArray )
+		{
+			final VolatileLabelMultisetArray labels = ( VolatileLabelMultisetArray )data;
+			return 4L * labels.getCurrentStorageArray().length + labels.getListData().size();
+		}
+		else if ( data instanceof ArrayDataAccess )
+		{
+			final Object array = ( ( ArrayDataAccess< ? > )data ).getCurrentStorageArray();
+			if ( array != null && array.getClass().isArray() )
+				return ( long )Array.getLength( array ) * bytesPerElement;
+		}
+		return numElements * bytesPerElement;
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.img.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per setup counters of the cells requested from {@link CacheArrayLoader
+ * CacheArrayLoaders} by the {@link VolatileGlobalCellCache}: cells restored
+ * from the {@link BoundedArrayCache} after the cell cache dropped them, cells
+ * loaded, load latency, and evictions from the {@link BoundedArrayCache}.
+ * Requests that the cell cache serves itself are not seen and not counted.
+ * Counters are cumulative and can be read at any time from any thread.
+ */
+public class CacheMetrics
+{
+	static public class Counters
+	{
+		final public AtomicLong restores = new AtomicLong();
+
+		final public AtomicLong loads = new AtomicLong();
+
+		final public AtomicLong loadNanos = new AtomicLong();
+
+		final public AtomicLong loadedBytes = new AtomicLong();
+
+		final public AtomicLong evictions = new AtomicLong();
+
+		final public AtomicLong evictedBytes = new AtomicLong();
+
+		public void restore()
+		{
+			restores.incrementAndGet();
+		}
+
+		public void load( final long nanos, final long bytes )
+		{
+			loads.incrementAndGet();
+			loadNanos.addAndGet( nanos );
+			loadedBytes.addAndGet( bytes );
+		}
+
+		public void evict( final long bytes )
+		{
+			evictions.incrementAndGet();
+			evictedBytes.addAndGet( bytes );
+		}
+
+		/**
+		 * @return fraction of requested cells that were restored instead of
+		 *         loaded
+		 */
+		public double restoreRate()
+		{
+			final long r = restores.get();
+			final long n = r + loads.get();
+			return n == 0 ? 0 : ( double )r / n;
+		}
+
+		/**
+		 * @return mean load latency in milliseconds
+		 */
+		public double meanLoadMillis()
+		{
+			final long m = loads.get();
+			return m == 0 ? 0 : loadNanos.get() / 1e6 / m;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format(
+					"restores %d, loads %d (restore rate %.1f%%), mean load %.2f ms, loaded %.1f MiB, evictions %d (%.1f MiB)",
+					restores.get(),
+					loads.get(),
+					100.0 * restoreRate(),
+					meanLoadMillis(),
+					loadedBytes.get() / 1048576.0,
+					evictions.get(),
+					evictedBytes.get() / 1048576.0 );
+		}
+	}
+
+	final protected ConcurrentHashMap< Integer, Counters > setups = new ConcurrentHashMap<>();
+
+	public Counters get( final int setup )
+	{
+		return setups.computeIfAbsent( setup, k -> new Counters() );
+	}
+
+	public Map< Integer, Counters > getSetups()
+	{
+		return setups;
+	}
+
+	@Override
+	public String toString()
+	{
+		final StringBuilder str = new StringBuilder();
+		for ( final Map.Entry< Integer, Counters > entry : setups.entrySet() )
+			str.append( "setup " ).append( entry.getKey() ).append( ": " ).append( entry.getValue() ).append( "\n" );
+		return str.toString();
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.img.cache;
+
+import bdv.img.cache.BoundedArrayCache.Eviction;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+
+/**
+ * Configures the cell cache of a viewer: number of fetcher threads and fetch
+ * priority levels of the {@link VolatileGlobalCellCache}, and an optional
+ * byte budget with an eviction strategy for cells kept strongly referenced
+ * by a {@link BoundedArrayCache}.  {@link CacheArrayLoader CacheArrayLoaders}
+ * are {@link #wrap(CacheArrayLoader) wrapped} to use the budget and to
+ * collect {@link CacheMetrics}.
+ */
+public class CachePolicy
+{
+	final protected int numPriorities;
+
+	final protected int numFetcherThreads;
+
+	final protected CacheMetrics metrics = new CacheMetrics();
+
+	/* null if unbounded */
+	final protected BoundedArrayCache arrayCache;
+
+	/**
+	 * @param numPriorities
+	 *            number of fetch queue priority levels, sources request
+	 *            their mipmap levels at different priorities, so this must
+	 *            not be less than the number of mipmap levels
+	 * @param numFetcherThreads
+	 * @param budget
+	 *            in bytes, cells are only softly referenced if &lt;= 0
+	 * @param eviction
+	 */
+	public CachePolicy(
+			final int numPriorities,
+			final int numFetcherThreads,
+			final long budget,
+			final Eviction eviction )
+	{
+		this.numPriorities = Math.max( 1, numPriorities );
+		this.numFetcherThreads = numFetcherThreads;
+		arrayCache = budget > 0 ? new BoundedArrayCache( budget, eviction, metrics ) : null;
+	}
+
+	public CachePolicy( final int numPriorities, final int numFetcherThreads )
+	{
+		this( numPriorities, numFetcherThreads, 0, Eviction.LRU );
+	}
+
+	public VolatileGlobalCellCache createCache()
+	{
+		return new VolatileGlobalCellCache( numPriorities, numFetcherThreads );
+	}
+
+	/**
+	 * Create a cache with at least one fetch priority per mipmap level.
+	 *
+	 * @param numMipmapLevels
+	 *            of the source with the most levels
+	 * @return
+	 */
+	public VolatileGlobalCellCache createCache( final int numMipmapLevels )
+	{
+		return new VolatileGlobalCellCache( numPriorities( numMipmapLevels ), numFetcherThreads );
+	}
+
+	/**
+	 * @param numMipmapLevels
+	 * @return number of fetch priorities of a cache for sources with up to
+	 *         numMipmapLevels levels
+	 */
+	public int numPriorities( final int numMipmapLevels )
+	{
+		return Math.max( numPriorities, numMipmapLevels );
+	}
+
+	public int getNumPriorities()
+	{
+		return numPriorities;
+	}
+
+	public < A extends VolatileAccess > CacheArrayLoader< A > wrap( final CacheArrayLoader< A > loader )
+	{
+		return new BoundedCacheArrayLoader<>( loader, arrayCache, metrics );
+	}
+
+	/**
+	 * @param policy
+	 *            may be null
+	 * @param loader
+	 * @return loader wrapped by policy or loader if policy is null
+	 */
+	static public < A extends VolatileAccess > CacheArrayLoader< A > wrap( final CachePolicy policy, final CacheArrayLoader< A > loader )
+	{
+		return policy == null ? loader : policy.wrap( loader );
+	}
+
+	public CacheMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * @return the bounded cache or null if unbounded
+	 */
+	public BoundedArrayCache getArrayCache()
+	{
+		return arrayCache;
+	}
+
+	@Override
+	public String toString()
+	{
+		final StringBuilder str = new StringBuilder( "cache" );
+		if ( arrayCache != null )
+			str.append( String.format(
+					" %.1f of %.1f MiB in %d cells",
+					arrayCache.size() / 1048576.0,
+					arrayCache.getBudget() / 1048576.0,
+					arrayCache.numEntries() ) );
+		str.append( "\n" ).append( metrics );
+		return str.toString();
+	}
+}
@@ -0,0 +1,465 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.img.cache;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import bdv.labels.labelset.LongMappedAccessData;
+import bdv.labels.labelset.VolatileLabelMultisetArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
+
+/**
+ * Persistent block cache in a local directory with a size limit and least
+ * recently used eviction.  Blocks are stored one per file under
+ *
+ * <pre>
+ * root/namespace/timepoint_level/x_y_z
+ * </pre>
+ *
+ * where the namespace is a hash of everything that identifies the content
+ * of a dataset, e.g. server, node UUID, node version, and data instance
+ * (see {@link #namespace(String...)}).  When the version changes, blocks of
+ * the old version are no longer found and are eventually evicted.
+ *
+ * Files are read memory-mapped and written to a temporary file that is
+ * atomically moved into place, such that concurrent readers, including other
+ * processes sharing the directory, never see partial blocks.  Access times
+ * are recorded as file modification times, so the eviction order persists
+ * across sessions.
+ */
+public class DiskBlockCache
+{
+	/**
+	 * Serializes cell data of one type.
+	 */
+	public interface Codec< A >
+	{
+		/**
+		 * @param data
+		 * @return the serialized size in bytes or -1 if data cannot be
+		 *         serialized
+		 */
+		public long sizeInBytes( A data );
+
+		public void write( A data, ByteBuffer buffer );
+
+		/**
+		 * @param buffer
+		 *            positioned at the serialized data, in native byte order
+		 * @param numElements
+		 *            expected number of elements
+		 * @return null if the buffer does not contain numElements elements
+		 */
+		public A read( ByteBuffer buffer, int numElements );
+	}
+
+	final static public Codec< VolatileByteArray > bytes = new Codec< VolatileByteArray >()
+	{
+		@Override
+		public long sizeInBytes( final VolatileByteArray data )
+		{
+			return data.getCurrentStorageArray().length;
+		}
+
+		@Override
+		public void write( final VolatileByteArray data, final ByteBuffer buffer )
+		{
+			buffer.put( data.getCurrentStorageArray() );
+		}
+
+		@Override
+		public VolatileByteArray read( final ByteBuffer buffer, final int numElements )
+		{
+			if ( buffer.remaining() != numElements )
+				return null;
+			final byte[] data = new byte[ numElements ];
+			buffer.get( data );
+			return new VolatileByteArray( data, true );
+		}
+	};
+
+	final static public Codec< VolatileIntArray > ints = new Codec< VolatileIntArray >()
+	{
+		@Override
+		public long sizeInBytes( final VolatileIntArray data )
+		{
+			return 4L * data.getCurrentStorageArray().length;
+		}
+
+		@Override
+		public void write( final VolatileIntArray data, final ByteBuffer buffer )
+		{
+			final int[] ints = data.getCurrentStorageArray();
+			buffer.asIntBuffer().put( ints );
+			buffer.position( buffer.position() + 4 * ints.length );
+		}
+
+		@Override
+		public VolatileIntArray read( final ByteBuffer buffer, final int numElements )
+		{
+			if ( buffer.remaining() != 4L * numElements )
+				return null;
+			final int[] data = new int[ numElements ];
+			buffer.asIntBuffer().get( data );
+			return new VolatileIntArray( data, true );
+		}
+	};
+
+	/**
+	 * Label multisets as
+	 *
+	 * <pre>
+	 * long   list data size in bytes
+	 * int[]  list offsets per element
+	 * pad to 8 bytes
+	 * long[] list data
+	 * </pre>
+	 *
+	 * The list data is copied as longs, in native byte order like
+	 * {@link LongMappedAccessData} stores it.
+	 */
+	final static public Codec< VolatileLabelMultisetArray > labelMultisets = new Codec< VolatileLabelMultisetArray >()
+	{
+		private long listDataSize( final VolatileLabelMultisetArray data )
+		{
+			final long used = data.getListDataUsedSizeInBytes();
+			return used < 0 ? data.getListData().size() : used;
+		}
+
+		private int paddedOffsetsSize( final int numElements )
+		{
+			return ( 4 * numElements + 7 ) & ~7;
+		}
+
+		@Override
+		public long sizeInBytes( final VolatileLabelMultisetArray data )
+		{
+			if ( !( data.getListData() instanceof LongMappedAccessData ) )
+				return -1;
+			final long numLongs = ( listDataSize( data ) + 7 ) / 8;
+			return 8 + paddedOffsetsSize( data.getCurrentStorageArray().length ) + 8 * numLongs;
+		}
+
+		@Override
+		public void write( final VolatileLabelMultisetArray data, final ByteBuffer buffer )
+		{
+			final int[] offsets = data.getCurrentStorageArray();
+			final long listDataSize = listDataSize( data );
+			final int numLongs = ( int )( ( listDataSize + 7 ) / 8 );
+			final int start = buffer.position();
+
+			buffer.putLong( listDataSize );
+			buffer.asIntBuffer().put( offsets );
+			buffer.position( start + 8 + paddedOffsetsSize( offsets.length ) );
+			( ( LongMappedAccessData )data.getListData() ).writeTo( buffer, 8L * numLongs );
+		}
+
+		@Override
+		public VolatileLabelMultisetArray read( final ByteBuffer buffer, final int numElements )
+		{
+			if ( buffer.remaining() < 8 + paddedOffsetsSize( numElements ) )
+				return null;
+			final int start = buffer.position();
+			final long listDataSize = buffer.getLong();
+			final int numLongs = ( int )( ( listDataSize + 7 ) / 8 );
+			if ( buffer.remaining() != paddedOffsetsSize( numElements ) + 8L * numLongs )
+				return null;
+
+			final int[] offsets = new int[ numElements ];
+			buffer.asIntBuffer().get( offsets );
+			buffer.position( start + 8 + paddedOffsetsSize( numElements ) );
+			final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( listDataSize );
+			listData.readFrom( buffer, 8L * numLongs );
+			return new VolatileLabelMultisetArray( offsets, listData, listDataSize, true );
+		}
+	};
+
+	/* magic, byte order, payload follows */
+	final static protected int MAGIC = 0x424c4b31;
+
+	final static protected int HEADER_SIZE = 8;
+
+	final static protected ByteOrder ORDER = ByteOrder.nativeOrder();
+
+	final protected Path root;
+
+	final protected long budget;
+
+	/* file to size, in access order */
+	final protected LinkedHashMap< Path, Long > entries = new LinkedHashMap<>( 1024, 0.75f, true );
+
+	protected long size = 0;
+
+	/**
+	 * Open a cache directory, existing blocks are indexed by their last
+	 * access.
+	 *
+	 * @param root
+	 * @param budget
+	 *            maximum size in bytes
+	 * @throws IOException
+	 */
+	public DiskBlockCache( final Path root, final long budget ) throws IOException
+	{
+		this.root = root;
+		this.budget = budget;
+		Files.createDirectories( root );
+
+		final ArrayList< Path > files = new ArrayList<>();
+		try ( final Stream< Path > stream = Files.walk( root ) )
+		{
+			stream.filter( Files::isRegularFile ).forEach( files::add );
+		}
+		final ArrayList< Map.Entry< Path, FileTime > > accessed = new ArrayList<>();
+		for ( final Path file : files )
+		{
+			/* left over from interrupted writes */
+			if ( file.getFileName().toString().endsWith( ".tmp" ) )
+				Files.deleteIfExists( file );
+			else
+				accessed.add( new AbstractMap.SimpleEntry<>( file, Files.getLastModifiedTime( file ) ) );
+		}
+		accessed.sort( ( a, b ) -> a.getValue().compareTo( b.getValue() ) );
+		for ( final Map.Entry< Path, FileTime > entry : accessed )
+		{
+			final long fileSize = Files.size( entry.getKey() );
+			entries.put( entry.getKey(), fileSize );
+			size += fileSize;
+		}
+		evict();
+	}
+
+	/**
+	 * Create a namespace from everything that identifies the content of a
+	 * dataset.
+	 *
+	 * @param keys
+	 * @return
+	 */
+	static public String namespace( final String... keys )
+	{
+		try
+		{
+			final MessageDigest digest = MessageDigest.getInstance( "SHA-1" );
+			for ( final String key : keys )
+			{
+				digest.update( String.valueOf( key ).getBytes( StandardCharsets.UTF_8 ) );
+				digest.update( ( byte )0 );
+			}
+			final StringBuilder hex = new StringBuilder();
+			for ( final byte b : digest.digest() )
+				hex.append( String.format( "%02x", b ) );
+			return hex.toString();
+		}
+		catch ( final NoSuchAlgorithmException e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
+
+	public Path getRoot()
+	{
+		return root;
+	}
+
+	public long getBudget()
+	{
+		return budget;
+	}
+
+	synchronized public long size()
+	{
+		return size;
+	}
+
+	synchronized public int numEntries()
+	{
+		return entries.size();
+	}
+
+	public Path path(
+			final String namespace,
+			final int timepoint,
+			final int level,
+			final long[] min )
+	{
+		final StringBuilder name = new StringBuilder();
+		for ( int d = 0; d < min.length; ++d )
+		{
+			if ( d > 0 )
+				name.append( '_' );
+			name.append( min[ d ] );
+		}
+		return root.resolve( namespace ).resolve( timepoint + "_" + level ).resolve( name.toString() );
+	}
+
+	/**
+	 * Read a block.
+	 *
+	 * @param path
+	 * @param codec
+	 * @param numElements
+	 * @return null if the block is not in the cache or unreadable
+	 */
+	public < A > A get( final Path path, final Codec< A > codec, final int numElements )
+	{
+		synchronized ( this )
+		{
+			if ( entries.get( path ) == null )
+				return null;
+		}
+
+		A data = null;
+		try ( final FileChannel channel = FileChannel.open( path, READ ) )
+		{
+			final MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+			buffer.order( ORDER );
+			if ( buffer.remaining() >= HEADER_SIZE && buffer.getInt() == MAGIC && buffer.getInt() == ( ORDER == ByteOrder.LITTLE_ENDIAN ? 0 : 1 ) )
+				data = codec.read( buffer, numElements );
+		}
+		catch ( final IOException e )
+		{}
+
+		if ( data == null )
+			remove( path );
+		else
+		{
+			try
+			{
+				Files.setLastModifiedTime( path, FileTime.fromMillis( System.currentTimeMillis() ) );
+			}
+			catch ( final IOException e ) {}
+		}
+		return data;
+	}
+
+	/**
+	 * Write a block.  Failures are logged and otherwise ignored.
+	 *
+	 * @param path
+	 * @param data
+	 * @param codec
+	 */
+	public < A > void put( final Path path, final A data, final Codec< A > codec )
+	{
+		final long payloadSize = codec.sizeInBytes( data );
+		if ( payloadSize < 0 || HEADER_SIZE + payloadSize > Integer.MAX_VALUE || HEADER_SIZE + payloadSize > budget )
+			return;
+
+		final long fileSize = HEADER_SIZE + payloadSize;
+		final Path tmp = path.resolveSibling( path.getFileName() + "." + Thread.currentThread().getId() + ".tmp" );
+		try
+		{
+			Files.createDirectories( path.getParent() );
+			final ByteBuffer buffer = ByteBuffer.allocate( ( int )fileSize ).order( ORDER );
+			buffer.putInt( MAGIC );
+			buffer.putInt( ORDER == ByteOrder.LITTLE_ENDIAN ? 0 : 1 );
+			codec.write( data, buffer );
+			buffer.flip();
+			try ( final FileChannel channel = FileChannel.open( tmp, WRITE, CREATE, TRUNCATE_EXISTING ) )
+			{
+				while ( buffer.hasRemaining() )
+					channel.write( buffer );
+			}
+			try
+			{
+				Files.move( tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+			}
+			catch ( final AtomicMoveNotSupportedException e )
+			{
+				Files.move( tmp, path, StandardCopyOption.REPLACE_EXISTING );
+			}
+		}
+		catch ( final IOException e )
+		{
+			System.out.println( "Could not write " + path + " into block cache: " + e.getMessage() );
+			try
+			{
+				Files.deleteIfExists( tmp );
+			}
+			catch ( final IOException f ) {}
+			return;
+		}
+
+		synchronized ( this )
+		{
+			final Long previous = entries.put( path, fileSize );
+			size += fileSize - ( previous == null ? 0 : previous );
+			evict();
+		}
+	}
+
+	synchronized protected void remove( final Path path )
+	{
+		final Long fileSize = entries.remove( path );
+		if ( fileSize != null )
+			size -= fileSize;
+		try
+		{
+			Files.deleteIfExists( path );
+		}
+		catch ( final IOException e ) {}
+	}
+
+	synchronized protected void evict()
+	{
+		for ( final Iterator< Map.Entry< Path, Long > > it = entries.entrySet().iterator(); size > budget && it.hasNext(); )
+		{
+			final Map.Entry< Path, Long > eldest = it.next();
+			it.remove();
+			size -= eldest.getValue();
+			try
+			{
+				Files.deleteIfExists( eldest.getKey() );
+			}
+			catch ( final IOException e ) {}
+		}
+	}
+
+	/**
+	 * Remove all blocks.
+	 */
+	synchronized public void clear()
+	{
+		for ( final Path path : new ArrayList<>( entries.keySet() ) )
+			remove( path );
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.img.cache;
+
+import java.nio.file.Path;
+
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+
+/**
+ * Wraps a {@link CacheArrayLoader} such that loaded cells are kept in a
+ * {@link DiskBlockCache} and later loaded from there instead of the wrapped
+ * loader.  Only valid cells are stored, cells that failed to load are
+ * requested again.
+ */
+public class DiskCacheArrayLoader< A extends VolatileAccess > implements CacheArrayLoader< A >
+{
+	final protected CacheArrayLoader< A > loader;
+
+	final protected DiskBlockCache diskCache;
+
+	final protected String namespace;
+
+	final protected DiskBlockCache.Codec< A > codec;
+
+	/**
+	 * @param loader
+	 * @param diskCache
+	 * @param namespace
+	 *            identifies the dataset and its version, see
+	 *            {@link DiskBlockCache#namespace(String...)}
+	 * @param codec
+	 */
+	public DiskCacheArrayLoader(
+			final CacheArrayLoader< A > loader,
+			final DiskBlockCache diskCache,
+			final String namespace,
+			final DiskBlockCache.Codec< A > codec )
+	{
+		this.loader = loader;
+		this.diskCache = diskCache;
+		this.namespace = namespace;
+		this.codec = codec;
+	}
+
+	@Override
+	public int getBytesPerElement()
+	{
+		return loader.getBytesPerElement();
+	}
+
+	@Override
+	public EmptyArrayCreator< A > getEmptyArrayCreator()
+	{
+		return loader.getEmptyArrayCreator();
+	}
+
+	@Override
+	public A loadArray(
+			final int timepoint,
+			final int setup,
+			final int level,
+			final int[] dimensions,
+			final long[] min ) throws InterruptedException
+	{
+		int numElements = 1;
+		for ( final int d : dimensions )
+			numElements *= d;
+
+		final Path path = diskCache.path( namespace, timepoint, level, min );
+		final A cached = diskCache.get( path, codec, numElements );
+		if ( cached != null )
+			return cached;
+
+		final A data = loader.loadArray( timepoint, setup, level, dimensions, min );
+		if ( data != null && data.isValid() )
+			diskCache.put( path, data, codec );
+
+		return data;
+	}
+}
@@ -10,6 +10,8 @@ import bdv.ViewerImgLoader;
 import bdv.cache.CacheControl;
 import bdv.img.SetCache;
 import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.DiskBlockCache;
+import bdv.img.cache.DiskCacheArrayLoader;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.util.JsonHelper;
 import net.imglib2.Volatile;
@@ -77,12 +79,19 @@ public class AbstractDvidSetupImageLoader< T extends NativeType< T > , V extends
 		}
 	}
 
+	final protected CacheArrayLoader< A > arrayLoader;
+
+	/**
+	 * @param cache
+	 *            the cell cache, may be replaced by {@link #setCache}
+	 */
 	protected AbstractDvidSetupImageLoader(
 			final int setupId,
 			final T t,
 			final V v,
 			final ConstructorParameters parameters,
-			final CacheArrayLoader< A > loader ) throws JsonSyntaxException, JsonIOException, IOException
+			final CacheArrayLoader< A > loader,
+			final VolatileGlobalCellCache cache ) throws JsonSyntaxException, JsonIOException, IOException
 	{
 		super(
 				setupId,
@@ -92,7 +101,58 @@ public class AbstractDvidSetupImageLoader< T extends NativeType< T > , V extends
 				t,
 				v,
 				loader,
-				new VolatileGlobalCellCache( 1, 10 ) );
+				cache );
+		arrayLoader = loader;
+	}
+
+	protected AbstractDvidSetupImageLoader(
+			final int setupId,
+			final T t,
+			final V v,
+			final ConstructorParameters parameters,
+			final CacheArrayLoader< A > loader ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		this( setupId, t, v, parameters, loader, new VolatileGlobalCellCache( 1, 10 ) );
+	}
+
+	/**
+	 * @return the loader of this setup's cells
+	 */
+	public CacheArrayLoader< A > getArrayLoader()
+	{
+		return arrayLoader;
+	}
+
+	/**
+	 * Keep the blocks loaded by loader in a {@link DiskBlockCache} for the
+	 * current version of the node.
+	 *
+	 * @param loader
+	 * @param apiUrl
+	 * @param nodeId
+	 * @param dataInstanceId
+	 * @param diskCache
+	 *            if null, loader is returned as is
+	 * @param codec
+	 * @return
+	 * @throws IOException
+	 */
+	static public < A extends VolatileAccess > CacheArrayLoader< A > diskCached(
+			final CacheArrayLoader< A > loader,
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final DiskBlockCache diskCache,
+			final DiskBlockCache.Codec< A > codec ) throws IOException
+	{
+		if ( diskCache == null )
+			return loader;
+
+		return new DiskCacheArrayLoader<>(
+				loader,
+				diskCache,
+				DiskBlockCache.namespace( apiUrl, Info.fetchNodeVersion( apiUrl, nodeId ), dataInstanceId ),
+				codec );
 	}
 
 	@Override
@@ -3,11 +3,9 @@ package bdv.img.dvid;
 import java.awt.image.BufferedImage;
 import java.awt.image.PixelGrabber;
 import java.io.IOException;
-import java.net.URL;
-
-import javax.imageio.ImageIO;
 
 import bdv.img.cache.CacheArrayLoader;
+import bdv.util.http.PooledHttpClient;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
 
 /**
@@ -53,8 +51,7 @@ public class DvidMultiscale2dVolatileArrayLoader implements CacheArrayLoader< Vo
 			final int h,
 			final int[] data ) throws IOException, InterruptedException
 	{
-			final URL url = new URL( urlString );
-			final BufferedImage jpg = ImageIO.read( url );
+			final BufferedImage jpg = PooledHttpClient.getShared().getImage( urlString );
 			/* This gymnastic is necessary to get reproducible gray
 			* values, just opening a JPG or PNG, even when saved by
 			* ImageIO, and grabbing its pixels results in gray values
@@ -3,13 +3,30 @@
  */
 package bdv.img.dvid;
 
+import java.io.IOException;
 import java.util.Map;
 
+import bdv.util.JsonHelper;
+
 /**
  * @author Stephan Saalfeld <saalfelds@janelia.hhmi.org>
  */
 public class Info
 {
+	static public class Node
+	{
+		public String UUID;
+		public int VersionID;
+		public boolean Locked;
+		public String Updated;
+	}
+
+	static public class DAG
+	{
+		public String Root;
+		public Map< String, Node > Nodes;
+	}
+
 	public String Root;
 	public String Alias;
 	public String Description;
@@ -17,4 +34,29 @@ public class Info
 	public Map< String, DataInstance > DataInstances;
 	public String Created;
 	public String Updated;
+	public DAG DAG;
+
+	/**
+	 * Fetch a version string of a node that changes when the data of the
+	 * node changes.  Locked nodes are immutable and identified by their UUID,
+	 * otherwise the time of the last update of the node (or its repository,
+	 * if the node has none) is appended.
+	 *
+	 * @param apiUrl e.g. "http://hackathon.janelia.org/api"
+	 * @param nodeId UUID or unique UUID prefix of the node
+	 * @return
+	 * @throws IOException
+	 */
+	static public String fetchNodeVersion( final String apiUrl, final String nodeId ) throws IOException
+	{
+		final Info info = JsonHelper.fetch( apiUrl + "/repo/" + nodeId + "/info", Info.class );
+		if ( info.DAG != null && info.DAG.Nodes != null )
+			for ( final Node node : info.DAG.Nodes.values() )
+				if ( node.UUID != null && node.UUID.startsWith( nodeId ) )
+					return node.Locked ?
+							node.UUID :
+							node.UUID + "@" + ( node.Updated == null ? info.Updated : node.Updated );
+
+		return nodeId + "@" + info.Updated;
+	}
 }
@@ -9,6 +9,8 @@ import com.google.gson.JsonSyntaxException;
 import bdv.AbstractViewerSetupImgLoader;
 import bdv.img.SetCache;
 import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.CachePolicy;
+import bdv.img.cache.DiskBlockCache;
 import bdv.img.cache.VolatileCachedCellImg;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.labels.labelset.LabelMultisetType;
@@ -64,9 +66,54 @@ public class LabelblkMultisetSetupImageLoader
 			final String dataInstanceId,
 			final double[][] resolutions,
 			final DatasetKeyValue[] dvidStores ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		this( setupId, apiUrl, nodeId, dataInstanceId, resolutions, dvidStores, 1, null );
+	}
+
+	/**
+	 * @param blocksPerRequest
+	 *            number of full resolution blocks along x to request at once
+	 * @param diskCache
+	 *            persistent cache for full resolution blocks, may be null
+	 */
+	public LabelblkMultisetSetupImageLoader(
+			final int setupId,
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final double[][] resolutions,
+			final DatasetKeyValue[] dvidStores,
+			final int blocksPerRequest,
+			final DiskBlockCache diskCache ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		this( setupId, apiUrl, nodeId, dataInstanceId, resolutions, dvidStores, blocksPerRequest, diskCache, null, null );
+	}
+
+	/**
+	 * @param blocksPerRequest
+	 *            number of full resolution blocks along x to request at once
+	 * @param diskCache
+	 *            persistent cache for full resolution blocks, may be null
+	 * @param cachePolicy
+	 *            wraps the block loaders of all levels, may be null
+	 * @param cache
+	 *            the cell cache, may be null until set by {@link #setCache}
+	 */
+	public LabelblkMultisetSetupImageLoader(
+			final int setupId,
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final double[][] resolutions,
+			final DatasetKeyValue[] dvidStores,
+			final int blocksPerRequest,
+			final DiskBlockCache diskCache,
+			final CachePolicy cachePolicy,
+			final VolatileGlobalCellCache cache ) throws JsonSyntaxException, JsonIOException, IOException
 	{
 		super( LabelMultisetType.type, VolatileLabelMultisetType.type );
 		this.setupId = setupId;
+		this.cache = cache;
 
 		final LabelblkDataInstance dataInstance =
 				JsonHelper.fetch(
@@ -96,7 +143,13 @@ public class LabelblkMultisetSetupImageLoader
 
 		/* first loader is a labels64 source */
 		cellDimensions[ 0 ] = dataInstance.Extended.BlockSize;
-		loaders[ 0 ] = new LabelblkMultisetVolatileArrayLoader( apiUrl, nodeId, dataInstanceId, cellDimensions[ 0 ] );
+		loaders[ 0 ] = AbstractDvidSetupImageLoader.diskCached(
+				new LabelblkMultisetVolatileArrayLoader( apiUrl, nodeId, dataInstanceId, cellDimensions[ 0 ], blocksPerRequest ),
+				apiUrl,
+				nodeId,
+				dataInstanceId,
+				diskCache,
+				DiskBlockCache.labelMultisets );
 
 		/* subsequent loaders are key value stores */
 		for ( int i = 0; i < dvidStores.length; ++i ) {
@@ -104,6 +157,18 @@ public class LabelblkMultisetSetupImageLoader
 				new DvidLabelMultisetArrayLoader( dvidStores[ i ] );
 			cellDimensions[ i + 1 ] = cellDimensions[ 0 ];
 		}
+
+		for ( int level = 0; level < numMipmapLevels; ++level )
+			loaders[ level ] = CachePolicy.wrap( cachePolicy, loaders[ level ] );
+	}
+
+	/**
+	 * @param level
+	 * @return the loader of the cells of level
+	 */
+	public CacheArrayLoader< VolatileLabelMultisetArray > getArrayLoader( final int level )
+	{
+		return loaders[ level ];
 	}
 
 	@Override
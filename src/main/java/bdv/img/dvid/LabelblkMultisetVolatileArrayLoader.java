@@ -1,22 +1,29 @@
 package bdv.img.dvid;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import bdv.img.cache.CacheArrayLoader;
 import bdv.img.cache.EmptyArrayCreator;
-import bdv.labels.labelset.LabelMultisetEntry;
-import bdv.labels.labelset.LabelMultisetEntryList;
+import bdv.labels.labelset.LongMappedAccess;
 import bdv.labels.labelset.LongMappedAccessData;
+import bdv.labels.labelset.MappedAccessData;
+import bdv.labels.labelset.SingleLabelMultisetArrayBuilder;
 import bdv.labels.labelset.VolatileLabelMultisetArray;
-import gnu.trove.list.array.TLongArrayList;
+import bdv.util.http.Lz4;
+import bdv.util.http.PooledHttpClient;
 
 /**
  * Loads a full resolution label block from a DVID labels64 source where each
  * voxel is assigned to a single label, and converts them into a LabelMultiset
  * with one element per voxel.
+ *
+ * Optionally, blocks are requested in spans of multiple blocks along x from
+ * DVID's <code>/blocks</code> endpoint.  The blocks following the requested
+ * block are kept until they are requested themselves, which, for cells on
+ * screen, is typically right after.
  */
 public class LabelblkMultisetVolatileArrayLoader implements CacheArrayLoader< VolatileLabelMultisetArray >
 {
@@ -28,16 +35,73 @@ public class LabelblkMultisetVolatileArrayLoader implements CacheArrayLoader< Vo
 
 	private final String dataInstanceId;
 
+	private final int[] blockDimensions;
+
+	private final int blocksPerRequest;
+
+	/* blocks received with a span but not yet requested, bounded */
+	private final LinkedHashMap< String, byte[] > spanBlocks;
+
+	private final PooledHttpClient client = PooledHttpClient.getShared();
+
+	private MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory = LongMappedAccessData.factory;
+
+	/**
+	 * @param apiUrl
+	 * @param nodeId
+	 * @param dataInstanceId
+	 * @param blockDimensions
+	 * @param blocksPerRequest
+	 *            number of blocks along x to request at once from the
+	 *            <code>/blocks</code> endpoint, cells are requested
+	 *            individually through <code>/raw</code> if &lt;= 1
+	 */
 	public LabelblkMultisetVolatileArrayLoader(
 			final String apiUrl,
 			final String nodeId,
 			final String dataInstanceId,
-			final int[] blockDimensions )
+			final int[] blockDimensions,
+			final int blocksPerRequest )
 	{
 		theEmptyArray = new VolatileLabelMultisetArray( 1, false );
 		this.apiUrl = apiUrl;
 		this.nodeId = nodeId;
 		this.dataInstanceId = dataInstanceId;
+		this.blockDimensions = blockDimensions.clone();
+		this.blocksPerRequest = blocksPerRequest;
+
+		final int maxSpanBlocks = 4 * blocksPerRequest;
+		spanBlocks = new LinkedHashMap< String, byte[] >()
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry< String, byte[] > eldest )
+			{
+				return size() > maxSpanBlocks;
+			}
+		};
+	}
+
+	public LabelblkMultisetVolatileArrayLoader(
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final int[] blockDimensions )
+	{
+		this( apiUrl, nodeId, dataInstanceId, blockDimensions, 1 );
+	}
+
+	/**
+	 * Set the factory for the list storage of loaded arrays, e.g.
+	 * {@link LongMappedAccessData#offHeapFactory} to keep list data outside
+	 * of the Java heap.
+	 *
+	 * @param listDataFactory
+	 */
+	public void setListDataFactory( final MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory )
+	{
+		this.listDataFactory = listDataFactory;
 	}
 
 	// TODO: unused -- remove.
@@ -47,29 +111,76 @@ public class LabelblkMultisetVolatileArrayLoader implements CacheArrayLoader< Vo
 		return 8;
 	}
 
-	static private void readBlock(
+	private VolatileLabelMultisetArray readBlock(
 			final String urlString,
-			final int[] data,
-			final LongMappedAccessData listData ) throws IOException
+			final int numElements ) throws IOException
+	{
+		final byte[] bytes = new byte[ numElements * 8 ];
+		client.get( urlString, bytes );
+		return build( bytes, numElements );
+	}
+
+	/**
+	 * Request a span of blocks starting at the block that contains min, keep
+	 * the following blocks and return the requested block.  Blocks are LZ4
+	 * compressed unless their size matches the uncompressed size.  Blocks
+	 * that are not in the response are empty, i.e. label 0.
+	 *
+	 * @param min
+	 * @param numElements
+	 * @return
+	 * @throws IOException
+	 */
+	private byte[] readSpan(
+			final long[] min,
+			final int numElements ) throws IOException
 	{
-		final byte[] bytes = new byte[ data.length * 8 ];
-		final URL url = new URL( urlString );
-		final InputStream in = url.openStream();
+		final long x = min[ 0 ] / blockDimensions[ 0 ];
+		final long y = min[ 1 ] / blockDimensions[ 1 ];
+		final long z = min[ 2 ] / blockDimensions[ 2 ];
+		final String key = x + "_" + y + "_" + z;
 
-		int off = 0, l = 0;
-		do
+		synchronized ( spanBlocks )
 		{
-			l = in.read( bytes, off, bytes.length - off );
-			off += l;
+			final byte[] bytes = spanBlocks.remove( key );
+			if ( bytes != null )
+				return bytes;
 		}
-		while ( l > 0 && off < bytes.length );
-		in.close();
-
-		final TLongArrayList idAndOffsetList = new TLongArrayList();
-		final LabelMultisetEntryList list = new LabelMultisetEntryList( listData, 0 );
-		final LabelMultisetEntry entry = new LabelMultisetEntry( 0, 1 );
-		long nextListOffset = 0;
-A:		for ( int i = 0, j = -1; i < data.length; ++i )
+
+		final int numBytes = numElements * 8;
+		final byte[][] requested = new byte[ 1 ][];
+		client.getBlocks(
+				makeSpanUrl( key ),
+				( bx, by, bz, data, offset, length ) -> {
+					final byte[] bytes;
+					if ( length == numBytes )
+						bytes = Arrays.copyOfRange( data, offset, offset + length );
+					else
+					{
+						bytes = new byte[ numBytes ];
+						final int n = Lz4.decompress( data, offset, length, bytes, 0 );
+						if ( n != numBytes )
+							throw new IOException( "Block " + bx + "_" + by + "_" + bz + " has " + n + " instead of " + numBytes + " bytes." );
+					}
+					final String blockKey = bx + "_" + by + "_" + bz;
+					if ( blockKey.equals( key ) )
+						requested[ 0 ] = bytes;
+					else
+						synchronized ( spanBlocks )
+						{
+							spanBlocks.put( blockKey, bytes );
+						}
+				} );
+
+		return requested[ 0 ] == null ? new byte[ numBytes ] : requested[ 0 ];
+	}
+
+	static private VolatileLabelMultisetArray build(
+			final byte[] bytes,
+			final int numElements )
+	{
+		final SingleLabelMultisetArrayBuilder builder = new SingleLabelMultisetArrayBuilder( numElements, listDataFactory );
+		for ( int i = 0, j = -1; i < numElements; ++i )
 		{
 			final long id =
 					( 0xffl & bytes[ ++j ] ) |
@@ -80,26 +191,14 @@ A:		for ( int i = 0, j = -1; i < data.length; ++i )
 					( ( 0xffl & bytes[ ++j ] ) << 40 ) |
 					( ( 0xffl & bytes[ ++j ] ) << 48 ) |
 					( ( 0xffl & bytes[ ++j ] ) << 56 );
-
-			// does the list [id x 1] already exist?
-			for ( int k = 0; k < idAndOffsetList.size(); k += 2 )
-			{
-				if ( idAndOffsetList.getQuick( k ) == id )
-				{
-					final long offset = idAndOffsetList.getQuick( k + 1 );
-					data[ i ] = ( int ) offset;
-					continue A;
-				}
-			}
-
-			list.createListAt( listData, nextListOffset );
-			entry.setId( id );
-			list.add( entry );
-			idAndOffsetList.add( id );
-			idAndOffsetList.add( nextListOffset );
-			data[ i ] = ( int ) nextListOffset;
-			nextListOffset += list.getSizeInBytes();
+			builder.set( i, id );
 		}
+		return builder.build();
+	}
+
+	private String makeSpanUrl( final String blockKey )
+	{
+		return apiUrl + "/node/" + nodeId + "/" + dataInstanceId + "/blocks/" + blockKey + "/" + blocksPerRequest;
 	}
 
 	private String makeUrl(
@@ -113,14 +212,6 @@ A:		for ( int i = 0, j = -1; i < data.length; ++i )
 		buf.append( "/" );
 		buf.append( dataInstanceId );
 
-//		buf.append( "/blocks/" );
-//		buf.append( min[ 0 ] / dimensions[ 0 ] );
-//		buf.append( "_" );
-//		buf.append( min[ 1 ] / dimensions[ 1 ] );
-//		buf.append( "_" );
-//		buf.append( min[ 2 ] / dimensions[ 2 ] );
-//		buf.append( "/1" );
-
 		buf.append( "/raw/0_1_2/" );
 		buf.append( dimensions[ 0 ] );
 		buf.append( "_" );
@@ -153,13 +244,15 @@ A:		for ( int i = 0, j = -1; i < data.length; ++i )
 //				+ "   min = " + Util.printCoordinates( min ) + "\n"
 //				+ ")"
 //				);
-		final int[] data = new int[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
-		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
+		final int numElements = dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ];
 
 		try
 		{
+			if ( blocksPerRequest > 1 && Arrays.equals( dimensions, blockDimensions ) )
+				return build( readSpan( min, numElements ), numElements );
+
 			final String urlString = makeUrl( min, dimensions );
-			readBlock( urlString, data, listData );
+			return readBlock( urlString, numElements );
 		}
 		catch ( final IOException e )
 		{
@@ -170,8 +263,6 @@ A:		for ( int i = 0, j = -1; i < data.length; ++i )
 							Arrays.toString( dimensions ) );
 			return null;
 		}
-
-		return new VolatileLabelMultisetArray( data, listData, true );
 	}
 
 	@Override
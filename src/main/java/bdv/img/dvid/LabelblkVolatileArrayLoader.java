@@ -1,12 +1,11 @@
 package bdv.img.dvid;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
 import java.util.Arrays;
 
 import bdv.img.cache.CacheArrayLoader;
 import bdv.util.ColorStream;
+import bdv.util.http.PooledHttpClient;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
 
 /**
@@ -55,18 +54,7 @@ public class LabelblkVolatileArrayLoader implements CacheArrayLoader< VolatileIn
 			final int[] data ) throws IOException
 	{
 		final byte[] bytes = new byte[ data.length * 8 ];
-		final URL url = new URL( urlString );
-		final InputStream in = url.openStream();
-
-		int off = 0, l = 0;
-		do
-		{
-			l = in.read( bytes, off, bytes.length - off );
-			off += l;
-		}
-		while ( l > 0 && off < bytes.length );
-
-		in.close();
+		PooledHttpClient.getShared().get( urlString, bytes );
 
 		for ( int i = 0, j = -1; i < data.length; ++i )
 		{
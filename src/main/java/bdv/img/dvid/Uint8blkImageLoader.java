@@ -6,6 +6,9 @@ import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 
 import bdv.ViewerImgLoader;
+import bdv.img.cache.CachePolicy;
+import bdv.img.cache.DiskBlockCache;
+import bdv.img.cache.VolatileGlobalCellCache;
 
 /**
  * {@link ViewerImgLoader} for
@@ -32,4 +35,39 @@ public class Uint8blkImageLoader extends Uint8blkSetupImageLoader
 	{
 		super( apiUrl, nodeId, dataInstanceId, 0 );
 	}
+
+	/**
+	 * @param diskCache
+	 *            persistent cache for loaded blocks, may be null
+	 */
+	public Uint8blkImageLoader(
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final DiskBlockCache diskCache ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		super( apiUrl, nodeId, dataInstanceId, 0, diskCache );
+	}
+
+	/**
+	 * @param setupId
+	 *            must be unique among the setups that share cache
+	 * @param diskCache
+	 *            persistent cache for loaded blocks, may be null
+	 * @param cachePolicy
+	 *            wraps the block loader, may be null
+	 * @param cache
+	 *            the cell cache, may be replaced by {@link #setCache}
+	 */
+	public Uint8blkImageLoader(
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final int setupId,
+			final DiskBlockCache diskCache,
+			final CachePolicy cachePolicy,
+			final VolatileGlobalCellCache cache ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		super( apiUrl, nodeId, dataInstanceId, setupId, diskCache, cachePolicy, cache );
+	}
 }
@@ -6,6 +6,9 @@ import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 
 import bdv.ViewerSetupImgLoader;
+import bdv.img.cache.CachePolicy;
+import bdv.img.cache.DiskBlockCache;
+import bdv.img.cache.VolatileGlobalCellCache;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.type.volatiles.VolatileUnsignedByteType;
@@ -21,18 +24,30 @@ public class Uint8blkSetupImageLoader
 {
 	private Uint8blkSetupImageLoader(
 			final ConstructorParameters parameters,
-			final int setupId ) throws JsonSyntaxException, JsonIOException, IOException
+			final int setupId,
+			final DiskBlockCache diskCache,
+			final CachePolicy cachePolicy,
+			final VolatileGlobalCellCache cache ) throws JsonSyntaxException, JsonIOException, IOException
 	{
 		super(
 				setupId,
 				new UnsignedByteType(),
 				new VolatileUnsignedByteType(),
 				parameters,
-				new Uint8blkVolatileArrayLoader(
-						parameters.apiUrl,
-						parameters.nodeId,
-						parameters.dataInstanceId,
-						parameters.cellDimensions ) );
+				CachePolicy.wrap(
+						cachePolicy,
+						diskCached(
+								new Uint8blkVolatileArrayLoader(
+										parameters.apiUrl,
+										parameters.nodeId,
+										parameters.dataInstanceId,
+										parameters.cellDimensions ),
+								parameters.apiUrl,
+								parameters.nodeId,
+								parameters.dataInstanceId,
+								diskCache,
+								DiskBlockCache.bytes ) ),
+				cache );
 	}
 
 	/**
@@ -51,6 +66,40 @@ public class Uint8blkSetupImageLoader
 			final String dataInstanceId,
 			final int setupId ) throws JsonSyntaxException, JsonIOException, IOException
 	{
-		this( new ConstructorParameters( apiUrl, nodeId, dataInstanceId ), setupId );
+		this( apiUrl, nodeId, dataInstanceId, setupId, null );
+	}
+
+	/**
+	 * @param diskCache
+	 *            persistent cache for loaded blocks, may be null
+	 */
+	public Uint8blkSetupImageLoader(
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final int setupId,
+			final DiskBlockCache diskCache ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		this( apiUrl, nodeId, dataInstanceId, setupId, diskCache, null, new VolatileGlobalCellCache( 1, 10 ) );
+	}
+
+	/**
+	 * @param diskCache
+	 *            persistent cache for loaded blocks, may be null
+	 * @param cachePolicy
+	 *            wraps the block loader, may be null
+	 * @param cache
+	 *            the cell cache, may be replaced by {@link #setCache}
+	 */
+	public Uint8blkSetupImageLoader(
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final int setupId,
+			final DiskBlockCache diskCache,
+			final CachePolicy cachePolicy,
+			final VolatileGlobalCellCache cache ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		this( new ConstructorParameters( apiUrl, nodeId, dataInstanceId ), setupId, diskCache, cachePolicy, cache );
 	}
 }
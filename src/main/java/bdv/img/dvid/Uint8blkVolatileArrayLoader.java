@@ -1,11 +1,10 @@
 package bdv.img.dvid;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
 import java.util.Arrays;
 
 import bdv.img.cache.CacheArrayLoader;
+import bdv.util.http.PooledHttpClient;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
 
 /**
@@ -41,17 +40,7 @@ public class Uint8blkVolatileArrayLoader implements CacheArrayLoader< VolatileBy
 			final String urlString,
 			final byte[] data ) throws IOException
 	{
-			final URL url = new URL( urlString );
-			final InputStream in = url.openStream();
-			int off = 0, l = 0;
-			do
-			{
-				l = in.read( data, off, data.length - off );
-				off += l;
-			}
-			while ( l > 0 && off < data.length );
-
-			in.close();
+			PooledHttpClient.getShared().get( urlString, data );
 	}
 
 	private String makeUrl(
@@ -85,6 +74,7 @@ public class Uint8blkVolatileArrayLoader implements CacheArrayLoader< VolatileBy
 			final long[] min ) throws InterruptedException
 	{
 		final byte[] data = new byte[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		boolean isValid = true;
 
 		try
 		{
@@ -99,7 +89,8 @@ public class Uint8blkVolatileArrayLoader implements CacheArrayLoader< VolatileBy
 					Arrays.toString( min ) +
 					", dimensions = " +
 					Arrays.toString( dimensions ) );
+			isValid = false;
 		}
-		return new VolatileByteArray( data, true );
+		return new VolatileByteArray( data, isValid );
 	}
 }
@@ -4,6 +4,7 @@ import bdv.img.cache.CacheArrayLoader;
 import bdv.img.cache.EmptyArrayCreator;
 import bdv.labels.labelset.LongMappedAccess;
 import bdv.labels.labelset.LongMappedAccessData;
+import bdv.labels.labelset.MappedAccessData;
 import bdv.labels.labelset.VolatileLabelMultisetArray;
 import ch.systemsx.cisd.hdf5.IHDF5IntReader;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
@@ -22,6 +23,8 @@ abstract public class AbstractH5LabelMultisetArrayLoader implements CacheArrayLo
 
 	final protected String dataset;
 
+	protected MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory = LongMappedAccessData.factory;
+
 	public AbstractH5LabelMultisetArrayLoader(
 			final IHDF5Reader scaleReader,
 			final String dataset )
@@ -31,6 +34,18 @@ abstract public class AbstractH5LabelMultisetArrayLoader implements CacheArrayLo
 		this.dataset = dataset;
 	}
 
+	/**
+	 * Set the factory for the list storage of loaded arrays, e.g.
+	 * {@link LongMappedAccessData#offHeapFactory} to keep list data outside
+	 * of the Java heap.
+	 *
+	 * @param listDataFactory
+	 */
+	public void setListDataFactory( final MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory )
+	{
+		this.listDataFactory = listDataFactory;
+	}
+
 	abstract protected VolatileLabelMultisetArray loadArrayLevel0(
 			final int[] dimensions,
 			final long[] min ) throws InterruptedException;
@@ -51,7 +66,7 @@ abstract public class AbstractH5LabelMultisetArrayLoader implements CacheArrayLo
 
 		final int[] offsets = scaleReader.readMDArray( dataPath ).getAsFlatArray();
 		final int[] lists = scaleReader.readArray( listsPath );
-		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( lists.length * 4 );
+		final LongMappedAccessData listData = listDataFactory.createStorage( lists.length * 4 );
 		final LongMappedAccess access = listData.createAccess();
 		for ( int i = 0; i < lists.length; ++i )
 			access.putInt( lists[ i ], i * 4 );
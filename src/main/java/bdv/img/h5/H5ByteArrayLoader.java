@@ -4,7 +4,6 @@ import java.util.Arrays;
 
 import bdv.img.cache.CacheArrayLoader;
 import ch.systemsx.cisd.base.mdarray.MDByteArray;
-import ch.systemsx.cisd.hdf5.IHDF5ByteReader;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
 
@@ -16,18 +15,25 @@ import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
  */
 public class H5ByteArrayLoader implements CacheArrayLoader< VolatileByteArray >
 {
-	final private IHDF5ByteReader reader;
+	final private H5ReaderPool readers;
 
 	final private String dataset;
 
 	public H5ByteArrayLoader(
-			final IHDF5Reader reader,
+			final H5ReaderPool readers,
 			final String dataset )
 	{
-		this.reader = reader.uint8();
+		this.readers = readers;
 		this.dataset = dataset;
 	}
 
+	public H5ByteArrayLoader(
+			final IHDF5Reader reader,
+			final String dataset )
+	{
+		this( new H5ReaderPool( reader, 1 ), dataset );
+	}
+
 	@Override
 	public int getBytesPerElement()
 	{
@@ -44,10 +50,11 @@ public class H5ByteArrayLoader implements CacheArrayLoader< VolatileByteArray >
 			final long[] min ) throws InterruptedException
 	{
 		byte[] data = null;
-		final MDByteArray slice = reader.readMDArrayBlockWithOffset(
-				dataset,
-				new int[]{ dimensions[ 2 ], dimensions[ 1 ], dimensions[ 0 ] },
-				new long[]{ min[ 2 ], min[ 1 ], min[ 0 ] } );
+		final MDByteArray slice = readers.read(
+				r -> r.uint8().readMDArrayBlockWithOffset(
+						dataset,
+						new int[]{ dimensions[ 2 ], dimensions[ 1 ], dimensions[ 0 ] },
+						new long[]{ min[ 2 ], min[ 1 ], min[ 0 ] } ) );
 
 		data = slice.getAsFlatArray();
 
@@ -3,15 +3,10 @@ package bdv.img.h5;
 import java.util.Arrays;
 
 import bdv.img.cache.CacheArrayLoader;
-import bdv.labels.labelset.LabelMultisetEntry;
-import bdv.labels.labelset.LabelMultisetEntryList;
-import bdv.labels.labelset.LongMappedAccessData;
+import bdv.labels.labelset.SingleLabelMultisetArrayBuilder;
 import bdv.labels.labelset.VolatileLabelMultisetArray;
 import ch.systemsx.cisd.base.mdarray.MDIntArray;
-import ch.systemsx.cisd.hdf5.IHDF5IntReader;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
-import gnu.trove.impl.Constants;
-import gnu.trove.map.hash.TLongIntHashMap;
 
 /**
  * {@link CacheArrayLoader} for
@@ -21,15 +16,23 @@ import gnu.trove.map.hash.TLongIntHashMap;
  */
 public class H5IntLabelMultisetArrayLoader extends AbstractH5LabelMultisetArrayLoader
 {
-	final private IHDF5IntReader reader;
+	final private H5ReaderPool readers;
 
 	public H5IntLabelMultisetArrayLoader(
-			final IHDF5Reader reader,
+			final H5ReaderPool readers,
 			final IHDF5Reader scaleReader,
 			final String dataset )
 	{
 		super( scaleReader, dataset );
-		this.reader = reader.int32();
+		this.readers = readers;
+	}
+
+	public H5IntLabelMultisetArrayLoader(
+			final IHDF5Reader reader,
+			final IHDF5Reader scaleReader,
+			final String dataset )
+	{
+		this( new H5ReaderPool( reader, 1 ), scaleReader, dataset );
 	}
 
 	@Override
@@ -45,10 +48,11 @@ public class H5IntLabelMultisetArrayLoader extends AbstractH5LabelMultisetArrayL
 	{
 		int[] data = null;
 
-		final MDIntArray block = reader.readMDArrayBlockWithOffset(
-				dataset,
-				new int[]{ dimensions[ 2 ], dimensions[ 1 ], dimensions[ 0 ] },
-				new long[]{ min[ 2 ], min[ 1 ], min[ 0 ] } );
+		final MDIntArray block = readers.read(
+				r -> r.int32().readMDArrayBlockWithOffset(
+						dataset,
+						new int[]{ dimensions[ 2 ], dimensions[ 1 ], dimensions[ 0 ] },
+						new long[]{ min[ 2 ], min[ 1 ], min[ 0 ] } ) );
 
 		data = block.getAsFlatArray();
 
@@ -63,38 +67,10 @@ public class H5IntLabelMultisetArrayLoader extends AbstractH5LabelMultisetArrayL
 			data = new int[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
 		}
 
-		final int[] offsets = new int[ dimensions[ 2 ] * dimensions[ 1 ] * dimensions[ 0 ] ];
-		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
-		final LabelMultisetEntryList list = new LabelMultisetEntryList( listData, 0 );
-		final LabelMultisetEntry entry = new LabelMultisetEntry( 0, 1 );
-		int nextListOffset = 0;
-		final TLongIntHashMap idOffsetHash = new TLongIntHashMap(
-				Constants.DEFAULT_CAPACITY,
-				Constants.DEFAULT_LOAD_FACTOR,
-				-1,
-				-1);
-A:		for ( int i = 0; i < data.length; ++i )
-		{
-			final long id = data[ i ] & 0xffffffffL;
-
-			final int offset = idOffsetHash.get( id );
-			if ( offset == idOffsetHash.getNoEntryValue() )
-			{
-				list.createListAt( listData, nextListOffset );
-				entry.setId( id );
-				list.add( entry );
-				offsets[ i ] = nextListOffset;
-				idOffsetHash.put( id, nextListOffset );
-				nextListOffset += list.getSizeInBytes();
-			}
-			else
-			{
-				offsets[ i ] = offset;
-				continue A;
-			}
-		}
-//		System.out.println( listData.size() );
+		final SingleLabelMultisetArrayBuilder builder = new SingleLabelMultisetArrayBuilder( data.length, listDataFactory );
+		for ( int i = 0; i < data.length; ++i )
+			builder.set( i, data[ i ] & 0xffffffffL );
 
-		return new VolatileLabelMultisetArray( offsets, listData, true );
+		return builder.build();
 	}
 }
@@ -10,6 +10,9 @@ import bdv.img.SetCache;
 import bdv.img.cache.CacheArrayLoader;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.labels.labelset.LabelMultisetType;
+import bdv.labels.labelset.LongMappedAccess;
+import bdv.labels.labelset.LongMappedAccessData;
+import bdv.labels.labelset.MappedAccessData;
 import bdv.labels.labelset.VolatileLabelMultisetArray;
 import bdv.labels.labelset.VolatileLabelMultisetType;
 import ch.systemsx.cisd.hdf5.HDF5DataSetInformation;
@@ -26,26 +29,76 @@ public class H5LabelMultisetSetupImageLoader
 		extends AbstractCachedViewerSetupImgLoader< LabelMultisetType, VolatileLabelMultisetType, VolatileLabelMultisetArray >
 		implements ViewerImgLoader, SetCache
 {
-	static private CacheArrayLoader< VolatileLabelMultisetArray > typedLoader(
-			final IHDF5Reader reader,
+	/**
+	 * Create the {@link CacheArrayLoader} matching the data type of the
+	 * level 0 dataset that borrows readers from a pool.
+	 *
+	 * @param readers
+	 * @param scaleReader
+	 * @param dataset
+	 * @return
+	 */
+	static public CacheArrayLoader< VolatileLabelMultisetArray > typedLoader(
+			final H5ReaderPool readers,
 			final IHDF5Reader scaleReader,
 			final String dataset )
 	{
-		final HDF5DataSetInformation typeInfo = reader.object().getDataSetInformation( dataset );
+		final HDF5DataSetInformation typeInfo = readers.getReader().object().getDataSetInformation( dataset );
 		final Class< ? > cls = typeInfo.getTypeInformation().tryGetJavaType();
 //		System.out.println( typeInfo.getTypeInformation().tryGetJavaType().toString() );
 		if ( float.class == cls )
-			return new H5FloatLabelMultisetArrayLoader( reader, scaleReader, dataset );
+			return new H5FloatLabelMultisetArrayLoader( readers, scaleReader, dataset );
 		else if ( short.class == cls )
-			return new H5ShortLabelMultisetArrayLoader( reader, scaleReader, dataset );
+			return new H5ShortLabelMultisetArrayLoader( readers, scaleReader, dataset );
 		else if ( int.class == cls )
-			return new H5IntLabelMultisetArrayLoader( reader, scaleReader, dataset );
+			return new H5IntLabelMultisetArrayLoader( readers, scaleReader, dataset );
 		else if ( long.class == cls )
-			return new H5LongLabelMultisetArrayLoader( reader, scaleReader, dataset );
+			return new H5LongLabelMultisetArrayLoader( readers, scaleReader, dataset );
 		else
 			return null;
 	}
 
+	/**
+	 * Create the {@link CacheArrayLoader} matching the data type of the
+	 * level 0 dataset that borrows readers from a pool and stores list data
+	 * created by listDataFactory.
+	 *
+	 * @param readers
+	 * @param scaleReader
+	 * @param dataset
+	 * @param listDataFactory
+	 *            e.g. {@link LongMappedAccessData#offHeapFactory}
+	 * @return
+	 */
+	static public CacheArrayLoader< VolatileLabelMultisetArray > typedLoader(
+			final H5ReaderPool readers,
+			final IHDF5Reader scaleReader,
+			final String dataset,
+			final MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory )
+	{
+		final CacheArrayLoader< VolatileLabelMultisetArray > loader = typedLoader( readers, scaleReader, dataset );
+		if ( loader != null )
+			( ( AbstractH5LabelMultisetArrayLoader )loader ).setListDataFactory( listDataFactory );
+		return loader;
+	}
+
+	/**
+	 * Create the {@link CacheArrayLoader} matching the data type of the
+	 * level 0 dataset that shares one reader for all loads.
+	 *
+	 * @param reader
+	 * @param scaleReader
+	 * @param dataset
+	 * @return
+	 */
+	static public CacheArrayLoader< VolatileLabelMultisetArray > typedLoader(
+			final IHDF5Reader reader,
+			final IHDF5Reader scaleReader,
+			final String dataset )
+	{
+		return typedLoader( new H5ReaderPool( reader, 1 ), scaleReader, dataset );
+	}
+
 	static private long[][] readDimensions(
 			final IHDF5Reader reader,
 			final IHDF5Reader scaleReader,
@@ -152,6 +205,7 @@ public class H5LabelMultisetSetupImageLoader
 			final int[] cellDimension,
 			final double[] resolution,
 			final double[] offset,
+			final CacheArrayLoader< VolatileLabelMultisetArray > loader,
 			final VolatileGlobalCellCache cache ) throws IOException
 	{
 
@@ -161,11 +215,24 @@ public class H5LabelMultisetSetupImageLoader
 				readResolutions( reader, scaleReader, dataset, resolution ),
 				new LabelMultisetType(),
 				new VolatileLabelMultisetType(),
-				typedLoader( reader, scaleReader, dataset ),
+				loader,
 				cache );
 		this.offset = offset;
 	}
 
+	public H5LabelMultisetSetupImageLoader(
+			final IHDF5Reader reader,
+			final IHDF5Reader scaleReader,
+			final String dataset,
+			final int setupId,
+			final int[] cellDimension,
+			final double[] resolution,
+			final double[] offset,
+			final VolatileGlobalCellCache cache ) throws IOException
+	{
+		this( reader, scaleReader, dataset, setupId, cellDimension, resolution, offset, typedLoader( reader, scaleReader, dataset ), cache );
+	}
+
 	public H5LabelMultisetSetupImageLoader(
 			final IHDF5Reader reader,
 			final IHDF5Reader scaleReader,
@@ -177,6 +244,18 @@ public class H5LabelMultisetSetupImageLoader
 		this( reader, scaleReader, dataset, setupId, cellDimension, readResolution( reader, dataset ), readOffset( reader, dataset ), cache );
 	}
 
+	public H5LabelMultisetSetupImageLoader(
+			final IHDF5Reader reader,
+			final IHDF5Reader scaleReader,
+			final String dataset,
+			final int setupId,
+			final int[] cellDimension,
+			final CacheArrayLoader< VolatileLabelMultisetArray > loader,
+			final VolatileGlobalCellCache cache ) throws IOException
+	{
+		this( reader, scaleReader, dataset, setupId, cellDimension, readResolution( reader, dataset ), readOffset( reader, dataset ), loader, cache );
+	}
+
 	@Override
 	public void setCache( final VolatileGlobalCellCache cache )
 	{
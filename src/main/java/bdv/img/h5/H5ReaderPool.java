@@ -0,0 +1,147 @@
+package bdv.img.h5;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.IHDF5Reader;
+
+/**
+ * A pool of {@link IHDF5Reader IHDF5Readers} on the same file that lends
+ * each loading thread a reader of its own.  Readers are opened lazily up to
+ * the size of the pool, threads that find all readers in use wait for the
+ * next to be returned.
+ *
+ * jhdf5 serializes calls into the native library, so only one block is read
+ * from disk and decompressed at a time.  With one reader per thread, threads
+ * do not additionally queue on a shared reader's handles and the remaining
+ * work of a load (creating the MDArray, flattening it, building label
+ * multisets) runs concurrently with the next thread's read.
+ *
+ * A pool of size 1 shares its reader among all threads without lending it
+ * exclusively, which is how a single {@link IHDF5Reader} was used before.
+ */
+public class H5ReaderPool
+{
+	final protected File file;
+
+	final protected int size;
+
+	final protected IHDF5Reader first;
+
+	final protected LinkedBlockingQueue< IHDF5Reader > idle = new LinkedBlockingQueue<>();
+
+	final protected ArrayList< IHDF5Reader > readers = new ArrayList<>();
+
+	/**
+	 * @param reader
+	 *            the first reader of the pool, the file of which further
+	 *            readers are opened on
+	 * @param size
+	 *            maximum number of readers
+	 */
+	public H5ReaderPool( final IHDF5Reader reader, final int size )
+	{
+		this.file = reader.file().getFile();
+		this.size = Math.max( 1, size );
+		this.first = reader;
+		readers.add( reader );
+		idle.add( reader );
+	}
+
+	/**
+	 * The first reader.  jhdf5 readers are thread safe, so it can be used
+	 * for meta data queries without borrowing it.
+	 *
+	 * @return
+	 */
+	public IHDF5Reader getReader()
+	{
+		return first;
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Borrow a reader, opening a new one if all are in use and the pool is
+	 * not full.  Must be returned with {@link #release(IHDF5Reader)}.
+	 *
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public IHDF5Reader acquire() throws InterruptedException
+	{
+		if ( size == 1 )
+			return first;
+
+		IHDF5Reader reader = idle.poll();
+		if ( reader == null )
+		{
+			synchronized ( readers )
+			{
+				if ( readers.size() < size )
+				{
+					reader = HDF5Factory.openForReading( file );
+					readers.add( reader );
+				}
+			}
+			if ( reader == null )
+				reader = idle.take();
+		}
+		return reader;
+	}
+
+	public void release( final IHDF5Reader reader )
+	{
+		if ( size > 1 )
+			idle.add( reader );
+	}
+
+	/**
+	 * Apply a function to a borrowed reader and return it to the pool.
+	 *
+	 * @param read
+	 * @return the result of read
+	 * @throws InterruptedException
+	 */
+	public < T > T read( final Function< IHDF5Reader, T > read ) throws InterruptedException
+	{
+		final IHDF5Reader reader = acquire();
+		try
+		{
+			return read.apply( reader );
+		}
+		finally
+		{
+			release( reader );
+		}
+	}
+
+	/**
+	 * Close all readers that were opened by the pool.  The first reader
+	 * passed to the constructor is owned by the caller and stays open.
+	 */
+	public void close()
+	{
+		synchronized ( readers )
+		{
+			for ( final IHDF5Reader reader : readers )
+				if ( reader != first )
+					reader.close();
+			readers.clear();
+			readers.add( first );
+			idle.clear();
+			idle.add( first );
+		}
+	}
+}
@@ -5,7 +5,6 @@ import java.util.Arrays;
 import bdv.img.cache.CacheArrayLoader;
 import ch.systemsx.cisd.base.mdarray.MDShortArray;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
-import ch.systemsx.cisd.hdf5.IHDF5ShortReader;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
 
 /**
@@ -16,18 +15,25 @@ import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
  */
 public class H5ShortArrayLoader implements CacheArrayLoader< VolatileShortArray >
 {
-	final private IHDF5ShortReader reader;
+	final private H5ReaderPool readers;
 
 	final private String dataset;
 
 	public H5ShortArrayLoader(
-			final IHDF5Reader reader,
+			final H5ReaderPool readers,
 			final String dataset )
 	{
-		this.reader = reader.int16();
+		this.readers = readers;
 		this.dataset = dataset;
 	}
 
+	public H5ShortArrayLoader(
+			final IHDF5Reader reader,
+			final String dataset )
+	{
+		this( new H5ReaderPool( reader, 1 ), dataset );
+	}
+
 	@Override
 	public int getBytesPerElement()
 	{
@@ -44,10 +50,11 @@ public class H5ShortArrayLoader implements CacheArrayLoader< VolatileShortArray
 			final long[] min ) throws InterruptedException
 	{
 		short[] data = null;
-		final MDShortArray slice = reader.readMDArrayBlockWithOffset(
-				dataset,
-				new int[]{ dimensions[ 2 ], dimensions[ 1 ], dimensions[ 0 ] },
-				new long[]{ min[ 2 ], min[ 1 ], min[ 0 ] } );
+		final MDShortArray slice = readers.read(
+				r -> r.int16().readMDArrayBlockWithOffset(
+						dataset,
+						new int[]{ dimensions[ 2 ], dimensions[ 1 ], dimensions[ 0 ] },
+						new long[]{ min[ 2 ], min[ 1 ], min[ 0 ] } ) );
 
 		data = slice.getAsFlatArray();
 
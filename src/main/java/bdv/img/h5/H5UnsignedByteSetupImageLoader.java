@@ -2,6 +2,7 @@ package bdv.img.h5;
 
 import java.io.IOException;
 
+import bdv.img.cache.CacheArrayLoader;
 import bdv.img.cache.VolatileGlobalCellCache;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
@@ -53,4 +54,23 @@ public class H5UnsignedByteSetupImageLoader
 				new H5ByteArrayLoader( reader, dataset ),
 				cache );
 	}
+
+	public H5UnsignedByteSetupImageLoader(
+			final IHDF5Reader reader,
+			final String dataset,
+			final int setupId,
+			final int[] blockDimension,
+			final CacheArrayLoader< VolatileByteArray > loader,
+			final VolatileGlobalCellCache cache ) throws IOException
+	{
+		super(
+				reader,
+				dataset,
+				setupId,
+				blockDimension,
+				new UnsignedByteType(),
+				new VolatileUnsignedByteType(),
+				loader,
+				cache );
+	}
 }
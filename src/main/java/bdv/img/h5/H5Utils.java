@@ -3,12 +3,25 @@ package bdv.img.h5;
 import static bdv.img.hdf5.Util.reorder;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import bdv.bigcat.label.FragmentSegmentAssignment;
+import bdv.bigcat.util.SparseLongCanvas;
 import bdv.labels.labelset.Label;
 import bdv.labels.labelset.LabelMultiset;
 import bdv.labels.labelset.LabelMultisetType;
+import bdv.util.LongLongLutCodec;
 import ch.systemsx.cisd.base.mdarray.MDByteArray;
 import ch.systemsx.cisd.base.mdarray.MDDoubleArray;
 import ch.systemsx.cisd.base.mdarray.MDFloatArray;
@@ -33,12 +46,13 @@ import gnu.trove.TLongCollection;
 import gnu.trove.impl.Constants;
 import gnu.trove.iterator.TLongIterator;
 import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.set.hash.TLongHashSet;
 import net.imglib2.Dimensions;
+import net.imglib2.FinalDimensions;
+import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.converter.Converter;
-import net.imglib2.converter.Converters;
 import net.imglib2.img.cell.CellImg;
 import net.imglib2.img.cell.CellImgFactory;
 import net.imglib2.type.numeric.integer.LongType;
@@ -50,7 +64,7 @@ import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
 import net.imglib2.util.Util;
-import net.imglib2.view.RandomAccessiblePair;
+import net.imglib2.util.ValuePair;
 import net.imglib2.view.Views;
 
 /**
@@ -61,6 +75,24 @@ import net.imglib2.view.Views;
  */
 public class H5Utils
 {
+	/**
+	 * Computes blocks of a uint64 dataset, see
+	 * {@link H5Utils#saveUnsignedLongBlocks(LongBlockSource, long[], IHDF5Writer, String, int[], int)}.
+	 * Must be safe to call from multiple threads for different blocks.
+	 */
+	static public interface LongBlockSource
+	{
+		/**
+		 * @param min
+		 *            of the block in dataset coordinates
+		 * @param dimensions
+		 *            of the block
+		 * @param target
+		 *            flat block, x fastest
+		 */
+		public void fill( final long[] min, final long[] dimensions, final long[] target );
+	}
+
 	static public void cropCellDimensions(
 			final Dimensions sourceDimensions,
 			final long[] offset,
@@ -247,6 +279,8 @@ public class H5Utils
 
 	/**
 	 * Load an HDF5 uint64 dataset into a {@link CellImg} of {@link LongType}.
+	 * If the dataset was saved sparsely, cells that were not written are
+	 * {@link Label#TRANSPARENT} and not read.
 	 *
 	 * @param reader
 	 * @param dataset
@@ -264,20 +298,61 @@ public class H5Utils
 
 		final CellImg< LongType, ? > target = new CellImgFactory< LongType >( cellDimensions ).create( dimensions, new LongType() );
 
+		final String writtenCellsDataset = writtenCellsDataset( dataset );
+		final MDByteArray writtenCells;
+		final int[] writtenCellDimensions;
+		if ( reader.exists( writtenCellsDataset ) )
+		{
+			writtenCells = reader.uint8().readMDArray( writtenCellsDataset );
+			writtenCellDimensions = reorder( reader.int32().getArrayAttr( writtenCellsDataset, "cellDimensions" ) );
+		}
+		else
+		{
+			writtenCells = null;
+			writtenCellDimensions = null;
+		}
+		final ArrayList< Interval > unwrittenCells = new ArrayList<>();
+
 		final long[] offset = new long[ n ];
 		final long[] targetCellDimensions = new long[ n ];
 		for ( int d = 0; d < n; )
 		{
 			cropCellDimensions( target, offset, cellDimensions, targetCellDimensions );
 			final RandomAccessibleInterval< LongType > targetBlock = Views.offsetInterval( target, offset, targetCellDimensions );
-			final MDLongArray targetCell = uint64Reader.readMDArrayBlockWithOffset(
-					dataset,
-					Util.long2int( reorder( targetCellDimensions ) ),
-					reorder( offset ) );
 
-			int i = 0;
-			for ( final LongType t : Views.flatIterable( targetBlock ) )
-				t.set( targetCell.get( i++ ) );
+			final boolean anyWritten;
+			final FinalInterval blockInterval;
+			if ( writtenCells == null )
+			{
+				anyWritten = true;
+				blockInterval = null;
+			}
+			else
+			{
+				final long[] max = new long[ n ];
+				for ( int e = 0; e < n; ++e )
+					max[ e ] = offset[ e ] + targetCellDimensions[ e ] - 1;
+				blockInterval = new FinalInterval( offset, max );
+				unwrittenCells.clear();
+				anyWritten = unwrittenCells( blockInterval, dimensions, writtenCells, writtenCellDimensions, unwrittenCells );
+			}
+
+			if ( anyWritten )
+			{
+				final MDLongArray targetCell = uint64Reader.readMDArrayBlockWithOffset(
+						dataset,
+						Util.long2int( reorder( targetCellDimensions ) ),
+						reorder( offset ) );
+
+				int i = 0;
+				for ( final LongType t : Views.flatIterable( targetBlock ) )
+					t.set( targetCell.get( i++ ) );
+			}
+
+			if ( writtenCells != null )
+				for ( final Interval unwrittenCell : unwrittenCells )
+					for ( final LongType t : Views.interval( target, Intervals.intersect( blockInterval, unwrittenCell ) ) )
+						t.set( Label.TRANSPARENT );
 
 			for ( d = 0; d < n; ++d )
 			{
@@ -292,6 +367,144 @@ public class H5Utils
 		return target;
 	}
 
+	/**
+	 * Load an HDF5 uint64 dataset into a {@link SparseLongCanvas}.  Only cells
+	 * that have been written are read and only those that contain labels
+	 * other than {@link Label#TRANSPARENT} are kept in memory.
+	 *
+	 * @param reader
+	 * @param dataset
+	 * @param cellDimensions
+	 */
+	static public SparseLongCanvas loadSparseUnsignedLong(
+			final IHDF5Reader reader,
+			final String dataset,
+			final int[] cellDimensions )
+	{
+		final IHDF5LongReader uint64Reader = reader.uint64();
+
+		final long[] dimensions = reorder( reader.object().getDimensions( dataset ) );
+		final int n = dimensions.length;
+
+		final SparseLongCanvas target = new SparseLongCanvas( dimensions, cellDimensions );
+
+		final String writtenCellsDataset = writtenCellsDataset( dataset );
+		final MDByteArray writtenCells;
+		final int[] writtenCellDimensions;
+		if ( reader.exists( writtenCellsDataset ) )
+		{
+			writtenCells = reader.uint8().readMDArray( writtenCellsDataset );
+			writtenCellDimensions = reorder( reader.int32().getArrayAttr( writtenCellsDataset, "cellDimensions" ) );
+		}
+		else
+		{
+			writtenCells = null;
+			writtenCellDimensions = null;
+		}
+		final ArrayList< Interval > unwrittenCells = new ArrayList<>();
+
+		final long[] offset = new long[ n ];
+		final long[] max = new long[ n ];
+		final long[] targetCellDimensions = new long[ n ];
+		final long[] gridPosition = new long[ n ];
+		int cellSize = 1;
+		for ( int d = 0; d < n; ++d )
+			cellSize *= cellDimensions[ d ];
+
+		for ( int d = 0; d < n; )
+		{
+			cropCellDimensions( target, offset, cellDimensions, targetCellDimensions );
+			for ( int e = 0; e < n; ++e )
+			{
+				max[ e ] = offset[ e ] + targetCellDimensions[ e ] - 1;
+				gridPosition[ e ] = offset[ e ] / cellDimensions[ e ];
+			}
+			final FinalInterval blockInterval = new FinalInterval( offset, max );
+
+			final boolean anyWritten;
+			if ( writtenCells == null )
+				anyWritten = true;
+			else
+			{
+				unwrittenCells.clear();
+				anyWritten = unwrittenCells( blockInterval, dimensions, writtenCells, writtenCellDimensions, unwrittenCells );
+			}
+
+			if ( anyWritten )
+			{
+				final MDLongArray sourceCell = uint64Reader.readMDArrayBlockWithOffset(
+						dataset,
+						Util.long2int( reorder( targetCellDimensions ) ),
+						reorder( offset ) );
+
+				final long[] data = new long[ cellSize ];
+				Arrays.fill( data, Label.TRANSPARENT );
+				copyIntoCell( sourceCell.getAsFlatArray(), targetCellDimensions, data, cellDimensions );
+
+				final long cellIndex = target.cellIndex( gridPosition );
+				target.putCell( cellIndex, data );
+
+				if ( writtenCells != null )
+					for ( final Interval unwrittenCell : unwrittenCells )
+						for ( final LongType t : Views.interval( target, Intervals.intersect( blockInterval, unwrittenCell ) ) )
+							t.set( Label.TRANSPARENT );
+
+				boolean transparent = true;
+				for ( int i = 0; i < cellSize && transparent; ++i )
+					transparent = data[ i ] == Label.TRANSPARENT;
+
+				if ( transparent )
+					target.removeCell( cellIndex );
+			}
+
+			for ( d = 0; d < n; ++d )
+			{
+				offset[ d ] += cellDimensions[ d ];
+				if ( offset[ d ] < dimensions[ d ] )
+					break;
+				else
+					offset[ d ] = 0;
+			}
+		}
+
+		return target;
+	}
+
+	/**
+	 * Copy a flat block of blockDimensions into a flat cell of the larger
+	 * or equal cellDimensions, both x fastest.
+	 *
+	 * @param block
+	 * @param blockDimensions
+	 * @param cell
+	 * @param cellDimensions
+	 */
+	static protected void copyIntoCell(
+			final long[] block,
+			final long[] blockDimensions,
+			final long[] cell,
+			final int[] cellDimensions )
+	{
+		final int n = blockDimensions.length;
+		final int rowLength = ( int )blockDimensions[ 0 ];
+		final long[] position = new long[ n ];
+		for ( int j = 0; j < block.length; j += rowLength )
+		{
+			int i = 0;
+			for ( int d = n - 1; d > 0; --d )
+				i = ( i + ( int )position[ d ] ) * cellDimensions[ d - 1 ];
+			System.arraycopy( block, j, cell, i, rowLength );
+
+			for ( int d = 1; d < n; ++d )
+			{
+				if ( ++position[ d ] < blockDimensions[ d ] )
+					break;
+				else
+					position[ d ] = 0;
+			}
+		}
+	}
+
 	/**
 	 * Load an HDF5 uint64 dataset into a {@link CellImg} of {@link LongType}.
 	 *
@@ -906,6 +1119,48 @@ public class H5Utils
 				HDF5IntStorageFeatures.INT_AUTO_SCALING_DEFLATE );
 	}
 
+	/**
+	 * Set all cells of a sparsely saved HDF5 uint64 dataset that are flagged
+	 * as unwritten in its {@link #writtenCellsDataset(String) written cells
+	 * dataset} to fillValue.  The loaders of this class treat unwritten cells
+	 * as {@link Label#TRANSPARENT} without this, use it only to export a
+	 * dataset for readers that do not know the written cells dataset.
+	 *
+	 * @param writer
+	 * @param dataset
+	 * @param fillValue
+	 */
+	static public void fillUnwrittenCells(
+			final IHDF5Writer writer,
+			final String dataset,
+			final long fillValue )
+	{
+		final String writtenCellsDataset = writtenCellsDataset( dataset );
+		if ( !writer.exists( writtenCellsDataset ) )
+			return;
+
+		final long[] dimensions = reorder( writer.object().getDimensions( dataset ) );
+		final MDByteArray writtenCells = writer.uint8().readMDArray( writtenCellsDataset );
+		final int[] cellDimensions = reorder( writer.int32().getArrayAttr( writtenCellsDataset, "cellDimensions" ) );
+
+		final ArrayList< Interval > unwrittenCells = new ArrayList<>();
+		unwrittenCells( new FinalInterval( dimensions ), dimensions, writtenCells, cellDimensions, unwrittenCells );
+
+		final IHDF5LongWriter uint64Writer = writer.uint64();
+		for ( final Interval cell : unwrittenCells )
+			uint64Writer.writeMDArrayBlockWithOffset(
+					dataset,
+					filledCell( Intervals.dimensionsAsLongArray( cell ), fillValue ),
+					reorder( Intervals.minAsLongArray( cell ) ) );
+	}
+
+	static protected MDLongArray filledCell( final long[] cellDimensions, final long value )
+	{
+		final MDLongArray cell = new MDLongArray( reorder( cellDimensions ) );
+		Arrays.fill( cell.getAsFlatArray(), value );
+		return cell;
+	}
+
 
 	/**
 	 * Save a {@link RandomAccessibleInterval} of {@link LongType} into an HDF5
@@ -1001,6 +1256,291 @@ public class H5Utils
 		saveUnsignedLong( source, new File( filePath ), dataset, cellDimensions );
 	}
 
+	/**
+	 * Name of the uint8 dataset that flags which cells of a sparsely saved
+	 * uint64 dataset have been written.  Cells that have not been written
+	 * are {@link Label#TRANSPARENT}.
+	 *
+	 * @param dataset
+	 * @return
+	 */
+	static public String writtenCellsDataset( final String dataset )
+	{
+		return dataset + "_written_cells";
+	}
+
+	static protected long[] cellGridDimensions( final long[] dimensions, final int[] cellDimensions )
+	{
+		final long[] gridDimensions = new long[ dimensions.length ];
+		for ( int d = 0; d < dimensions.length; ++d )
+			gridDimensions[ d ] = ( dimensions[ d ] + cellDimensions[ d ] - 1 ) / cellDimensions[ d ];
+		return gridDimensions;
+	}
+
+	/**
+	 * Find the cells that intersect an interval and have not been written.
+	 *
+	 * @param interval
+	 * @param dimensions
+	 *            of the dataset
+	 * @param writtenCells
+	 * @param cellDimensions
+	 *            of writtenCells
+	 * @param unwrittenCells
+	 *            intervals of the unwritten cells are added to this list
+	 * @return true if any of the intersecting cells has been written
+	 */
+	static protected boolean unwrittenCells(
+			final Interval interval,
+			final long[] dimensions,
+			final MDByteArray writtenCells,
+			final int[] cellDimensions,
+			final List< Interval > unwrittenCells )
+	{
+		final int n = dimensions.length;
+		final long[] gridDimensions = cellGridDimensions( dimensions, cellDimensions );
+		final long[] gridMin = new long[ n ];
+		final long[] gridMax = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			gridMin[ d ] = interval.min( d ) / cellDimensions[ d ];
+			gridMax[ d ] = Math.min( gridDimensions[ d ] - 1, interval.max( d ) / cellDimensions[ d ] );
+		}
+
+		boolean anyWritten = false;
+		final long[] gridPosition = gridMin.clone();
+		final long[] cellMin = new long[ n ];
+		final long[] cellMax = new long[ n ];
+		for ( int d = 0; d < n; )
+		{
+			int i = 0;
+			for ( int e = n - 1; e >= 0; --e )
+				i = i * ( int )gridDimensions[ e ] + ( int )gridPosition[ e ];
+
+			if ( writtenCells.get( i ) == 0 )
+			{
+				for ( int e = 0; e < n; ++e )
+				{
+					cellMin[ e ] = gridPosition[ e ] * cellDimensions[ e ];
+					cellMax[ e ] = Math.min( dimensions[ e ] - 1, cellMin[ e ] + cellDimensions[ e ] - 1 );
+				}
+				unwrittenCells.add( new FinalInterval( cellMin, cellMax ) );
+			}
+			else
+				anyWritten = true;
+
+			for ( d = 0; d < n; ++d )
+			{
+				++gridPosition[ d ];
+				if ( gridPosition[ d ] <= gridMax[ d ] )
+					break;
+				else
+					gridPosition[ d ] = gridMin[ d ];
+			}
+		}
+		return anyWritten;
+	}
+
+	/**
+	 * Save those cells of a {@link RandomAccessibleInterval} of
+	 * {@link LongType} into an HDF5 uint64 dataset that intersect a
+	 * collection of touched intervals.  Cells that are entirely
+	 * {@link Label#TRANSPARENT} are flagged as unwritten in the
+	 * {@link #writtenCellsDataset(String) written cells dataset} and only
+	 * written if they had been written before.
+	 *
+	 * The dataset is recreated empty and all cells are saved if the dataset
+	 * or its written cells dataset do not exist, if the written cells dataset
+	 * was saved with different cell dimensions, or if touched is null.
+	 * Unwritten cells are not stored, see
+	 * {@link #fillUnwrittenCells(IHDF5Writer, String, long)} for readers
+	 * that do not know the written cells dataset.  For a
+	 * {@link SparseLongCanvas} of the same cell dimensions, cells that were
+	 * never painted are treated as transparent without being read.
+	 *
+	 * @param source source
+	 * @param writer
+	 * @param dataset
+	 * @param cellDimensions
+	 * @param touched
+	 */
+	static public void saveUnsignedLongCells(
+			final RandomAccessibleInterval< LongType > source,
+			final IHDF5Writer writer,
+			final String dataset,
+			final int[] cellDimensions,
+			final Collection< ? extends Interval > touched )
+	{
+		final String writtenCellsDataset = writtenCellsDataset( dataset );
+
+		final boolean saveAll =
+				touched == null ||
+				!writer.exists( dataset ) ||
+				!writer.exists( writtenCellsDataset ) ||
+				!Arrays.equals( cellDimensions, reorder( writer.int32().getArrayAttr( writtenCellsDataset, "cellDimensions" ) ) );
+
+		/* recreate to not leave stale cells from earlier saves, unwritten
+		 * cells are not stored and flagged in the written cells dataset */
+		if ( saveAll )
+			createUnsignedLong(
+					writer,
+					dataset,
+					writer.exists( dataset ) ? new FinalDimensions( reorder( writer.object().getDimensions( dataset ) ) ) : source,
+					cellDimensions );
+
+		final long[] dimensions = reorder( writer.object().getDimensions( dataset ) );
+		final int n = dimensions.length;
+		final long[] gridDimensions = cellGridDimensions( dimensions, cellDimensions );
+		final int numCells = ( int )Intervals.numElements( gridDimensions );
+
+		/* a sparse canvas with the same layout knows which cells were never written */
+		final SparseLongCanvas sparseSource;
+		if (
+				source instanceof SparseLongCanvas &&
+				Arrays.equals( dimensions, Intervals.dimensionsAsLongArray( source ) ) &&
+				Arrays.equals( cellDimensions, ( ( SparseLongCanvas )source ).getCellDimensions() ) )
+			sparseSource = ( SparseLongCanvas )source;
+		else
+			sparseSource = null;
+
+		final MDByteArray writtenCells;
+		final long[] cells;
+		if ( saveAll && sparseSource != null )
+		{
+			writtenCells = new MDByteArray( reorder( gridDimensions ) );
+			cells = sparseSource.cellIndices();
+			Arrays.sort( cells );
+		}
+		else if ( saveAll )
+		{
+			writtenCells = new MDByteArray( reorder( gridDimensions ) );
+			cells = new long[ numCells ];
+			for ( int i = 0; i < numCells; ++i )
+				cells[ i ] = i;
+		}
+		else
+		{
+			writtenCells = writer.uint8().readMDArray( writtenCellsDataset );
+			final TLongHashSet cellSet = new TLongHashSet();
+			final long[] gridMin = new long[ n ];
+			final long[] gridMax = new long[ n ];
+			final long[] gridPosition = new long[ n ];
+			for ( final Interval interval : touched )
+			{
+				boolean outside = false;
+				for ( int d = 0; d < n; ++d )
+				{
+					outside |= interval.max( d ) < 0 || interval.min( d ) >= dimensions[ d ];
+					gridMin[ d ] = Math.max( 0, interval.min( d ) ) / cellDimensions[ d ];
+					gridMax[ d ] = Math.min( dimensions[ d ] - 1, interval.max( d ) ) / cellDimensions[ d ];
+				}
+				if ( outside )
+					continue;
+
+				System.arraycopy( gridMin, 0, gridPosition, 0, n );
+				for ( int d = 0; d < n; )
+				{
+					long i = 0;
+					for ( int e = n - 1; e >= 0; --e )
+						i = i * gridDimensions[ e ] + gridPosition[ e ];
+					cellSet.add( i );
+
+					for ( d = 0; d < n; ++d )
+					{
+						++gridPosition[ d ];
+						if ( gridPosition[ d ] <= gridMax[ d ] )
+							break;
+						else
+							gridPosition[ d ] = gridMin[ d ];
+					}
+				}
+			}
+			cells = cellSet.toArray();
+			Arrays.sort( cells );
+		}
+
+		final IHDF5LongWriter uint64Writer = writer.uint64();
+		final long[] offset = new long[ n ];
+		final long[] sourceCellDimensions = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+			max[ d ] = dimensions[ d ] - 1;
+
+		int numWritten = 0;
+		for ( final long cell : cells )
+		{
+			long i = cell;
+			for ( int d = 0; d < n; ++d )
+			{
+				offset[ d ] = ( i % gridDimensions[ d ] ) * cellDimensions[ d ];
+				i /= gridDimensions[ d ];
+			}
+			cropCellDimensions( max, offset, cellDimensions, sourceCellDimensions );
+
+			/* a recreated dataset is transparent, otherwise overwrite cells that have been erased */
+			final boolean wasWritten = !saveAll && writtenCells.get( ( int )cell ) != 0;
+
+			final MDLongArray targetCell;
+			final boolean transparent;
+			if ( sparseSource != null && sparseSource.isImplicit( cell ) )
+			{
+				targetCell = wasWritten ? filledCell( sourceCellDimensions, Label.TRANSPARENT ) : null;
+				transparent = true;
+			}
+			else
+			{
+				final RandomAccessibleInterval< LongType > sourceBlock = Views.offsetInterval( source, offset, sourceCellDimensions );
+				targetCell = new MDLongArray( reorder( sourceCellDimensions ) );
+				boolean allTransparent = true;
+				int j = 0;
+				for ( final LongType t : Views.flatIterable( sourceBlock ) )
+				{
+					final long value = t.get();
+					allTransparent &= value == Label.TRANSPARENT;
+					targetCell.set( value, j++ );
+				}
+				transparent = allTransparent;
+			}
+
+			if ( !transparent || wasWritten )
+			{
+				uint64Writer.writeMDArrayBlockWithOffset( dataset, targetCell, reorder( offset ) );
+				++numWritten;
+			}
+			writtenCells.set( transparent ? ( byte )0 : ( byte )1, ( int )cell );
+		}
+
+		writer.uint8().writeMDArray( writtenCellsDataset, writtenCells );
+		writer.int32().setArrayAttr( writtenCellsDataset, "cellDimensions", reorder( cellDimensions ) );
+
+		System.out.println( "  wrote " + numWritten + " of " + cells.length + " touched cells (" + numCells + " total)" );
+	}
+
+	/**
+	 * Save those cells of a {@link RandomAccessibleInterval} of
+	 * {@link LongType} into an HDF5 uint64 dataset that intersect a
+	 * collection of touched intervals.
+	 *
+	 * @see #saveUnsignedLongCells(RandomAccessibleInterval, IHDF5Writer, String, int[], Collection)
+	 *
+	 * @param source
+	 * @param file
+	 * @param dataset
+	 * @param cellDimensions
+	 * @param touched
+	 */
+	static public void saveUnsignedLongCells(
+			final RandomAccessibleInterval< LongType > source,
+			final File file,
+			final String dataset,
+			final int[] cellDimensions,
+			final Collection< ? extends Interval > touched )
+	{
+		final IHDF5Writer writer = HDF5Factory.open( file );
+		saveUnsignedLongCells( source, writer, dataset, cellDimensions, touched );
+		writer.close();
+	}
+
 	/**
 	 * Create anHDF5 int64 dataset.
 	 *
@@ -1126,6 +1666,126 @@ public class H5Utils
 
 
 
+	/**
+	 * Save blocks computed by a {@link LongBlockSource} into an HDF5 uint64
+	 * dataset.  Blocks are aligned with the chunks of the dataset and
+	 * computed in parallel, they are written by the calling thread as they
+	 * complete.  At most 2 * numThreads blocks are held in memory.
+	 *
+	 * @param source
+	 * @param dimensions
+	 *            of the dataset if created new
+	 * @param writer
+	 * @param dataset
+	 * @param cellDimensions
+	 *            chunk dimensions
+	 * @param numThreads
+	 */
+	static public void saveUnsignedLongBlocks(
+			final LongBlockSource source,
+			final long[] dimensions,
+			final IHDF5Writer writer,
+			final String dataset,
+			final int[] cellDimensions,
+			final int numThreads )
+	{
+		if ( !writer.exists( dataset ) )
+			createUnsignedLong( writer, dataset, new FinalDimensions( dimensions ), cellDimensions );
+
+		final long[] datasetDimensions = reorder( writer.object().getDimensions( dataset ) );
+		final int n = datasetDimensions.length;
+		final long[] max = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+			max[ d ] = Math.min( dimensions[ d ], datasetDimensions[ d ] ) - 1;
+
+		final IHDF5LongWriter uint64Writer = writer.uint64();
+
+		final ExecutorService executor = Executors.newFixedThreadPool( numThreads );
+		final ExecutorCompletionService< Pair< long[], MDLongArray > > completionService = new ExecutorCompletionService<>( executor );
+		final int maxPending = 2 * numThreads;
+		int numPending = 0;
+		try
+		{
+			final long[] offset = new long[ n ];
+			for ( int d = 0; d < n; )
+			{
+				final long[] blockMin = offset.clone();
+				final long[] blockDimensions = new long[ n ];
+				cropCellDimensions( max, blockMin, cellDimensions, blockDimensions );
+				completionService.submit( () -> {
+					final long[] block = new long[ ( int )Intervals.numElements( blockDimensions ) ];
+					source.fill( blockMin, blockDimensions, block );
+					return new ValuePair<>( blockMin, new MDLongArray( block, reorder( blockDimensions ) ) );
+				} );
+				++numPending;
+
+				while ( numPending >= maxPending )
+				{
+					writeBlock( uint64Writer, dataset, completionService.take().get() );
+					--numPending;
+				}
+
+				for ( d = 0; d < n; ++d )
+				{
+					offset[ d ] += cellDimensions[ d ];
+					if ( offset[ d ] <= max[ d ] )
+						break;
+					else
+						offset[ d ] = 0;
+				}
+			}
+
+			for ( ; numPending > 0; --numPending )
+				writeBlock( uint64Writer, dataset, completionService.take().get() );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	static protected void writeBlock(
+			final IHDF5LongWriter uint64Writer,
+			final String dataset,
+			final Pair< long[], MDLongArray > block )
+	{
+		uint64Writer.writeMDArrayBlockWithOffset( dataset, block.getB(), reorder( block.getA() ) );
+	}
+
+	/**
+	 * Save blocks computed by a {@link LongBlockSource} into an HDF5 uint64
+	 * dataset.
+	 *
+	 * @see #saveUnsignedLongBlocks(LongBlockSource, long[], IHDF5Writer, String, int[], int)
+	 */
+	static public void saveUnsignedLongBlocks(
+			final LongBlockSource source,
+			final long[] dimensions,
+			final File file,
+			final String dataset,
+			final int[] cellDimensions,
+			final int numThreads )
+	{
+		final IHDF5Writer writer = HDF5Factory.open( file );
+		try
+		{
+			saveUnsignedLongBlocks( source, dimensions, writer, dataset, cellDimensions, numThreads );
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
 	/**
 	 * Save the combination of a single element {@link LabelMultiset} source
 	 * and a {@link LongType} overlay with transparent pixels into an HDF5
@@ -1149,35 +1809,13 @@ public class H5Utils
 				labelMultisetSource.numDimensions() == labelSource.numDimensions() &&
 				labelSource.numDimensions() == interval.numDimensions() : "input dimensions do not match";
 
-		final RandomAccessiblePair< LabelMultisetType, LongType > pair = new RandomAccessiblePair<>( labelMultisetSource, labelSource );
-		final RandomAccessibleInterval< Pair< LabelMultisetType, LongType > > pairInterval = Views.offsetInterval( pair, interval );
-		final Converter< Pair< LabelMultisetType, LongType >, LongType > converter =
-				new Converter< Pair< LabelMultisetType, LongType >, LongType >()
-				{
-					@Override
-					public void convert(
-							final Pair< LabelMultisetType, LongType > input,
-							final LongType output )
-					{
-						final long inputB = input.getB().get();
-						if ( inputB == Label.TRANSPARENT )
-						{
-							output.set( input.getA().entrySet().iterator().next().getElement().id() );
-						}
-						else
-						{
-							output.set( inputB );
-						}
-					}
-				};
-
-		final RandomAccessibleInterval< LongType > source =
-				Converters.convert(
-						pairInterval,
-						converter,
-						new LongType() );
-
-		saveUnsignedLong( source, file, dataset, cellDimensions );
+		saveUnsignedLongBlocks(
+				new LabelMultisetLongPairBlockSource( labelMultisetSource, labelSource, interval, null ),
+				Intervals.dimensionsAsLongArray( interval ),
+				file,
+				dataset,
+				cellDimensions,
+				Runtime.getRuntime().availableProcessors() );
 	}
 
 	/**
@@ -1206,39 +1844,19 @@ public class H5Utils
 				labelMultisetSource.numDimensions() == labelSource.numDimensions() &&
 				labelSource.numDimensions() == interval.numDimensions() : "input dimensions do not match";
 
-		final RandomAccessiblePair< LabelMultisetType, LongType > pair = new RandomAccessiblePair<>( labelMultisetSource, labelSource );
-		final RandomAccessibleInterval< Pair< LabelMultisetType, LongType > > pairInterval = Views.offsetInterval( pair, interval );
-		final Converter< Pair< LabelMultisetType, LongType >, LongType > converter =
-				new Converter< Pair< LabelMultisetType, LongType >, LongType >()
-				{
-					@Override
-					public void convert(
-							final Pair< LabelMultisetType, LongType > input,
-							final LongType output )
-					{
-						final long inputB = input.getB().get();
-						if ( inputB == Label.TRANSPARENT )
-						{
-							output.set( assignment.getSegment( input.getA().entrySet().iterator().next().getElement().id() ) );
-						}
-						else
-						{
-							output.set( assignment.getSegment( inputB ) );
-						}
-					}
-				};
-
-		final RandomAccessibleInterval< LongType > source =
-				Converters.convert(
-						pairInterval,
-						converter,
-						new LongType() );
-
-		saveUnsignedLong( source, file, dataset, cellDimensions );
+		saveUnsignedLongBlocks(
+				new LabelMultisetLongPairBlockSource( labelMultisetSource, labelSource, interval, assignment.getLut() ),
+				Intervals.dimensionsAsLongArray( interval ),
+				file,
+				dataset,
+				cellDimensions,
+				Runtime.getRuntime().availableProcessors() );
 	}
 
 	/**
-	 * Load a long to long lookup table from an HDF5 dataset
+	 * Load a long to long lookup table from an HDF5 dataset, either a 2xN
+	 * uint64 dataset or a binary uint8 dataset as written by
+	 * {@link #saveBinaryLongLongLut(TLongLongHashMap, IHDF5Writer, String, int)}.
 	 *
 	 * @param reader
 	 * @param dataset
@@ -1255,6 +1873,8 @@ public class H5Utils
 			return null;
 
 		final long[] dimensions = reader.object().getDimensions( dataset );
+		if ( dimensions.length == 1 )
+			return loadBinaryLongLongLut( reader, dataset, blockSize );
 		if ( !( dimensions.length == 2 && dimensions[ 0 ] == 2 ) )
 		{
 			System.err.println( "LUT is not a lookup table, dimensions = " + Arrays.toString( dimensions ) );
@@ -1263,8 +1883,9 @@ public class H5Utils
 
 		final long size = dimensions[ 1 ];
 
+		/* sized once for all entries, no rehashing while loading */
 		final TLongLongHashMap lut = new TLongLongHashMap(
-				Constants.DEFAULT_CAPACITY,
+				( int )Math.min( size, Integer.MAX_VALUE >> 1 ),
 				Constants.DEFAULT_LOAD_FACTOR,
 				Label.TRANSPARENT,
 				Label.TRANSPARENT );
@@ -1284,6 +1905,127 @@ public class H5Utils
 		return lut;
 	}
 
+	/**
+	 * Reads an HDF5 uint8 dataset block by block.
+	 */
+	static protected class ByteDatasetChannel implements ReadableByteChannel
+	{
+		final protected IHDF5ByteReader uint8Reader;
+		final protected String dataset;
+		final protected int blockSize;
+		final protected long size;
+		protected long offset = 0;
+		protected boolean open = true;
+
+		public ByteDatasetChannel( final IHDF5Reader reader, final String dataset, final int blockSize )
+		{
+			uint8Reader = reader.uint8();
+			this.dataset = dataset;
+			this.blockSize = blockSize;
+			size = reader.object().getDimensions( dataset )[ 0 ];
+		}
+
+		@Override
+		public int read( final ByteBuffer dst )
+		{
+			if ( offset >= size )
+				return -1;
+
+			final int n = ( int )Math.min( Math.min( blockSize, dst.remaining() ), size - offset );
+			dst.put( uint8Reader.readArrayBlockWithOffset( dataset, n, offset ) );
+			offset += n;
+			return n;
+		}
+
+		@Override
+		public boolean isOpen()
+		{
+			return open;
+		}
+
+		@Override
+		public void close()
+		{
+			open = false;
+		}
+	}
+
+	/**
+	 * Appends to an HDF5 uint8 dataset block by block.
+	 */
+	static protected class ByteDatasetWriterChannel implements WritableByteChannel
+	{
+		final protected IHDF5ByteWriter uint8Writer;
+		final protected String dataset;
+		protected long offset = 0;
+		protected boolean open = true;
+
+		public ByteDatasetWriterChannel( final IHDF5Writer writer, final String dataset )
+		{
+			uint8Writer = writer.uint8();
+			this.dataset = dataset;
+		}
+
+		@Override
+		public int write( final ByteBuffer src )
+		{
+			final int n = src.remaining();
+			final byte[] block = new byte[ n ];
+			src.get( block );
+			uint8Writer.writeArrayBlockWithOffset( dataset, block, n, offset );
+			offset += n;
+			return n;
+		}
+
+		@Override
+		public boolean isOpen()
+		{
+			return open;
+		}
+
+		@Override
+		public void close()
+		{
+			open = false;
+		}
+	}
+
+	/**
+	 * Load a long to long lookup table from an HDF5 uint8 dataset in the
+	 * binary format of {@link LongLongLutCodec}.
+	 *
+	 * @param reader
+	 * @param dataset
+	 * @param blockSize
+	 *            bytes per read
+	 */
+	static public TLongLongHashMap loadBinaryLongLongLut(
+			final IHDF5Reader reader,
+			final String dataset,
+			final int blockSize )
+	{
+		if ( !reader.exists( dataset ) )
+			return null;
+
+		final TLongLongHashMap lut = new TLongLongHashMap(
+				Constants.DEFAULT_CAPACITY,
+				Constants.DEFAULT_LOAD_FACTOR,
+				Label.TRANSPARENT,
+				Label.TRANSPARENT );
+
+		try
+		{
+			LongLongLutCodec.read( new ByteDatasetChannel( reader, dataset, Math.max( blockSize, 1 << 16 ) ), lut );
+		}
+		catch ( final IOException e )
+		{
+			System.err.println( "Could not read binary LUT " + dataset + ": " + e.getMessage() );
+			return null;
+		}
+
+		return lut;
+	}
+
 	/**
 	 * Load a long to long lookup table from an HDF5 dataset.
 	 *
@@ -1335,6 +2077,11 @@ public class H5Utils
 			final int blockSize )
 	{
 		final IHDF5LongWriter uint64Writer = writer.uint64();
+
+		/* replace binary LUTs */
+		if ( writer.exists( dataset ) && writer.object().getDimensions( dataset ).length != 2 )
+			writer.delete( dataset );
+
 		if ( !writer.exists( dataset ) )
 			uint64Writer.createMDArray(
 					dataset,
@@ -1396,6 +2143,58 @@ public class H5Utils
 	}
 
 
+	/**
+	 * Save a long to long lookup table into an HDF5 uint8 dataset in the
+	 * binary format of {@link LongLongLutCodec}.  The table is streamed
+	 * into the dataset, an existing dataset is replaced.
+	 *
+	 * @param lut
+	 * @param writer
+	 * @param dataset
+	 * @param blockSize
+	 *            chunk size in bytes
+	 */
+	static public void saveBinaryLongLongLut(
+			final TLongLongHashMap lut,
+			final IHDF5Writer writer,
+			final String dataset,
+			final int blockSize )
+	{
+		if ( writer.exists( dataset ) )
+			writer.delete( dataset );
+		writer.uint8().createArray( dataset, 0, blockSize, HDF5IntStorageFeatures.INT_DEFLATE );
+
+		try
+		{
+			LongLongLutCodec.write( lut, new ByteDatasetWriterChannel( writer, dataset ) );
+		}
+		catch ( final IOException e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
+
+	/**
+	 * Save a long to long lookup table into an HDF5 uint8 dataset in the
+	 * binary format of {@link LongLongLutCodec}.
+	 *
+	 * @param lut
+	 * @param filePath
+	 * @param dataset
+	 * @param blockSize
+	 *            chunk size in bytes
+	 */
+	static public void saveBinaryLongLongLut(
+			final TLongLongHashMap lut,
+			final String filePath,
+			final String dataset,
+			final int blockSize )
+	{
+		final IHDF5Writer writer = HDF5Factory.open( filePath );
+		saveBinaryLongLongLut( lut, writer, dataset, blockSize );
+		writer.close();
+	}
+
 	/**
 	 * Load a long collection from an HDF5 dataset
 	 *
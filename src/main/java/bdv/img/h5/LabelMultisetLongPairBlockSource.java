@@ -0,0 +1,102 @@
+package bdv.img.h5;
+
+import bdv.bigcat.util.SparseLongCanvas;
+import bdv.labels.labelset.Label;
+import bdv.labels.labelset.LabelMultisetType;
+import gnu.trove.map.hash.TLongLongHashMap;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.view.Views;
+
+/**
+ * Computes blocks of the combination of a single element
+ * {@link LabelMultisetType} background and a {@link LongType} overlay with
+ * {@link Label#TRANSPARENT transparent} pixels, optionally mapped through a
+ * fragment to segment lookup table.
+ *
+ * The lookup table is a private snapshot such that blocks can be computed
+ * in parallel without synchronizing on the assignment.  Consecutive pixels
+ * of the same fragment are looked up once, and blocks of a
+ * {@link SparseLongCanvas} overlay that were never painted are not read.
+ */
+public class LabelMultisetLongPairBlockSource implements H5Utils.LongBlockSource
+{
+	final protected RandomAccessible< LabelMultisetType > labelMultisetSource;
+
+	final protected RandomAccessible< LongType > labelSource;
+
+	final protected long[] offset;
+
+	/* null for no assignment */
+	final protected TLongLongHashMap lut;
+
+	/**
+	 * @param labelMultisetSource
+	 *            the background
+	 * @param labelSource
+	 *            the overlay
+	 * @param interval
+	 *            the interval to be saved, its min is the dataset origin
+	 * @param lut
+	 *            fragment to segment lookup table snapshot, fragments
+	 *            without entry map to themselves, no mapping if null
+	 */
+	public LabelMultisetLongPairBlockSource(
+			final RandomAccessible< LabelMultisetType > labelMultisetSource,
+			final RandomAccessible< LongType > labelSource,
+			final Interval interval,
+			final TLongLongHashMap lut )
+	{
+		this.labelMultisetSource = labelMultisetSource;
+		this.labelSource = labelSource;
+		this.lut = lut;
+		offset = new long[ interval.numDimensions() ];
+		interval.min( offset );
+	}
+
+	@Override
+	public void fill( final long[] min, final long[] dimensions, final long[] target )
+	{
+		final int n = offset.length;
+		final long[] blockMin = new long[ n ];
+		final long[] blockMax = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			blockMin[ d ] = offset[ d ] + min[ d ];
+			blockMax[ d ] = blockMin[ d ] + dimensions[ d ] - 1;
+		}
+		final FinalInterval block = new FinalInterval( blockMin, blockMax );
+
+		final Cursor< LabelMultisetType > labelMultisetCursor = Views.flatIterable( Views.interval( labelMultisetSource, block ) ).cursor();
+		final Cursor< LongType > labelCursor =
+				labelSource instanceof SparseLongCanvas && ( ( SparseLongCanvas )labelSource ).isImplicit( block ) ?
+						null :
+						Views.flatIterable( Views.interval( labelSource, block ) ).cursor();
+
+		final long noEntryValue = lut == null ? 0 : lut.getNoEntryValue();
+		long lastFragment = Label.INVALID;
+		long lastSegment = Label.INVALID;
+		for ( int i = 0; i < target.length; ++i )
+		{
+			final LabelMultisetType labelMultiset = labelMultisetCursor.next();
+			final long label = labelCursor == null ? Label.TRANSPARENT : labelCursor.next().get();
+			final long fragment = label == Label.TRANSPARENT ? labelMultiset.firstId() : label;
+
+			if ( lut == null )
+				target[ i ] = fragment;
+			else
+			{
+				if ( fragment != lastFragment )
+				{
+					final long segment = lut.get( fragment );
+					lastFragment = fragment;
+					lastSegment = segment == noEntryValue ? fragment : segment;
+				}
+				target[ i ] = lastSegment;
+			}
+		}
+	}
+}
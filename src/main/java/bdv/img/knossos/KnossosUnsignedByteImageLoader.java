@@ -2,6 +2,9 @@ package bdv.img.knossos;
 
 import java.io.IOException;
 
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.DiskBlockCache;
+import bdv.img.cache.DiskCacheArrayLoader;
 import bdv.img.cache.VolatileGlobalCellCache;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
@@ -53,20 +56,54 @@ public class KnossosUnsignedByteImageLoader extends AbstractKnossosImageLoader<
 			final KnossosConfig config,
 			final String urlFormat,
 			final VolatileGlobalCellCache cache )
+	{
+		this( config, urlFormat, cache, null );
+	}
+
+	/**
+	 * @param diskCache
+	 *            persistent cache for loaded blocks, may be null
+	 */
+	public KnossosUnsignedByteImageLoader(
+			final KnossosConfig config,
+			final String urlFormat,
+			final VolatileGlobalCellCache cache,
+			final DiskBlockCache diskCache )
 	{
 		super(
 				config,
 				urlFormat,
 				new UnsignedByteType(),
 				new VolatileUnsignedByteType(),
-				new KnossosUnsignedByteVolatileArrayLoader(
-						config.baseUrl,
+				diskCached(
+						new KnossosUnsignedByteVolatileArrayLoader(
+								config.baseUrl,
+								urlFormat,
+								config.experimentName,
+								config.format ),
+						config,
 						urlFormat,
-						config.experimentName,
-						config.format ),
+						diskCache ),
 				cache );
 	}
 
+	static private CacheArrayLoader< VolatileByteArray > diskCached(
+			final CacheArrayLoader< VolatileByteArray > loader,
+			final KnossosConfig config,
+			final String urlFormat,
+			final DiskBlockCache diskCache )
+	{
+		if ( diskCache == null )
+			return loader;
+
+		/* KNOSSOS datasets are not versioned */
+		return new DiskCacheArrayLoader<>(
+				loader,
+				diskCache,
+				DiskBlockCache.namespace( config.baseUrl, urlFormat, config.experimentName, config.format ),
+				DiskBlockCache.bytes );
+	}
+
 
 	public KnossosUnsignedByteImageLoader(
 			final String configUrl,
@@ -59,6 +59,7 @@ public class KnossosUnsignedByteVolatileArrayLoader implements CacheArrayLoader<
 		System.out.println( url );
 
 		byte[] data;
+		boolean isValid = true;
 
 		try
 		{
@@ -77,8 +78,9 @@ public class KnossosUnsignedByteVolatileArrayLoader implements CacheArrayLoader<
 		{
 			data = new byte[ 128 * 128 * 128 ];
 			System.out.println( "failed loading x=" + min[ 0 ] + " y=" + min[ 1 ] + " z=" + min[ 2 ] + " url(" + url.toString() + ")" );
+			isValid = false;
 		}
 
-		return new VolatileByteArray( data, true );
+		return new VolatileByteArray( data, isValid );
 	}
 }
@@ -1,6 +1,8 @@
 package bdv.labels.labelset;
 
 import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.security.AccessController;
 import java.security.PrivilegedExceptionAction;
 
@@ -93,6 +95,73 @@ public class ByteUtils
 		UNSAFE.copyMemory( srcArray, LONG_ARRAY_OFFSET + srcOffset, dstArray, LONG_ARRAY_OFFSET + dstOffset, size );
 	}
 
+	public static void copyBytes( final byte[] srcArray, final long srcOffset, final long[] dstArray, final long dstOffset, final long size )
+	{
+		UNSAFE.copyMemory( srcArray, BYTE_ARRAY_OFFSET + srcOffset, dstArray, LONG_ARRAY_OFFSET + dstOffset, size );
+	}
+
+	public static void copyBytes( final long[] srcArray, final long srcOffset, final byte[] dstArray, final long dstOffset, final long size )
+	{
+		UNSAFE.copyMemory( srcArray, LONG_ARRAY_OFFSET + srcOffset, dstArray, BYTE_ARRAY_OFFSET + dstOffset, size );
+	}
+
+	/*
+	 * Off-heap memory.  Passing a null array and offHeapOrigin( address ) +
+	 * offset to the methods above addresses the byte at address + offset.
+	 */
+
+	static long allocateMemory( final long size )
+	{
+		final long address = UNSAFE.allocateMemory( size );
+		UNSAFE.setMemory( address, size, ( byte ) 0 );
+		return address;
+	}
+
+	static long reallocateMemory( final long address, final long oldSize, final long size )
+	{
+		final long newAddress = UNSAFE.reallocateMemory( address, size );
+		if ( size > oldSize )
+			UNSAFE.setMemory( newAddress + oldSize, size - oldSize, ( byte ) 0 );
+		return newAddress;
+	}
+
+	static void freeMemory( final long address )
+	{
+		UNSAFE.freeMemory( address );
+	}
+
+	static void copyMemory( final long srcAddress, final long dstAddress, final long size )
+	{
+		UNSAFE.copyMemory( srcAddress, dstAddress, size );
+	}
+
+	/**
+	 * Address of the first byte of a direct buffer.
+	 */
+	static long address( final ByteBuffer buffer )
+	{
+		if ( !buffer.isDirect() )
+			throw new IllegalArgumentException( "not a direct buffer" );
+		return UNSAFE.getLong( buffer, BUFFER_ADDRESS_OFFSET );
+	}
+
+	/**
+	 * Offset to pass with a {@code null} array to address the byte at
+	 * {@code address}.
+	 */
+	static long offHeapOrigin( final long address )
+	{
+		return address - LONG_ARRAY_OFFSET;
+	}
+
+	/**
+	 * Inverse of {@link #offHeapOrigin(long)}.
+	 */
+	static long offHeapAddress( final long origin )
+	{
+		return origin + LONG_ARRAY_OFFSET;
+	}
+
 	private static final Unsafe UNSAFE;
 
 	static
@@ -119,4 +188,20 @@ public class ByteUtils
 	}
 
 	private static final long LONG_ARRAY_OFFSET = UNSAFE.arrayBaseOffset( long[].class );
+
+	private static final long BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset( byte[].class );
+
+	private static final long BUFFER_ADDRESS_OFFSET = bufferAddressOffset();
+
+	private static long bufferAddressOffset()
+	{
+		try
+		{
+			return UNSAFE.objectFieldOffset( Buffer.class.getDeclaredField( "address" ) );
+		}
+		catch ( final NoSuchFieldException e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
 }
@@ -137,4 +137,147 @@ public class Downscale
 			return -1;
 		}
 	}
+
+	/**
+	 * k-way merge of multiset entry lists that are sorted by label id.
+	 * The list with the smallest head id is at the root of a binary min
+	 * heap, such that advancing costs {@code O(log k)} instead of re-sorting
+	 * all lists.  Lists are read by index and heads are copied into
+	 * primitive arrays, such that merging does not create objects.
+	 */
+	final static class SortedEntryIteratorHeap
+	{
+		private final LabelMultisetEntryList[] lists;
+
+		private final int[] positions;
+
+		private final long[] headIds;
+
+		private final int[] headCounts;
+
+		/**
+		 * slot indices, heap ordered by head id
+		 */
+		private final int[] heap;
+
+		private int size;
+
+		private int numSlots;
+
+		/**
+		 * @param capacity
+		 *            maximum number of multisets and entries added between
+		 *            {@link #clear()}s
+		 */
+		public SortedEntryIteratorHeap( final int capacity )
+		{
+			lists = new LabelMultisetEntryList[ capacity ];
+			positions = new int[ capacity ];
+			headIds = new long[ capacity ];
+			headCounts = new int[ capacity ];
+			heap = new int[ capacity ];
+		}
+
+		public void clear()
+		{
+			size = 0;
+			numSlots = 0;
+		}
+
+		/**
+		 * Add the entries of the current value of a multiset unless it is
+		 * empty.  The multiset must not be moved before the merge is
+		 * complete.
+		 */
+		public void add( final LabelMultisetType multiset )
+		{
+			final LabelMultisetEntryList list = multiset.entries();
+			if ( list.size() > 0 )
+				push( list, list.idAt( 0 ), list.countAt( 0 ) );
+		}
+
+		/**
+		 * Add a single entry.
+		 */
+		public void add( final long id, final int count )
+		{
+			push( null, id, count );
+		}
+
+		public boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		public long headId()
+		{
+			return headIds[ heap[ 0 ] ];
+		}
+
+		public int headCount()
+		{
+			return headCounts[ heap[ 0 ] ];
+		}
+
+		/**
+		 * Advance the list with the smallest head id.
+		 */
+		public void fwd()
+		{
+			final int slot = heap[ 0 ];
+			final LabelMultisetEntryList list = lists[ slot ];
+			final int position = positions[ slot ] + 1;
+			if ( list != null && position < list.size() )
+			{
+				positions[ slot ] = position;
+				headIds[ slot ] = list.idAt( position );
+				headCounts[ slot ] = list.countAt( position );
+			}
+			else
+			{
+				lists[ slot ] = null;
+				heap[ 0 ] = heap[ --size ];
+			}
+			if ( size > 0 )
+				siftDown( 0 );
+		}
+
+		private void push( final LabelMultisetEntryList list, final long id, final int count )
+		{
+			final int slot = numSlots++;
+			lists[ slot ] = list;
+			positions[ slot ] = 0;
+			headIds[ slot ] = id;
+			headCounts[ slot ] = count;
+			int i = size++;
+			while ( i > 0 )
+			{
+				final int parent = ( i - 1 ) >> 1;
+				if ( headIds[ heap[ parent ] ] <= id )
+					break;
+				heap[ i ] = heap[ parent ];
+				i = parent;
+			}
+			heap[ i ] = slot;
+		}
+
+		private void siftDown( int i )
+		{
+			final int slot = heap[ i ];
+			final long id = headIds[ slot ];
+			final int half = size >> 1;
+			while ( i < half )
+			{
+				int child = 2 * i + 1;
+				final int right = child + 1;
+				if ( right < size && headIds[ heap[ right ] ] < headIds[ heap[ child ] ] )
+					child = right;
+				if ( id <= headIds[ heap[ child ] ] )
+					break;
+				heap[ i ] = heap[ child ];
+				i = child;
+			}
+			heap[ i ] = slot;
+		}
+	}
 }
@@ -0,0 +1,97 @@
+package bdv.labels.labelset;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.img.h5.H5LabelMultisetSetupImageLoader;
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.IHDF5Reader;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.util.Util;
+
+/**
+ * Compares the on-the-fly downscaling of
+ * {@link DownscalingVolatileSuperVoxelMultisetArrayLoader} with
+ * {@link Downscale#downscale} on blocks of a fragment volume and checks that
+ * both produce the same multisets.
+ *
+ * Usage: DownscaleBenchmark [file [dataset [rounds]]]
+ */
+public class DownscaleBenchmark
+{
+	public static void main( final String[] args ) throws IOException
+	{
+		final String fn = args.length > 0 ? args[ 0 ] : "data/sample_B_20160708_frags_46_50.hdf";
+		final String dataset = args.length > 1 ? args[ 1 ] : "/volumes/labels/neuron_ids";
+		final int rounds = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 5;
+
+		final int[] factors = new int[] { 2, 2, 2 };
+		final int[] blockSize = new int[] { 32, 32, 32 };
+
+		final IHDF5Reader reader = HDF5Factory.openForReading( fn );
+		final H5LabelMultisetSetupImageLoader fragments = new H5LabelMultisetSetupImageLoader(
+				reader,
+				null,
+				dataset,
+				0,
+				new int[] { 64, 64, 8 },
+				new VolatileGlobalCellCache( 1, 10 ) );
+		final RandomAccessibleInterval< LabelMultisetType > input = fragments.getImage( 0, 0 );
+
+		final long[] longFactors = Util.int2long( factors );
+		final long[] longBlockSize = Util.int2long( blockSize );
+		final ArrayList< long[] > mins = new ArrayList<>();
+		for ( long z = 0; ( z + 1 ) * blockSize[ 2 ] * factors[ 2 ] <= input.dimension( 2 ); ++z )
+			for ( long y = 0; ( y + 1 ) * blockSize[ 1 ] * factors[ 1 ] <= input.dimension( 1 ); ++y )
+				for ( long x = 0; ( x + 1 ) * blockSize[ 0 ] * factors[ 0 ] <= input.dimension( 0 ); ++x )
+					mins.add( new long[] { x * blockSize[ 0 ], y * blockSize[ 1 ], z * blockSize[ 2 ] } );
+
+		System.out.println( "input " + Util.printInterval( input ) + ", " + mins.size() + " blocks of " + Util.printCoordinates( blockSize ) );
+
+		/* touch all input cells once such that loading is not measured */
+		for ( final long[] min : mins )
+			Downscale.downscale( input, longFactors, longBlockSize, min );
+
+		final LabelMultisetEntryList list1 = new LabelMultisetEntryList();
+		final LabelMultisetEntryList list2 = new LabelMultisetEntryList();
+		for ( int round = 0; round < rounds; ++round )
+		{
+			long tDownscale = 0;
+			long tLoader = 0;
+			long numEqualSizes = 0;
+			long listBytes = 0;
+			for ( final long[] min : mins )
+			{
+				long t = System.nanoTime();
+				final VolatileLabelMultisetArray expected = Downscale.downscale( input, longFactors, longBlockSize, min );
+				tDownscale += System.nanoTime() - t;
+
+				t = System.nanoTime();
+				final VolatileLabelMultisetArray actual = DownscalingVolatileSuperVoxelMultisetArrayLoader.downscale( input, factors, blockSize, min );
+				tLoader += System.nanoTime() - t;
+
+				final int[] expectedData = expected.getCurrentStorageArray();
+				for ( int i = 0; i < expectedData.length; ++i )
+				{
+					expected.getValue( i, list1 );
+					actual.getValue( i, list2 );
+					if ( !list1.equals( list2 ) )
+						throw new IllegalStateException( "different multisets in block " + Util.printCoordinates( min ) + " at " + i );
+				}
+				numEqualSizes += actual.getListDataUsedSizeInBytes() == expected.getListDataUsedSizeInBytes() ? 1 : 0;
+				listBytes += actual.getListDataUsedSizeInBytes();
+			}
+			System.out.println( String.format(
+					"round %d: Downscale.downscale %d ms, loader %d ms, %d of %d blocks with equal list data size, %d list bytes",
+					round,
+					tDownscale / 1000000,
+					tLoader / 1000000,
+					numEqualSizes,
+					mins.size(),
+					listBytes ) );
+		}
+
+		reader.close();
+	}
+}
@@ -1,9 +1,20 @@
 package bdv.labels.labelset;
 
 import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import bdv.export.ExportMipmapInfo;
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.EmptyArrayCreator;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.img.h5.H5LabelMultisetSetupImageLoader;
 import ch.systemsx.cisd.base.mdarray.MDIntArray;
@@ -14,12 +25,13 @@ import ch.systemsx.cisd.hdf5.IHDF5Writer;
 import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.iterator.LocalizingIntervalIterator;
+import net.imglib2.util.Intervals;
 import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 
 public class DownscaleToHdf5
 {
-	public static void main( final String[] args ) throws IOException
+	public static void main( final String[] args ) throws IOException, InterruptedException
 	{
 		final String fn = "/Users/pietzsch/workspace/data/bigcat/davi_v7_4k_refix_export.h5";
 		final String fnscaled = "/Users/pietzsch/Desktop/downscale-test.h5";
@@ -44,6 +56,10 @@ public class DownscaleToHdf5
 		};
 		final ExportMipmapInfo mipmapInfo = new ExportMipmapInfo( resolutions, subdivisions );
 		final int numLevels = resolutions.length;
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+
+		/* blocks of the most recently written level, read by the next level */
+		final WrittenBlocks writtenBlocks = new WrittenBlocks();
 
 		for ( int level = 1; level < numLevels; ++level )
 		{
@@ -55,7 +71,10 @@ public class DownscaleToHdf5
 					"/bodies",
 					1,
 					new int[] {64, 64, 8},
-					new VolatileGlobalCellCache( 1, 10 ) );
+					new WrittenBlocksArrayLoader(
+							H5LabelMultisetSetupImageLoader.typedLoader( reader, level == 1 ? null : writer, "/bodies" ),
+							writtenBlocks ),
+					new VolatileGlobalCellCache( numLevels, numThreads ) );
 
 
 			final ArrayList< RandomAccessibleInterval< LabelMultisetType > > imgs = new ArrayList<>();
@@ -64,6 +83,7 @@ public class DownscaleToHdf5
 
 			writer.uint32().write( "levels", level + 1 );
 			final int l = level;
+			writtenBlocks.startLevel( l );
 			final BlockWriter hdfBlockWriter = new BlockWriter()
 			{
 				@Override
@@ -81,6 +101,7 @@ public class DownscaleToHdf5
 					final String dataPath = String.format( "l%02d/z%05d/y%05d/x%05d/data", l, min[ 2 ], min[ 1 ], min[ 0 ] );
 					writer.uint32().writeArray( listsPath, lists, HDF5IntStorageFeatures.INT_AUTO_SCALING_UNSIGNED_DELETE );
 					writer.uint32().writeMDArray( dataPath, block, HDF5IntStorageFeatures.INT_AUTO_SCALING_UNSIGNED_DELETE );
+					writtenBlocks.put( l, min, data );
 				}
 			};
 			final LevelInfoWriter hdfLevelInfoWriter = new LevelInfoWriter()
@@ -101,7 +122,7 @@ public class DownscaleToHdf5
 					writer.uint64().writeArray( blocksizePath, blocksize );
 				}
 			};
-			writeLevelToHdf5File( imgs, mipmapInfo, level, hdfBlockWriter, hdfLevelInfoWriter );
+			writeLevelToHdf5File( imgs, mipmapInfo, level, hdfBlockWriter, hdfLevelInfoWriter, numThreads );
 			writer.close();
 			reader.close();
 		}
@@ -117,12 +138,144 @@ public class DownscaleToHdf5
 		public void writeLevelInfo( final long[] dimensions, final long[] factors, final long[] blocksize );
 	}
 
+	/**
+	 * Softly references the blocks of the levels that were written last such
+	 * that the next level can be generated from them without reading them
+	 * back from the HDF5 file.  Blocks that were garbage collected are read
+	 * from the file.
+	 */
+	public static class WrittenBlocks
+	{
+		private final ConcurrentHashMap< Integer, ConcurrentHashMap< String, SoftReference< VolatileLabelMultisetArray > > > levels = new ConcurrentHashMap<>();
+
+		private static String key( final long[] min )
+		{
+			return Arrays.toString( min );
+		}
+
+		/**
+		 * Start collecting the blocks of a new level and forget all blocks
+		 * but those of the level immediately before.
+		 *
+		 * @param level
+		 */
+		public void startLevel( final int level )
+		{
+			levels.keySet().removeIf( l -> l < level - 1 );
+			levels.put( level, new ConcurrentHashMap<>() );
+		}
+
+		public void put( final int level, final long[] min, final VolatileLabelMultisetArray data )
+		{
+			final ConcurrentHashMap< String, SoftReference< VolatileLabelMultisetArray > > blocks = levels.get( level );
+			if ( blocks != null )
+				blocks.put( key( min ), new SoftReference<>( data ) );
+		}
+
+		/**
+		 * @return the block or null if it was not written or has been garbage
+		 *         collected
+		 */
+		public VolatileLabelMultisetArray get( final int level, final long[] min )
+		{
+			final ConcurrentHashMap< String, SoftReference< VolatileLabelMultisetArray > > blocks = levels.get( level );
+			if ( blocks == null )
+				return null;
+			final SoftReference< VolatileLabelMultisetArray > ref = blocks.get( key( min ) );
+			return ref == null ? null : ref.get();
+		}
+	}
+
+	/**
+	 * {@link CacheArrayLoader} that serves {@link WrittenBlocks} and falls
+	 * back to another loader for all other blocks.
+	 */
+	public static class WrittenBlocksArrayLoader implements CacheArrayLoader< VolatileLabelMultisetArray >
+	{
+		private final CacheArrayLoader< VolatileLabelMultisetArray > loader;
+
+		private final WrittenBlocks writtenBlocks;
+
+		public WrittenBlocksArrayLoader(
+				final CacheArrayLoader< VolatileLabelMultisetArray > loader,
+				final WrittenBlocks writtenBlocks )
+		{
+			this.loader = loader;
+			this.writtenBlocks = writtenBlocks;
+		}
+
+		@Override
+		public int getBytesPerElement()
+		{
+			return loader.getBytesPerElement();
+		}
+
+		@Override
+		public VolatileLabelMultisetArray loadArray(
+				final int timepoint,
+				final int setup,
+				final int level,
+				final int[] dimensions,
+				final long[] min ) throws InterruptedException
+		{
+			final VolatileLabelMultisetArray data = writtenBlocks.get( level, min );
+			return data == null ? loader.loadArray( timepoint, setup, level, dimensions, min ) : data;
+		}
+
+		@Override
+		public EmptyArrayCreator< VolatileLabelMultisetArray > getEmptyArrayCreator()
+		{
+			return loader.getEmptyArrayCreator();
+		}
+	}
+
+	private static class DownscaledBlock
+	{
+		final VolatileLabelMultisetArray data;
+
+		final long[] min;
+
+		final long[] dimensions;
+
+		DownscaledBlock( final VolatileLabelMultisetArray data, final long[] min, final long[] dimensions )
+		{
+			this.data = data;
+			this.min = min;
+			this.dimensions = dimensions;
+		}
+	}
+
+	public static void writeLevelToHdf5File(
+			final ArrayList< RandomAccessibleInterval< LabelMultisetType > > imgs,
+			final ExportMipmapInfo mipmapInfo,
+			final int level,
+			final BlockWriter writer,
+			final LevelInfoWriter levelInfoWriter ) throws InterruptedException
+	{
+		writeLevelToHdf5File( imgs, mipmapInfo, level, writer, levelInfoWriter, Runtime.getRuntime().availableProcessors() );
+	}
+
+	/**
+	 * Downscale all cells of a level in parallel.  Blocks are passed to the
+	 * {@link BlockWriter} one at a time from the calling thread, so the writer
+	 * does not need to be thread safe.  At most twice as many blocks as there
+	 * are threads are computed ahead of the writer.
+	 *
+	 * @param imgs
+	 * @param mipmapInfo
+	 * @param level
+	 * @param writer
+	 * @param levelInfoWriter
+	 * @param numThreads
+	 * @throws InterruptedException
+	 */
 	public static void writeLevelToHdf5File(
 			final ArrayList< RandomAccessibleInterval< LabelMultisetType > > imgs,
 			final ExportMipmapInfo mipmapInfo,
 			final int level,
 			final BlockWriter writer,
-			final LevelInfoWriter levelInfoWriter )
+			final LevelInfoWriter levelInfoWriter,
+			final int numThreads ) throws InterruptedException
 	{
 		final int n = imgs.get( 0 ).numDimensions();
 		final int[][] resolutions = mipmapInfo.getExportResolutions();
@@ -174,22 +327,66 @@ public class DownscaleToHdf5
 			borderSize[ d ] = ( int ) ( dimensions[ d ] - ( numCells[ d ] - 1 ) * cellDimensions[ d ] );
 		}
 
-		final LocalizingIntervalIterator i = new LocalizingIntervalIterator( minCell, maxCell );
-		final long[] currentCellMin = new long[ n ];
-		final long[] currentCellDim = new long[ n ];
-		final long[] currentCellPos = new long[ n ];
-		while ( i.hasNext() )
+		final long numBlocks = Intervals.numElements( numCells );
+		final int maxBlocksInFlight = 2 * numThreads;
+		final ExecutorService executor = Executors.newFixedThreadPool( numThreads );
+		final ExecutorCompletionService< DownscaledBlock > completionService =
+				new ExecutorCompletionService<>( executor, new ArrayBlockingQueue< Future< DownscaledBlock > >( maxBlocksInFlight ) );
+		try
 		{
-			i.fwd();
-			i.localize( currentCellPos );
-			for ( int d = 0; d < n; ++d )
+			final LocalizingIntervalIterator i = new LocalizingIntervalIterator( minCell, maxCell );
+			final long[] currentCellPos = new long[ n ];
+			long submitted = 0;
+			long written = 0;
+			while ( i.hasNext() )
 			{
-				currentCellMin[ d ] = currentCellPos[ d ] * cellDimensions[ d ];
-				final boolean isBorderCellInThisDim = ( currentCellPos[ d ] + 1 == numCells[ d ] );
-				currentCellDim[ d ] = isBorderCellInThisDim ? borderSize[ d ] : cellDimensions[ d ];
+				if ( submitted - written >= maxBlocksInFlight )
+					writeBlock( completionService, writer, level, ++written, numBlocks );
+
+				i.fwd();
+				i.localize( currentCellPos );
+				final long[] currentCellMin = new long[ n ];
+				final long[] currentCellDim = new long[ n ];
+				for ( int d = 0; d < n; ++d )
+				{
+					currentCellMin[ d ] = currentCellPos[ d ] * cellDimensions[ d ];
+					final boolean isBorderCellInThisDim = ( currentCellPos[ d ] + 1 == numCells[ d ] );
+					currentCellDim[ d ] = isBorderCellInThisDim ? borderSize[ d ] : cellDimensions[ d ];
+				}
+				completionService.submit( () -> new DownscaledBlock(
+						Downscale.downscale( extendedImg, factors, currentCellDim, currentCellMin ),
+						currentCellMin,
+						currentCellDim ) );
+				++submitted;
 			}
-			final VolatileLabelMultisetArray downscaled = Downscale.downscale( extendedImg, factors, currentCellDim, currentCellMin );
-			writer.writeBlock( downscaled, currentCellMin, currentCellDim );
+			while ( written < submitted )
+				writeBlock( completionService, writer, level, ++written, numBlocks );
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	private static void writeBlock(
+			final ExecutorCompletionService< DownscaledBlock > completionService,
+			final BlockWriter writer,
+			final int level,
+			final long written,
+			final long numBlocks ) throws InterruptedException
+	{
+		final DownscaledBlock block;
+		try
+		{
+			block = completionService.take().get();
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
 		}
+		writer.writeBlock( block.data, block.min, block.dimensions );
+
+		if ( written * 10 / numBlocks != ( written - 1 ) * 10 / numBlocks )
+			System.out.println( String.format( "level %d: %d of %d blocks written", level, written, numBlocks ) );
 	}
 }
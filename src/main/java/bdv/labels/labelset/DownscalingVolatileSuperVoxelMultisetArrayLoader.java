@@ -1,19 +1,12 @@
 package bdv.labels.labelset;
 
-import static java.nio.file.StandardOpenOption.CREATE;
-import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
-import static java.nio.file.StandardOpenOption.WRITE;
-
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.Iterator;
+import java.util.HashMap;
 
 import bdv.img.cache.CacheArrayLoader;
 import bdv.img.dvid.LabelblkMultisetSetupImageLoader.MultisetSource;
-import bdv.labels.labelset.Multiset.Entry;
-import gnu.trove.list.array.TIntArrayList;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.util.IntervalIndexer;
@@ -23,12 +16,39 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoader implements CacheAr
 {
 	private VolatileLabelMultisetArray theEmptyArray;
 
+	private MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory = LongMappedAccessData.factory;
+
 	private final MultisetSource multisetSource;
 
+	private final Path cacheDirectory;
+
+	/**
+	 * One container per timepoint, setup, and level.
+	 */
+	private final HashMap< String, LabelMultisetBlockContainer > containers = new HashMap<>();
+
 	public DownscalingVolatileSuperVoxelMultisetArrayLoader( final MultisetSource multisetSource )
+	{
+		this( multisetSource, Paths.get( "/tmp/labelcache" ) );
+	}
+
+	public DownscalingVolatileSuperVoxelMultisetArrayLoader( final MultisetSource multisetSource, final Path cacheDirectory )
 	{
 		theEmptyArray = new VolatileLabelMultisetArray( 1, false );
 		this.multisetSource = multisetSource;
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * Set the factory for the list storage of loaded arrays, e.g.
+	 * {@link LongMappedAccessData#offHeapFactory} to keep list data outside
+	 * of the Java heap.
+	 *
+	 * @param listDataFactory
+	 */
+	public void setListDataFactory( final MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory )
+	{
+		this.listDataFactory = listDataFactory;
 	}
 
 	@Override
@@ -42,14 +62,28 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoader implements CacheAr
 //				+ "   min = " + Util.printCoordinates( min ) + "\n"
 //				+ ")"
 //				);
-		final String filename = getFilename( timepoint, setup, level, min );
-		final VolatileLabelMultisetArray cached = tryLoadCached( dimensions, filename );
+		final LabelMultisetBlockContainer container = getContainer( timepoint, setup, level );
+		final VolatileLabelMultisetArray cached = tryLoadCached( dimensions, min, container );
 		if ( cached != null )
 			return cached;
 
 		final RandomAccessibleInterval< LabelMultisetType > input = multisetSource.getSource( timepoint, level - 1 );
 		final int[] factors = new int[] { 2, 2, 2 };
-		return downscale( input, factors, dimensions, min, filename );
+		final VolatileLabelMultisetArray downscaled = downscale( input, factors, dimensions, min, listDataFactory );
+
+		if ( container != null )
+		{
+			try
+			{
+				container.put( min, downscaled.getCurrentStorageArray(), ( LongMappedAccessData )downscaled.getListData(), downscaled.getListDataUsedSizeInBytes() );
+			}
+			catch ( final IOException e )
+			{
+				e.printStackTrace();
+			}
+		}
+
+		return downscaled;
 	}
 
 	@Override
@@ -58,86 +92,92 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoader implements CacheAr
 		return 8;
 	}
 
-	private String getFilename( final int timepoint, final int setup, final int level, final long[] min )
+	private LabelMultisetBlockContainer getContainer( final int timepoint, final int setup, final int level )
 	{
-		return String.format( "/tmp/labelcache/%d_%d_%d/%d_%d_%d", timepoint, setup, level, min[ 0 ], min[ 1 ], min[ 2 ] );
+		final String key = String.format( "%d_%d_%d", timepoint, setup, level );
+		synchronized ( containers )
+		{
+			LabelMultisetBlockContainer container = containers.get( key );
+			if ( container == null )
+			{
+				try
+				{
+					container = new LabelMultisetBlockContainer( cacheDirectory.resolve( key ) );
+				}
+				catch ( final IOException e )
+				{
+					e.printStackTrace();
+					return null;
+				}
+				containers.put( key, container );
+			}
+			return container;
+		}
 	}
 
 	private VolatileLabelMultisetArray tryLoadCached(
 			final int[] dimensions,
-			final String filename )
+			final long[] min,
+			final LabelMultisetBlockContainer container )
 	{
-		if ( ! Paths.get( filename ).toFile().exists() )
+		if ( container == null )
 			return null;
 
-		byte[] bytes;
 		try
 		{
-			bytes = Files.readAllBytes( Paths.get( filename ) );
+			return container.get( min, dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ], listDataFactory );
 		}
 		catch ( final IOException e )
 		{
 			e.printStackTrace();
 			return null;
 		}
-
-		final int[] data = new int[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
-		final int listDataSize = bytes.length - 4 * data.length;
-		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( listDataSize );
-		int j = -1;
-		for ( int i = 0; i < data.length; ++i )
-		{
-			data[ i ] = ( 0xff & bytes[ ++j ] ) |
-					( ( 0xff & bytes[ ++j ] ) << 8 ) |
-					( ( 0xff & bytes[ ++j ] ) << 16 ) |
-					( ( 0xff & bytes[ ++j ] ) << 24 );
-		}
-		for ( int i = 0; i < listDataSize; ++i )
-			ByteUtils.putByte( bytes[ ++j ], listData.data, i );
-		return new VolatileLabelMultisetArray( data, listData, true );
 	}
 
-	private static class SortedPeekIterator implements Comparable< SortedPeekIterator >
+	/**
+	 * Downscale one block.  The entries of all contributing input multisets
+	 * are merged through a min heap of their (sorted) iterators and equal
+	 * lists are stored only once.
+	 *
+	 * @param input
+	 * @param factors
+	 *            downsampling factors of output block relative to input.
+	 * @param dimensions
+	 *            dimensions of the output block (in output resolution)
+	 * @param min
+	 *            minimum coordinate of output block (in output resolution).
+	 *            Corresponding input coordinates are <em>min * factors</em>.
+	 * @return
+	 */
+	static public VolatileLabelMultisetArray downscale(
+			final RandomAccessibleInterval< LabelMultisetType > input,
+			final int[] factors,
+			final int[] dimensions,
+			final long[] min )
 	{
-		Iterator< Entry< Label > > iter;
-
-		Entry< Label > head;
-
-		void init( final Iterator< Entry< Label > > iter )
-		{
-			this.iter = iter;
-			head = iter.hasNext() ? iter.next() : null;
-		}
-
-		void fwd()
-		{
-			head = iter.hasNext() ? iter.next() : null;
-		}
-
-		@Override
-		public int compareTo( final SortedPeekIterator o )
-		{
-			if ( head == null )
-				return o.head == null ?
-					0 :
-					1; // o is smaller because it still has elements
-			else
-				return o.head == null ?
-					-1 : // o is greater because we still have elements
-					Long.compare( head.getElement().id(), o.head.getElement().id() );
-		}
+		return downscale( input, factors, dimensions, min, LongMappedAccessData.factory );
 	}
 
-	private VolatileLabelMultisetArray downscale(
+	/**
+	 * Downscale one block into list data created by listDataFactory.
+	 *
+	 * @param input
+	 * @param factors
+	 * @param dimensions
+	 * @param min
+	 * @param listDataFactory
+	 * @return
+	 */
+	static public VolatileLabelMultisetArray downscale(
 			final RandomAccessibleInterval< LabelMultisetType > input,
-			final int[] factors, // (relative to to input)
+			final int[] factors,
 			final int[] dimensions,
 			final long[] min,
-			final String filename ) throws InterruptedException
+			final MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory )
 	{
 		final int n = 3;
 		final int[] data = new int[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
-		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
+		final LongMappedAccessData listData = listDataFactory.createStorage( 32 );
 
 		int numEntities = 1;
 		for ( int i = 0; i < n; ++i )
@@ -152,17 +192,14 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoader implements CacheAr
 		for ( int i = 0; i < numContribs; ++i )
 			inputs[ i ] = input.randomAccess();
 
-		final SortedPeekIterator[] iters = new SortedPeekIterator[ numContribs ];
-		for ( int i = 0; i < numContribs; ++i )
-			iters[ i ] = new SortedPeekIterator();
+		final Downscale.SortedEntryIteratorHeap iters = new Downscale.SortedEntryIteratorHeap( numContribs );
 
 		final int[] outputPos = new int[ n ];
 		final int[] inputOffset = new int[ n ];
 		final int[] inputPos = new int[ n ];
 
 		final LabelMultisetEntryList list = new LabelMultisetEntryList( listData, 0 );
-		final LabelMultisetEntryList list2 = new LabelMultisetEntryList();
-		final TIntArrayList listHashesAndOffsets = new TIntArrayList();
+		final Downscale.LabelMultisetEntryListIndex lists = new Downscale.LabelMultisetEntryListIndex( listData );
 		final LabelMultisetEntry entry = new LabelMultisetEntry( 0, 1 );
 		int nextListOffset = 0;
 		for ( int o = 0; o < numEntities; ++o )
@@ -171,27 +208,26 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoader implements CacheAr
 			for ( int d = 0; d < n; ++d )
 				inputOffset[ d ] = ( outputPos[ d ] + ( int ) min[ d ] ) * factors[ d ];
 
+			iters.clear();
 			for ( int i = 0; i < numContribs; ++i )
 			{
 				IntervalIndexer.indexToPositionWithOffset( i, factors, inputOffset, inputPos );
 				inputs[ i ].setPosition( inputPos );
-				iters[ i ].init( inputs[ i ].get().entrySet().iterator() );
+				iters.add( inputs[ i ].get() );
 			}
 
 			list.createListAt( listData, nextListOffset );
-			Arrays.sort( iters );
-			if ( iters[ 0 ].head != null )
+			if ( !iters.isEmpty() )
 			{
-				long id = iters[ 0 ].head.getElement().id();
-				int count = iters[ 0 ].head.getCount();
+				long id = iters.headId();
+				int count = iters.headCount();
 
-				iters[ 0 ].fwd();
-				Arrays.sort( iters );
+				iters.fwd();
 
-				while ( iters[ 0 ].head != null )
+				while ( !iters.isEmpty() )
 				{
-					final long headId = iters[ 0 ].head.getElement().id();
-					final int headCount = iters[ 0 ].head.getCount();
+					final long headId = iters.headId();
+					final int headCount = iters.headCount();
 
 					if ( headId == id )
 					{
@@ -207,8 +243,7 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoader implements CacheAr
 						count = headCount;
 					}
 
-					iters[ 0 ].fwd();
-					Arrays.sort( iters );
+					iters.fwd();
 				}
 
 				entry.setId( id );
@@ -216,52 +251,16 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoader implements CacheAr
 				list.add( entry );
 			}
 
-			boolean makeNewList = true;
-			final int hash = list.hashCode();
-			for ( int i = 0; i < listHashesAndOffsets.size(); i += 2 )
-			{
-				if ( hash == listHashesAndOffsets.get( i ) )
-				{
-					list2.referToDataAt( listData, listHashesAndOffsets.get( i + 1 ) );
-					if ( list.equals( list2 ) )
-					{
-						makeNewList = false;
-						data[ o ] = listHashesAndOffsets.get( i + 1 ) ;
-						break;
-					}
-				}
-			}
-			if ( makeNewList )
+			int offset = lists.putIfAbsent( list );
+			if ( offset == -1 )
 			{
-				data[ o ] = nextListOffset;
-				listHashesAndOffsets.add( hash );
-				listHashesAndOffsets.add( nextListOffset );
+				offset = nextListOffset;
 				nextListOffset += list.getSizeInBytes();
 			}
+			data[ o ] = offset;
 		}
 
-		final byte[] bytes = new byte[ 4 * data.length + nextListOffset ];
-		int j = -1;
-		for ( final int d : data )
-		{
-			bytes[ ++j ] = ( byte ) d;
-			bytes[ ++j ] = ( byte ) ( d >> 8 );
-			bytes[ ++j ] = ( byte ) ( d >> 16 );
-			bytes[ ++j ] = ( byte ) ( d >> 24 );
-		}
-		for ( int i = 0; i < nextListOffset; ++i )
-			bytes[ ++j ] = ByteUtils.getByte( listData.data, i );
-		try
-		{
-			Paths.get( filename ).getParent().toFile().mkdirs();
-			Files.write( Paths.get( filename ), bytes, WRITE, CREATE, TRUNCATE_EXISTING );
-		}
-		catch ( final IOException e )
-		{
-			e.printStackTrace();
-		}
-
-		return new VolatileLabelMultisetArray( data, listData, true );
+		return new VolatileLabelMultisetArray( data, listData, nextListOffset, true );
 	}
 
 	public VolatileLabelMultisetArray emptyArray( final int[] dimensions )
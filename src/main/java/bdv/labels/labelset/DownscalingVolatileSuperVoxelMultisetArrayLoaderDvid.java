@@ -1,14 +1,11 @@
 package bdv.labels.labelset;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
 
 import bdv.img.cache.CacheArrayLoader;
 import bdv.img.dvid.LabelblkMultisetSetupImageLoader.MultisetSource;
-import bdv.labels.labelset.Multiset.Entry;
 import bdv.util.dvid.DatasetKeyValue;
-import gnu.trove.list.array.TIntArrayList;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.util.IntervalIndexer;
@@ -18,6 +15,8 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoaderDvid implements Cac
 {
 	private VolatileLabelMultisetArray theEmptyArray;
 
+	private MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory = LongMappedAccessData.factory;
+
 	private final MultisetSource multisetSource;
 
 	// store the data sets for reading/writing cached SuperVoxelMultisetArray
@@ -31,6 +30,18 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoaderDvid implements Cac
 		this.dvidStores = dvidStores;
 	}
 
+	/**
+	 * Set the factory for the list storage of loaded arrays, e.g.
+	 * {@link LongMappedAccessData#offHeapFactory} to keep list data outside
+	 * of the Java heap.
+	 *
+	 * @param listDataFactory
+	 */
+	public void setListDataFactory( final MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory )
+	{
+		this.listDataFactory = listDataFactory;
+	}
+
 	@Override
 	public VolatileLabelMultisetArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
 	{
@@ -69,7 +80,7 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoaderDvid implements Cac
 		final int nElementsPerInputPixel = strideByDimensionInput * strideByDimensionInput * strideByDimensionInput;
 		final RandomAccessibleInterval< LabelMultisetType > input = multisetSource.getSource( timepoint, level - 1 );
 		final int[] factors = new int[] { 2, 2, 2 }; // for now 2,2,2
-		return downscale( input, factors, dimensions, min, store, key, nElementsPerInputPixel );
+		return downscaleAndStore( input, factors, dimensions, min, store, key, nElementsPerInputPixel );
 	}
 
 	@Override
@@ -102,65 +113,69 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoaderDvid implements Cac
 			return null;
 		}
 
-		final int[] data = new int[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
-		final int listDataSize = bytes.length - 4 * data.length;
-		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( listDataSize );
-		int j = -1;
-		for ( int i = 0; i < data.length; ++i )
-		{
-			data[ i ] = ( 0xff & bytes[ ++j ] ) |
-					( ( 0xff & bytes[ ++j ] ) << 8 ) |
-					( ( 0xff & bytes[ ++j ] ) << 16 ) |
-					( ( 0xff & bytes[ ++j ] ) << 24 );
-		}
-		for ( int i = 0; i < listDataSize; ++i )
-			ByteUtils.putByte( bytes[ ++j ], listData.data, i );
-		return new VolatileLabelMultisetArray( data, listData, true );
+		final int numElements = dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ];
+		if ( bytes.length < 4 * numElements )
+			return null;
+		return LabelMultisetBlockContainer.decode( ByteBuffer.wrap( bytes ), numElements, listDataFactory );
 	}
 
-	private static class SortedPeekIterator implements Comparable< SortedPeekIterator >
+	private VolatileLabelMultisetArray downscaleAndStore(
+			final RandomAccessibleInterval< LabelMultisetType > input,
+			final int[] factors, // (relative to to input)
+			final int[] dimensions,
+			final long[] min,
+			final DatasetKeyValue store,
+			final String key,
+			final int nElementsPerInputPixel )
 	{
-		Iterator< Entry< Label > > iter;
-
-		Entry< Label > head;
-
-		void init( final Iterator< Entry< Label > > iter )
+		final VolatileLabelMultisetArray array = downscale( input, factors, dimensions, min, nElementsPerInputPixel, listDataFactory );
+
+		final byte[] bytes = new byte[ ( int )LabelMultisetBlockContainer.encodedSize( array.getCurrentStorageArray().length, array.getListDataUsedSizeInBytes() ) ];
+		LabelMultisetBlockContainer.encode(
+				array.getCurrentStorageArray(),
+				( LongMappedAccessData )array.getListData(),
+				array.getListDataUsedSizeInBytes(),
+				ByteBuffer.wrap( bytes ) );
+		try
 		{
-			this.iter = iter;
-			head = iter.hasNext() ? iter.next() : null;
+			// write VolatileSuperVoxelMultisetArray to dvid store so it
+			// can be loaded in future requests
+			store.postKey( key, bytes );
 		}
-
-		void fwd()
+		catch ( final IOException e )
 		{
-			head = iter.hasNext() ? iter.next() : null;
+			// if writing goes wrong, continue but print the trace
+			e.printStackTrace();
 		}
 
-		@Override
-		public int compareTo( final SortedPeekIterator o )
-		{
-			if ( head == null )
-				return o.head == null ?
-					0 :
-					1; // o is smaller because it still has elements
-			else
-				return o.head == null ?
-					-1 : // o is greater because we still have elements
-					Long.compare( head.getElement().id(), o.head.getElement().id() );
-		}
+		return array;
 	}
 
-	private VolatileLabelMultisetArray downscale(
+	/**
+	 * Downscale one block into list data created by listDataFactory.
+	 * Input pixels outside of input count as nElementsPerInputPixel
+	 * pixels of label 0.
+	 *
+	 * @param input
+	 * @param factors
+	 *            relative to input
+	 * @param dimensions
+	 * @param min
+	 * @param nElementsPerInputPixel
+	 * @param listDataFactory
+	 * @return
+	 */
+	static public VolatileLabelMultisetArray downscale(
 			final RandomAccessibleInterval< LabelMultisetType > input,
-			final int[] factors, // (relative to to input)
+			final int[] factors,
 			final int[] dimensions,
 			final long[] min,
-			final DatasetKeyValue store,
-			final String key,
-			final int nElementsPerInputPixel ) throws InterruptedException
+			final int nElementsPerInputPixel,
+			final MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory )
 	{
 		final int n = 3;
 		final int[] data = new int[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
-		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
+		final LongMappedAccessData listData = listDataFactory.createStorage( 32 );
 
 		int numEntities = 1;
 		for ( int i = 0; i < n; ++i )
@@ -175,17 +190,14 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoaderDvid implements Cac
 		for ( int i = 0; i < numContribs; ++i )
 			inputs[ i ] = input.randomAccess();
 
-		final SortedPeekIterator[] iters = new SortedPeekIterator[ numContribs ];
-		for ( int i = 0; i < numContribs; ++i )
-			iters[ i ] = new SortedPeekIterator();
+		final Downscale.SortedEntryIteratorHeap iters = new Downscale.SortedEntryIteratorHeap( numContribs );
 
 		final int[] outputPos = new int[ n ];
 		final int[] inputOffset = new int[ n ];
 		final int[] inputPos = new int[ n ];
 
 		final LabelMultisetEntryList list = new LabelMultisetEntryList( listData, 0 );
-		final LabelMultisetEntryList list2 = new LabelMultisetEntryList();
-		final TIntArrayList listHashesAndOffsets = new TIntArrayList();
+		final Downscale.LabelMultisetEntryListIndex lists = new Downscale.LabelMultisetEntryListIndex( listData );
 		final LabelMultisetEntry entry = new LabelMultisetEntry( 0, 1 );
 		int nextListOffset = 0;
 		for ( int o = 0; o < numEntities; ++o )
@@ -194,6 +206,7 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoaderDvid implements Cac
 			for ( int d = 0; d < n; ++d )
 				inputOffset[ d ] = ( outputPos[ d ] + ( int ) min[ d ] ) * factors[ d ];
 
+			iters.clear();
 			for ( int i = 0; i < numContribs; ++i )
 			{
 				IntervalIndexer.indexToPositionWithOffset( i, factors, inputOffset, inputPos );
@@ -206,71 +219,28 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoaderDvid implements Cac
 						inputPos[ 0 ] < input.min( 0 ) || inputPos[ 1 ] < input.min( 1 ) || inputPos[ 2 ] < input.min( 2 )
 						)
 				{
-					iters[ i ].init(
-							new Iterator< Multiset.Entry<Label> >()
-							{
-
-								private boolean hasNext = true;
-
-								@Override
-								public boolean hasNext()
-								{
-									return hasNext;
-								}
-
-								@Override
-								public Entry< Label > next()
-								{
-									hasNext = false;
-									return new Entry< Label >()
-									{
-
-										@Override
-										public Label getElement()
-										{
-											return new Label()
-											{
-
-												@Override
-												public long id()
-												{
-													// return background
-													return 0;
-												}
-											};
-										}
-
-										@Override
-										public int getCount()
-										{
-											return nElementsPerInputPixel;
-										}
-									};
-								}
-							}
-					);
+					// background
+					iters.add( 0, nElementsPerInputPixel );
 				}
 				else
 				{
 					inputs[ i ].setPosition( inputPos );
-					iters[ i ].init( inputs[ i ].get().entrySet().iterator() );
+					iters.add( inputs[ i ].get() );
 				}
 			}
 
 			list.createListAt( listData, nextListOffset );
-			Arrays.sort( iters );
-			if ( iters[ 0 ].head != null )
+			if ( !iters.isEmpty() )
 			{
-				long id = iters[ 0 ].head.getElement().id();
-				int count = iters[ 0 ].head.getCount();
+				long id = iters.headId();
+				int count = iters.headCount();
 
-				iters[ 0 ].fwd();
-				Arrays.sort( iters );
+				iters.fwd();
 
-				while ( iters[ 0 ].head != null )
+				while ( !iters.isEmpty() )
 				{
-					final long headId = iters[ 0 ].head.getElement().id();
-					final int headCount = iters[ 0 ].head.getCount();
+					final long headId = iters.headId();
+					final int headCount = iters.headCount();
 
 					if ( headId == id )
 					{
@@ -286,8 +256,7 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoaderDvid implements Cac
 						count = headCount;
 					}
 
-					iters[ 0 ].fwd();
-					Arrays.sort( iters );
+					iters.fwd();
 				}
 
 				entry.setId( id );
@@ -295,54 +264,16 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoaderDvid implements Cac
 				list.add( entry );
 			}
 
-			boolean makeNewList = true;
-			final int hash = list.hashCode();
-			for ( int i = 0; i < listHashesAndOffsets.size(); i += 2 )
+			int offset = lists.putIfAbsent( list );
+			if ( offset == -1 )
 			{
-				if ( hash == listHashesAndOffsets.get( i ) )
-				{
-					list2.referToDataAt( listData, listHashesAndOffsets.get( i + 1 ) );
-					if ( list.equals( list2 ) )
-					{
-						makeNewList = false;
-						data[ o ] = listHashesAndOffsets.get( i + 1 ) ;
-						break;
-					}
-				}
-			}
-			if ( makeNewList )
-			{
-				data[ o ] = nextListOffset;
-				listHashesAndOffsets.add( hash );
-				listHashesAndOffsets.add( nextListOffset );
+				offset = nextListOffset;
 				nextListOffset += list.getSizeInBytes();
 			}
+			data[ o ] = offset;
 		}
 
-		final byte[] bytes = new byte[ 4 * data.length + nextListOffset ];
-		int j = -1;
-		for ( final int d : data )
-		{
-			bytes[ ++j ] = ( byte ) d;
-			bytes[ ++j ] = ( byte ) ( d >> 8 );
-			bytes[ ++j ] = ( byte ) ( d >> 16 );
-			bytes[ ++j ] = ( byte ) ( d >> 24 );
-		}
-		for ( int i = 0; i < nextListOffset; ++i )
-			bytes[ ++j ] = ByteUtils.getByte( listData.data, i );
-		try
-		{
-			// write VolatileSuperVoxelMultisetArray to dvid store so it
-			// can be loaded in future requests
-			store.postKey( key, bytes );
-		}
-		catch ( final IOException e )
-		{
-			// if writing goes wrong, continue but print the trace
-			e.printStackTrace();
-		}
-
-		return new VolatileLabelMultisetArray( data, listData, true );
+		return new VolatileLabelMultisetArray( data, listData, nextListOffset, true );
 	}
 
 	public VolatileLabelMultisetArray emptyArray( final int[] dimensions )
@@ -360,12 +291,13 @@ public class DownscalingVolatileSuperVoxelMultisetArrayLoaderDvid implements Cac
 		final int nElements = dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ];
 		final int[] data = new int[ nElements ];
 		final int listDataSize = 16 * nElements;
-		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( listDataSize );
+		final LongMappedAccessData listData = listDataFactory.createStorage( listDataSize );
+		final LongMappedAccess access = listData.createAccess();
 		for ( int i = 0, dataIndex = 0; dataIndex < nElements; i += 16, ++dataIndex )
 		{
-			ByteUtils.putInt( 1, listData.data, i );
-			ByteUtils.putLong( 0l, listData.data, i + 4 );
-			ByteUtils.putInt( nElementsPerSource, listData.data, i + 12 );
+			access.putInt( 1, i );
+			access.putLong( 0l, i + 4 );
+			access.putInt( nElementsPerSource, i + 12 );
 			data[ dataIndex ] = i;
 		}
 		return new VolatileLabelMultisetArray( data, listData, true );
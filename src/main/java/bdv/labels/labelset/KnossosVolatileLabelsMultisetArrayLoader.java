@@ -7,7 +7,6 @@ import java.util.Arrays;
 
 import bdv.img.cache.CacheArrayLoader;
 import bdv.img.cache.EmptyArrayCreator;
-import gnu.trove.list.array.TLongArrayList;
 import net.imglib2.util.Intervals;
 
 /**
@@ -44,12 +43,11 @@ public class KnossosVolatileLabelsMultisetArrayLoader implements CacheArrayLoade
 		return 8;
 	}
 
-	static private void readBlock(
+	static private VolatileLabelMultisetArray readBlock(
 			final String urlString,
-			final int[] data,
-			final LongMappedAccessData listData ) throws IOException
+			final int numElements ) throws IOException
 	{
-		final byte[] bytes = new byte[ data.length * 8 ];
+		final byte[] bytes = new byte[ numElements * 8 ];
 		final URL url = new URL( urlString );
 		final InputStream in = url.openStream();
 		int off = 0, l = 0;
@@ -61,11 +59,8 @@ public class KnossosVolatileLabelsMultisetArrayLoader implements CacheArrayLoade
 		while ( l > 0 && off < bytes.length );
 		in.close();
 
-		final TLongArrayList idAndOffsetList = new TLongArrayList();
-		final LabelMultisetEntryList list = new LabelMultisetEntryList( listData, 0 );
-		final LabelMultisetEntry entry = new LabelMultisetEntry( 0, 1 );
-		long nextListOffset = 0;
-A:		for ( int i = 0, j = -1; i < data.length; ++i )
+		final SingleLabelMultisetArrayBuilder builder = new SingleLabelMultisetArrayBuilder( numElements );
+		for ( int i = 0, j = -1; i < numElements; ++i )
 		{
 			final long id =
 					( 0xffl & bytes[ ++j ] ) |
@@ -76,27 +71,9 @@ A:		for ( int i = 0, j = -1; i < data.length; ++i )
 					( ( 0xffl & bytes[ ++j ] ) << 40 ) |
 					( ( 0xffl & bytes[ ++j ] ) << 48 ) |
 					( ( 0xffl & bytes[ ++j ] ) << 56 );
-
-			// does the list [id x 1] already exist?
-//			for ( int k = 0; k < idAndOffsetList.size(); k += 2 )
-//			{
-//				if ( idAndOffsetList.getQuick( k ) == id )
-//				{
-//					final long offset = idAndOffsetList.getQuick( k + 1 );
-//					data[ i ] = ( int ) offset;
-//					System.out.println( "Continuing A " + i + " " + data.length );
-//					continue A;
-//				}
-//			}
-
-			list.createListAt( listData, nextListOffset );
-			entry.setId( id );
-			list.add( entry );
-			idAndOffsetList.add( id );
-			idAndOffsetList.add( nextListOffset );
-			data[ i ] = ( int ) nextListOffset;
-			nextListOffset += list.getSizeInBytes();
+			builder.set( i, id );
 		}
+		return builder.build();
 	}
 
 	private String makeUrl(
@@ -119,15 +96,14 @@ A:		for ( int i = 0, j = -1; i < data.length; ++i )
 			final int[] dimensions,
 			final long[] min ) throws InterruptedException
 	{
-//		final int[] data = new int[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
-		final int[] data = new int[ 128 * 128 * 128 ];
-		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
+//		final int numElements = dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ];
+		final int numElements = 128 * 128 * 128;
 
 		try
 		{
 			final String urlString = makeUrl( min, dimensions );
 			System.out.println( urlString );
-			readBlock( urlString, data, listData );
+			return readBlock( urlString, numElements );
 		}
 		catch ( final IOException e )
 		{
@@ -138,8 +114,6 @@ A:		for ( int i = 0, j = -1; i < data.length; ++i )
 							Arrays.toString( dimensions ) );
 			return getEmptyArrayCreator().getEmptyArray( Intervals.numElements( dimensions ) );
 		}
-
-		return new VolatileLabelMultisetArray( data, listData, true );
 	}
 
 	@Override
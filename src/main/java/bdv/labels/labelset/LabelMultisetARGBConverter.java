@@ -18,7 +18,6 @@ package bdv.labels.labelset;
 
 import net.imglib2.converter.Converter;
 import net.imglib2.type.numeric.ARGBType;
-import bdv.labels.labelset.Multiset.Entry;
 import bdv.util.ColorStream;
 
 /**
@@ -36,10 +35,11 @@ public class LabelMultisetARGBConverter implements Converter< LabelMultisetType,
 		double g = 0;
 		double b = 0;
 		int size = 0;
-		for ( final Entry< Label > entry : input.entrySet() )
+		final int numEntries = input.numEntries();
+		for ( int i = 0; i < numEntries; ++i )
 		{
-			final long superVoxelId = entry.getElement().id();
-			final int count = entry.getCount();
+			final long superVoxelId = input.idAt( i );
+			final int count = input.countAt( i );
 			final int argb = ColorStream.get( superVoxelId );
 			r += count * ARGBType.red( argb );
 			g += count * ARGBType.green( argb );
@@ -0,0 +1,549 @@
+package bdv.labels.labelset;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Packed container for the label multiset blocks of one level.  Blocks are
+ * appended to a data file and located through an index that is kept in
+ * memory and appended to an index file:
+ *
+ * <pre>
+ * data:  block*
+ * block: int32 list offsets (little endian), list data bytes
+ * index: { int64 x, int64 y, int64 z, int64 data offset, int64 length, int32 number of elements }*
+ * </pre>
+ *
+ * The list data bytes are those of the {@code long[]} storage of
+ * {@link LongMappedAccessData}, i.e. native byte order.  The same block
+ * encoding is used for other stores through {@link #encode} and
+ * {@link #decode}.
+ *
+ * The data file is memory mapped privately in regions of a fixed size that
+ * are shared by all blocks inside of them, such that the number of mappings
+ * grows with the size of the data file and not with the number of blocks.
+ * The list data of such a block is used in place, only the list offsets are
+ * copied, unless list data of another {@link MappedAccessData.Factory} is
+ * requested.  Blocks in the last region, which is mapped only once it is
+ * complete, and blocks that cross the border of two regions are read into
+ * native memory instead.  An index record is written only after its block, such that
+ * an interrupted write leaves no index entry for a partial block.  Blocks
+ * that are written again are appended and the older copy is left unused.
+ * If more than half of the data file is unused when the container is
+ * opened, the live blocks are copied into a new data file.
+ *
+ * The index file is locked while the container is open, so it cannot be
+ * opened by another process at the same time.
+ */
+public class LabelMultisetBlockContainer
+{
+	final static protected int INDEX_RECORD_SIZE = 5 * 8 + 4;
+
+	final static public long DEFAULT_REGION_SIZE = 1L << 26;
+
+	static protected class Entry
+	{
+		final long offset;
+
+		final long length;
+
+		final int numElements;
+
+		Entry( final long offset, final long length, final int numElements )
+		{
+			this.offset = offset;
+			this.length = length;
+			this.numElements = numElements;
+		}
+	}
+
+	static protected class Key
+	{
+		final long x, y, z;
+
+		Key( final long x, final long y, final long z )
+		{
+			this.x = x;
+			this.y = y;
+			this.z = z;
+		}
+
+		Key( final long[] min )
+		{
+			this( min[ 0 ], min[ 1 ], min[ 2 ] );
+		}
+
+		@Override
+		public boolean equals( final Object o )
+		{
+			if ( !( o instanceof Key ) )
+				return false;
+			final Key k = ( Key )o;
+			return x == k.x && y == k.y && z == k.z;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			long h = x;
+			h = 31 * h + y;
+			h = 31 * h + z;
+			return ( int )( h ^ ( h >>> 32 ) );
+		}
+	}
+
+	final protected FileChannel data;
+
+	final protected FileChannel index;
+
+	final protected FileLock lock;
+
+	final protected HashMap< Key, Entry > entries = new HashMap<>();
+
+	/* size of the mapped regions of the data file */
+	final protected long regionSize;
+
+	/* mapped regions of the data file by offset / regionSize, null if not mapped yet */
+	final protected ArrayList< ByteBuffer > regions = new ArrayList<>();
+
+	/**
+	 * Open or create the container <code>base.data</code>,
+	 * <code>base.index</code>.
+	 *
+	 * @param base
+	 * @throws IOException
+	 *             if the container is open in another process
+	 */
+	public LabelMultisetBlockContainer( final Path base ) throws IOException
+	{
+		this( base, DEFAULT_REGION_SIZE );
+	}
+
+	/**
+	 * Open or create the container <code>base.data</code>,
+	 * <code>base.index</code> and map its data file in regions of
+	 * regionSize bytes.
+	 *
+	 * @param base
+	 * @param regionSize
+	 *            at most {@link Integer#MAX_VALUE}
+	 * @throws IOException
+	 *             if the container is open in another process
+	 */
+	public LabelMultisetBlockContainer( final Path base, final long regionSize ) throws IOException
+	{
+		this.regionSize = regionSize;
+
+		if ( base.getParent() != null )
+			Files.createDirectories( base.getParent() );
+
+		final Path dataPath = base.resolveSibling( base.getFileName() + ".data" );
+		final Path compactDataPath = base.resolveSibling( base.getFileName() + ".data.compact" );
+		final Path compactIndexPath = base.resolveSibling( base.getFileName() + ".index.compact" );
+
+		index = FileChannel.open( base.resolveSibling( base.getFileName() + ".index" ), READ, WRITE, CREATE );
+		try
+		{
+			lock = index.tryLock();
+		}
+		catch ( final OverlappingFileLockException e )
+		{
+			index.close();
+			throw new IOException( base + " is open already" );
+		}
+		if ( lock == null )
+		{
+			index.close();
+			throw new IOException( base + " is open in another process" );
+		}
+
+		/* finish or discard an interrupted compaction */
+		if ( Files.exists( compactDataPath ) )
+		{
+			Files.delete( compactDataPath );
+			Files.deleteIfExists( compactIndexPath );
+		}
+		else if ( Files.exists( compactIndexPath ) )
+			replaceIndex( compactIndexPath );
+
+		/* ignore a trailing partial record and records beyond the data */
+		final long numRecords = index.size() / INDEX_RECORD_SIZE;
+		final long dataSize = Files.exists( dataPath ) ? Files.size( dataPath ) : 0;
+		long liveSize = 0;
+		if ( numRecords > 0 )
+		{
+			final ByteBuffer records = index.map( FileChannel.MapMode.READ_ONLY, 0, numRecords * INDEX_RECORD_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+			for ( long i = 0; i < numRecords; ++i )
+			{
+				final Key key = new Key( records.getLong(), records.getLong(), records.getLong() );
+				final long offset = records.getLong();
+				final long length = records.getLong();
+				final int numElements = records.getInt();
+				if ( offset + length <= dataSize )
+				{
+					final Entry previous = entries.put( key, new Entry( offset, length, numElements ) );
+					liveSize += length - ( previous == null ? 0 : previous.length );
+				}
+			}
+		}
+		index.truncate( numRecords * INDEX_RECORD_SIZE );
+
+		if ( 2 * liveSize < dataSize )
+			compact( dataPath, compactDataPath, compactIndexPath );
+
+		data = FileChannel.open( dataPath, READ, WRITE, CREATE );
+	}
+
+	/**
+	 * Copy the live blocks into a new data file and index.  The new data
+	 * file replaces the old one before the index is replaced, such that an
+	 * existing compacted index without a compacted data file means that only
+	 * the index is left to be replaced.
+	 */
+	protected void compact( final Path dataPath, final Path compactDataPath, final Path compactIndexPath ) throws IOException
+	{
+		final HashMap< Key, Entry > compactEntries = new HashMap<>();
+		final ByteBuffer record = ByteBuffer.allocate( INDEX_RECORD_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+		try (
+				final FileChannel source = FileChannel.open( dataPath, READ );
+				final FileChannel target = FileChannel.open( compactDataPath, WRITE, CREATE, TRUNCATE_EXISTING );
+				final FileChannel targetIndex = FileChannel.open( compactIndexPath, WRITE, CREATE, TRUNCATE_EXISTING ) )
+		{
+			long offset = 0;
+			for ( final Map.Entry< Key, Entry > mapEntry : entries.entrySet() )
+			{
+				final Key key = mapEntry.getKey();
+				final Entry entry = mapEntry.getValue();
+				for ( long n = 0; n < entry.length; )
+					n += source.transferTo( entry.offset + n, entry.length - n, target );
+
+				record.clear();
+				record.putLong( key.x ).putLong( key.y ).putLong( key.z ).putLong( offset ).putLong( entry.length ).putInt( entry.numElements );
+				record.flip();
+				while ( record.hasRemaining() )
+					targetIndex.write( record );
+
+				compactEntries.put( key, new Entry( offset, entry.length, entry.numElements ) );
+				offset += entry.length;
+			}
+			target.force( true );
+			targetIndex.force( true );
+		}
+
+		Files.move( compactDataPath, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		replaceIndex( compactIndexPath );
+
+		entries.clear();
+		entries.putAll( compactEntries );
+	}
+
+	/**
+	 * Overwrite the locked index with the contents of the compacted index
+	 * and delete the latter.
+	 */
+	protected void replaceIndex( final Path compactIndexPath ) throws IOException
+	{
+		try ( final FileChannel source = FileChannel.open( compactIndexPath, READ ) )
+		{
+			final long size = source.size();
+			index.truncate( 0 );
+			for ( long n = 0; n < size; )
+				n += index.transferFrom( source, n, size - n );
+			index.force( true );
+		}
+		Files.delete( compactIndexPath );
+	}
+
+	/**
+	 * Size of an encoded block.
+	 *
+	 * @param numElements
+	 * @param listDataSize
+	 *            in bytes
+	 * @return
+	 */
+	static public long encodedSize( final int numElements, final long listDataSize )
+	{
+		return 4L * numElements + listDataSize;
+	}
+
+	/**
+	 * Encode a block into buffer at its position and advance the position.
+	 *
+	 * @param offsets
+	 * @param listData
+	 * @param listDataSize
+	 *            used bytes of listData
+	 * @param buffer
+	 */
+	static public void encode(
+			final int[] offsets,
+			final LongMappedAccessData listData,
+			final long listDataSize,
+			final ByteBuffer buffer )
+	{
+		final int start = buffer.position();
+		buffer.duplicate().order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer().put( offsets );
+		buffer.position( start + 4 * offsets.length );
+
+		listData.writeTo( buffer, listDataSize );
+	}
+
+	/**
+	 * Decode a block from the remaining bytes of buffer.
+	 *
+	 * @param buffer
+	 * @param numElements
+	 * @return
+	 */
+	static public VolatileLabelMultisetArray decode( final ByteBuffer buffer, final int numElements )
+	{
+		return decode( buffer, numElements, LongMappedAccessData.factory );
+	}
+
+	/**
+	 * Decode a block from the remaining bytes of buffer into list data
+	 * created by listDataFactory.
+	 *
+	 * @param buffer
+	 * @param numElements
+	 * @param listDataFactory
+	 * @return
+	 */
+	static public VolatileLabelMultisetArray decode(
+			final ByteBuffer buffer,
+			final int numElements,
+			final MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory )
+	{
+		final int[] offsets = new int[ numElements ];
+		final int start = buffer.position();
+		buffer.duplicate().order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer().get( offsets );
+		buffer.position( start + 4 * numElements );
+
+		final long listDataSize = buffer.remaining();
+		final LongMappedAccessData listData = listDataFactory.createStorage( listDataSize );
+		listData.readFrom( buffer, listDataSize );
+
+		return new VolatileLabelMultisetArray( offsets, listData, listDataSize, true );
+	}
+
+	/**
+	 * Decode a block from the remaining bytes of a direct buffer, e.g. a
+	 * region of a memory mapped file, whose list data is used in place.
+	 *
+	 * @param buffer
+	 * @param numElements
+	 * @return
+	 */
+	static public VolatileLabelMultisetArray wrap( final ByteBuffer buffer, final int numElements )
+	{
+		final int[] offsets = new int[ numElements ];
+		final int start = buffer.position();
+		buffer.duplicate().order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer().get( offsets );
+		buffer.position( start + 4 * numElements );
+
+		final LongMappedAccessData listData = LongMappedAccessData.wrap( buffer.slice() );
+
+		return new VolatileLabelMultisetArray( offsets, listData, listData.size(), true );
+	}
+
+	/**
+	 * Read the block at min.  Its list data is the memory mapped region of
+	 * the data file if the block is inside of a complete region, otherwise
+	 * it is read into native memory.
+	 *
+	 * @param min
+	 * @param numElements
+	 * @return null if the block is not in the container or has a different
+	 *         number of elements
+	 * @throws IOException
+	 */
+	public VolatileLabelMultisetArray get( final long[] min, final int numElements ) throws IOException
+	{
+		final Entry entry = entry( min, numElements );
+		if ( entry == null )
+			return null;
+
+		final ByteBuffer region = region( entry );
+		if ( region == null )
+			return decode( read( entry ), numElements, LongMappedAccessData.offHeapFactory );
+
+		final int start = ( int )( entry.offset % regionSize );
+		final ByteBuffer block = region.duplicate();
+		block.limit( start + ( int )entry.length );
+		block.position( start );
+		return wrap( block, numElements );
+	}
+
+	/**
+	 * Read the block at min into list data created by listDataFactory.
+	 *
+	 * @param min
+	 * @param numElements
+	 * @param listDataFactory
+	 * @return null if the block is not in the container or has a different
+	 *         number of elements
+	 * @throws IOException
+	 */
+	public VolatileLabelMultisetArray get(
+			final long[] min,
+			final int numElements,
+			final MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory ) throws IOException
+	{
+		final Entry entry = entry( min, numElements );
+		if ( entry == null )
+			return null;
+
+		return decode( read( entry ), numElements, listDataFactory );
+	}
+
+	/**
+	 * The mapped region of the data file that contains the entire block,
+	 * mapped if necessary.
+	 *
+	 * @param entry
+	 * @return null if the block crosses the border of two regions or its
+	 *         region is not complete
+	 * @throws IOException
+	 */
+	protected ByteBuffer region( final Entry entry ) throws IOException
+	{
+		final int i = ( int )( entry.offset / regionSize );
+		final long regionOffset = i * regionSize;
+		if ( entry.offset + entry.length > regionOffset + regionSize )
+			return null;
+
+		synchronized ( regions )
+		{
+			while ( regions.size() <= i )
+				regions.add( null );
+			ByteBuffer region = regions.get( i );
+			if ( region == null )
+			{
+				/* blocks are only appended, a complete region does not change */
+				if ( data.size() < regionOffset + regionSize )
+					return null;
+				region = data.map( FileChannel.MapMode.PRIVATE, regionOffset, regionSize );
+				regions.set( i, region );
+			}
+			return region;
+		}
+	}
+
+	/**
+	 * Read a block from the data file.
+	 *
+	 * @param entry
+	 * @return
+	 * @throws IOException
+	 */
+	protected ByteBuffer read( final Entry entry ) throws IOException
+	{
+		final ByteBuffer block = ByteBuffer.allocate( ( int )entry.length );
+		for ( long position = entry.offset; block.hasRemaining(); )
+		{
+			final int n = data.read( block, position );
+			if ( n < 0 )
+				throw new EOFException( "block at " + entry.offset + " ends after the data file" );
+			position += n;
+		}
+		block.flip();
+		return block;
+	}
+
+	/**
+	 * @return null if the block is not in the container or has a different
+	 *         number of elements
+	 */
+	protected Entry entry( final long[] min, final int numElements )
+	{
+		final Entry entry;
+		synchronized ( entries )
+		{
+			entry = entries.get( new Key( min ) );
+		}
+		if ( entry == null || entry.numElements != numElements || entry.length < 4L * numElements )
+			return null;
+		return entry;
+	}
+
+	/**
+	 * Append a block.
+	 *
+	 * @param min
+	 * @param offsets
+	 * @param listData
+	 * @param listDataSize
+	 *            used bytes of listData
+	 * @throws IOException
+	 */
+	public void put(
+			final long[] min,
+			final int[] offsets,
+			final LongMappedAccessData listData,
+			final long listDataSize ) throws IOException
+	{
+		final long length = encodedSize( offsets.length, listDataSize );
+		final ByteBuffer block = ByteBuffer.allocate( ( int )length );
+		encode( offsets, listData, listDataSize, block );
+		block.flip();
+
+		final ByteBuffer record = ByteBuffer.allocate( INDEX_RECORD_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+		final Key key = new Key( min );
+
+		synchronized ( entries )
+		{
+			final long offset = data.size();
+			for ( long position = offset; block.hasRemaining(); )
+				position += data.write( block, position );
+
+			record.putLong( key.x ).putLong( key.y ).putLong( key.z ).putLong( offset ).putLong( length ).putInt( offsets.length );
+			record.flip();
+			for ( long position = index.size(); record.hasRemaining(); )
+				position += index.write( record, position );
+
+			entries.put( key, new Entry( offset, length, offsets.length ) );
+		}
+	}
+
+	public int numBlocks()
+	{
+		synchronized ( entries )
+		{
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Close the files and release the lock.  Blocks that were read stay
+	 * valid.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		synchronized ( regions )
+		{
+			regions.clear();
+		}
+		data.close();
+		lock.release();
+		index.close();
+	}
+}
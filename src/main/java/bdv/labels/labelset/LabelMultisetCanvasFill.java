@@ -0,0 +1,496 @@
+package bdv.labels.labelset;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.view.Views;
+
+/**
+ * Parallel scanline flood fill of a {@link LongType} canvas over
+ * {@link LabelMultisetType} labels with the semantics of
+ * {@code LabelFillController.SegmentAndPaintFilter1}: a pixel is filled if
+ * it is painted with the comparison label, or if it is not painted and its
+ * label multiset contains any fragment of the seed segment.  The filled
+ * region is 2n-connected (DiamondShape( 1 )).
+ *
+ * The canvas interval is split into blocks.  Each block has a visited bitmap
+ * and a queue of pending spans along dimension 0.  A block is processed by at
+ * most one task at a time, which fills whole spans and pushes the
+ * neighboring spans either onto its local stack or, if they cross the block
+ * boundary, into the pending queue of the neighboring block, forking a new
+ * task for that block if it is idle.  Tasks run in a work-stealing
+ * {@link ForkJoinPool}.
+ *
+ * Segments with a single fragment are tested with one binary search per
+ * pixel, few fragments with one binary search each, many fragments by
+ * looking up each entry of the pixel's multiset in a hash set.
+ */
+public class LabelMultisetCanvasFill
+{
+	final static public int DEFAULT_BLOCK_SIZE = 64;
+
+	/* up to this many fragments, binary search each instead of hashing */
+	final static protected int MAX_FRAGMENTS_SEARCH = 8;
+
+	final protected RandomAccessible< LabelMultisetType > labels;
+
+	final protected RandomAccessibleInterval< LongType > canvas;
+
+	final protected int n;
+
+	final protected long[] min;
+
+	final protected long[] max;
+
+	final protected int[] blockSize;
+
+	final protected long[] gridDimensions;
+
+	final protected ForkJoinPool pool;
+
+	/**
+	 * @param labels
+	 * @param canvas
+	 *            the fill is restricted to this interval
+	 * @param blockSize
+	 *            preferably a multiple of the canvas cell size
+	 * @param pool
+	 */
+	public LabelMultisetCanvasFill(
+			final RandomAccessibleInterval< LabelMultisetType > labels,
+			final RandomAccessibleInterval< LongType > canvas,
+			final int[] blockSize,
+			final ForkJoinPool pool )
+	{
+		this.labels = Views.extendValue( labels, new LabelMultisetType() );
+		this.canvas = canvas;
+		this.blockSize = blockSize;
+		this.pool = pool;
+		n = canvas.numDimensions();
+		min = new long[ n ];
+		max = new long[ n ];
+		canvas.min( min );
+		canvas.max( max );
+		gridDimensions = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+			gridDimensions[ d ] = ( max[ d ] - min[ d ] + blockSize[ d ] ) / blockSize[ d ];
+	}
+
+	public LabelMultisetCanvasFill(
+			final RandomAccessibleInterval< LabelMultisetType > labels,
+			final RandomAccessibleInterval< LongType > canvas )
+	{
+		this( labels, canvas, defaultBlockSize( canvas.numDimensions() ), ForkJoinPool.commonPool() );
+	}
+
+	final static protected int[] defaultBlockSize( final int n )
+	{
+		final int[] blockSize = new int[ n ];
+		Arrays.fill( blockSize, DEFAULT_BLOCK_SIZE );
+		return blockSize;
+	}
+
+	/**
+	 * Fill the segment at seed.
+	 *
+	 * @param seed
+	 * @param fillLabel
+	 *            the label written into the canvas
+	 * @param comparison
+	 *            painted pixels with this label are filled, nothing is
+	 *            filled if this is not a {@link Label#regular(long) regular}
+	 *            id
+	 * @param fragments
+	 *            unpainted pixels containing any of these fragments are
+	 *            filled, if null, unpainted pixels containing comparison
+	 *            are filled
+	 * @param isCancelled
+	 *            stops the fill early, pixels filled so far remain
+	 * @return bounding box of filled pixels or null if no pixel was filled
+	 */
+	public Interval fill(
+			final Localizable seed,
+			final long fillLabel,
+			final long comparison,
+			final long[] fragments,
+			final BooleanSupplier isCancelled )
+	{
+		if ( !Label.regular( comparison ) )
+			return null;
+
+		final long[] seedPosition = new long[ n ];
+		final long[] gridPosition = new long[ n ];
+		final int[] local = new int[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			seedPosition[ d ] = seed.getLongPosition( d );
+			if ( seedPosition[ d ] < min[ d ] || seedPosition[ d ] > max[ d ] )
+				return null;
+			gridPosition[ d ] = ( seedPosition[ d ] - min[ d ] ) / blockSize[ d ];
+			local[ d ] = ( int )( seedPosition[ d ] - min[ d ] - gridPosition[ d ] * blockSize[ d ] );
+		}
+
+		final FillRun run = new FillRun( fillLabel, comparison, fragments == null ? new long[]{ comparison } : fragments, isCancelled );
+		final Block block = run.block( gridPosition );
+		block.pending.add( span( block.index( local ), 1 ) );
+		block.scheduled = true;
+		pool.invoke( run.new BlockTask( null, block ) );
+
+		return run.interval();
+	}
+
+	final static protected long span( final int start, final int length )
+	{
+		return ( ( long )start << 32 ) | length;
+	}
+
+	final static protected int spanStart( final long span )
+	{
+		return ( int )( span >>> 32 );
+	}
+
+	final static protected int spanLength( final long span )
+	{
+		return ( int )span;
+	}
+
+	final protected class Block
+	{
+		final protected long[] gridPosition;
+
+		final protected long[] min = new long[ n ];
+
+		final protected int[] size = new int[ n ];
+
+		final protected int[] steps = new int[ n ];
+
+		/* only accessed by the task processing this block */
+		final protected long[] visited;
+
+		/* guarded by this */
+		final protected TLongArrayList pending = new TLongArrayList();
+
+		protected boolean scheduled = false;
+
+		protected Block( final long[] gridPosition )
+		{
+			this.gridPosition = gridPosition;
+			int step = 1;
+			for ( int d = 0; d < n; ++d )
+			{
+				min[ d ] = LabelMultisetCanvasFill.this.min[ d ] + gridPosition[ d ] * blockSize[ d ];
+				size[ d ] = ( int )Math.min( blockSize[ d ], max[ d ] - min[ d ] + 1 );
+				steps[ d ] = step;
+				step *= size[ d ];
+			}
+			visited = new long[ ( step + 63 ) / 64 ];
+		}
+
+		final protected int index( final int[] local )
+		{
+			int i = 0;
+			for ( int d = 0; d < n; ++d )
+				i += local[ d ] * steps[ d ];
+			return i;
+		}
+
+		final protected void localPosition( int i, final int[] local )
+		{
+			for ( int d = n - 1; d >= 0; --d )
+			{
+				local[ d ] = i / steps[ d ];
+				i -= local[ d ] * steps[ d ];
+			}
+		}
+
+		/**
+		 * Mark as visited.
+		 *
+		 * @return false if it was visited before
+		 */
+		final protected boolean visit( final int i )
+		{
+			final int j = i >>> 6;
+			final long bit = 1L << ( i & 63 );
+			final long word = visited[ j ];
+			if ( ( word & bit ) != 0 )
+				return false;
+			visited[ j ] = word | bit;
+			return true;
+		}
+	}
+
+	final protected class FillRun
+	{
+		final protected long fillLabel;
+
+		final protected long comparison;
+
+		final protected long[] fragments;
+
+		final protected TLongHashSet fragmentSet;
+
+		final protected BooleanSupplier isCancelled;
+
+		final protected ConcurrentHashMap< Long, Block > blocks = new ConcurrentHashMap<>();
+
+		/* guarded by this */
+		final protected long[] filledMin = new long[ n ];
+
+		final protected long[] filledMax = new long[ n ];
+
+		protected FillRun(
+				final long fillLabel,
+				final long comparison,
+				final long[] fragments,
+				final BooleanSupplier isCancelled )
+		{
+			this.fillLabel = fillLabel;
+			this.comparison = comparison;
+			this.fragments = fragments;
+			this.isCancelled = isCancelled;
+			fragmentSet = fragments.length > MAX_FRAGMENTS_SEARCH ? new TLongHashSet( fragments ) : null;
+			Arrays.fill( filledMin, Long.MAX_VALUE );
+			Arrays.fill( filledMax, Long.MIN_VALUE );
+		}
+
+		final protected Block block( final long[] gridPosition )
+		{
+			long key = 0;
+			for ( int d = n - 1; d >= 0; --d )
+				key = key * gridDimensions[ d ] + gridPosition[ d ];
+			return blocks.computeIfAbsent( key, k -> new Block( gridPosition ) );
+		}
+
+		final protected boolean accept( final LabelMultisetType labelSet, final long paint )
+		{
+			if ( paint != Label.TRANSPARENT )
+				return paint == comparison && paint != fillLabel;
+
+			if ( fragmentSet == null )
+			{
+				for ( final long fragment : fragments )
+					if ( labelSet.contains( fragment ) )
+						return true;
+			}
+			else
+			{
+				for ( final Multiset.Entry< Label > entry : labelSet.entrySet() )
+					if ( fragmentSet.contains( entry.getElement().id() ) )
+						return true;
+			}
+			return false;
+		}
+
+		protected synchronized void touch( final long[] touchedMin, final long[] touchedMax )
+		{
+			for ( int d = 0; d < n; ++d )
+			{
+				filledMin[ d ] = Math.min( filledMin[ d ], touchedMin[ d ] );
+				filledMax[ d ] = Math.max( filledMax[ d ], touchedMax[ d ] );
+			}
+		}
+
+		protected synchronized Interval interval()
+		{
+			if ( filledMin[ 0 ] > filledMax[ 0 ] )
+				return null;
+			return new FinalInterval( filledMin, filledMax );
+		}
+
+		final protected class BlockTask extends CountedCompleter< Void >
+		{
+			private static final long serialVersionUID = 1L;
+
+			final protected Block block;
+
+			final protected TLongArrayList stack = new TLongArrayList();
+
+			final protected int[] local = new int[ n ];
+
+			final protected int[] neighborLocal = new int[ n ];
+
+			final protected long[] neighborGridPosition = new long[ n ];
+
+			final protected long[] touchedMin = new long[ n ];
+
+			final protected long[] touchedMax = new long[ n ];
+
+			protected RandomAccess< LabelMultisetType > labelAccess;
+
+			protected RandomAccess< LongType > canvasAccess;
+
+			protected BlockTask( final CountedCompleter< ? > completer, final Block block )
+			{
+				super( completer );
+				this.block = block;
+			}
+
+			@Override
+			public void compute()
+			{
+				labelAccess = labels.randomAccess();
+				canvasAccess = canvas.randomAccess();
+				Arrays.fill( touchedMin, Long.MAX_VALUE );
+				Arrays.fill( touchedMax, Long.MIN_VALUE );
+
+				while ( true )
+				{
+					synchronized ( block )
+					{
+						if ( block.pending.isEmpty() )
+						{
+							block.scheduled = false;
+							break;
+						}
+						stack.addAll( block.pending );
+						block.pending.clear();
+					}
+
+					while ( !stack.isEmpty() )
+					{
+						if ( isCancelled.getAsBoolean() )
+						{
+							stack.clear();
+							break;
+						}
+						final long span = stack.removeAt( stack.size() - 1 );
+						processSpan( spanStart( span ), spanLength( span ) );
+					}
+				}
+
+				if ( touchedMin[ 0 ] <= touchedMax[ 0 ] )
+					touch( touchedMin, touchedMax );
+
+				tryComplete();
+			}
+
+			final protected boolean tryAccept( final int rowStart, final int x )
+			{
+				if ( !block.visit( rowStart + x ) )
+					return false;
+				final long gx = block.min[ 0 ] + x;
+				labelAccess.setPosition( gx, 0 );
+				canvasAccess.setPosition( gx, 0 );
+				return accept( labelAccess.get(), canvasAccess.get().get() );
+			}
+
+			/**
+			 * Fill all runs of unvisited accepted pixels that intersect a
+			 * span along dimension 0, extending them to the left and right
+			 * within the block.
+			 */
+			final protected void processSpan( final int start, final int length )
+			{
+				final int rowStart = start - start % block.size[ 0 ];
+				block.localPosition( rowStart, local );
+				for ( int d = 1; d < n; ++d )
+				{
+					final long p = block.min[ d ] + local[ d ];
+					labelAccess.setPosition( p, d );
+					canvasAccess.setPosition( p, d );
+				}
+
+				final int end = start - rowStart + length;
+				for ( int x = start - rowStart; x < end; ++x )
+				{
+					if ( !tryAccept( rowStart, x ) )
+						continue;
+
+					int left = x;
+					while ( left > 0 && tryAccept( rowStart, left - 1 ) )
+						--left;
+					int right = x;
+					while ( right < block.size[ 0 ] - 1 && tryAccept( rowStart, right + 1 ) )
+						++right;
+
+					fillRow( left, right );
+					pushNeighbors( rowStart, left, right );
+
+					/* right + 1 has been visited already */
+					x = right + 1;
+				}
+			}
+
+			final protected void fillRow( final int left, final int right )
+			{
+				canvasAccess.setPosition( block.min[ 0 ] + left, 0 );
+				for ( int x = left; x <= right; ++x, canvasAccess.fwd( 0 ) )
+					canvasAccess.get().set( fillLabel );
+
+				touchedMin[ 0 ] = Math.min( touchedMin[ 0 ], block.min[ 0 ] + left );
+				touchedMax[ 0 ] = Math.max( touchedMax[ 0 ], block.min[ 0 ] + right );
+				for ( int d = 1; d < n; ++d )
+				{
+					final long p = block.min[ d ] + local[ d ];
+					touchedMin[ d ] = Math.min( touchedMin[ d ], p );
+					touchedMax[ d ] = Math.max( touchedMax[ d ], p );
+				}
+			}
+
+			final protected void pushNeighbors( final int rowStart, final int left, final int right )
+			{
+				final int length = right - left + 1;
+
+				if ( left == 0 && block.gridPosition[ 0 ] > 0 )
+					offer( 0, -1, 0, 1 );
+				if ( right == block.size[ 0 ] - 1 && block.gridPosition[ 0 ] < gridDimensions[ 0 ] - 1 )
+					offer( 0, 1, right, 1 );
+
+				for ( int d = 1; d < n; ++d )
+				{
+					if ( local[ d ] > 0 )
+						stack.add( span( rowStart - block.steps[ d ] + left, length ) );
+					else if ( block.gridPosition[ d ] > 0 )
+						offer( d, -1, left, length );
+
+					if ( local[ d ] < block.size[ d ] - 1 )
+						stack.add( span( rowStart + block.steps[ d ] + left, length ) );
+					else if ( block.gridPosition[ d ] < gridDimensions[ d ] - 1 )
+						offer( d, 1, left, length );
+				}
+			}
+
+			/**
+			 * Queue a span in the neighboring block along dimension d and
+			 * fork a task for it if it is idle.
+			 */
+			final protected void offer( final int d, final int direction, final int x, final int length )
+			{
+				System.arraycopy( block.gridPosition, 0, neighborGridPosition, 0, n );
+				neighborGridPosition[ d ] += direction;
+				final Block neighbor = block( neighborGridPosition.clone() );
+
+				System.arraycopy( local, 0, neighborLocal, 0, n );
+				neighborLocal[ 0 ] = x;
+				neighborLocal[ d ] = direction > 0 ? 0 : neighbor.size[ d ] - 1;
+				final long span = span( neighbor.index( neighborLocal ), length );
+
+				final boolean fork;
+				synchronized ( neighbor )
+				{
+					neighbor.pending.add( span );
+					fork = !neighbor.scheduled;
+					neighbor.scheduled = true;
+				}
+				if ( fork )
+				{
+					addToPendingCount( 1 );
+					new BlockTask( this, neighbor ).fork();
+				}
+			}
+		}
+	}
+}
@@ -5,6 +5,7 @@ import java.util.Iterator;
 import java.util.Set;
 
 import bdv.labels.labelset.Multiset.Entry;
+import gnu.trove.procedure.TLongIntProcedure;
 
 public class LabelMultisetEntryList
 	extends MappedObjectArrayList< LabelMultisetEntry, LongMappedAccess >
@@ -32,10 +33,73 @@ public class LabelMultisetEntryList
 
 	protected int multisetSize()
 	{
-		int size = 0;
-		for ( final LabelMultisetEntry e : this )
-			size += e.getCount();
-		return size;
+		int multisetSize = 0;
+		for ( int i = size() - 1; i >= 0; --i )
+			multisetSize += countAt( i );
+		return multisetSize;
+	}
+
+	/**
+	 * Get the id of the entry at index without a {@link LabelMultisetEntry}
+	 * ref and without bounds checking.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public long idAt( final int index )
+	{
+		return getAccess().getLong( ByteUtils.INT_SIZE + index * LabelMultisetEntry.SIZE_IN_BYTES + LabelMultisetEntry.SUPERVOXEL_ID_OFFSET );
+	}
+
+	/**
+	 * Get the count of the entry at index without a
+	 * {@link LabelMultisetEntry} ref and without bounds checking.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int countAt( final int index )
+	{
+		return getAccess().getInt( ByteUtils.INT_SIZE + index * LabelMultisetEntry.SIZE_IN_BYTES + LabelMultisetEntry.COUNT_OFFSET );
+	}
+
+	/**
+	 * Get the id of the entry with the largest count.  Of entries with equal
+	 * counts, the one with the smallest id is chosen.
+	 *
+	 * @return {@link Label#TRANSPARENT} if the list is empty
+	 */
+	public long argMax()
+	{
+		long maxId = Label.TRANSPARENT;
+		int maxCount = 0;
+		final int size = size();
+		for ( int i = 0; i < size; ++i )
+		{
+			final int count = countAt( i );
+			if ( count > maxCount )
+			{
+				maxCount = count;
+				maxId = idAt( i );
+			}
+		}
+		return maxId;
+	}
+
+	/**
+	 * Pass id and count of all entries in order of increasing id to
+	 * procedure until it returns false.
+	 *
+	 * @param procedure
+	 * @return false if the procedure returned false for an entry
+	 */
+	public boolean forEachEntry( final TLongIntProcedure procedure )
+	{
+		final int size = size();
+		for ( int i = 0; i < size; ++i )
+			if ( !procedure.execute( idAt( i ), countAt( i ) ) )
+				return false;
+		return true;
 	}
 
 	/**
@@ -211,6 +275,17 @@ public class LabelMultisetEntryList
 		releaseRef( e1 );
 	}
 
+	/**
+	 * Merge with the entries of the current value of multiset, without
+	 * creating an entry set.
+	 *
+	 * @param multiset
+	 */
+	public void mergeWith( final LabelMultisetType multiset )
+	{
+		mergeWith( multiset.entries() );
+	}
+
 	public void mergeWith( final Multiset< Label > multiset )
 	{
 		mergeWith( multiset.entrySet() );
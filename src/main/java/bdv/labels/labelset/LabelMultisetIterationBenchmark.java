@@ -0,0 +1,157 @@
+package bdv.labels.labelset;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import bdv.labels.labelset.Multiset.Entry;
+import gnu.trove.procedure.TLongIntProcedure;
+
+/**
+ * Compares iterating the entries of {@link LabelMultisetType}s through
+ * {@link LabelMultisetType#entrySet()} with the indexed
+ * {@link LabelMultisetType#idAt(int)}/{@link LabelMultisetType#countAt(int)}
+ * and {@link LabelMultisetType#forEachEntry(TLongIntProcedure)} access, and
+ * scanning for the label with the largest count with
+ * {@link LabelMultisetType#argMax()}, on a synthetic block of multisets.
+ * Reports time and, where the JVM supports it, bytes allocated per pixel.
+ *
+ * Usage: LabelMultisetIterationBenchmark [pixels [entries per pixel [rounds]]]
+ */
+public class LabelMultisetIterationBenchmark
+{
+	static private interface Consumer
+	{
+		long consume( LabelMultisetType t );
+	}
+
+	static private class WeightedSum implements TLongIntProcedure
+	{
+		long sum;
+
+		@Override
+		public boolean execute( final long id, final int count )
+		{
+			sum += id * count;
+			return true;
+		}
+	}
+
+	static private VolatileLabelMultisetArray createBlock( final int numPixels, final int maxEntries, final Random rnd )
+	{
+		final int[] offsets = new int[ numPixels ];
+		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
+		final LabelMultisetEntryList list = new LabelMultisetEntryList( listData, 0 );
+		final LabelMultisetEntry entry = new LabelMultisetEntry( 0, 1 );
+		int nextListOffset = 0;
+		for ( int i = 0; i < numPixels; ++i )
+		{
+			list.createListAt( listData, nextListOffset );
+			final int numEntries = 1 + rnd.nextInt( maxEntries );
+			long id = rnd.nextInt( 1000 );
+			for ( int j = 0; j < numEntries; ++j )
+			{
+				id += 1 + rnd.nextInt( 1000 );
+				entry.setId( id );
+				entry.setCount( 1 + rnd.nextInt( 8 ) );
+				list.add( entry );
+			}
+			offsets[ i ] = nextListOffset;
+			nextListOffset += list.getSizeInBytes();
+		}
+		return new VolatileLabelMultisetArray( offsets, listData, nextListOffset, true );
+	}
+
+	static private long allocatedBytes()
+	{
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if ( bean instanceof com.sun.management.ThreadMXBean )
+			return ( ( com.sun.management.ThreadMXBean )bean ).getThreadAllocatedBytes( Thread.currentThread().getId() );
+		return -1;
+	}
+
+	static private long run(
+			final String name,
+			final LabelMultisetType t,
+			final int numPixels,
+			final int rounds,
+			final Consumer consumer )
+	{
+		long result = 0;
+		for ( int round = 0; round < rounds; ++round )
+		{
+			final long bytes = allocatedBytes();
+			final long time = System.nanoTime();
+			for ( int i = 0; i < numPixels; ++i )
+			{
+				t.updateIndex( i );
+				result += consumer.consume( t );
+			}
+			final long dt = System.nanoTime() - time;
+			final long dBytes = allocatedBytes() - bytes;
+			System.out.println( String.format(
+					"%-24s round %d: %6.2f ns/pixel, %s",
+					name,
+					round,
+					( double ) dt / numPixels,
+					bytes < 0 ? "allocation unknown" : String.format( "%.2f bytes/pixel", ( double ) dBytes / numPixels ) ) );
+		}
+		return result;
+	}
+
+	public static void main( final String[] args )
+	{
+		final int numPixels = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 64 * 64 * 64;
+		final int maxEntries = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 8;
+		final int rounds = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 10;
+
+		final LabelMultisetType t = new LabelMultisetType( createBlock( numPixels, maxEntries, new Random( 0 ) ) );
+		final WeightedSum weightedSum = new WeightedSum();
+
+		final long[] results = new long[] {
+				run( "entrySet sum", t, numPixels, rounds, m -> {
+					long sum = 0;
+					for ( final Entry< Label > entry : m.entrySet() )
+						sum += entry.getElement().id() * entry.getCount();
+					return sum;
+				} ),
+				run( "idAt/countAt sum", t, numPixels, rounds, m -> {
+					long sum = 0;
+					final int numEntries = m.numEntries();
+					for ( int i = 0; i < numEntries; ++i )
+						sum += m.idAt( i ) * m.countAt( i );
+					return sum;
+				} ),
+				run( "forEachEntry sum", t, numPixels, rounds, m -> {
+					weightedSum.sum = 0;
+					m.forEachEntry( weightedSum );
+					return weightedSum.sum;
+				} ),
+				run( "entrySet argmax", t, numPixels, rounds, m -> {
+					long maxId = Label.INVALID;
+					int maxCount = 0;
+					for ( final Entry< Label > entry : m.entrySet() )
+						if ( entry.getCount() > maxCount )
+						{
+							maxCount = entry.getCount();
+							maxId = entry.getElement().id();
+						}
+					return maxId;
+				} ),
+				run( "idAt/countAt argmax", t, numPixels, rounds, m -> {
+					long maxId = Label.INVALID;
+					int maxCount = 0;
+					final int numEntries = m.numEntries();
+					for ( int i = 0; i < numEntries; ++i )
+						if ( m.countAt( i ) > maxCount )
+						{
+							maxCount = m.countAt( i );
+							maxId = m.idAt( i );
+						}
+					return maxId;
+				} ),
+				run( "argMax", t, numPixels, rounds, m -> m.argMax() ) };
+
+		if ( results[ 0 ] != results[ 1 ] || results[ 0 ] != results[ 2 ] || results[ 3 ] != results[ 4 ] || results[ 3 ] != results[ 5 ] )
+			throw new IllegalStateException( "iterations disagree" );
+	}
+}
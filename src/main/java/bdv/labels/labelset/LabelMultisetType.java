@@ -6,6 +6,7 @@ import java.util.Iterator;
 import java.util.Set;
 
 import bdv.labels.labelset.RefList.RefIterator;
+import gnu.trove.procedure.TLongIntProcedure;
 import net.imglib2.img.NativeImg;
 import net.imglib2.img.NativeImgFactory;
 import net.imglib2.type.AbstractNativeType;
@@ -23,6 +24,9 @@ public class LabelMultisetType extends AbstractNativeType< LabelMultisetType > i
 
 	private final Set< Entry< Label > > entrySet;
 
+	/* reused by firstId() */
+	private final LabelMultisetEntry firstEntry;
+
 	// this is the constructor if you want it to read from an array
 	public LabelMultisetType( final NativeImg< ?, VolatileLabelMultisetArray > img )
 	{
@@ -44,6 +48,7 @@ public class LabelMultisetType extends AbstractNativeType< LabelMultisetType > i
 	private LabelMultisetType( final NativeImg< ?, VolatileLabelMultisetArray > img, final VolatileLabelMultisetArray access )
 	{
 		this.entries = new LabelMultisetEntryList();
+		this.firstEntry = entries.createRef();
 		this.img = img;
 		this.access = access;
 		this.entrySet = new AbstractSet< Entry< Label > >()
@@ -196,6 +201,98 @@ public class LabelMultisetType extends AbstractNativeType< LabelMultisetType > i
 		return entries.get( pos ).getCount();
 	}
 
+	/**
+	 * Get the id of the first entry without going through the entry set.
+	 * This is the only id of single element multisets.
+	 *
+	 * @return
+	 */
+	public long firstId()
+	{
+		access.getValue( i, entries );
+		return entries.get( 0, firstEntry ).getId();
+	}
+
+	/**
+	 * Get the number of distinct labels.  Unlike {@link #size()}, this does
+	 * not count multiple occurrences.
+	 *
+	 * @return
+	 */
+	public int numEntries()
+	{
+		access.getValue( i, entries );
+		return entries.size();
+	}
+
+	/**
+	 * Get the id of the entry at index, entries are sorted by id.  Together
+	 * with {@link #countAt(int)} and {@link #numEntries()}, this iterates the
+	 * entries without creating or boxing objects:
+	 *
+	 * <pre>
+	 * for ( int j = 0; j &lt; t.numEntries(); ++j )
+	 * 	sum += t.idAt( j ) * t.countAt( j );
+	 * </pre>
+	 *
+	 * @param index
+	 * @return
+	 */
+	public long idAt( final int index )
+	{
+		access.getValue( i, entries );
+		return entries.idAt( index );
+	}
+
+	/**
+	 * Get the count of the entry at index, see {@link #idAt(int)}.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int countAt( final int index )
+	{
+		access.getValue( i, entries );
+		return entries.countAt( index );
+	}
+
+	/**
+	 * Pass id and count of all entries in order of increasing id to
+	 * procedure until it returns false.
+	 *
+	 * @param procedure
+	 * @return false if the procedure returned false for an entry
+	 */
+	public boolean forEachEntry( final TLongIntProcedure procedure )
+	{
+		access.getValue( i, entries );
+		return entries.forEachEntry( procedure );
+	}
+
+	/**
+	 * Get the label with the largest count, of labels with equal counts the
+	 * one with the smallest id.  This is looked up in a table that the
+	 * underlying {@link VolatileLabelMultisetArray} computes once for all
+	 * its distinct multisets.
+	 *
+	 * @return {@link Label#TRANSPARENT} if the multiset is empty
+	 */
+	public long argMax()
+	{
+		return access.argMax( i );
+	}
+
+	/**
+	 * The list of entries of the current pixel.
+	 *
+	 * @return
+	 */
+	LabelMultisetEntryList entries()
+	{
+		access.getValue( i, entries );
+		return entries;
+	}
+
 	@Override
 	public Set< Entry< Label > > entrySet()
 	{
@@ -48,73 +48,73 @@ public class LongMappedAccess implements MappedAccess< LongMappedAccess >
 	@Override
 	public void putByte( final byte value, final int offset )
 	{
-		ByteUtils.putByte( value, dataArray.data, baseOffset + offset );
+		ByteUtils.putByte( value, dataArray.data, dataArray.origin + baseOffset + offset );
 	}
 
 	@Override
 	public byte getByte( final int offset )
 	{
-		return ByteUtils.getByte( dataArray.data, baseOffset + offset );
+		return ByteUtils.getByte( dataArray.data, dataArray.origin + baseOffset + offset );
 	}
 
 	@Override
 	public void putBoolean( final boolean value, final int offset )
 	{
-		ByteUtils.putBoolean( value, dataArray.data, baseOffset + offset );
+		ByteUtils.putBoolean( value, dataArray.data, dataArray.origin + baseOffset + offset );
 	}
 
 	@Override
 	public boolean getBoolean( final int offset )
 	{
-		return ByteUtils.getBoolean( dataArray.data, baseOffset + offset );
+		return ByteUtils.getBoolean( dataArray.data, dataArray.origin + baseOffset + offset );
 	}
 
 	@Override
 	public void putInt( final int value, final int offset )
 	{
-		ByteUtils.putInt( value, dataArray.data, baseOffset + offset );
+		ByteUtils.putInt( value, dataArray.data, dataArray.origin + baseOffset + offset );
 	}
 
 	@Override
 	public int getInt( final int offset )
 	{
-		return ByteUtils.getInt( dataArray.data, baseOffset + offset );
+		return ByteUtils.getInt( dataArray.data, dataArray.origin + baseOffset + offset );
 	}
 
 	@Override
 	public void putLong( final long value, final int offset )
 	{
-		ByteUtils.putLong( value, dataArray.data, baseOffset + offset );
+		ByteUtils.putLong( value, dataArray.data, dataArray.origin + baseOffset + offset );
 	}
 
 	@Override
 	public long getLong( final int offset )
 	{
-		return ByteUtils.getLong( dataArray.data, baseOffset + offset );
+		return ByteUtils.getLong( dataArray.data, dataArray.origin + baseOffset + offset );
 	}
 
 	@Override
 	public void putFloat( final float value, final int offset )
 	{
-		ByteUtils.putFloat( value, dataArray.data, baseOffset + offset );
+		ByteUtils.putFloat( value, dataArray.data, dataArray.origin + baseOffset + offset );
 	}
 
 	@Override
 	public float getFloat( final int offset )
 	{
-		return ByteUtils.getFloat( dataArray.data, baseOffset + offset );
+		return ByteUtils.getFloat( dataArray.data, dataArray.origin + baseOffset + offset );
 	}
 
 	@Override
 	public void putDouble( final double value, final int offset )
 	{
-		ByteUtils.putDouble( value, dataArray.data, baseOffset + offset );
+		ByteUtils.putDouble( value, dataArray.data, dataArray.origin + baseOffset + offset );
 	}
 
 	@Override
 	public double getDouble( final int offset )
 	{
-		return ByteUtils.getDouble( dataArray.data, baseOffset + offset );
+		return ByteUtils.getDouble( dataArray.data, dataArray.origin + baseOffset + offset );
 	}
 
 	/**
@@ -142,7 +142,7 @@ public class LongMappedAccess implements MappedAccess< LongMappedAccess >
 	@Override
 	public void copyFrom( final LongMappedAccess fromAccess, final int numBytes )
 	{
-		ByteUtils.copyBytes( fromAccess.dataArray.data, fromAccess.baseOffset, dataArray.data, baseOffset, numBytes );
+		ByteUtils.copyBytes( fromAccess.dataArray.data, fromAccess.dataArray.origin + fromAccess.baseOffset, dataArray.data, dataArray.origin + baseOffset, numBytes );
 	}
 
 	private long[] swapTmp = new long[ 0 ];
@@ -152,8 +152,8 @@ public class LongMappedAccess implements MappedAccess< LongMappedAccess >
 	{
 		if ( ( swapTmp.length << 3 ) < numBytes )
 			swapTmp = new long[ ( numBytes >> 3 ) + 1 ];
-		ByteUtils.copyBytes( dataArray.data, baseOffset, swapTmp, 0, numBytes );
-		ByteUtils.copyBytes( access.dataArray.data, access.baseOffset, dataArray.data, baseOffset, numBytes );
-		ByteUtils.copyBytes( swapTmp, 0, access.dataArray.data, access.baseOffset, numBytes );
+		ByteUtils.copyBytes( dataArray.data, dataArray.origin + baseOffset, swapTmp, 0, numBytes );
+		ByteUtils.copyBytes( access.dataArray.data, access.dataArray.origin + access.baseOffset, dataArray.data, dataArray.origin + baseOffset, numBytes );
+		ByteUtils.copyBytes( swapTmp, 0, access.dataArray.data, access.dataArray.origin + access.baseOffset, numBytes );
 	}
 }
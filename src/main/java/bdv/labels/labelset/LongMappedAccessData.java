@@ -1,27 +1,71 @@
 package bdv.labels.labelset;
 
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 
 /**
  * A {@link MappedElementArray} that stores {@link DoubleMappedElement
  * DoubleMappedElements} in a {@code double[]} array.
  *
+ * Alternatively, created by {@link #offHeapFactory}, the storage is a block of
+ * native memory outside of the Java heap.  Its size is not limited by the
+ * maximum length of a {@code long[]} and it is freed after the
+ * {@link LongMappedAccessData} became unreachable.  Created by
+ * {@link #wrap(ByteBuffer)}, the storage is the memory of a direct buffer,
+ * e.g. a region of a memory mapped file.
+ *
  * @author Tobias Pietzsch <tobias.pietzsch@gmail.com>
  */
 public class LongMappedAccessData implements MappedAccessData< LongMappedAccess >
 {
 	/**
 	 * The current data storage. This is changed when the array is
-	 * {@link #resize(int) resized}.
+	 * {@link #resize(int) resized}.  {@code null} for off-heap storage.
 	 */
 	protected long[] data;
 
+	/**
+	 * Added to byte offsets when accessing {@link #data} through
+	 * {@link ByteUtils}.  0 for {@code long[]} storage, the origin of the
+	 * native memory for off-heap storage.  This is changed when off-heap
+	 * storage is {@link #resize(int) resized}.
+	 */
+	protected long origin;
+
 	private long size;
 
+	/**
+	 * Native memory, {@code null} for {@code long[]} and wrapped storage.
+	 */
+	private OffHeapMemory memory;
+
+	/**
+	 * The wrapped direct buffer, {@code null} for {@code long[]} and native
+	 * storage.  Referenced such that it is not freed or unmapped while in
+	 * use.
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * @return the storage array or {@code null} for off-heap storage.
+	 */
 	public long[] getData()
 	{
 		return data;
 	}
 
+	public boolean isOffHeap()
+	{
+		return data == null;
+	}
+
 	@Override
 	public LongMappedAccess createAccess()
 	{
@@ -35,7 +79,7 @@ public class LongMappedAccessData implements MappedAccessData< LongMappedAccess
 		access.setBaseOffset( baseOffset );
 	}
 
-	private long longSizeFromByteSize( final long byteSize )
+	static private long longSizeFromByteSize( final long byteSize )
 	{
 		return ( byteSize + ByteUtils.LONG_SIZE - 1 ) / ByteUtils.LONG_SIZE;
 	}
@@ -53,6 +97,49 @@ public class LongMappedAccessData implements MappedAccessData< LongMappedAccess
 
 		this.size = size;
 		this.data = new long[ ( int ) longSize ];
+		this.origin = 0;
+		this.memory = null;
+	}
+
+	/**
+	 * Create off-heap storage of {@code size} bytes.
+	 */
+	private LongMappedAccessData( final long size, final boolean offHeap )
+	{
+		this.size = size;
+		this.data = null;
+		this.memory = new OffHeapMemory( this, ByteUtils.LONG_SIZE * longSizeFromByteSize( size ) );
+		this.origin = ByteUtils.offHeapOrigin( memory.address );
+	}
+
+	/**
+	 * Use the remaining bytes of a direct buffer as storage.
+	 */
+	private LongMappedAccessData( final ByteBuffer buffer )
+	{
+		this.size = buffer.remaining();
+		this.data = null;
+		this.memory = null;
+		this.buffer = buffer;
+		this.origin = ByteUtils.offHeapOrigin( ByteUtils.address( buffer ) + buffer.position() );
+	}
+
+	/**
+	 * Use the remaining bytes of a direct buffer, e.g. a region of a memory
+	 * mapped file, as storage without copying.  The bytes are in native
+	 * order, i.e. as written by {@link #writeTo(ByteBuffer, long)}.  The
+	 * buffer must stay writable for the storage to be modified, map files
+	 * {@link java.nio.channels.FileChannel.MapMode#PRIVATE private} to keep
+	 * modifications out of the file.  {@link #resize(long) Resizing} moves
+	 * the storage to native memory.
+	 *
+	 * @param buffer
+	 *            direct buffer
+	 * @return
+	 */
+	public static LongMappedAccessData wrap( final ByteBuffer buffer )
+	{
+		return new LongMappedAccessData( buffer );
 	}
 
 	@Override
@@ -72,6 +159,24 @@ public class LongMappedAccessData implements MappedAccessData< LongMappedAccess
 		if ( longSize == longSizeFromByteSize( this.size ) )
 			return;
 
+		if ( buffer != null )
+		{
+			memory = new OffHeapMemory( this, ByteUtils.LONG_SIZE * longSize );
+			ByteUtils.copyMemory( ByteUtils.offHeapAddress( origin ), memory.address, Math.min( this.size, size ) );
+			buffer = null;
+			this.origin = ByteUtils.offHeapOrigin( memory.address );
+			this.size = size;
+			return;
+		}
+
+		if ( memory != null )
+		{
+			memory.reallocate( ByteUtils.LONG_SIZE * longSize );
+			this.origin = ByteUtils.offHeapOrigin( memory.address );
+			this.size = size;
+			return;
+		}
+
 		if ( longSize > Integer.MAX_VALUE )
 			throw new IllegalArgumentException(
 					"trying to resize a " + getClass().getName() + " with more than " + ( ( long ) ByteUtils.LONG_SIZE * Integer.MAX_VALUE ) + " bytes.");
@@ -83,6 +188,69 @@ public class LongMappedAccessData implements MappedAccessData< LongMappedAccess
 		this.size = size;
 	}
 
+	/**
+	 * Copy {@code numBytes} bytes from the position of {@code buffer} to the
+	 * beginning of this storage and advance the position.  The bytes are in
+	 * native order, i.e. as written by {@link #writeTo(ByteBuffer, long)}.
+	 *
+	 * @param buffer
+	 * @param numBytes
+	 */
+	public void readFrom( final ByteBuffer buffer, final long numBytes )
+	{
+		final ByteBuffer source = buffer.duplicate().order( ByteOrder.nativeOrder() );
+		long i = 0;
+		if ( data != null )
+		{
+			final int numLongs = ( int ) ( numBytes / ByteUtils.LONG_SIZE );
+			source.asLongBuffer().get( data, 0, numLongs );
+			source.position( source.position() + ByteUtils.LONG_SIZE * numLongs );
+			i = ( long ) ByteUtils.LONG_SIZE * numLongs;
+		}
+		else if ( source.hasArray() )
+		{
+			ByteUtils.copyBytes( source.array(), source.arrayOffset() + source.position(), data, origin, numBytes );
+			source.position( source.position() + ( int ) numBytes );
+			i = numBytes;
+		}
+		for ( ; i + ByteUtils.LONG_SIZE <= numBytes; i += ByteUtils.LONG_SIZE )
+			ByteUtils.putLong( source.getLong(), data, origin + i );
+		for ( ; i < numBytes; ++i )
+			ByteUtils.putByte( source.get(), data, origin + i );
+		buffer.position( source.position() );
+	}
+
+	/**
+	 * Copy the first {@code numBytes} bytes of this storage to the position of
+	 * {@code buffer} and advance the position.  The bytes are in native order.
+	 *
+	 * @param buffer
+	 * @param numBytes
+	 */
+	public void writeTo( final ByteBuffer buffer, final long numBytes )
+	{
+		final ByteBuffer target = buffer.duplicate().order( ByteOrder.nativeOrder() );
+		long i = 0;
+		if ( data != null )
+		{
+			final int numLongs = ( int ) ( numBytes / ByteUtils.LONG_SIZE );
+			target.asLongBuffer().put( data, 0, numLongs );
+			target.position( target.position() + ByteUtils.LONG_SIZE * numLongs );
+			i = ( long ) ByteUtils.LONG_SIZE * numLongs;
+		}
+		else if ( target.hasArray() )
+		{
+			ByteUtils.copyBytes( data, origin, target.array(), target.arrayOffset() + target.position(), numBytes );
+			target.position( target.position() + ( int ) numBytes );
+			i = numBytes;
+		}
+		for ( ; i + ByteUtils.LONG_SIZE <= numBytes; i += ByteUtils.LONG_SIZE )
+			target.putLong( ByteUtils.getLong( data, origin + i ) );
+		for ( ; i < numBytes; ++i )
+			target.put( ByteUtils.getByte( data, origin + i ) );
+		buffer.position( target.position() );
+	}
+
 	/**
 	 * A factory for {@link LongMappedAccessData}s.
 	 */
@@ -101,4 +269,103 @@ public class LongMappedAccessData implements MappedAccessData< LongMappedAccess
 					return new LongMappedAccess( null, 0 );
 				}
 			};
+
+	/**
+	 * A factory for {@link LongMappedAccessData}s that store their data in
+	 * native memory outside of the Java heap.
+	 */
+	public static final MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > offHeapFactory =
+			new MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess >()
+			{
+				@Override
+				public LongMappedAccessData createStorage( final long size )
+				{
+					OffHeapMemory.freeUnreachable();
+					try
+					{
+						return new LongMappedAccessData( size, true );
+					}
+					catch ( final OutOfMemoryError e )
+					{
+						/* native memory pressure does not trigger garbage collection */
+						System.gc();
+						for ( int i = 0; i < 10; ++i )
+						{
+							try
+							{
+								Thread.sleep( 10 );
+							}
+							catch ( final InterruptedException ie )
+							{
+								Thread.currentThread().interrupt();
+								break;
+							}
+							OffHeapMemory.freeUnreachable();
+						}
+						return new LongMappedAccessData( size, true );
+					}
+				}
+
+				@Override
+				public LongMappedAccess createAccess()
+				{
+					return new LongMappedAccess( null, 0 );
+				}
+			};
+
+	/**
+	 * @return number of bytes of native memory currently allocated for
+	 *         off-heap storage, including storage that is unreachable but not
+	 *         yet freed.
+	 */
+	public static long offHeapBytes()
+	{
+		return OffHeapMemory.allocatedBytes.get();
+	}
+
+	/**
+	 * Native memory of an off-heap {@link LongMappedAccessData}.  Memory of
+	 * unreachable storage is freed when new off-heap storage is created.
+	 */
+	static private class OffHeapMemory extends PhantomReference< LongMappedAccessData >
+	{
+		static private final ReferenceQueue< LongMappedAccessData > unreachable = new ReferenceQueue<>();
+
+		/**
+		 * Keeps the references themselves reachable until their memory is freed.
+		 */
+		static private final Set< OffHeapMemory > allocated = Collections.newSetFromMap( new ConcurrentHashMap<>() );
+
+		static private final AtomicLong allocatedBytes = new AtomicLong();
+
+		private long address;
+
+		private long numBytes;
+
+		OffHeapMemory( final LongMappedAccessData referent, final long numBytes )
+		{
+			super( referent, unreachable );
+			this.address = ByteUtils.allocateMemory( numBytes );
+			this.numBytes = numBytes;
+			allocated.add( this );
+			allocatedBytes.addAndGet( numBytes );
+		}
+
+		void reallocate( final long newNumBytes )
+		{
+			address = ByteUtils.reallocateMemory( address, numBytes, newNumBytes );
+			allocatedBytes.addAndGet( newNumBytes - numBytes );
+			numBytes = newNumBytes;
+		}
+
+		static void freeUnreachable()
+		{
+			for ( OffHeapMemory memory = ( OffHeapMemory ) unreachable.poll(); memory != null; memory = ( OffHeapMemory ) unreachable.poll() )
+			{
+				allocated.remove( memory );
+				ByteUtils.freeMemory( memory.address );
+				allocatedBytes.addAndGet( -memory.numBytes );
+			}
+		}
+	}
 }
@@ -132,6 +132,15 @@ public class MappedObjectArrayList< O extends MappedObject< O, T >, T extends Ma
 			data.resize( 2 * ( elementBaseOffset + required ) );
 	}
 
+	/**
+	 * Access referring to this list, the size is at offset 0 and the
+	 * elements follow at offset {@link ByteUtils#INT_SIZE}.
+	 */
+	protected T getAccess()
+	{
+		return access;
+	}
+
 	public long getBaseOffset()
 	{
 		return baseOffset;
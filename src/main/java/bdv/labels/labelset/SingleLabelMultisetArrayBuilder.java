@@ -0,0 +1,124 @@
+package bdv.labels.labelset;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+/**
+ * Builds a {@link VolatileLabelMultisetArray} from single labels per voxel
+ * as loaded at full resolution.  Each distinct label is stored as one
+ * [label x 1] {@link LabelMultisetEntryList} that is shared by all voxels
+ * with this label.  Lists are found through a hash map, and runs of the same
+ * label skip the lookup entirely.
+ */
+public class SingleLabelMultisetArrayBuilder
+{
+	private final int[] offsets;
+
+	private final LongMappedAccessData listData;
+
+	private final LabelMultisetEntryList list;
+
+	private final LabelMultisetEntry entry = new LabelMultisetEntry( 0, 1 );
+
+	private final TLongIntHashMap idOffsetHash = new TLongIntHashMap(
+			Constants.DEFAULT_CAPACITY,
+			Constants.DEFAULT_LOAD_FACTOR,
+			-1,
+			-1 );
+
+	private int nextListOffset = 0;
+
+	private long lastId;
+
+	private int lastOffset = -1;
+
+	/**
+	 * @param offsets
+	 * @param listDataFactory
+	 *            creates the list storage, e.g.
+	 *            {@link LongMappedAccessData#offHeapFactory}
+	 */
+	public SingleLabelMultisetArrayBuilder(
+			final int[] offsets,
+			final MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory )
+	{
+		this.offsets = offsets;
+		listData = listDataFactory.createStorage( 32 );
+		list = new LabelMultisetEntryList( listData, 0 );
+	}
+
+	public SingleLabelMultisetArrayBuilder( final int[] offsets )
+	{
+		this( offsets, LongMappedAccessData.factory );
+	}
+
+	public SingleLabelMultisetArrayBuilder(
+			final int numElements,
+			final MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory )
+	{
+		this( new int[ numElements ], listDataFactory );
+	}
+
+	public SingleLabelMultisetArrayBuilder( final int numElements )
+	{
+		this( new int[ numElements ] );
+	}
+
+	/**
+	 * Assign a label to a voxel.
+	 *
+	 * @param index
+	 *            flat index of the voxel
+	 * @param id
+	 *            label id
+	 */
+	public void set( final int index, final long id )
+	{
+		if ( lastOffset < 0 || id != lastId )
+		{
+			int offset = idOffsetHash.get( id );
+			if ( offset == idOffsetHash.getNoEntryValue() )
+			{
+				offset = nextListOffset;
+				list.createListAt( listData, offset );
+				entry.setId( id );
+				list.add( entry );
+				idOffsetHash.put( id, offset );
+				nextListOffset += list.getSizeInBytes();
+			}
+			lastId = id;
+			lastOffset = offset;
+		}
+		offsets[ index ] = lastOffset;
+	}
+
+	/**
+	 * Number of distinct labels.
+	 *
+	 * @return
+	 */
+	public int numLists()
+	{
+		return idOffsetHash.size();
+	}
+
+	public VolatileLabelMultisetArray build()
+	{
+		return new VolatileLabelMultisetArray( offsets, listData, nextListOffset, true );
+	}
+
+	static public VolatileLabelMultisetArray build( final long[] labels )
+	{
+		return build( labels, LongMappedAccessData.factory );
+	}
+
+	static public VolatileLabelMultisetArray build(
+			final long[] labels,
+			final MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > listDataFactory )
+	{
+		final SingleLabelMultisetArrayBuilder builder = new SingleLabelMultisetArrayBuilder( labels.length, listDataFactory );
+		for ( int i = 0; i < labels.length; ++i )
+			builder.set( i, labels[ i ] );
+		return builder.build();
+	}
+}
@@ -1,6 +1,9 @@
 package bdv.labels.labelset;
 
 import bdv.img.cache.DefaultEmptyArrayCreator;
+import gnu.trove.impl.Constants;
+import gnu.trove.map.TIntLongMap;
+import gnu.trove.map.hash.TIntLongHashMap;
 import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
 import net.imglib2.img.basictypeaccess.volatiles.VolatileArrayDataAccess;
 
@@ -15,6 +18,12 @@ public class VolatileLabelMultisetArray implements VolatileAccess, VolatileArray
 
 	private final long listDataUsedSizeInBytes;
 
+	/**
+	 * Label with the largest count per list offset, created on first use by
+	 * {@link #argMax(int)}.
+	 */
+	private volatile TIntLongMap argMaxs = null;
+
 	public VolatileLabelMultisetArray( final int numEntities, final boolean isValid )
 	{
 		this.data = new int[ numEntities ];
@@ -49,6 +58,39 @@ public class VolatileLabelMultisetArray implements VolatileAccess, VolatileArray
 		ref.referToDataAt( listData, data[ index ] );
 	}
 
+	/**
+	 * Get the label with the largest count at index, see
+	 * {@link LabelMultisetEntryList#argMax()}.  Voxels share lists, so the
+	 * result is looked up per list offset in a table that is computed once
+	 * for all lists of this array.  The array must not be modified after the
+	 * first call.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public long argMax( final int index )
+	{
+		TIntLongMap argMaxs = this.argMaxs;
+		if ( argMaxs == null )
+			this.argMaxs = argMaxs = computeArgMaxs();
+		return argMaxs.get( data[ index ] );
+	}
+
+	private TIntLongMap computeArgMaxs()
+	{
+		final TIntLongMap argMaxs = new TIntLongHashMap( Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1, Label.INVALID );
+		final LabelMultisetEntryList list = new LabelMultisetEntryList();
+		for ( final int offset : data )
+		{
+			if ( !argMaxs.containsKey( offset ) )
+			{
+				list.referToDataAt( listData, offset );
+				argMaxs.put( offset, list.argMax() );
+			}
+		}
+		return argMaxs;
+	}
+
 	@Override
 	public VolatileLabelMultisetArray createArray( final int numEntities )
 	{
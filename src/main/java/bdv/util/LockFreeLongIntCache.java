@@ -0,0 +1,240 @@
+package bdv.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An open addressing long to int cache that can be read and written
+ * concurrently without locking.  Writers claim a slot for a new key with
+ * compare and set and then publish the value, readers that find a key whose
+ * value is not yet published see the no entry value, i.e. a miss.
+ *
+ * A key is searched in at most {@link #MAX_PROBES} slots.  If a put finds
+ * neither the key nor a free slot in that range, a table of twice the
+ * capacity is filled with the current entries and published atomically.  At
+ * the maximum capacity, an empty table of the same capacity is published
+ * instead.  Puts that race with growing, clearing or removing may be lost or
+ * win, which for a cache costs only recomputation.
+ *
+ * The no entry key is never stored and the no entry value marks a miss.
+ * Removing a key sets its value to the no entry value, the key keeps its
+ * slot until the table is replaced.
+ */
+public class LockFreeLongIntCache
+{
+	static protected class Table
+	{
+		final protected AtomicLongArray keys;
+		final protected AtomicIntegerArray values;
+		final protected int mask;
+
+		protected Table( final int capacity, final long noEntryKey, final int noEntryValue )
+		{
+			keys = new AtomicLongArray( capacity );
+			values = new AtomicIntegerArray( capacity );
+			mask = capacity - 1;
+			for ( int i = 0; i < capacity; ++i )
+			{
+				keys.lazySet( i, noEntryKey );
+				values.lazySet( i, noEntryValue );
+			}
+		}
+
+		final protected int capacity()
+		{
+			return mask + 1;
+		}
+	}
+
+	final static protected int DEFAULT_CAPACITY = 1024;
+
+	final static protected int DEFAULT_MAX_CAPACITY = 1 << 20;
+
+	final static protected int MAX_PROBES = 16;
+
+	final protected long noEntryKey;
+	final protected int noEntryValue;
+	final protected int maxCapacity;
+
+	final protected AtomicReference< Table > table;
+
+	/**
+	 * @param maxCapacity
+	 *            number of slots at which the cache is emptied instead of
+	 *            growing, rounded up to a power of two
+	 * @param noEntryKey
+	 * @param noEntryValue
+	 */
+	public LockFreeLongIntCache( final int maxCapacity, final long noEntryKey, final int noEntryValue )
+	{
+		this.noEntryKey = noEntryKey;
+		this.noEntryValue = noEntryValue;
+		this.maxCapacity = capacityFor( maxCapacity );
+		table = new AtomicReference<>( newTable( Math.min( DEFAULT_CAPACITY, this.maxCapacity ) ) );
+	}
+
+	public LockFreeLongIntCache( final long noEntryKey, final int noEntryValue )
+	{
+		this( DEFAULT_MAX_CAPACITY, noEntryKey, noEntryValue );
+	}
+
+	/**
+	 * Smallest power of two &ge; n and &ge; {@link #MAX_PROBES}.
+	 */
+	final static protected int capacityFor( final int n )
+	{
+		int capacity = MAX_PROBES;
+		while ( capacity < n && capacity < 1 << 30 )
+			capacity <<= 1;
+		return capacity;
+	}
+
+	final protected Table newTable( final int capacity )
+	{
+		return new Table( capacity, noEntryKey, noEntryValue );
+	}
+
+	public long getNoEntryKey()
+	{
+		return noEntryKey;
+	}
+
+	public int getNoEntryValue()
+	{
+		return noEntryValue;
+	}
+
+	/**
+	 * Number of slots of the current table.
+	 *
+	 * @return
+	 */
+	public int capacity()
+	{
+		return table.get().capacity();
+	}
+
+	/**
+	 * Get the value for a key or the no entry value if there is no such key.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public int get( final long key )
+	{
+		if ( key == noEntryKey )
+			return noEntryValue;
+
+		final Table t = table.get();
+		for ( int p = 0, i = LockFreeLongLongHashMap.hash( key ) & t.mask; p < MAX_PROBES; ++p, i = ( i + 1 ) & t.mask )
+		{
+			final long k = t.keys.get( i );
+			if ( k == key )
+				return t.values.get( i );
+			if ( k == noEntryKey )
+				return noEntryValue;
+		}
+		return noEntryValue;
+	}
+
+	/**
+	 * Put a key value pair into the cache.  The no entry key is ignored.
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public void put( final long key, final int value )
+	{
+		if ( key == noEntryKey )
+			return;
+
+		for ( Table t = table.get(); !put( t, key, value ); t = table.get() )
+			replace( t );
+	}
+
+	/**
+	 * @return false if neither the key nor a free slot were found
+	 */
+	final protected boolean put( final Table t, final long key, final int value )
+	{
+		for ( int p = 0, i = LockFreeLongLongHashMap.hash( key ) & t.mask; p < MAX_PROBES; ++p, i = ( i + 1 ) & t.mask )
+		{
+			long k = t.keys.get( i );
+			if ( k == noEntryKey )
+			{
+				if ( t.keys.compareAndSet( i, noEntryKey, key ) )
+				{
+					t.values.set( i, value );
+					return true;
+				}
+				k = t.keys.get( i );
+			}
+			if ( k == key )
+			{
+				t.values.set( i, value );
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Publish a larger copy of t or, at maximum capacity, an empty table,
+	 * unless t has been replaced already.
+	 */
+	protected void replace( final Table t )
+	{
+		final Table newTable;
+		if ( t.capacity() >= maxCapacity )
+			newTable = newTable( t.capacity() );
+		else
+		{
+			newTable = newTable( t.capacity() << 1 );
+			for ( int i = 0; i < t.capacity(); ++i )
+			{
+				final long key = t.keys.get( i );
+				if ( key != noEntryKey )
+				{
+					final int value = t.values.get( i );
+					if ( value != noEntryValue )
+						put( newTable, key, value );
+				}
+			}
+		}
+		table.compareAndSet( t, newTable );
+	}
+
+	/**
+	 * Remove a key.
+	 *
+	 * @param key
+	 */
+	public void remove( final long key )
+	{
+		if ( key == noEntryKey )
+			return;
+
+		final Table t = table.get();
+		for ( int p = 0, i = LockFreeLongLongHashMap.hash( key ) & t.mask; p < MAX_PROBES; ++p, i = ( i + 1 ) & t.mask )
+		{
+			final long k = t.keys.get( i );
+			if ( k == key )
+			{
+				t.values.set( i, noEntryValue );
+				return;
+			}
+			if ( k == noEntryKey )
+				return;
+		}
+	}
+
+	/**
+	 * Remove all entries.  Readers see either the complete previous state or
+	 * the empty cache.
+	 */
+	public void clear()
+	{
+		table.set( newTable( Math.min( DEFAULT_CAPACITY, maxCapacity ) ) );
+	}
+}
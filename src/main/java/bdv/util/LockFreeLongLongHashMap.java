@@ -0,0 +1,324 @@
+package bdv.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import gnu.trove.iterator.TLongLongIterator;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.procedure.TLongLongProcedure;
+
+/**
+ * An open addressing long to long hash map that can be read concurrently
+ * without locking.  All modifying methods are synchronized, i.e. there is
+ * only ever one writer.  A writer first publishes the value and then the key
+ * of a new entry, so readers never see a key without its value.  Growing the
+ * table happens on a private copy that is published atomically when complete,
+ * readers that are still working on the previous table see the state before
+ * the modification that triggered the resize.
+ *
+ * The no entry key cannot be stored, {@link #put(long, long)} ignores it.
+ * Removing an entry sets its value to the no entry value, the slot is
+ * reclaimed on the next resize.
+ */
+public class LockFreeLongLongHashMap
+{
+	static protected class Table
+	{
+		final protected AtomicLongArray keys;
+		final protected AtomicLongArray values;
+		final protected int mask;
+
+		/* only accessed by the writer */
+		protected int used = 0;
+		protected int size = 0;
+
+		protected Table( final int capacity, final long noEntryKey, final long noEntryValue )
+		{
+			keys = new AtomicLongArray( capacity );
+			values = new AtomicLongArray( capacity );
+			mask = capacity - 1;
+			for ( int i = 0; i < capacity; ++i )
+			{
+				keys.lazySet( i, noEntryKey );
+				values.lazySet( i, noEntryValue );
+			}
+		}
+
+		final protected int capacity()
+		{
+			return mask + 1;
+		}
+	}
+
+	final static protected int DEFAULT_CAPACITY = 1024;
+
+	final protected long noEntryKey;
+	final protected long noEntryValue;
+
+	protected volatile Table table;
+
+	public LockFreeLongLongHashMap( final int initialCapacity, final long noEntryKey, final long noEntryValue )
+	{
+		this.noEntryKey = noEntryKey;
+		this.noEntryValue = noEntryValue;
+		table = new Table( capacityFor( initialCapacity ), noEntryKey, noEntryValue );
+	}
+
+	public LockFreeLongLongHashMap( final long noEntryKey, final long noEntryValue )
+	{
+		this( DEFAULT_CAPACITY, noEntryKey, noEntryValue );
+	}
+
+	/**
+	 * Smallest power of two that holds n entries at a load factor &le; 0.5.
+	 */
+	final static protected int capacityFor( final int n )
+	{
+		int capacity = 16;
+		while ( capacity < 2L * n && capacity < 1 << 30 )
+			capacity <<= 1;
+		return capacity;
+	}
+
+	final static protected int hash( final long key )
+	{
+		/* murmur3 64 bit finalizer */
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return ( int )h;
+	}
+
+	public long getNoEntryKey()
+	{
+		return noEntryKey;
+	}
+
+	public long getNoEntryValue()
+	{
+		return noEntryValue;
+	}
+
+	/**
+	 * Get the value for a key or the no entry value if there is no such key.
+	 * Does not lock.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public long get( final long key )
+	{
+		if ( key == noEntryKey )
+			return noEntryValue;
+
+		final Table t = table;
+		for ( int i = hash( key ) & t.mask;; i = ( i + 1 ) & t.mask )
+		{
+			final long k = t.keys.get( i );
+			if ( k == key )
+				return t.values.get( i );
+			if ( k == noEntryKey )
+				return noEntryValue;
+		}
+	}
+
+	public boolean containsKey( final long key )
+	{
+		return get( key ) != noEntryValue;
+	}
+
+	/**
+	 * Number of entries.  Does not lock, may be stale.
+	 *
+	 * @return
+	 */
+	public int size()
+	{
+		return table.size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size() == 0;
+	}
+
+	/**
+	 * Find the slot of a key or the empty slot where it would be inserted.
+	 */
+	final protected int slot( final Table t, final long key )
+	{
+		for ( int i = hash( key ) & t.mask;; i = ( i + 1 ) & t.mask )
+		{
+			final long k = t.keys.get( i );
+			if ( k == key || k == noEntryKey )
+				return i;
+		}
+	}
+
+	/**
+	 * Copy all live entries into a new table with enough space for at least
+	 * n entries and publish it.
+	 */
+	protected void rehash( final int n )
+	{
+		final Table t = table;
+		final Table newTable = new Table( capacityFor( Math.max( n, t.size ) ), noEntryKey, noEntryValue );
+		for ( int i = 0; i < t.capacity(); ++i )
+		{
+			final long key = t.keys.get( i );
+			final long value = t.values.get( i );
+			if ( key != noEntryKey && value != noEntryValue )
+			{
+				final int j = slot( newTable, key );
+				newTable.values.lazySet( j, value );
+				newTable.keys.lazySet( j, key );
+				++newTable.used;
+				++newTable.size;
+			}
+		}
+		table = newTable;
+	}
+
+	/**
+	 * Put a key value pair into the map.  Putting the no entry value
+	 * removes the key.
+	 *
+	 * @param key
+	 * @param value
+	 * @return the previous value or the no entry value
+	 */
+	public synchronized long put( final long key, final long value )
+	{
+		if ( key == noEntryKey )
+			return noEntryValue;
+
+		Table t = table;
+		int i = slot( t, key );
+		final long k = t.keys.get( i );
+		if ( k == key )
+		{
+			final long previous = t.values.get( i );
+			t.values.set( i, value );
+			if ( previous == noEntryValue && value != noEntryValue )
+				++t.size;
+			else if ( previous != noEntryValue && value == noEntryValue )
+				--t.size;
+			return previous;
+		}
+
+		if ( value == noEntryValue )
+			return noEntryValue;
+
+		if ( 2L * ( t.used + 1 ) > t.capacity() )
+		{
+			rehash( t.size + 1 );
+			t = table;
+			i = slot( t, key );
+		}
+
+		t.values.set( i, value );
+		t.keys.set( i, key );
+		++t.used;
+		++t.size;
+
+		return noEntryValue;
+	}
+
+	/**
+	 * Remove a key.
+	 *
+	 * @param key
+	 * @return the previous value or the no entry value
+	 */
+	public synchronized long remove( final long key )
+	{
+		return put( key, noEntryValue );
+	}
+
+	/**
+	 * Put all entries of a {@link TLongLongHashMap}, resizing at most once.
+	 *
+	 * @param map
+	 */
+	public synchronized void putAll( final TLongLongHashMap map )
+	{
+		final Table t = table;
+		if ( 2L * ( t.used + map.size() ) > t.capacity() )
+			rehash( t.size + map.size() );
+
+		final TLongLongIterator iterator = map.iterator();
+		while ( iterator.hasNext() )
+		{
+			iterator.advance();
+			put( iterator.key(), iterator.value() );
+		}
+	}
+
+	/**
+	 * Put all key value pairs of two parallel arrays, resizing at most once.
+	 *
+	 * @param keys
+	 * @param values
+	 */
+	public synchronized void putAll( final long[] keys, final long[] values )
+	{
+		assert keys.length == values.length : "keys and values must be of same length";
+
+		final Table t = table;
+		if ( 2L * ( t.used + keys.length ) > t.capacity() )
+			rehash( t.size + keys.length );
+
+		for ( int i = 0; i < keys.length; ++i )
+			put( keys[ i ], values[ i ] );
+	}
+
+	/**
+	 * Remove all entries.  Readers see either the complete previous state or
+	 * the empty map.
+	 */
+	public synchronized void clear()
+	{
+		table = new Table( DEFAULT_CAPACITY, noEntryKey, noEntryValue );
+	}
+
+	/**
+	 * Execute a procedure for each entry.  Does not lock, entries that are
+	 * modified concurrently may or may not be visited with either their
+	 * previous or their new value.
+	 *
+	 * @param procedure
+	 * @return false if the procedure returned false for some entry
+	 */
+	public boolean forEachEntry( final TLongLongProcedure procedure )
+	{
+		final Table t = table;
+		for ( int i = 0; i < t.capacity(); ++i )
+		{
+			final long key = t.keys.get( i );
+			if ( key != noEntryKey )
+			{
+				final long value = t.values.get( i );
+				if ( value != noEntryValue && !procedure.execute( key, value ) )
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Copy the current state into a {@link TLongLongHashMap}.
+	 *
+	 * @return
+	 */
+	public synchronized TLongLongHashMap toTLongLongHashMap()
+	{
+		final TLongLongHashMap map = new TLongLongHashMap( Math.max( 10, table.size ), 0.5f, noEntryKey, noEntryValue );
+		forEachEntry( ( key, value ) -> {
+			map.put( key, value );
+			return true;
+		} );
+		return map;
+	}
+}
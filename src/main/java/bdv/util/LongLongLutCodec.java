@@ -0,0 +1,290 @@
+package bdv.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import com.google.gson.stream.JsonWriter;
+
+import gnu.trove.iterator.TLongLongIterator;
+import gnu.trove.map.hash.TLongLongHashMap;
+
+/**
+ * Compact binary serialization of long to long lookup tables such as the
+ * fragment to segment assignment.  The stream is
+ *
+ * <pre>
+ * magic    "BLUT"
+ * size     varint
+ * size x { key delta varint, zigzag value varint }
+ * </pre>
+ *
+ * or, for a versioned lookup table,
+ *
+ * <pre>
+ * magic    "BLUV"
+ * version  zigzag varint
+ * size     varint
+ * size x { key delta varint, zigzag value varint }
+ * </pre>
+ *
+ * Keys are sorted ascending and stored as the difference to the previous key
+ * (the first to 0), values are zigzag encoded such that negative labels stay
+ * short.  The stream is written and read through a small buffer, no
+ * intermediate representation of the entries is created.
+ */
+public class LongLongLutCodec
+{
+	final static public int MAGIC = 0x424c5554;
+
+	final static public int VERSIONED_MAGIC = 0x424c5556;
+
+	/* version of lookup tables written without version */
+	final static public long NO_VERSION = -1;
+
+	final static protected int BUFFER_SIZE = 1 << 16;
+
+	/* longest varint */
+	final static protected int MAX_VARINT_BYTES = 10;
+
+	private LongLongLutCodec() {}
+
+	/**
+	 * Does the byte array start with the magic number of this format?
+	 *
+	 * @param bytes
+	 * @return
+	 */
+	static public boolean isBinaryLut( final byte[] bytes )
+	{
+		if ( bytes.length < 4 )
+			return false;
+		final int magic = ByteBuffer.wrap( bytes ).getInt( 0 );
+		return magic == MAGIC || magic == VERSIONED_MAGIC;
+	}
+
+	static protected void putVarLong( final ByteBuffer buffer, long value )
+	{
+		while ( ( value & ~0x7fL ) != 0 )
+		{
+			buffer.put( ( byte )( ( value & 0x7f ) | 0x80 ) );
+			value >>>= 7;
+		}
+		buffer.put( ( byte )value );
+	}
+
+	static protected void flush( final ByteBuffer buffer, final WritableByteChannel channel ) throws IOException
+	{
+		buffer.flip();
+		while ( buffer.hasRemaining() )
+			channel.write( buffer );
+		buffer.clear();
+	}
+
+	/**
+	 * Write a lookup table into a channel.
+	 *
+	 * @param lut
+	 * @param channel
+	 * @throws IOException
+	 */
+	static public void write( final TLongLongHashMap lut, final WritableByteChannel channel ) throws IOException
+	{
+		write( lut, NO_VERSION, channel );
+	}
+
+	/**
+	 * Write a lookup table and its version into a channel.
+	 *
+	 * @param lut
+	 * @param version
+	 *            {@link #NO_VERSION} writes an unversioned lookup table
+	 * @param channel
+	 * @throws IOException
+	 */
+	static public void write( final TLongLongHashMap lut, final long version, final WritableByteChannel channel ) throws IOException
+	{
+		final long[] keys = lut.keys();
+		Arrays.sort( keys );
+
+		final ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+		if ( version == NO_VERSION )
+			buffer.putInt( MAGIC );
+		else
+		{
+			buffer.putInt( VERSIONED_MAGIC );
+			putVarLong( buffer, ( version << 1 ) ^ ( version >> 63 ) );
+		}
+		putVarLong( buffer, keys.length );
+
+		long previous = 0;
+		for ( final long key : keys )
+		{
+			if ( buffer.remaining() < 2 * MAX_VARINT_BYTES )
+				flush( buffer, channel );
+
+			final long value = lut.get( key );
+			putVarLong( buffer, key - previous );
+			putVarLong( buffer, ( value << 1 ) ^ ( value >> 63 ) );
+			previous = key;
+		}
+		flush( buffer, channel );
+	}
+
+	/**
+	 * Reads from a channel through a buffer, refilling it on demand.
+	 */
+	static protected class Input
+	{
+		final protected ReadableByteChannel channel;
+
+		final protected ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+
+		public Input( final ReadableByteChannel channel )
+		{
+			this.channel = channel;
+			buffer.flip();
+		}
+
+		public byte get() throws IOException
+		{
+			if ( !buffer.hasRemaining() )
+			{
+				buffer.clear();
+				int n;
+				do
+					n = channel.read( buffer );
+				while ( n == 0 );
+				buffer.flip();
+				if ( n < 0 )
+					throw new EOFException( "Truncated lookup table." );
+			}
+			return buffer.get();
+		}
+
+		public int getInt() throws IOException
+		{
+			int value = 0;
+			for ( int i = 0; i < 4; ++i )
+				value = ( value << 8 ) | ( get() & 0xff );
+			return value;
+		}
+
+		public long getVarLong() throws IOException
+		{
+			long value = 0;
+			for ( int shift = 0; shift < 64; shift += 7 )
+			{
+				final byte b = get();
+				value |= ( long )( b & 0x7f ) << shift;
+				if ( ( b & 0x80 ) == 0 )
+					return value;
+			}
+			throw new IOException( "Malformed varint in lookup table." );
+		}
+	}
+
+	/**
+	 * Read a lookup table from a channel and put its entries into a map.
+	 *
+	 * @param channel
+	 * @param lut
+	 * @return the version of the lookup table, {@link #NO_VERSION} if it
+	 *         was written without version
+	 * @throws IOException
+	 *             if the channel does not contain a lookup table or ends
+	 *             prematurely
+	 */
+	static public long read( final ReadableByteChannel channel, final TLongLongHashMap lut ) throws IOException
+	{
+		final Input in = new Input( channel );
+		final int magic = in.getInt();
+		final long version;
+		if ( magic == MAGIC )
+			version = NO_VERSION;
+		else if ( magic == VERSIONED_MAGIC )
+		{
+			final long zigzag = in.getVarLong();
+			version = ( zigzag >>> 1 ) ^ -( zigzag & 1 );
+		}
+		else
+			throw new IOException( "Not a binary lookup table." );
+
+		final long size = in.getVarLong();
+		if ( size < 0 )
+			throw new IOException( "Malformed lookup table size " + size + "." );
+
+		lut.ensureCapacity( ( int )Math.min( size, Integer.MAX_VALUE >> 1 ) );
+
+		long key = 0;
+		for ( long i = 0; i < size; ++i )
+		{
+			key += in.getVarLong();
+			final long zigzag = in.getVarLong();
+			lut.put( key, ( zigzag >>> 1 ) ^ -( zigzag & 1 ) );
+		}
+		return version;
+	}
+
+	/**
+	 * Stream a lookup table as JSON of the form
+	 * <pre>
+	 * {
+	 *   "fragments" : [<key1>, <key2>, ...],
+	 *   "segments" : [<value1>, <value2>, ...]
+	 * }
+	 * </pre>
+	 * without creating a JSON tree.
+	 *
+	 * @param lut
+	 * @param out
+	 * @throws IOException
+	 */
+	static public void writeJson( final TLongLongHashMap lut, final Writer out ) throws IOException
+	{
+		writeJson( lut, NO_VERSION, out );
+	}
+
+	/**
+	 * Stream a lookup table as JSON like {@link #writeJson(TLongLongHashMap, Writer)}
+	 * with an additional "version" field unless version is
+	 * {@link #NO_VERSION}.
+	 *
+	 * @param lut
+	 * @param version
+	 * @param out
+	 * @throws IOException
+	 */
+	static public void writeJson( final TLongLongHashMap lut, final long version, final Writer out ) throws IOException
+	{
+		final JsonWriter writer = new JsonWriter( out );
+		writer.beginObject();
+
+		if ( version != NO_VERSION )
+			writer.name( "version" ).value( version );
+
+		writer.name( "fragments" ).beginArray();
+		for ( final TLongLongIterator it = lut.iterator(); it.hasNext(); )
+		{
+			it.advance();
+			writer.value( it.key() );
+		}
+		writer.endArray();
+
+		/* same iteration order as long as lut is not modified */
+		writer.name( "segments" ).beginArray();
+		for ( final TLongLongIterator it = lut.iterator(); it.hasNext(); )
+		{
+			it.advance();
+			writer.value( it.value() );
+		}
+		writer.endArray();
+
+		writer.endObject();
+		writer.flush();
+	}
+}
@@ -173,26 +173,7 @@ public class HttpRequest
 	 */
 	public static byte[] getRequest( String url ) throws MalformedURLException, IOException
 	{
-		HttpURLConnection connection = ( HttpURLConnection ) new URL( url ).openConnection();
-		int response = connection.getResponseCode();
-		if ( response != 200 )
-			throw new HTTPException( response );
-		
-		byte[] bytes;
-		String transferEncoding = connection.getHeaderField( "Transfer-Encoding" );
-		if ( transferEncoding != null && transferEncoding.compareToIgnoreCase( "chunked" ) == 0 )
-		{
-			ChunkedByteArrayResponseHandler handler = new ChunkedByteArrayResponseHandler( 1024 );
-			getRequest( connection, handler );
-			bytes = handler.getArray();
-		} else
-		{
-			int contentLength = Integer.parseInt( connection.getHeaderField( "Content-Length" ) );
-			bytes = new byte[ contentLength ];
-			getRequest( connection, new ByteArrayResponseHandler( bytes ) );
-		}
-		connection.disconnect();
-		return bytes;
+		return PooledHttpClient.getShared().get( url );
 	}
 	
 	/**
@@ -200,9 +181,7 @@ public class HttpRequest
 	 * HTTP Get request:
 	 * GET url
 	 * 
-	 * Only use this, if you know the data size beforehand and
-	 * you are sure that the header field "Transfer-Encoding" does
-	 * not exist or is not "chunked".
+	 * Only use this, if you know the data size beforehand.
 	 * 
 	 * If the HTTP status code is not 200, this method throws
 	 * {@link HTTPException}.
@@ -215,12 +194,7 @@ public class HttpRequest
 	 */
 	public static byte[] getRequest( String url, byte[] bytes ) throws MalformedURLException, IOException
 	{
-		HttpURLConnection connection = ( HttpURLConnection ) new URL( url ).openConnection();
-		int response = connection.getResponseCode();
-		if ( response != 200 )
-			throw new HTTPException( response );
-		getRequest( connection, new ByteArrayResponseHandler( bytes ) );
-		connection.disconnect();
+		PooledHttpClient.getShared().get( url, bytes );
 		return bytes;
 	}
 	
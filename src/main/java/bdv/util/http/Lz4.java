@@ -0,0 +1,92 @@
+package bdv.util.http;
+
+import java.io.IOException;
+
+/**
+ * Decompressor for the LZ4 block format as used by DVID for block data.
+ */
+public class Lz4
+{
+	private Lz4() {}
+
+	/**
+	 * Decompress an LZ4 block into dst.
+	 *
+	 * @param src
+	 * @param srcOffset
+	 * @param srcLength
+	 * @param dst
+	 * @param dstOffset
+	 * @return the number of bytes written into dst
+	 * @throws IOException
+	 *             if the block is malformed or does not fit into dst
+	 */
+	static public int decompress(
+			final byte[] src,
+			final int srcOffset,
+			final int srcLength,
+			final byte[] dst,
+			final int dstOffset ) throws IOException
+	{
+		final int srcEnd = srcOffset + srcLength;
+		int s = srcOffset;
+		int d = dstOffset;
+		try
+		{
+			while ( s < srcEnd )
+			{
+				final int token = src[ s++ ] & 0xff;
+
+				/* literals */
+				int literalLength = token >>> 4;
+				if ( literalLength == 15 )
+				{
+					int b;
+					do
+					{
+						b = src[ s++ ] & 0xff;
+						literalLength += b;
+					}
+					while ( b == 255 );
+				}
+				if ( s + literalLength > srcEnd )
+					throw new IOException( "Malformed LZ4 block, literals exceed input." );
+				System.arraycopy( src, s, dst, d, literalLength );
+				s += literalLength;
+				d += literalLength;
+
+				/* the last sequence has no match */
+				if ( s >= srcEnd )
+					break;
+
+				/* match */
+				final int offset = ( src[ s ] & 0xff ) | ( ( src[ s + 1 ] & 0xff ) << 8 );
+				s += 2;
+				if ( offset == 0 || d - offset < dstOffset )
+					throw new IOException( "Malformed LZ4 block, invalid match offset " + offset + "." );
+
+				int matchLength = token & 0x0f;
+				if ( matchLength == 15 )
+				{
+					int b;
+					do
+					{
+						b = src[ s++ ] & 0xff;
+						matchLength += b;
+					}
+					while ( b == 255 );
+				}
+				matchLength += 4;
+
+				/* matches may overlap their own output */
+				for ( int m = d - offset, mEnd = m + matchLength; m < mEnd; ++m, ++d )
+					dst[ d ] = dst[ m ];
+			}
+		}
+		catch ( final ArrayIndexOutOfBoundsException e )
+		{
+			throw new IOException( "Malformed LZ4 block or output too small.", e );
+		}
+		return d - dstOffset;
+	}
+}
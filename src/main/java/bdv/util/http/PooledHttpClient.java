@@ -0,0 +1,268 @@
+package bdv.util.http;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.GZIPInputStream;
+
+import javax.imageio.ImageIO;
+import javax.xml.ws.http.HTTPException;
+
+/**
+ * HTTP GET client for block and tile loaders that keeps connections alive
+ * between requests and negotiates gzip compressed responses.  All loaders
+ * of a JVM should use the {@link #getShared() shared} client.
+ *
+ * Connections are pooled by the JDK's keep-alive cache.  A connection is
+ * returned to that cache only if its response was read completely and its
+ * stream closed, it is lost when the connection is disconnected.  This
+ * client therefore always consumes the full response and never disconnects.
+ * The keep-alive cache holds at most <code>http.maxConnections</code> idle
+ * connections per server, 5 by default, fewer than there are cache fetcher
+ * threads.  Unless set otherwise, it is raised to
+ * {@value #DEFAULT_MAX_CONNECTIONS} when this class is loaded, which takes
+ * effect only if no HTTP connection was opened before.
+ *
+ * {@link #getBlocks(String, BlockHandler)} reads DVID's
+ * <code>/blocks</code> responses that contain multiple blocks in one
+ * request.
+ */
+public class PooledHttpClient
+{
+	/**
+	 * Receives the blocks of a <code>/blocks</code> response.
+	 */
+	public static interface BlockHandler
+	{
+		/**
+		 * @param x
+		 *            block coordinate
+		 * @param y
+		 *            block coordinate
+		 * @param z
+		 *            block coordinate
+		 * @param bytes
+		 *            response containing the block data
+		 * @param offset
+		 *            of the block data in bytes
+		 * @param length
+		 *            of the block data in bytes
+		 * @throws IOException
+		 */
+		public void handle( int x, int y, int z, byte[] bytes, int offset, int length ) throws IOException;
+	}
+
+	final static public int DEFAULT_MAX_CONNECTIONS = 32;
+
+	final static protected int BUFFER_SIZE = 1 << 16;
+
+	static
+	{
+		if ( System.getProperty( "http.maxConnections" ) == null )
+			System.setProperty( "http.maxConnections", Integer.toString( DEFAULT_MAX_CONNECTIONS ) );
+	}
+
+	final static private PooledHttpClient shared = new PooledHttpClient( 10000, 60000 );
+
+	static public PooledHttpClient getShared()
+	{
+		return shared;
+	}
+
+	final protected int connectTimeout;
+
+	final protected int readTimeout;
+
+	/**
+	 * @param connectTimeout
+	 *            in ms, 0 waits forever
+	 * @param readTimeout
+	 *            in ms, 0 waits forever
+	 */
+	public PooledHttpClient( final int connectTimeout, final int readTimeout )
+	{
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Read and close a stream such that its connection can be reused.
+	 *
+	 * @param in
+	 *            may be null
+	 */
+	static protected void drain( final InputStream in )
+	{
+		if ( in == null )
+			return;
+		try
+		{
+			final byte[] buffer = new byte[ 4096 ];
+			while ( in.read( buffer ) >= 0 );
+			in.close();
+		}
+		catch ( final IOException e ) {}
+	}
+
+	/**
+	 * Send a GET request.  If the HTTP status code is not 200, this method
+	 * throws {@link HTTPException}.
+	 *
+	 * @param url
+	 * @return the connection with the response
+	 * @throws IOException
+	 */
+	protected HttpURLConnection open( final String url ) throws IOException
+	{
+		final HttpURLConnection connection = ( HttpURLConnection )new URL( url ).openConnection();
+		connection.setConnectTimeout( connectTimeout );
+		connection.setReadTimeout( readTimeout );
+		connection.setRequestProperty( "Accept-Encoding", "gzip" );
+
+		final int response = connection.getResponseCode();
+		if ( response != 200 )
+		{
+			drain( connection.getErrorStream() );
+			throw new HTTPException( response );
+		}
+		return connection;
+	}
+
+	static protected boolean isGzip( final HttpURLConnection connection )
+	{
+		return "gzip".equalsIgnoreCase( connection.getContentEncoding() );
+	}
+
+	static protected InputStream openStream( final HttpURLConnection connection ) throws IOException
+	{
+		final InputStream in = connection.getInputStream();
+		return isGzip( connection ) ? new GZIPInputStream( in, BUFFER_SIZE ) : in;
+	}
+
+	/**
+	 * GET the response as a byte array.
+	 *
+	 * @param url
+	 * @return
+	 * @throws IOException
+	 */
+	public byte[] get( final String url ) throws IOException
+	{
+		final HttpURLConnection connection = open( url );
+		final long contentLength = isGzip( connection ) ? -1 : connection.getContentLengthLong();
+		final InputStream in = openStream( connection );
+		try
+		{
+			if ( contentLength >= 0 && contentLength < Integer.MAX_VALUE )
+			{
+				final byte[] bytes = new byte[ ( int )contentLength ];
+				int off = 0;
+				for ( int l = 0; off < bytes.length && ( l = in.read( bytes, off, bytes.length - off ) ) >= 0; off += l );
+				if ( off < bytes.length )
+					throw new IOException( "Response of " + url + " ended after " + off + " of " + bytes.length + " bytes." );
+				return bytes;
+			}
+			else
+			{
+				final ByteArrayOutputStream sink = new ByteArrayOutputStream( BUFFER_SIZE );
+				final byte[] buffer = new byte[ BUFFER_SIZE ];
+				for ( int l; ( l = in.read( buffer ) ) >= 0; )
+					sink.write( buffer, 0, l );
+				return sink.toByteArray();
+			}
+		}
+		finally
+		{
+			drain( in );
+		}
+	}
+
+	/**
+	 * GET the response into a byte array.  Bytes beyond the length of the
+	 * array are discarded.
+	 *
+	 * @param url
+	 * @param bytes
+	 * @return the number of bytes read into bytes
+	 * @throws IOException
+	 */
+	public int get( final String url, final byte[] bytes ) throws IOException
+	{
+		final InputStream in = openStream( open( url ) );
+		try
+		{
+			int off = 0;
+			for ( int l = 0; off < bytes.length && ( l = in.read( bytes, off, bytes.length - off ) ) >= 0; off += l );
+			return off;
+		}
+		finally
+		{
+			drain( in );
+		}
+	}
+
+	/**
+	 * GET an image in a format supported by {@link ImageIO}.
+	 *
+	 * @param url
+	 * @return
+	 * @throws IOException
+	 */
+	public BufferedImage getImage( final String url ) throws IOException
+	{
+		final InputStream in = openStream( open( url ) );
+		try
+		{
+			final BufferedImage image = ImageIO.read( in );
+			if ( image == null )
+				throw new IOException( "Response of " + url + " is not a supported image." );
+			return image;
+		}
+		finally
+		{
+			drain( in );
+		}
+	}
+
+	/**
+	 * GET multiple blocks from a DVID <code>/blocks</code> endpoint.  The
+	 * response is a sequence of
+	 *
+	 * <pre>
+	 * int32 x, int32 y, int32 z, int32 n, n bytes block data
+	 * </pre>
+	 *
+	 * in little endian.  Blocks that do not exist are not sent.
+	 *
+	 * @param url
+	 * @param handler
+	 * @return the number of blocks received
+	 * @throws IOException
+	 */
+	public int getBlocks( final String url, final BlockHandler handler ) throws IOException
+	{
+		final byte[] bytes = get( url );
+		final ByteBuffer buffer = ByteBuffer.wrap( bytes ).order( ByteOrder.LITTLE_ENDIAN );
+		int n = 0;
+		while ( buffer.remaining() > 0 )
+		{
+			if ( buffer.remaining() < 16 )
+				throw new IOException( "Truncated block header in response of " + url + "." );
+			final int x = buffer.getInt();
+			final int y = buffer.getInt();
+			final int z = buffer.getInt();
+			final int length = buffer.getInt();
+			if ( length < 0 || length > buffer.remaining() )
+				throw new IOException( "Truncated block " + x + "_" + y + "_" + z + " in response of " + url + "." );
+			handler.handle( x, y, z, bytes, buffer.position(), length );
+			buffer.position( buffer.position() + length );
+			++n;
+		}
+		return n;
+	}
+}
@@ -0,0 +1,119 @@
+package bdv.bigcat.composite;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.imglib2.type.numeric.ARGBType;
+
+public class ARGBCompositeAlphaYCbCrTest
+{
+	/**
+	 * The floating point composition that the fixed point arithmetic of
+	 * {@link ARGBCompositeAlphaYCbCr} replaces.
+	 */
+	static int composeDouble( final int argbA, final int argbB )
+	{
+		final double[] m = ARGBCompositeAlphaYCbCr.rgb2ycbcr;
+		final double[] n = ARGBCompositeAlphaYCbCr.ycbcr2rgb;
+
+		final double rA = ARGBType.red( argbA ) / 255.0;
+		final double rB = ARGBType.red( argbB ) / 255.0;
+		final double gA = ARGBType.green( argbA ) / 255.0;
+		final double gB = ARGBType.green( argbB ) / 255.0;
+		final double bA = ARGBType.blue( argbA ) / 255.0;
+		final double bB = ARGBType.blue( argbB ) / 255.0;
+
+		final double aA = ARGBType.alpha( argbA ) / 255.0;
+		final double aB = ARGBType.alpha( argbB ) / 255.0;
+
+		final double aTarget = aA + aB - aA * aB;
+
+		final double yA = m[ 0 ] * rA + m[ 1 ] * gA + m[ 2 ] * bA;
+		final double cbA = m[ 3 ] * rA + m[ 4 ] * gA + m[ 5 ] * bA;
+		final double crA = m[ 6 ] * rA + m[ 7 ] * gA + m[ 8 ] * bA;
+
+		final double cbB = m[ 3 ] * rB + m[ 4 ] * gB + m[ 5 ] * bB;
+		final double crB = m[ 6 ] * rB + m[ 7 ] * gB + m[ 8 ] * bB;
+
+		final double cbTarget = cbA * ( 1.0 - aB ) + cbB * aB;
+		final double crTarget = crA * ( 1.0 - aB ) + crB * aB;
+
+		final double rTarget = n[ 0 ] * yA + n[ 1 ] * cbTarget + n[ 2 ] * crTarget;
+		final double gTarget = n[ 3 ] * yA + n[ 4 ] * cbTarget + n[ 5 ] * crTarget;
+		final double bTarget = n[ 6 ] * yA + n[ 7 ] * cbTarget + n[ 8 ] * crTarget;
+
+		return ARGBType.rgba(
+				Math.max( 0, Math.min( 255, ( int )Math.round( rTarget * 255 ) ) ),
+				Math.max( 0, Math.min( 255, ( int )Math.round( gTarget * 255 ) ) ),
+				Math.max( 0, Math.min( 255, ( int )Math.round( bTarget * 255 ) ) ),
+				( int )( aTarget * 255 ) );
+	}
+
+	static void assertWithinOne( final int argbA, final int argbB )
+	{
+		final int expected = composeDouble( argbA, argbB );
+		final int actual = ARGBCompositeAlphaYCbCr.compose( argbA, argbB );
+		for ( int shift = 0; shift < 32; shift += 8 )
+			if ( Math.abs( ( ( expected >>> shift ) & 0xff ) - ( ( actual >>> shift ) & 0xff ) ) > 1 )
+				Assert.fail( String.format( "%08x over %08x: expected %08x but was %08x", argbB, argbA, expected, actual ) );
+	}
+
+	@Test
+	public void testRandomColors()
+	{
+		final Random rnd = new Random( 0 );
+		for ( int i = 0; i < 1000000; ++i )
+			assertWithinOne( rnd.nextInt(), rnd.nextInt() );
+	}
+
+	@Test
+	public void testExtremeColors()
+	{
+		final int[] values = new int[]{ 0, 1, 127, 128, 254, 255 };
+		final int[] colors = new int[ values.length * values.length * values.length * values.length ];
+		int i = 0;
+		for ( final int a : values )
+			for ( final int r : values )
+				for ( final int g : values )
+					for ( final int b : values )
+						colors[ i++ ] = ARGBType.rgba( r, g, b, a );
+
+		for ( final int argbA : colors )
+			for ( final int argbB : colors )
+				assertWithinOne( argbA, argbB );
+	}
+
+	@Test
+	public void testArrayCompose()
+	{
+		final Random rnd = new Random( 1 );
+		final int[] a = new int[ 1000 ];
+		final int[] b = new int[ 1000 ];
+		for ( int i = 0; i < a.length; ++i )
+		{
+			a[ i ] = rnd.nextInt();
+			b[ i ] = i % 10 == 0 ? rnd.nextInt() & 0x00ffffff : rnd.nextInt();
+		}
+
+		final int[] composed = a.clone();
+		new ARGBCompositeAlphaYCbCr().compose( composed, 0, b, 0, a.length );
+
+		final ARGBType pixelA = new ARGBType();
+		final ARGBType pixelB = new ARGBType();
+		for ( int i = 0; i < a.length; ++i )
+		{
+			/* fully transparent b leaves a unchanged */
+			if ( i % 10 == 0 )
+				Assert.assertEquals( a[ i ], composed[ i ] );
+			else
+			{
+				pixelA.set( a[ i ] );
+				pixelB.set( b[ i ] );
+				new ARGBCompositeAlphaYCbCr().compose( pixelA, pixelB );
+				Assert.assertEquals( pixelA.get(), composed[ i ] );
+			}
+		}
+	}
+}
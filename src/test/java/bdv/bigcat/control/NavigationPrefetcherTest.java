@@ -0,0 +1,222 @@
+package bdv.bigcat.control;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+
+public class NavigationPrefetcherTest
+{
+	/**
+	 * Records requested cells, cells in cached count as loaded.
+	 */
+	static class RecordingTarget extends NavigationPrefetcher.Target
+	{
+		final HashSet< List< Long > > cached = new HashSet<>();
+
+		final ArrayList< List< Long > > requested = new ArrayList<>();
+
+		RecordingTarget( final AffineTransform3D mipmapTransform, final CellGrid grid )
+		{
+			super( mipmapTransform, grid, 1 );
+		}
+
+		@Override
+		protected boolean isCached( final long[] cellMin )
+		{
+			return cached.contains( cell( cellMin[ 0 ], cellMin[ 1 ], cellMin[ 2 ] ) );
+		}
+
+		@Override
+		protected void request( final long[] cellMin )
+		{
+			requested.add( cell( cellMin[ 0 ], cellMin[ 1 ], cellMin[ 2 ] ) );
+		}
+	}
+
+	final static int cellSize = 32;
+
+	final static long cellBytes = cellSize * cellSize * cellSize;
+
+	static List< Long > cell( final long x, final long y, final long z )
+	{
+		return Arrays.asList( x, y, z );
+	}
+
+	static RecordingTarget createTarget()
+	{
+		return new RecordingTarget(
+				new AffineTransform3D(),
+				new CellGrid( new long[]{ 320, 320, 320 }, new int[]{ cellSize, cellSize, cellSize } ) );
+	}
+
+	static AffineTransform3D translation( final double x, final double y, final double z )
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set(
+				1, 0, 0, x,
+				0, 1, 0, y,
+				0, 0, 1, z );
+		return transform;
+	}
+
+	static AffineTransform3D scale( final double s )
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set(
+				s, 0, 0, 0,
+				0, s, 0, 0,
+				0, 0, s, 0 );
+		return transform;
+	}
+
+	@Test
+	public void testTranslation()
+	{
+		final double[] shift = new double[ 3 ];
+
+		/* moving the view right moves the screen center left */
+		Assert.assertTrue( NavigationPrefetcher.translation( translation( 0, 0, 0 ), translation( -10, 5, 0 ), shift ) );
+		Assert.assertArrayEquals( new double[]{ 10, -5, 0 }, shift, 1e-9 );
+
+		Assert.assertFalse( NavigationPrefetcher.translation( translation( 3, 4, 5 ), translation( 3, 4, 5 ), shift ) );
+		Assert.assertFalse( NavigationPrefetcher.translation( translation( 0, 0, 0 ), scale( 2 ), shift ) );
+
+		final AffineTransform3D rotation = new AffineTransform3D();
+		rotation.rotate( 2, 0.1 );
+		Assert.assertFalse( NavigationPrefetcher.translation( translation( 0, 0, 0 ), rotation, shift ) );
+	}
+
+	@Test
+	public void testBestLevel()
+	{
+		final AffineTransform3D[] mipmapTransforms = new AffineTransform3D[]{ scale( 1 ), scale( 2 ), scale( 4 ) };
+
+		Assert.assertEquals( 0, NavigationPrefetcher.bestLevel( scale( 2 ), mipmapTransforms ) );
+		Assert.assertEquals( 0, NavigationPrefetcher.bestLevel( scale( 1 ), mipmapTransforms ) );
+		Assert.assertEquals( 1, NavigationPrefetcher.bestLevel( scale( 0.5 ), mipmapTransforms ) );
+		Assert.assertEquals( 2, NavigationPrefetcher.bestLevel( scale( 0.25 ), mipmapTransforms ) );
+		Assert.assertEquals( 2, NavigationPrefetcher.bestLevel( scale( 0.1 ), mipmapTransforms ) );
+	}
+
+	@Test
+	public void testExtrapolation()
+	{
+		final RecordingTarget target = createTarget();
+
+		/* a 64x64 screen moving by 64 along x covers cells 2k to 2k + 2 in step k */
+		final long bytes = NavigationPrefetcher.prefetch(
+				new AffineTransform3D(),
+				new double[]{ 64, 0, 0 },
+				64,
+				64,
+				2,
+				Long.MAX_VALUE,
+				Collections.singletonList( target ),
+				() -> false );
+
+		final HashSet< List< Long > > step1 = new HashSet<>();
+		final HashSet< List< Long > > step2 = new HashSet<>();
+		for ( long y = 0; y <= 2; ++y )
+		{
+			for ( long x = 2; x <= 4; ++x )
+				step1.add( cell( x * cellSize, y * cellSize, 0 ) );
+			for ( long x = 5; x <= 6; ++x )
+				step2.add( cell( x * cellSize, y * cellSize, 0 ) );
+		}
+
+		Assert.assertEquals( step1.size() + step2.size(), target.requested.size() );
+		Assert.assertEquals( step1, new HashSet<>( target.requested.subList( 0, step1.size() ) ) );
+		Assert.assertEquals( step2, new HashSet<>( target.requested.subList( step1.size(), target.requested.size() ) ) );
+		Assert.assertEquals( target.requested.size() * cellBytes, bytes );
+	}
+
+	@Test
+	public void testOutside()
+	{
+		final RecordingTarget target = createTarget();
+
+		/* moving away from the grid requests nothing */
+		final long bytes = NavigationPrefetcher.prefetch(
+				translation( 0, 0, -1000 ),
+				new double[]{ 0, 0, 64 },
+				64,
+				64,
+				4,
+				Long.MAX_VALUE,
+				Collections.singletonList( target ),
+				() -> false );
+
+		Assert.assertEquals( 0, bytes );
+		Assert.assertTrue( target.requested.isEmpty() );
+	}
+
+	@Test
+	public void testBudget()
+	{
+		final RecordingTarget target = createTarget();
+
+		final long bytes = NavigationPrefetcher.prefetch(
+				new AffineTransform3D(),
+				new double[]{ 64, 0, 0 },
+				64,
+				64,
+				2,
+				4 * cellBytes + cellBytes / 2,
+				Collections.singletonList( target ),
+				() -> false );
+
+		Assert.assertEquals( 4, target.requested.size() );
+		Assert.assertEquals( 4 * cellBytes, bytes );
+	}
+
+	@Test
+	public void testCachedCellsAreFree()
+	{
+		final RecordingTarget target = createTarget();
+		for ( long y = 0; y <= 2; ++y )
+			for ( long x = 2; x <= 4; ++x )
+				target.cached.add( cell( x * cellSize, y * cellSize, 0 ) );
+
+		/* the cached first step does not use the budget of the second step */
+		final long bytes = NavigationPrefetcher.prefetch(
+				new AffineTransform3D(),
+				new double[]{ 64, 0, 0 },
+				64,
+				64,
+				2,
+				6 * cellBytes,
+				Collections.singletonList( target ),
+				() -> false );
+
+		Assert.assertEquals( 6, target.requested.size() );
+		Assert.assertEquals( 6 * cellBytes, bytes );
+		for ( final List< Long > cell : target.requested )
+			Assert.assertTrue( cell.get( 0 ) >= 5 * cellSize );
+	}
+
+	@Test
+	public void testSuperseded()
+	{
+		final RecordingTarget target = createTarget();
+
+		NavigationPrefetcher.prefetch(
+				new AffineTransform3D(),
+				new double[]{ 64, 0, 0 },
+				64,
+				64,
+				4,
+				Long.MAX_VALUE,
+				Collections.singletonList( target ),
+				() -> true );
+
+		Assert.assertEquals( 9, target.requested.size() );
+	}
+}
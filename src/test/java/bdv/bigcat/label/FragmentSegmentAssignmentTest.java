@@ -0,0 +1,121 @@
+package bdv.bigcat.label;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import bdv.util.LocalIdService;
+
+public class FragmentSegmentAssignmentTest
+{
+	static long[] sorted( final long[] array )
+	{
+		Arrays.sort( array );
+		return array;
+	}
+
+	@Test
+	public void testMergeDetach()
+	{
+		final LocalIdService idService = new LocalIdService();
+		idService.setNext( 100 );
+		final FragmentSegmentAssignment assignment = new FragmentSegmentAssignment( idService );
+
+		assignment.mergeFragmentSegments( 1, 2 );
+		final long segment12 = assignment.getSegment( 1 );
+		Assert.assertEquals( segment12, assignment.getSegment( 2 ) );
+		Assert.assertArrayEquals( new long[]{ 1, 2 }, sorted( assignment.getFragments( segment12 ) ) );
+
+		assignment.mergeFragmentSegments( 3, 2 );
+		final long segment123 = assignment.getSegment( 3 );
+		Assert.assertEquals( segment123, assignment.getSegment( 1 ) );
+		Assert.assertArrayEquals( new long[]{ 1, 2, 3 }, sorted( assignment.getFragments( segment123 ) ) );
+
+		assignment.detachFragment( 2 );
+		Assert.assertEquals( 2, assignment.getSegment( 2 ) );
+		Assert.assertArrayEquals( new long[]{ 1, 3 }, sorted( assignment.getFragments( segment123 ) ) );
+		Assert.assertArrayEquals( new long[]{ 2 }, assignment.getFragments( 2 ) );
+
+		/* implicit single fragment segment */
+		Assert.assertArrayEquals( new long[]{ 7 }, assignment.getFragments( 7 ) );
+	}
+
+	@Test
+	public void testAssign()
+	{
+		final LocalIdService idService = new LocalIdService();
+		final FragmentSegmentAssignment assignment = new FragmentSegmentAssignment(
+				new long[]{ 1, 2, 3 },
+				new long[]{ 10, 10, 10 },
+				idService );
+
+		final long[] affected = assignment.assign( new long[]{ 2, 4, 4 }, new long[]{ 20, 10, 20 } );
+
+		Assert.assertArrayEquals( new long[]{ 10, 20 }, sorted( affected ) );
+		Assert.assertArrayEquals( new long[]{ 1, 3 }, sorted( assignment.getFragments( 10 ) ) );
+		Assert.assertArrayEquals( new long[]{ 2, 4 }, sorted( assignment.getFragments( 20 ) ) );
+		Assert.assertFalse( assignment.getLut().containsKey( 20 ) );
+		Assert.assertEquals( 21, idService.next() );
+	}
+
+	@Test
+	public void testAssignOnlyAssignedFragments()
+	{
+		final FragmentSegmentAssignment assignment = new FragmentSegmentAssignment( new LocalIdService() );
+
+		/* the segment id is not added as a fragment */
+		assignment.assign( new long[]{ 5 }, new long[]{ 3 } );
+		Assert.assertArrayEquals( new long[]{ 5 }, assignment.getFragments( 3 ) );
+		Assert.assertEquals( 3, assignment.getSegment( 5 ) );
+		Assert.assertFalse( assignment.getLut().containsKey( 3 ) );
+
+		/* a segment that lost all fragments is empty */
+		assignment.assign( new long[]{ 5 }, new long[]{ 8 } );
+		Assert.assertEquals( 0, assignment.getFragments( 3 ).length );
+		Assert.assertArrayEquals( new long[]{ 5 }, assignment.getFragments( 8 ) );
+	}
+
+	@Test
+	public void testAssignFragmentsToImplicitSegment()
+	{
+		final FragmentSegmentAssignment assignment = new FragmentSegmentAssignment(
+				new long[]{ 1, 2 },
+				new long[]{ 10, 10 },
+				new LocalIdService() );
+
+		final ArrayList< Long > assigned = new ArrayList<>();
+		assignment.addListener( new FragmentSegmentAssignment.Listener()
+		{
+			@Override
+			public void assigned( final long version, final long[] fragments, final long[] segments )
+			{
+				for ( final long fragment : fragments )
+					assigned.add( fragment );
+			}
+
+			@Override
+			public void replaced( final long version, final long[] fragments, final long[] segments )
+			{}
+		} );
+
+		/* the never assigned fragment 7 is stored and reported with the moved fragments */
+		assignment.assignFragments( 10, 7 );
+		Assert.assertArrayEquals( new long[]{ 1, 2, 7 }, sorted( assignment.getFragments( 7 ) ) );
+		Assert.assertEquals( Arrays.asList( 1L, 2L, 7L ), assigned.stream().sorted().collect( Collectors.toList() ) );
+		Assert.assertEquals( 7, assignment.getSegment( 1 ) );
+		Assert.assertEquals( 7, assignment.getSegment( 7 ) );
+
+		/* segment 10 was not a fragment, it is empty now */
+		Assert.assertEquals( 0, assignment.getFragments( 10 ).length );
+		Assert.assertFalse( assignment.getLut().containsKey( 10 ) );
+
+		/* merging into the empty segment does not add it as a fragment */
+		assignment.assignFragments( 7, 10 );
+		Assert.assertArrayEquals( new long[]{ 1, 2, 7 }, sorted( assignment.getFragments( 10 ) ) );
+		Assert.assertEquals( 0, assignment.getFragments( 7 ).length );
+		Assert.assertFalse( assignment.getLut().containsKey( 10 ) );
+	}
+}
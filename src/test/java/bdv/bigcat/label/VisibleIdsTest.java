@@ -0,0 +1,289 @@
+package bdv.bigcat.label;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.LongType;
+
+public class VisibleIdsTest
+{
+	final static ExecutorService executor = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() );
+
+	final static VisibleIds.IdCollector< LongType > collector = ( pixel, ids ) -> ids.add( pixel.get() );
+
+	@AfterClass
+	static public void shutdown()
+	{
+		executor.shutdown();
+	}
+
+	/**
+	 * Labels with a different id for each block of 4 voxels in x and y
+	 * and each voxel in z.
+	 */
+	static CellImg< LongType, ? > createLabels( final long[] dimensions, final int cellSize )
+	{
+		final CellImg< LongType, ? > img = new CellImgFactory< LongType >( cellSize ).create( dimensions, new LongType() );
+		final Cursor< LongType > cursor = img.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			final LongType t = cursor.next();
+			t.set( ( cursor.getLongPosition( 2 ) * dimensions[ 1 ] / 4 + cursor.getLongPosition( 1 ) / 4 ) * dimensions[ 0 ] / 4 + cursor.getLongPosition( 0 ) / 4 );
+		}
+		return img;
+	}
+
+	/**
+	 * Nearest neighbor sampling of every screen pixel.
+	 */
+	static TLongHashSet sample(
+			final AffineTransform3D viewerTransform,
+			final int width,
+			final int height,
+			final CellImg< LongType, ? > labels )
+	{
+		final TLongHashSet ids = new TLongHashSet();
+		final RandomAccess< LongType > access = labels.randomAccess();
+		final double[] screen = new double[ 3 ];
+		final double[] source = new double[ 3 ];
+		final long[] position = new long[ 3 ];
+A:		for ( int y = 0; y < height; ++y )
+			for ( int x = 0; x < width; ++x )
+			{
+				screen[ 0 ] = x;
+				screen[ 1 ] = y;
+				viewerTransform.applyInverse( source, screen );
+				for ( int d = 0; d < 3; ++d )
+				{
+					position[ d ] = Math.round( source[ d ] );
+					if ( position[ d ] < 0 || position[ d ] >= labels.dimension( d ) )
+						continue A;
+				}
+				access.setPosition( position );
+				ids.add( access.get().get() );
+			}
+		return ids;
+	}
+
+	/**
+	 * Ids of all voxels whose screen coordinates are within distance of the
+	 * screen.
+	 */
+	static TLongHashSet near(
+			final AffineTransform3D viewerTransform,
+			final int width,
+			final int height,
+			final CellImg< LongType, ? > labels,
+			final double distance )
+	{
+		final TLongHashSet ids = new TLongHashSet();
+		final Cursor< LongType > cursor = labels.localizingCursor();
+		final double[] source = new double[ 3 ];
+		final double[] screen = new double[ 3 ];
+		while ( cursor.hasNext() )
+		{
+			final LongType t = cursor.next();
+			cursor.localize( source );
+			viewerTransform.apply( source, screen );
+			if (
+					screen[ 0 ] >= -distance && screen[ 0 ] <= width - 1 + distance &&
+					screen[ 1 ] >= -distance && screen[ 1 ] <= height - 1 + distance &&
+					Math.abs( screen[ 2 ] ) <= distance )
+				ids.add( t.get() );
+		}
+		return ids;
+	}
+
+	static AffineTransform3D translation( final double x, final double y, final double z )
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set(
+				1, 0, 0, x,
+				0, 1, 0, y,
+				0, 0, 1, z );
+		return transform;
+	}
+
+	@Test
+	public void testAxisAligned()
+	{
+		final CellImg< LongType, ? > labels = createLabels( new long[]{ 200, 150, 20 }, 32 );
+
+		final AffineTransform3D viewerTransform = translation( -10, -20, -7 );
+		final TLongHashSet ids = VisibleIds.collect(
+				viewerTransform,
+				120,
+				90,
+				labels,
+				VisibleIds.cellGrid( labels ),
+				new AffineTransform3D(),
+				pixel -> true,
+				collector,
+				executor );
+
+		Assert.assertEquals( sample( viewerTransform, 120, 90, labels ), ids );
+	}
+
+	@Test
+	public void testRotated()
+	{
+		final CellImg< LongType, ? > labels = createLabels( new long[]{ 200, 150, 60 }, 16 );
+
+		final Random rnd = new Random( 0 );
+		for ( int i = 0; i < 10; ++i )
+		{
+			final AffineTransform3D viewerTransform = new AffineTransform3D();
+			viewerTransform.rotate( 0, rnd.nextDouble() * Math.PI );
+			viewerTransform.rotate( 1, rnd.nextDouble() * Math.PI );
+			viewerTransform.concatenate( translation( -100, -75, -30 ) );
+			final AffineTransform3D shift = translation( 60, 40, 0 );
+			shift.concatenate( viewerTransform );
+
+			final TLongHashSet ids = VisibleIds.collect(
+					shift,
+					120,
+					90,
+					labels,
+					VisibleIds.cellGrid( labels ),
+					new AffineTransform3D(),
+					pixel -> true,
+					collector,
+					executor );
+
+			/* every sampled id, and only ids of voxels close to the screen */
+			Assert.assertTrue( ids.containsAll( sample( shift, 120, 90, labels ) ) );
+			Assert.assertTrue( near( shift, 120, 90, labels, 1.0 ).containsAll( ids ) );
+		}
+	}
+
+	@Test
+	public void testMipmapLevel()
+	{
+		/* level 1 of a 400x300x40 volume at half resolution */
+		final CellImg< LongType, ? > labels = createLabels( new long[]{ 200, 150, 20 }, 32 );
+		final AffineTransform3D mipmapTransform = new AffineTransform3D();
+		mipmapTransform.set(
+				2, 0, 0, 0.5,
+				0, 2, 0, 0.5,
+				0, 0, 2, 0.5 );
+
+		final AffineTransform3D viewerTransform = new AffineTransform3D();
+		viewerTransform.set(
+				0.5, 0, 0, -0.25,
+				0, 0.5, 0, -0.25,
+				0, 0, 0.5, -0.25 - 5 );
+
+		final TLongHashSet ids = VisibleIds.collect(
+				viewerTransform,
+				200,
+				150,
+				labels,
+				VisibleIds.cellGrid( labels ),
+				mipmapTransform,
+				pixel -> true,
+				collector,
+				executor );
+
+		final AffineTransform3D sourceToScreen = viewerTransform.copy();
+		sourceToScreen.concatenate( mipmapTransform );
+		Assert.assertEquals( sample( sourceToScreen, 200, 150, labels ), ids );
+	}
+
+	@Test
+	public void testUncachedCells()
+	{
+		final CellImg< LongType, ? > labels = createLabels( new long[]{ 128, 128, 8 }, 64 );
+
+		/* pretend that the cells with x >= 64 are not cached */
+		final TLongHashSet ids = VisibleIds.collect(
+				new AffineTransform3D(),
+				128,
+				128,
+				labels,
+				VisibleIds.cellGrid( labels ),
+				new AffineTransform3D(),
+				pixel -> pixel.get() % 32 < 16,
+				collector,
+				executor );
+
+		final TLongHashSet expected = new TLongHashSet();
+		for ( long y = 0; y < 32; ++y )
+			for ( long x = 0; x < 16; ++x )
+				expected.add( y * 32 + x );
+		Assert.assertEquals( expected, ids );
+	}
+
+	@Test
+	public void testOutside()
+	{
+		final CellImg< LongType, ? > labels = createLabels( new long[]{ 64, 64, 8 }, 32 );
+
+		final TLongHashSet ids = VisibleIds.collect(
+				translation( 0, 0, -100 ),
+				64,
+				64,
+				labels,
+				VisibleIds.cellGrid( labels ),
+				new AffineTransform3D(),
+				pixel -> true,
+				collector,
+				executor );
+
+		Assert.assertTrue( ids.isEmpty() );
+	}
+
+	@Test
+	public void testTiming()
+	{
+		/* a 4K screen over a volume that is larger than the screen */
+		final int width = 3840;
+		final int height = 2160;
+		final CellImg< LongType, ? > labels = createLabels( new long[]{ 4096, 2304, 4 }, 64 );
+		final AffineTransform3D viewerTransform = translation( -100, -100, -2 );
+		viewerTransform.rotate( 2, 0.1 );
+
+		TLongHashSet sampled = null;
+		TLongHashSet ids = null;
+		long sampleTime = Long.MAX_VALUE;
+		long collectTime = Long.MAX_VALUE;
+		for ( int i = 0; i < 3; ++i )
+		{
+			long t = System.nanoTime();
+			sampled = sample( viewerTransform, width, height, labels );
+			sampleTime = Math.min( sampleTime, System.nanoTime() - t );
+
+			t = System.nanoTime();
+			ids = VisibleIds.collect(
+					viewerTransform,
+					width,
+					height,
+					labels,
+					VisibleIds.cellGrid( labels ),
+					new AffineTransform3D(),
+					pixel -> true,
+					collector,
+					executor );
+			collectTime = Math.min( collectTime, System.nanoTime() - t );
+		}
+
+		System.out.println( String.format(
+				"visible ids of a %dx%d screen: sampling %.1fms, cells %.1fms",
+				width,
+				height,
+				sampleTime / 1e6,
+				collectTime / 1e6 ) );
+
+		Assert.assertTrue( ids.containsAll( sampled ) );
+	}
+}
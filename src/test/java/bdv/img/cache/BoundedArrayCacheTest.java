@@ -0,0 +1,62 @@
+package bdv.img.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import bdv.img.cache.BoundedArrayCache.Eviction;
+import bdv.img.cache.BoundedArrayCache.Key;
+
+public class BoundedArrayCacheTest
+{
+	static Key key( final long x )
+	{
+		return new Key( 0, 0, 0, new long[]{ x, 0, 0 } );
+	}
+
+	@Test
+	public void testLRU()
+	{
+		final CacheMetrics metrics = new CacheMetrics();
+		final BoundedArrayCache cache = new BoundedArrayCache( 30, Eviction.LRU, metrics );
+
+		cache.put( key( 0 ), "a", 10 );
+		cache.put( key( 1 ), "b", 10 );
+		cache.put( key( 2 ), "c", 10 );
+		Assert.assertEquals( "a", cache.get( key( 0 ) ) );
+
+		cache.put( key( 3 ), "d", 10 );
+		Assert.assertNull( cache.get( key( 1 ) ) );
+		Assert.assertEquals( "a", cache.get( key( 0 ) ) );
+		Assert.assertEquals( 30, cache.size() );
+		Assert.assertEquals( 1, metrics.get( 0 ).evictions.get() );
+
+		/* larger than the budget */
+		cache.put( key( 4 ), "e", 40 );
+		Assert.assertNull( cache.get( key( 4 ) ) );
+		Assert.assertEquals( 3, cache.numEntries() );
+	}
+
+	@Test
+	public void testLFU()
+	{
+		final CacheMetrics metrics = new CacheMetrics();
+		final BoundedArrayCache cache = new BoundedArrayCache( 30, Eviction.LFU, metrics );
+
+		cache.put( key( 0 ), "a", 10 );
+		cache.put( key( 1 ), "b", 10 );
+		cache.put( key( 2 ), "c", 10 );
+		cache.get( key( 0 ) );
+		cache.get( key( 0 ) );
+		cache.get( key( 2 ) );
+
+		cache.put( key( 3 ), "d", 10 );
+		Assert.assertNull( cache.get( key( 1 ) ) );
+
+		/* the new entry is kept even though it is used least */
+		cache.put( key( 4 ), "e", 10 );
+		Assert.assertEquals( "e", cache.get( key( 4 ) ) );
+		Assert.assertNull( cache.get( key( 3 ) ) );
+		Assert.assertEquals( "a", cache.get( key( 0 ) ) );
+		Assert.assertEquals( 2, metrics.get( 0 ).evictions.get() );
+	}
+}
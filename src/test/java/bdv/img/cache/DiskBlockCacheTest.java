@@ -0,0 +1,111 @@
+package bdv.img.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import bdv.labels.labelset.LongMappedAccessData;
+import bdv.labels.labelset.VolatileLabelMultisetArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
+
+public class DiskBlockCacheTest
+{
+	private Path root;
+
+	@Before
+	public void createRoot() throws IOException
+	{
+		root = Files.createTempDirectory( "blockcache" );
+	}
+
+	@After
+	public void deleteRoot() throws IOException
+	{
+		try ( final Stream< Path > paths = Files.walk( root ) )
+		{
+			paths.sorted( Comparator.reverseOrder() ).forEach( path -> path.toFile().delete() );
+		}
+	}
+
+	static private VolatileByteArray bytes( final int n, final int value )
+	{
+		final byte[] data = new byte[ n ];
+		for ( int i = 0; i < n; ++i )
+			data[ i ] = ( byte )( value + i );
+		return new VolatileByteArray( data, true );
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		final DiskBlockCache cache = new DiskBlockCache( root, 1 << 20 );
+		final String namespace = DiskBlockCache.namespace( "http://server/api", "abcd@1", "grayscale" );
+
+		final Path bytesPath = cache.path( namespace, 0, 0, new long[]{ 0, 64, 128 } );
+		cache.put( bytesPath, bytes( 100, 7 ), DiskBlockCache.bytes );
+		Assert.assertArrayEquals( bytes( 100, 7 ).getCurrentStorageArray(), cache.get( bytesPath, DiskBlockCache.bytes, 100 ).getCurrentStorageArray() );
+
+		/* wrong number of elements is a miss */
+		Assert.assertNull( cache.get( bytesPath, DiskBlockCache.bytes, 99 ) );
+		Assert.assertEquals( 0, cache.numEntries() );
+
+		final Path intsPath = cache.path( namespace, 0, 1, new long[]{ 0, 0, 0 } );
+		final int[] ints = new int[]{ 1, -2, 3, Integer.MAX_VALUE, Integer.MIN_VALUE };
+		cache.put( intsPath, new VolatileIntArray( ints, true ), DiskBlockCache.ints );
+		Assert.assertArrayEquals( ints, cache.get( intsPath, DiskBlockCache.ints, ints.length ).getCurrentStorageArray() );
+
+		final Path labelsPath = cache.path( namespace, 0, 2, new long[]{ 0, 0, 0 } );
+		final int[] offsets = new int[]{ 0, 0, 16, 16, 0 };
+		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 28 );
+		final long[] longs = listData.getData();
+		for ( int i = 0; i < longs.length; ++i )
+			longs[ i ] = 0x0102030405060708L * ( i + 1 );
+		cache.put( labelsPath, new VolatileLabelMultisetArray( offsets, listData, 28, true ), DiskBlockCache.labelMultisets );
+		final VolatileLabelMultisetArray labels = cache.get( labelsPath, DiskBlockCache.labelMultisets, offsets.length );
+		Assert.assertArrayEquals( offsets, labels.getCurrentStorageArray() );
+		Assert.assertEquals( 28, labels.getListDataUsedSizeInBytes() );
+		Assert.assertArrayEquals( longs, ( ( LongMappedAccessData )labels.getListData() ).getData() );
+	}
+
+	@Test
+	public void testEvictionAndReopen() throws IOException
+	{
+		final String namespace = DiskBlockCache.namespace( "dataset" );
+		final long fileSize = 1000 + 8;
+
+		final DiskBlockCache cache = new DiskBlockCache( root, 3 * fileSize );
+		final Path[] paths = new Path[ 4 ];
+		for ( int i = 0; i < paths.length; ++i )
+			paths[ i ] = cache.path( namespace, 0, 0, new long[]{ i, 0, 0 } );
+
+		for ( int i = 0; i < 3; ++i )
+			cache.put( paths[ i ], bytes( 1000, i ), DiskBlockCache.bytes );
+		Assert.assertEquals( 3 * fileSize, cache.size() );
+
+		/* touch 0 such that 1 is least recently used */
+		Assert.assertNotNull( cache.get( paths[ 0 ], DiskBlockCache.bytes, 1000 ) );
+		cache.put( paths[ 3 ], bytes( 1000, 3 ), DiskBlockCache.bytes );
+
+		Assert.assertEquals( 3, cache.numEntries() );
+		Assert.assertFalse( Files.exists( paths[ 1 ] ) );
+		Assert.assertNull( cache.get( paths[ 1 ], DiskBlockCache.bytes, 1000 ) );
+
+		/* a new session finds the remaining blocks */
+		final DiskBlockCache reopened = new DiskBlockCache( root, 3 * fileSize );
+		Assert.assertEquals( 3, reopened.numEntries() );
+		Assert.assertArrayEquals( bytes( 1000, 3 ).getCurrentStorageArray(), reopened.get( paths[ 3 ], DiskBlockCache.bytes, 1000 ).getCurrentStorageArray() );
+		Assert.assertArrayEquals( bytes( 1000, 0 ).getCurrentStorageArray(), reopened.get( paths[ 0 ], DiskBlockCache.bytes, 1000 ).getCurrentStorageArray() );
+
+		/* a smaller budget evicts on opening */
+		final DiskBlockCache smaller = new DiskBlockCache( root, fileSize );
+		Assert.assertEquals( 1, smaller.numEntries() );
+	}
+}
@@ -16,11 +16,14 @@
  */
 package bdv.img.h5;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -29,10 +32,34 @@ import org.junit.Test;
 
 import com.google.gson.Gson;
 
+import bdv.bigcat.label.FragmentSegmentAssignment;
+import bdv.bigcat.util.SparseLongCanvas;
 import bdv.labels.labelset.Label;
+import bdv.labels.labelset.LabelMultisetType;
+import bdv.labels.labelset.SingleLabelMultisetArrayBuilder;
+import bdv.labels.labelset.VolatileLabelMultisetArray;
+import bdv.util.LocalIdService;
+import ch.systemsx.cisd.base.mdarray.MDLongArray;
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.IHDF5Reader;
+import ch.systemsx.cisd.hdf5.IHDF5Writer;
 import gnu.trove.impl.Constants;
 import gnu.trove.map.hash.TLongLongHashMap;
 import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converter;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.util.Fraction;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Pair;
+import net.imglib2.view.RandomAccessiblePair;
+import net.imglib2.view.Views;
 
 /**
  *
@@ -62,6 +89,86 @@ public class H5UtilsTest
 			3, 7, 20, -10, 13
 	};
 
+	/**
+	 * Single element label multisets with runs of 3 equal fragment ids in x.
+	 */
+	static private ArrayImg< LabelMultisetType, VolatileLabelMultisetArray > createLabelMultisets( final long[] dimensions )
+	{
+		final long[] ids = new long[ ( int )Intervals.numElements( dimensions ) ];
+		for ( int z = 0, i = 0; z < dimensions[ 2 ]; ++z )
+			for ( int y = 0; y < dimensions[ 1 ]; ++y )
+				for ( int x = 0; x < dimensions[ 0 ]; ++x, ++i )
+					ids[ i ] = 1000 * z + 100 * y + x / 3;
+
+		final ArrayImg< LabelMultisetType, VolatileLabelMultisetArray > img =
+				new ArrayImg<>( SingleLabelMultisetArrayBuilder.build( ids ), dimensions, new Fraction() );
+		img.setLinkedType( new LabelMultisetType( img ) );
+		return img;
+	}
+
+	/**
+	 * A canvas with painted cells, a painted and erased cell, and cells that
+	 * were never painted.
+	 */
+	static private SparseLongCanvas createPaintedCanvas( final long[] dimensions )
+	{
+		final SparseLongCanvas canvas = new SparseLongCanvas( dimensions, new int[]{ 4, 4, 2 } );
+		final RandomAccess< LongType > access = canvas.randomAccess();
+		for ( long x = 2; x < 11; ++x )
+		{
+			access.setPosition( new long[]{ x, 3, 1 } );
+			access.get().set( 7 );
+		}
+		access.setPosition( new long[]{ 17, 9, 4 } );
+		access.get().set( 9 );
+		access.setPosition( new long[]{ 5, 10, 2 } );
+		access.get().set( 5 );
+		access.get().set( Label.TRANSPARENT );
+		return canvas;
+	}
+
+	/**
+	 * The cursor based export that
+	 * {@link LabelMultisetLongPairBlockSource} replaces.
+	 */
+	static private void saveCursorBased(
+			final RandomAccessibleInterval< LabelMultisetType > labelMultisets,
+			final RandomAccessibleInterval< LongType > canvas,
+			final Interval interval,
+			final FragmentSegmentAssignment assignment,
+			final String dataset )
+	{
+		final RandomAccessiblePair< LabelMultisetType, LongType > pair = new RandomAccessiblePair<>( labelMultisets, canvas );
+		final RandomAccessibleInterval< Pair< LabelMultisetType, LongType > > pairInterval = Views.offsetInterval( pair, interval );
+		final Converter< Pair< LabelMultisetType, LongType >, LongType > converter =
+				( input, output ) -> {
+					final long inputB = input.getB().get();
+					final long fragment = inputB == Label.TRANSPARENT ?
+							input.getA().entrySet().iterator().next().getElement().id() :
+							inputB;
+					output.set( assignment == null ? fragment : assignment.getSegment( fragment ) );
+				};
+		final RandomAccessibleInterval< LongType > source = Converters.convert( pairInterval, converter, new LongType() );
+
+		H5Utils.saveUnsignedLong( source, new File( testDirPath + testH5Name ), dataset, new int[]{ 4, 5, 3 } );
+	}
+
+	static private MDLongArray read( final String dataset )
+	{
+		final IHDF5Reader reader = HDF5Factory.openForReading( testDirPath + testH5Name );
+		final MDLongArray data = reader.uint64().readMDArray( dataset );
+		reader.close();
+		return data;
+	}
+
+	static private void assertSameDataset( final String expected, final String actual )
+	{
+		final MDLongArray expectedData = read( expected );
+		final MDLongArray actualData = read( actual );
+		assertArrayEquals( expectedData.dimensions(), actualData.dimensions() );
+		assertArrayEquals( expectedData.getAsFlatArray(), actualData.getAsFlatArray() );
+	}
+
 	/**
 	 * @throws java.lang.Exception
 	 */
@@ -143,4 +250,168 @@ public class H5UtilsTest
 			assertTrue( "loaded expected value '" + expectedValue + "' does not exist.", test.contains( expectedValue ) );
 	}
 
+	@Test
+	public void testSaveAndLoadSparseCanvas()
+	{
+		final SparseLongCanvas canvas = new SparseLongCanvas( new long[]{ 10, 7, 5 }, new int[]{ 4, 4, 2 } );
+		final RandomAccess< LongType > access = canvas.randomAccess();
+		access.setPosition( new long[]{ 9, 6, 4 } );
+		access.get().set( 3 );
+		access.setPosition( new long[]{ 1, 2, 0 } );
+		access.get().set( 5 );
+		access.setPosition( new long[]{ 2, 2, 0 } );
+		assertEquals( Label.TRANSPARENT, access.get().get() );
+		assertEquals( 2, canvas.numCells() );
+
+		H5Utils.saveUnsignedLongCells( canvas, new File( testDirPath + testH5Name ), "/canvas", new int[]{ 4, 4, 2 }, null );
+
+		final IHDF5Reader reader = HDF5Factory.openForReading( testDirPath + testH5Name );
+		final SparseLongCanvas loaded = H5Utils.loadSparseUnsignedLong( reader, "/canvas", new int[]{ 4, 4, 2 } );
+		reader.close();
+
+		assertEquals( 2, loaded.numCells() );
+		final Cursor< LongType > cursor = Views.flatIterable( canvas ).cursor();
+		final RandomAccess< LongType > loadedAccess = loaded.randomAccess();
+		while ( cursor.hasNext() )
+		{
+			final long value = cursor.next().get();
+			loadedAccess.setPosition( cursor );
+			assertEquals( value, loadedAccess.get().get() );
+		}
+	}
+
+	@Test
+	public void testOverwriteErasedCells()
+	{
+		final String path = testDirPath + testH5Name;
+		final SparseLongCanvas canvas = new SparseLongCanvas( new long[]{ 10, 7, 5 }, new int[]{ 4, 4, 2 } );
+		final RandomAccess< LongType > access = canvas.randomAccess();
+		access.setPosition( new long[]{ 9, 6, 4 } );
+		access.get().set( 3 );
+		access.setPosition( new long[]{ 1, 2, 0 } );
+		access.get().set( 5 );
+
+		H5Utils.saveUnsignedLongCells( canvas, new File( path ), "/erased", new int[]{ 4, 4, 2 }, null );
+
+		/* erase the painted pixel of cell ( 0, 0, 0 ) and save only that cell */
+		access.get().set( Label.TRANSPARENT );
+		H5Utils.saveUnsignedLongCells(
+				canvas,
+				new File( path ),
+				"/erased",
+				new int[]{ 4, 4, 2 },
+				Collections.singletonList( new FinalInterval( new long[]{ 1, 2, 0 }, new long[]{ 1, 2, 0 } ) ) );
+
+		final IHDF5Reader reader = HDF5Factory.openForReading( path );
+		final MDLongArray raw = reader.uint64().readMDArray( "/erased" );
+		final SparseLongCanvas loaded = H5Utils.loadSparseUnsignedLong( reader, "/erased", new int[]{ 4, 4, 2 } );
+		reader.close();
+
+		/* z, y, x */
+		assertEquals( Label.TRANSPARENT, raw.get( 0, 2, 1 ) );
+		assertEquals( 3, raw.get( 4, 6, 9 ) );
+
+		assertEquals( 1, loaded.numCells() );
+		final RandomAccess< LongType > loadedAccess = loaded.randomAccess();
+		loadedAccess.setPosition( new long[]{ 1, 2, 0 } );
+		assertEquals( Label.TRANSPARENT, loadedAccess.get().get() );
+		loadedAccess.setPosition( new long[]{ 5, 5, 2 } );
+		assertEquals( Label.TRANSPARENT, loadedAccess.get().get() );
+	}
+
+	@Test
+	public void testFillUnwrittenCells()
+	{
+		final String path = testDirPath + testH5Name;
+		final SparseLongCanvas canvas = new SparseLongCanvas( new long[]{ 10, 7, 5 }, new int[]{ 4, 4, 2 } );
+		final RandomAccess< LongType > access = canvas.randomAccess();
+		access.setPosition( new long[]{ 9, 6, 4 } );
+		access.get().set( 3 );
+
+		H5Utils.saveUnsignedLongCells( canvas, new File( path ), "/unwritten", new int[]{ 4, 4, 2 }, null );
+
+		final IHDF5Writer writer = HDF5Factory.open( path );
+		H5Utils.fillUnwrittenCells( writer, "/unwritten", Label.TRANSPARENT );
+		final MDLongArray raw = writer.uint64().readMDArray( "/unwritten" );
+		writer.close();
+
+		/* z, y, x */
+		assertEquals( 3, raw.get( 4, 6, 9 ) );
+		assertEquals( Label.TRANSPARENT, raw.get( 4, 6, 8 ) );
+		assertEquals( Label.TRANSPARENT, raw.get( 2, 5, 5 ) );
+		assertEquals( Label.TRANSPARENT, raw.get( 0, 0, 0 ) );
+	}
+
+	@Test
+	public void testSaveLabelMultisetLongPair()
+	{
+		final long[] dimensions = new long[]{ 20, 13, 6 };
+		final ArrayImg< LabelMultisetType, VolatileLabelMultisetArray > labelMultisets = createLabelMultisets( dimensions );
+		final SparseLongCanvas canvas = createPaintedCanvas( dimensions );
+		final FinalInterval interval = new FinalInterval( new long[]{ 1, 2, 1 }, new long[]{ 18, 12, 5 } );
+
+		saveCursorBased( labelMultisets, canvas, interval, null, "/pair-cursor" );
+		H5Utils.saveSingleElementLabelMultisetLongPair(
+				labelMultisets,
+				canvas,
+				interval,
+				new File( testDirPath + testH5Name ),
+				"/pair-blocks",
+				new int[]{ 4, 5, 3 } );
+		H5Utils.saveUnsignedLongBlocks(
+				new LabelMultisetLongPairBlockSource( labelMultisets, canvas, interval, null ),
+				Intervals.dimensionsAsLongArray( interval ),
+				new File( testDirPath + testH5Name ),
+				"/pair-blocks-3",
+				new int[]{ 4, 5, 3 },
+				3 );
+
+		assertSameDataset( "/pair-cursor", "/pair-blocks" );
+		assertSameDataset( "/pair-cursor", "/pair-blocks-3" );
+
+		/* z, y, x relative to the interval min */
+		final MDLongArray data = read( "/pair-blocks" );
+		assertEquals( 7, data.get( 0, 1, 1 ) );
+		assertEquals( 9, data.get( 3, 7, 16 ) );
+		/* transparent pixels of painted, erased, and never painted cells */
+		assertEquals( 1000 + 300 + 11 / 3, data.get( 0, 1, 10 ) );
+		assertEquals( 2000 + 1000 + 5 / 3, data.get( 1, 8, 4 ) );
+		assertEquals( 5000 + 1200 + 18 / 3, data.get( 4, 10, 17 ) );
+	}
+
+	@Test
+	public void testSaveAssignedLabelMultisetLongPair()
+	{
+		final long[] dimensions = new long[]{ 20, 13, 6 };
+		final ArrayImg< LabelMultisetType, VolatileLabelMultisetArray > labelMultisets = createLabelMultisets( dimensions );
+		final SparseLongCanvas canvas = createPaintedCanvas( dimensions );
+		final FinalInterval interval = new FinalInterval( new long[]{ 1, 2, 1 }, new long[]{ 18, 12, 5 } );
+
+		final FragmentSegmentAssignment assignment = new FragmentSegmentAssignment(
+				new long[]{ 1300, 1301, 3200, 7 },
+				new long[]{ 20000, 20000, 20001, 20001 },
+				new LocalIdService() );
+
+		saveCursorBased( labelMultisets, canvas, interval, assignment, "/assigned-cursor" );
+		H5Utils.saveAssignedSingleElementLabelMultisetLongPair(
+				labelMultisets,
+				canvas,
+				interval,
+				assignment,
+				new File( testDirPath + testH5Name ),
+				"/assigned-blocks",
+				new int[]{ 4, 5, 3 } );
+
+		assertSameDataset( "/assigned-cursor", "/assigned-blocks" );
+
+		final MDLongArray data = read( "/assigned-blocks" );
+		/* painted and background fragments of the same segment */
+		assertEquals( 20001, data.get( 0, 1, 1 ) );
+		assertEquals( 20001, data.get( 2, 0, 0 ) );
+		/* transparent pixel over an assigned fragment */
+		assertEquals( 20000, data.get( 0, 1, 0 ) );
+		/* unassigned fragments map to themselves */
+		assertEquals( 9, data.get( 3, 7, 16 ) );
+		assertEquals( 5000 + 1200 + 18 / 3, data.get( 4, 10, 17 ) );
+	}
 }
@@ -0,0 +1,135 @@
+package bdv.labels.labelset;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.util.Fraction;
+import net.imglib2.util.IntervalIndexer;
+
+public class DownscalingVolatileSuperVoxelMultisetArrayLoaderDvidTest
+{
+	final static long[] inputDimensions = new long[]{ 6, 4, 4 };
+
+	static private long inputId( final long x, final long y, final long z )
+	{
+		return ( x + 2 * y + 3 * z ) % 5 + 1;
+	}
+
+	static private ArrayImg< LabelMultisetType, VolatileLabelMultisetArray > createInput()
+	{
+		final long[] ids = new long[ ( int )( inputDimensions[ 0 ] * inputDimensions[ 1 ] * inputDimensions[ 2 ] ) ];
+		final long[] position = new long[ 3 ];
+		for ( int i = 0; i < ids.length; ++i )
+		{
+			IntervalIndexer.indexToPosition( i, inputDimensions, position );
+			ids[ i ] = inputId( position[ 0 ], position[ 1 ], position[ 2 ] );
+		}
+		final ArrayImg< LabelMultisetType, VolatileLabelMultisetArray > img =
+				new ArrayImg<>( SingleLabelMultisetArrayBuilder.build( ids ), inputDimensions, new Fraction() );
+		img.setLinkedType( new LabelMultisetType( img ) );
+		return img;
+	}
+
+	/**
+	 * Entries of the multiset at index as { id, count } pairs.
+	 */
+	static private List< List< Long > > entries( final VolatileLabelMultisetArray array, final int index )
+	{
+		final LabelMultisetEntryList list = new LabelMultisetEntryList();
+		array.getValue( index, list );
+		final ArrayList< List< Long > > entries = new ArrayList<>();
+		for ( final LabelMultisetEntry entry : list )
+		{
+			final ArrayList< Long > pair = new ArrayList<>();
+			pair.add( entry.getId() );
+			pair.add( ( long )entry.getCount() );
+			entries.add( pair );
+		}
+		return entries;
+	}
+
+	/**
+	 * Count the ids of the 2x2x2 input pixels of an output pixel, pixels
+	 * outside of the input count as nElementsPerInputPixel of label 0.
+	 */
+	static private List< List< Long > > expectedEntries( final int[] outputPosition, final int nElementsPerInputPixel )
+	{
+		final TreeMap< Long, Long > counts = new TreeMap<>();
+		for ( int z = 0; z < 2; ++z )
+			for ( int y = 0; y < 2; ++y )
+				for ( int x = 0; x < 2; ++x )
+				{
+					final long ix = outputPosition[ 0 ] * 2 + x;
+					final long iy = outputPosition[ 1 ] * 2 + y;
+					final long iz = outputPosition[ 2 ] * 2 + z;
+					if ( ix < inputDimensions[ 0 ] && iy < inputDimensions[ 1 ] && iz < inputDimensions[ 2 ] )
+						counts.merge( inputId( ix, iy, iz ), 1L, Long::sum );
+					else
+						counts.merge( 0L, ( long )nElementsPerInputPixel, Long::sum );
+				}
+		final ArrayList< List< Long > > entries = new ArrayList<>();
+		counts.forEach( ( id, count ) -> {
+			final ArrayList< Long > pair = new ArrayList<>();
+			pair.add( id );
+			pair.add( count );
+			entries.add( pair );
+		} );
+		return entries;
+	}
+
+	@Test
+	public void testDownscaleBlock()
+	{
+		final int[] dimensions = new int[]{ 3, 2, 2 };
+		final VolatileLabelMultisetArray array = DownscalingVolatileSuperVoxelMultisetArrayLoaderDvid.downscale(
+				createInput(),
+				new int[]{ 2, 2, 2 },
+				dimensions,
+				new long[]{ 0, 0, 0 },
+				1,
+				LongMappedAccessData.factory );
+
+		final int[] position = new int[ 3 ];
+		for ( int o = 0; o < 12; ++o )
+		{
+			IntervalIndexer.indexToPosition( o, dimensions, position );
+			Assert.assertEquals( expectedEntries( position, 1 ), entries( array, o ) );
+		}
+
+		/* in bounds, the result matches the HDF5 loader */
+		final VolatileLabelMultisetArray reference = DownscalingVolatileSuperVoxelMultisetArrayLoader.downscale(
+				createInput(),
+				new int[]{ 2, 2, 2 },
+				dimensions,
+				new long[]{ 0, 0, 0 } );
+		for ( int o = 0; o < 12; ++o )
+			Assert.assertEquals( entries( reference, o ), entries( array, o ) );
+	}
+
+	@Test
+	public void testDownscaleBlockOutOfBounds()
+	{
+		/* the second block in x reaches past the input */
+		final int[] dimensions = new int[]{ 2, 2, 2 };
+		final VolatileLabelMultisetArray array = DownscalingVolatileSuperVoxelMultisetArrayLoaderDvid.downscale(
+				createInput(),
+				new int[]{ 2, 2, 2 },
+				dimensions,
+				new long[]{ 2, 0, 0 },
+				8,
+				LongMappedAccessData.factory );
+
+		final int[] position = new int[ 3 ];
+		for ( int o = 0; o < 8; ++o )
+		{
+			IntervalIndexer.indexToPosition( o, dimensions, position );
+			position[ 0 ] += 2;
+			Assert.assertEquals( expectedEntries( position, 8 ), entries( array, o ) );
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package bdv.labels.labelset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LabelMultisetBlockContainerTest
+{
+	private Path root;
+
+	@Before
+	public void createRoot() throws IOException
+	{
+		root = Files.createTempDirectory( "labelcache" );
+	}
+
+	@After
+	public void deleteRoot() throws IOException
+	{
+		try ( final Stream< Path > paths = Files.walk( root ) )
+		{
+			paths.sorted( Comparator.reverseOrder() ).forEach( path -> path.toFile().delete() );
+		}
+	}
+
+	static private LongMappedAccessData listData( final long size, final long seed )
+	{
+		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( size );
+		for ( long i = 0; i < size; ++i )
+			ByteUtils.putByte( ( byte )( seed + 3 * i ), listData.data, i );
+		return listData;
+	}
+
+	static private void assertListDataEquals( final LongMappedAccessData expected, final long size, final VolatileLabelMultisetArray actual )
+	{
+		Assert.assertEquals( size, actual.getListDataUsedSizeInBytes() );
+		final LongMappedAccessData listData = ( LongMappedAccessData )actual.getListData();
+		for ( long i = 0; i < size; ++i )
+			Assert.assertEquals( ByteUtils.getByte( expected.data, i ), ByteUtils.getByte( listData.data, listData.origin + i ) );
+	}
+
+	@Test
+	public void testEncoding()
+	{
+		final int[] offsets = new int[]{ 0, 0x01020304, -1 };
+		final LongMappedAccessData listData = listData( 28, 5 );
+
+		final byte[] bytes = new byte[ ( int )LabelMultisetBlockContainer.encodedSize( offsets.length, 28 ) ];
+		LabelMultisetBlockContainer.encode( offsets, listData, 28, ByteBuffer.wrap( bytes ) );
+
+		/* offsets are little endian, list data follows */
+		Assert.assertEquals( 4 * 3 + 28, bytes.length );
+		Assert.assertEquals( 0x04, bytes[ 4 ] );
+		Assert.assertEquals( 0x01, bytes[ 7 ] );
+		Assert.assertEquals( ByteUtils.getByte( listData.data, 27 ), bytes[ bytes.length - 1 ] );
+
+		final VolatileLabelMultisetArray decoded = LabelMultisetBlockContainer.decode( ByteBuffer.wrap( bytes ), offsets.length );
+		Assert.assertArrayEquals( offsets, decoded.getCurrentStorageArray() );
+		assertListDataEquals( listData, 28, decoded );
+	}
+
+	@Test
+	public void testContainer() throws IOException
+	{
+		final Path base = root.resolve( "0_0_1" );
+		final LabelMultisetBlockContainer container = new LabelMultisetBlockContainer( base );
+
+		final int[] offsets0 = new int[]{ 0, 16, 16, 0 };
+		final LongMappedAccessData listData0 = listData( 32, 1 );
+		final int[] offsets1 = new int[]{ 0, 0, 0, 0 };
+		final LongMappedAccessData listData1 = listData( 16, 2 );
+
+		container.put( new long[]{ 0, 0, 0 }, offsets0, listData0, 32 );
+		container.put( new long[]{ 64, 0, 0 }, offsets1, listData1, 16 );
+		Assert.assertNull( container.get( new long[]{ 0, 64, 0 }, 4 ) );
+		Assert.assertNull( container.get( new long[]{ 0, 0, 0 }, 8 ) );
+
+		final VolatileLabelMultisetArray block0 = container.get( new long[]{ 0, 0, 0 }, 4 );
+		Assert.assertArrayEquals( offsets0, block0.getCurrentStorageArray() );
+		assertListDataEquals( listData0, 32, block0 );
+
+		/* rewritten blocks replace older ones */
+		container.put( new long[]{ 0, 0, 0 }, offsets1, listData1, 16 );
+		Assert.assertArrayEquals( offsets1, container.get( new long[]{ 0, 0, 0 }, 4 ).getCurrentStorageArray() );
+		Assert.assertEquals( 2, container.numBlocks() );
+		container.close();
+
+		/* a partial index record is ignored on reopening */
+		Files.write( base.resolveSibling( "0_0_1.index" ), new byte[]{ 1, 2, 3 }, StandardOpenOption.APPEND );
+		final LabelMultisetBlockContainer reopened = new LabelMultisetBlockContainer( base );
+		Assert.assertEquals( 2, reopened.numBlocks() );
+		final VolatileLabelMultisetArray block1 = reopened.get( new long[]{ 64, 0, 0 }, 4 );
+		Assert.assertArrayEquals( offsets1, block1.getCurrentStorageArray() );
+		assertListDataEquals( listData1, 16, block1 );
+		reopened.close();
+	}
+
+	@Test
+	public void testZeroCopy() throws IOException
+	{
+		final LabelMultisetBlockContainer container = new LabelMultisetBlockContainer( root.resolve( "0_0_0" ) );
+		final int[] offsets = new int[]{ 0, 8 };
+		final LongMappedAccessData listData = listData( 24, 3 );
+		container.put( new long[]{ 0, 0, 0 }, offsets, listData, 24 );
+
+		final VolatileLabelMultisetArray block = container.get( new long[]{ 0, 0, 0 }, 2 );
+		final LongMappedAccessData blockListData = ( LongMappedAccessData )block.getListData();
+		Assert.assertTrue( blockListData.isOffHeap() );
+		assertListDataEquals( listData, 24, block );
+
+		/* modifications are private */
+		blockListData.createAccess().putByte( ( byte )-1, 0 );
+		assertListDataEquals( listData, 24, container.get( new long[]{ 0, 0, 0 }, 2 ) );
+
+		/* the factory variant copies */
+		final VolatileLabelMultisetArray copy = container.get( new long[]{ 0, 0, 0 }, 2, LongMappedAccessData.factory );
+		Assert.assertFalse( ( ( LongMappedAccessData )copy.getListData() ).isOffHeap() );
+		assertListDataEquals( listData, 24, copy );
+		container.close();
+
+		/* blocks stay valid after closing */
+		Assert.assertEquals( -1, blockListData.createAccess().getByte( 0 ) );
+		Assert.assertEquals( ByteUtils.getByte( listData.data, 1 ), blockListData.createAccess().getByte( 1 ) );
+	}
+
+	@Test
+	public void testMappedRegions() throws IOException
+	{
+		/* blocks of 28 bytes in regions of 64 bytes */
+		final LabelMultisetBlockContainer container = new LabelMultisetBlockContainer( root.resolve( "4_0_0" ), 64 );
+		final int[] offsets = new int[]{ 0, 8 };
+		for ( int i = 0; i < 6; ++i )
+			container.put( new long[]{ 64 * i, 0, 0 }, offsets, listData( 20, i ), 20 );
+
+		final VolatileLabelMultisetArray[] blocks = new VolatileLabelMultisetArray[ 6 ];
+		for ( int i = 0; i < 6; ++i )
+		{
+			blocks[ i ] = container.get( new long[]{ 64 * i, 0, 0 }, 2 );
+			Assert.assertArrayEquals( offsets, blocks[ i ].getCurrentStorageArray() );
+			assertListDataEquals( listData( 20, i ), 20, blocks[ i ] );
+		}
+
+		/* the first two regions are complete and mapped once, the third is not */
+		Assert.assertEquals( 3, container.regions.size() );
+		Assert.assertNotNull( container.regions.get( 0 ) );
+		Assert.assertNotNull( container.regions.get( 1 ) );
+		Assert.assertNull( container.regions.get( 2 ) );
+
+		/* blocks of a region share its mapping */
+		final LongMappedAccessData listData0 = ( LongMappedAccessData )blocks[ 0 ].getListData();
+		final LongMappedAccessData listData1 = ( LongMappedAccessData )blocks[ 1 ].getListData();
+		Assert.assertEquals( 28, listData1.origin - listData0.origin );
+
+		/* modifications do not reach the file */
+		listData0.createAccess().putByte( ( byte )-1, 0 );
+		assertListDataEquals( listData( 20, 0 ), 20, container.get( new long[]{ 0, 0, 0 }, 2, LongMappedAccessData.factory ) );
+		container.close();
+	}
+
+	@Test
+	public void testCompaction() throws IOException
+	{
+		final Path base = root.resolve( "1_0_0" );
+		final Path dataPath = root.resolve( "1_0_0.data" );
+		final LabelMultisetBlockContainer container = new LabelMultisetBlockContainer( base );
+		final int[] offsets = new int[]{ 0, 0, 0, 0 };
+		final long blockSize = LabelMultisetBlockContainer.encodedSize( offsets.length, 16 );
+		for ( int i = 0; i < 4; ++i )
+			container.put( new long[]{ 0, 0, 0 }, offsets, listData( 16, i ), 16 );
+		container.put( new long[]{ 64, 0, 0 }, offsets, listData( 16, 7 ), 16 );
+		container.close();
+		Assert.assertEquals( 5 * blockSize, Files.size( dataPath ) );
+
+		final LabelMultisetBlockContainer compacted = new LabelMultisetBlockContainer( base );
+		Assert.assertEquals( 2 * blockSize, Files.size( dataPath ) );
+		Assert.assertEquals( 2, compacted.numBlocks() );
+		assertListDataEquals( listData( 16, 3 ), 16, compacted.get( new long[]{ 0, 0, 0 }, 4 ) );
+		assertListDataEquals( listData( 16, 7 ), 16, compacted.get( new long[]{ 64, 0, 0 }, 4 ) );
+
+		/* appending continues after the live blocks */
+		compacted.put( new long[]{ 0, 64, 0 }, offsets, listData( 16, 9 ), 16 );
+		compacted.close();
+
+		final LabelMultisetBlockContainer reopened = new LabelMultisetBlockContainer( base );
+		Assert.assertEquals( 3 * blockSize, Files.size( dataPath ) );
+		Assert.assertEquals( 3, reopened.numBlocks() );
+		assertListDataEquals( listData( 16, 9 ), 16, reopened.get( new long[]{ 0, 64, 0 }, 4 ) );
+		reopened.close();
+	}
+
+	@Test
+	public void testInterruptedCompaction() throws IOException
+	{
+		final Path base = root.resolve( "2_0_0" );
+		final LabelMultisetBlockContainer container = new LabelMultisetBlockContainer( base );
+		final int[] offsets = new int[]{ 0, 0, 0, 0 };
+		container.put( new long[]{ 0, 0, 0 }, offsets, listData( 16, 1 ), 16 );
+		container.close();
+
+		/* an unfinished compacted data file is discarded */
+		Files.write( root.resolve( "2_0_0.data.compact" ), new byte[]{ 1, 2, 3 } );
+		Files.write( root.resolve( "2_0_0.index.compact" ), new byte[]{ 4, 5, 6 } );
+		final LabelMultisetBlockContainer reopened = new LabelMultisetBlockContainer( base );
+		Assert.assertFalse( Files.exists( root.resolve( "2_0_0.data.compact" ) ) );
+		Assert.assertFalse( Files.exists( root.resolve( "2_0_0.index.compact" ) ) );
+		Assert.assertEquals( 1, reopened.numBlocks() );
+		assertListDataEquals( listData( 16, 1 ), 16, reopened.get( new long[]{ 0, 0, 0 }, 4 ) );
+		reopened.close();
+	}
+
+	@Test
+	public void testLock() throws IOException
+	{
+		final Path base = root.resolve( "3_0_0" );
+		final LabelMultisetBlockContainer container = new LabelMultisetBlockContainer( base );
+		try
+		{
+			new LabelMultisetBlockContainer( base );
+			Assert.fail( "opened a container twice" );
+		}
+		catch ( final IOException e )
+		{}
+		container.close();
+
+		new LabelMultisetBlockContainer( base ).close();
+	}
+}
@@ -0,0 +1,286 @@
+package bdv.labels.labelset;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.imglib2.Interval;
+import net.imglib2.Point;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.util.Fraction;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+
+public class LabelMultisetCanvasFillTest
+{
+	final static long fillLabel = 100;
+
+	final static ForkJoinPool pool = new ForkJoinPool( 4 );
+
+	@AfterClass
+	static public void shutdown()
+	{
+		pool.shutdown();
+	}
+
+	/**
+	 * Label multisets with the ids of each pixel, count 1 each, ids sorted.
+	 */
+	static private ArrayImg< LabelMultisetType, VolatileLabelMultisetArray > createLabels( final long[] dimensions, final long[][] ids )
+	{
+		final int[] offsets = new int[ ids.length ];
+		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
+		final LabelMultisetEntryList list = new LabelMultisetEntryList( listData, 0 );
+		final LabelMultisetEntry entry = new LabelMultisetEntry( 0, 1 );
+		int nextListOffset = 0;
+		for ( int i = 0; i < ids.length; ++i )
+		{
+			list.createListAt( listData, nextListOffset );
+			for ( final long id : ids[ i ] )
+			{
+				entry.setId( id );
+				list.add( entry );
+			}
+			offsets[ i ] = nextListOffset;
+			nextListOffset += list.getSizeInBytes();
+		}
+		final VolatileLabelMultisetArray access = new VolatileLabelMultisetArray( offsets, listData, nextListOffset, true );
+		final ArrayImg< LabelMultisetType, VolatileLabelMultisetArray > img = new ArrayImg<>( access, dimensions, new Fraction() );
+		img.setLinkedType( new LabelMultisetType( img ) );
+		return img;
+	}
+
+	static private ArrayImg< LongType, LongArray > createCanvas( final long[] dimensions )
+	{
+		final ArrayImg< LongType, LongArray > canvas = ArrayImgs.longs( dimensions );
+		Arrays.fill( canvas.update( null ).getCurrentStorageArray(), Label.TRANSPARENT );
+		return canvas;
+	}
+
+	/**
+	 * Sequential 2n-connected flood fill for reference.
+	 */
+	static private boolean[] expectedFill( final long[] dimensions, final long[] seed, final IntPredicate accept )
+	{
+		final int n = dimensions.length;
+		final boolean[] filled = new boolean[ ( int )Intervals.numElements( dimensions ) ];
+		final TIntArrayList stack = new TIntArrayList();
+		final long[] position = new long[ n ];
+		final int seedIndex = ( int )IntervalIndexer.positionToIndex( seed, dimensions );
+		if ( !accept.test( seedIndex ) )
+			return filled;
+		filled[ seedIndex ] = true;
+		stack.add( seedIndex );
+		while ( !stack.isEmpty() )
+		{
+			final int i = stack.removeAt( stack.size() - 1 );
+			IntervalIndexer.indexToPosition( i, dimensions, position );
+			for ( int d = 0; d < n; ++d )
+			{
+				for ( int direction = -1; direction <= 1; direction += 2 )
+				{
+					position[ d ] += direction;
+					if ( position[ d ] >= 0 && position[ d ] < dimensions[ d ] )
+					{
+						final int j = ( int )IntervalIndexer.positionToIndex( position, dimensions );
+						if ( !filled[ j ] && accept.test( j ) )
+						{
+							filled[ j ] = true;
+							stack.add( j );
+						}
+					}
+					position[ d ] -= direction;
+				}
+			}
+		}
+		return filled;
+	}
+
+	static private void assertFilled( final long[] dimensions, final boolean[] expected, final long[] canvas, final long[] before, final Interval interval )
+	{
+		final int n = dimensions.length;
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		Arrays.fill( min, Long.MAX_VALUE );
+		Arrays.fill( max, Long.MIN_VALUE );
+		final long[] position = new long[ n ];
+		for ( int i = 0; i < expected.length; ++i )
+		{
+			Assert.assertEquals( "pixel " + i, expected[ i ] ? fillLabel : before[ i ], canvas[ i ] );
+			if ( expected[ i ] )
+			{
+				IntervalIndexer.indexToPosition( i, dimensions, position );
+				for ( int d = 0; d < n; ++d )
+				{
+					min[ d ] = Math.min( min[ d ], position[ d ] );
+					max[ d ] = Math.max( max[ d ], position[ d ] );
+				}
+			}
+		}
+		Assert.assertNotNull( interval );
+		for ( int d = 0; d < n; ++d )
+		{
+			Assert.assertEquals( min[ d ], interval.min( d ) );
+			Assert.assertEquals( max[ d ], interval.max( d ) );
+		}
+	}
+
+	@Test
+	public void test3DAcrossBlocks()
+	{
+		final long[] dimensions = new long[] { 23, 17, 19 };
+		final int numPixels = 23 * 17 * 19;
+		final Random rnd = new Random( 0 );
+		final long[][] ids = new long[ numPixels ][];
+		for ( int i = 0; i < numPixels; ++i )
+			ids[ i ] = new long[] { rnd.nextInt( 10 ) < 6 ? 1 : 2 };
+		final long[] seed = new long[] { 11, 8, 9 };
+		ids[ ( int )IntervalIndexer.positionToIndex( seed, dimensions ) ][ 0 ] = 1;
+
+		final ArrayImg< LongType, LongArray > canvas = createCanvas( dimensions );
+		final long[] canvasData = canvas.update( null ).getCurrentStorageArray();
+		final long[] before = canvasData.clone();
+
+		/* block size does not divide the canvas, blocks at the border are clipped */
+		final LabelMultisetCanvasFill fill = new LabelMultisetCanvasFill( createLabels( dimensions, ids ), canvas, new int[] { 4, 5, 3 }, pool );
+		final Interval interval = fill.fill( new Point( seed ), fillLabel, 1, new long[] { 1 }, () -> false );
+
+		final boolean[] expected = expectedFill( dimensions, seed, i -> ids[ i ][ 0 ] == 1 );
+		assertFilled( dimensions, expected, canvasData, before, interval );
+
+		/* the component touches more than one block */
+		Assert.assertTrue( interval.dimension( 0 ) > 4 && interval.dimension( 1 ) > 5 && interval.dimension( 2 ) > 3 );
+	}
+
+	private void testFragments( final int numFragments )
+	{
+		final long[] dimensions = new long[] { 41, 37 };
+		final int numPixels = 41 * 37;
+		final Random rnd = new Random( numFragments );
+		final long[][] ids = new long[ numPixels ][];
+		for ( int i = 0; i < numPixels; ++i )
+		{
+			/* two entries per pixel, sorted, either may be a fragment */
+			final long a = rnd.nextInt( 2 * numFragments + 4 );
+			final long b = a + 1 + rnd.nextInt( 2 * numFragments + 4 );
+			ids[ i ] = new long[] { a, b };
+		}
+		final long[] fragments = new long[ numFragments ];
+		for ( int i = 0; i < numFragments; ++i )
+			fragments[ i ] = 2 * i;
+		final long[] seed = new long[] { 20, 18 };
+		ids[ ( int )IntervalIndexer.positionToIndex( seed, dimensions ) ][ 0 ] = 0;
+
+		final ArrayImg< LongType, LongArray > canvas = createCanvas( dimensions );
+		final long[] canvasData = canvas.update( null ).getCurrentStorageArray();
+		final long[] before = canvasData.clone();
+
+		final LabelMultisetCanvasFill fill = new LabelMultisetCanvasFill( createLabels( dimensions, ids ), canvas, new int[] { 8, 7 }, pool );
+		final Interval interval = fill.fill( new Point( seed ), fillLabel, 0, fragments, () -> false );
+
+		final boolean[] expected = expectedFill( dimensions, seed, i -> {
+			for ( final long fragment : fragments )
+				if ( ids[ i ][ 0 ] == fragment || ids[ i ][ 1 ] == fragment )
+					return true;
+			return false;
+		} );
+		assertFilled( dimensions, expected, canvasData, before, interval );
+	}
+
+	@Test
+	public void testFewFragments()
+	{
+		testFragments( 1 );
+		testFragments( LabelMultisetCanvasFill.MAX_FRAGMENTS_SEARCH );
+	}
+
+	@Test
+	public void testManyFragments()
+	{
+		testFragments( LabelMultisetCanvasFill.MAX_FRAGMENTS_SEARCH + 1 );
+		testFragments( 4 * LabelMultisetCanvasFill.MAX_FRAGMENTS_SEARCH );
+	}
+
+	@Test
+	public void testPaintedComparison()
+	{
+		/* fragment 1 for x < 5, fragment 2 for x >= 5 */
+		final long[] dimensions = new long[] { 10, 10 };
+		final long[][] ids = new long[ 100 ][];
+		for ( int i = 0; i < 100; ++i )
+			ids[ i ] = new long[] { i % 10 < 5 ? 1 : 2 };
+
+		final ArrayImg< LongType, LongArray > canvas = createCanvas( dimensions );
+		final long[] canvasData = canvas.update( null ).getCurrentStorageArray();
+		for ( int y = 0; y < 10; ++y )
+		{
+			/* a wall of another paint with a gap at y = 9 */
+			if ( y < 9 )
+				canvasData[ y * 10 + 2 ] = 5;
+			/* painted with the comparison label over fragment 2 */
+			canvasData[ y * 10 + 5 ] = 1;
+		}
+		/* already painted with the fill label */
+		canvasData[ 3 ] = fillLabel;
+		final long[] before = canvasData.clone();
+
+		final LabelMultisetCanvasFill fill = new LabelMultisetCanvasFill( createLabels( dimensions, ids ), canvas, new int[] { 3, 3 }, pool );
+
+		/* a non-regular comparison fills nothing */
+		Assert.assertNull( fill.fill( new Point( 0, 0 ), fillLabel, Label.TRANSPARENT, null, () -> false ) );
+		Assert.assertArrayEquals( before, canvasData );
+
+		/* null fragments compare against the comparison label only */
+		final Interval interval = fill.fill( new Point( 0, 0 ), fillLabel, 1, null, () -> false );
+
+		final boolean[] expected = expectedFill( dimensions, new long[] { 0, 0 }, i -> {
+			final long paint = before[ i ];
+			if ( paint == Label.TRANSPARENT )
+				return ids[ i ][ 0 ] == 1;
+			return paint == 1;
+		} );
+		Assert.assertTrue( expected[ 92 ] && expected[ 55 ] && !expected[ 22 ] && !expected[ 56 ] );
+		/* the pixel painted with the fill label blocks the fill but keeps its paint */
+		Assert.assertFalse( expected[ 3 ] );
+		assertFilled( dimensions, expected, canvasData, before, interval );
+	}
+
+	@Test
+	public void testCancellation()
+	{
+		final long[] dimensions = new long[] { 64, 64 };
+		final long[][] ids = new long[ 64 * 64 ][];
+		for ( int i = 0; i < ids.length; ++i )
+			ids[ i ] = new long[] { 1 };
+		final ArrayImg< LabelMultisetType, VolatileLabelMultisetArray > labels = createLabels( dimensions, ids );
+
+		/* cancelled before the first span, nothing is filled */
+		final ArrayImg< LongType, LongArray > canvas = createCanvas( dimensions );
+		final long[] canvasData = canvas.update( null ).getCurrentStorageArray();
+		final LabelMultisetCanvasFill fill = new LabelMultisetCanvasFill( labels, canvas, new int[] { 16, 16 }, pool );
+		Assert.assertNull( fill.fill( new Point( 32, 32 ), fillLabel, 1, new long[] { 1 }, () -> true ) );
+		for ( final long paint : canvasData )
+			Assert.assertEquals( Label.TRANSPARENT, paint );
+
+		/* cancelled after a few spans, the pixels filled so far remain */
+		final AtomicInteger numChecks = new AtomicInteger();
+		final Interval interval = fill.fill( new Point( 32, 32 ), fillLabel, 1, new long[] { 1 }, () -> numChecks.incrementAndGet() > 20 );
+		Assert.assertNotNull( interval );
+		int numFilled = 0;
+		for ( final long paint : canvasData )
+			if ( paint == fillLabel )
+				++numFilled;
+		Assert.assertTrue( numFilled > 0 && numFilled < canvasData.length );
+		Assert.assertEquals( fillLabel, canvasData[ 32 * 64 + 32 ] );
+	}
+}
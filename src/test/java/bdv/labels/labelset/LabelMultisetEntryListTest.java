@@ -0,0 +1,66 @@
+package bdv.labels.labelset;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LabelMultisetEntryListTest
+{
+	static private LabelMultisetEntryList createList()
+	{
+		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
+		final LabelMultisetEntryList list = new LabelMultisetEntryList( listData, 0 );
+		list.createListAt( listData, 40 );
+		list.add( new LabelMultisetEntry( 3, 2 ) );
+		list.add( new LabelMultisetEntry( 7, 5 ) );
+		list.add( new LabelMultisetEntry( Label.INVALID, 1 ) );
+		return list;
+	}
+
+	@Test
+	public void testIndexedAccess()
+	{
+		final LabelMultisetEntryList list = createList();
+		int i = 0;
+		for ( final LabelMultisetEntry entry : list )
+		{
+			Assert.assertEquals( entry.getId(), list.idAt( i ) );
+			Assert.assertEquals( entry.getCount(), list.countAt( i ) );
+			++i;
+		}
+		Assert.assertEquals( 3, i );
+		Assert.assertEquals( 8, list.multisetSize() );
+	}
+
+	@Test
+	public void testArgMax()
+	{
+		final LabelMultisetEntryList list = createList();
+		Assert.assertEquals( 7, list.argMax() );
+
+		/* ties go to the smaller id */
+		list.add( new LabelMultisetEntry( 9, 5 ) );
+		Assert.assertEquals( 7, list.argMax() );
+
+		list.clear();
+		Assert.assertEquals( Label.TRANSPARENT, list.argMax() );
+	}
+
+	@Test
+	public void testForEachEntry()
+	{
+		final LabelMultisetEntryList list = createList();
+		final long[] sums = new long[ 2 ];
+		Assert.assertTrue( list.forEachEntry( ( id, count ) -> {
+			sums[ 0 ] += id;
+			sums[ 1 ] += count;
+			return true;
+		} ) );
+		Assert.assertEquals( 3 + 7 + Label.INVALID, sums[ 0 ] );
+		Assert.assertEquals( 8, sums[ 1 ] );
+
+		/* stops at the first entry for which the procedure returns false */
+		final int[] numVisited = new int[ 1 ];
+		Assert.assertFalse( list.forEachEntry( ( id, count ) -> ++numVisited[ 0 ] < 2 ) );
+		Assert.assertEquals( 2, numVisited[ 0 ] );
+	}
+}
@@ -0,0 +1,128 @@
+package bdv.labels.labelset;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LongMappedAccessDataTest
+{
+	static private void fill( final LongMappedAccess access, final int numBytes )
+	{
+		for ( int i = 0; i < numBytes; ++i )
+			access.putByte( ( byte )( 7 * i + 1 ), i );
+	}
+
+	static private void assertFilled( final LongMappedAccess access, final int numBytes )
+	{
+		for ( int i = 0; i < numBytes; ++i )
+			Assert.assertEquals( ( byte )( 7 * i + 1 ), access.getByte( i ) );
+	}
+
+	@Test
+	public void testOffHeapAccess()
+	{
+		final LongMappedAccessData data = LongMappedAccessData.offHeapFactory.createStorage( 100 );
+		Assert.assertTrue( data.isOffHeap() );
+		Assert.assertNull( data.getData() );
+		Assert.assertEquals( 100, data.size() );
+
+		final LongMappedAccess access = data.createAccess();
+		Assert.assertEquals( 0, access.getLong( 8 ) );
+
+		data.updateAccess( access, 16 );
+		access.putInt( 42, 0 );
+		access.putLong( -3l, 4 );
+		access.putDouble( 0.5, 12 );
+		Assert.assertEquals( 42, access.getInt( 0 ) );
+		Assert.assertEquals( -3l, access.getLong( 4 ) );
+		Assert.assertEquals( 0.5, access.getDouble( 12 ), 0 );
+
+		/* contents survive resizing, grown memory is zero */
+		data.resize( 1000 );
+		Assert.assertEquals( 42, access.getInt( 0 ) );
+		Assert.assertEquals( -3l, access.getLong( 4 ) );
+		Assert.assertEquals( 0, access.getLong( 900 ) );
+	}
+
+	@Test
+	public void testWrappedAccess()
+	{
+		final ByteBuffer buffer = ByteBuffer.allocateDirect( 40 );
+		buffer.position( 8 );
+		final LongMappedAccessData data = LongMappedAccessData.wrap( buffer.slice() );
+		Assert.assertTrue( data.isOffHeap() );
+		Assert.assertEquals( 32, data.size() );
+
+		/* the storage is the buffer */
+		fill( data.createAccess(), 32 );
+		for ( int i = 0; i < 32; ++i )
+			Assert.assertEquals( ( byte )( 7 * i + 1 ), buffer.get( 8 + i ) );
+
+		/* resizing copies into native memory */
+		data.resize( 100 );
+		assertFilled( data.createAccess(), 32 );
+		Assert.assertEquals( 0, data.createAccess().getLong( 64 ) );
+		data.createAccess().putByte( ( byte )0, 0 );
+		Assert.assertEquals( 1, buffer.get( 8 ) );
+	}
+
+	@Test
+	public void testCopyBetweenStorages()
+	{
+		final LongMappedAccessData heap = LongMappedAccessData.factory.createStorage( 64 );
+		final LongMappedAccessData offHeap = LongMappedAccessData.offHeapFactory.createStorage( 64 );
+		final LongMappedAccess heapAccess = heap.createAccess();
+		final LongMappedAccess offHeapAccess = offHeap.createAccess();
+
+		fill( heapAccess, 64 );
+		offHeapAccess.copyFrom( heapAccess, 64 );
+		assertFilled( offHeapAccess, 64 );
+
+		heap.updateAccess( heapAccess, 0 );
+		for ( int i = 0; i < 8; ++i )
+			heapAccess.putLong( 0, 8 * i );
+		heapAccess.swapWith( offHeapAccess, 64 );
+		assertFilled( heapAccess, 64 );
+		Assert.assertEquals( 0, offHeapAccess.getLong( 56 ) );
+	}
+
+	@Test
+	public void testBulkCopy()
+	{
+		for ( final MappedAccessData.Factory< LongMappedAccessData, LongMappedAccess > factory : new MappedAccessData.Factory[]{ LongMappedAccessData.factory, LongMappedAccessData.offHeapFactory } )
+		{
+			final LongMappedAccessData data = factory.createStorage( 29 );
+			fill( data.createAccess(), 29 );
+
+			for ( final ByteBuffer buffer : new ByteBuffer[]{ ByteBuffer.allocate( 40 ), ByteBuffer.allocateDirect( 40 ) } )
+			{
+				buffer.position( 3 );
+				data.writeTo( buffer, 29 );
+				Assert.assertEquals( 32, buffer.position() );
+
+				buffer.position( 3 );
+				final LongMappedAccessData copy = factory.createStorage( 29 );
+				copy.readFrom( buffer, 29 );
+				Assert.assertEquals( 32, buffer.position() );
+				assertFilled( copy.createAccess(), 29 );
+			}
+		}
+	}
+
+	@Test
+	public void testLabelMultisetBlockContainerEncoding()
+	{
+		final LongMappedAccessData data = LongMappedAccessData.offHeapFactory.createStorage( 20 );
+		fill( data.createAccess(), 20 );
+		final int[] offsets = new int[]{ 0, 4, 0 };
+
+		final ByteBuffer buffer = ByteBuffer.allocate( ( int )LabelMultisetBlockContainer.encodedSize( offsets.length, 20 ) );
+		LabelMultisetBlockContainer.encode( offsets, data, 20, buffer );
+		buffer.flip();
+		final VolatileLabelMultisetArray decoded = LabelMultisetBlockContainer.decode( buffer, offsets.length, LongMappedAccessData.offHeapFactory );
+		Assert.assertArrayEquals( offsets, decoded.getCurrentStorageArray() );
+		Assert.assertTrue( ( ( LongMappedAccessData )decoded.getListData() ).isOffHeap() );
+		assertFilled( decoded.getListData().createAccess(), 20 );
+	}
+}
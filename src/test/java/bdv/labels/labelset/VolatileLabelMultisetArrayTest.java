@@ -0,0 +1,70 @@
+package bdv.labels.labelset;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VolatileLabelMultisetArrayTest
+{
+	/**
+	 * Lists { 3x2, 7x5 }, { 1x4, 2x4 }, and { } shared by six voxels.
+	 */
+	static private VolatileLabelMultisetArray createArray()
+	{
+		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
+		final LabelMultisetEntryList list = new LabelMultisetEntryList( listData, 0 );
+		final int[] listOffsets = new int[ 3 ];
+		int nextListOffset = 0;
+
+		list.createListAt( listData, nextListOffset );
+		list.add( new LabelMultisetEntry( 3, 2 ) );
+		list.add( new LabelMultisetEntry( 7, 5 ) );
+		listOffsets[ 0 ] = nextListOffset;
+		nextListOffset += list.getSizeInBytes();
+
+		list.createListAt( listData, nextListOffset );
+		list.add( new LabelMultisetEntry( 1, 4 ) );
+		list.add( new LabelMultisetEntry( 2, 4 ) );
+		listOffsets[ 1 ] = nextListOffset;
+		nextListOffset += list.getSizeInBytes();
+
+		list.createListAt( listData, nextListOffset );
+		listOffsets[ 2 ] = nextListOffset;
+		nextListOffset += list.getSizeInBytes();
+
+		final int[] data = new int[]{
+				listOffsets[ 0 ],
+				listOffsets[ 1 ],
+				listOffsets[ 0 ],
+				listOffsets[ 2 ],
+				listOffsets[ 1 ],
+				listOffsets[ 0 ] };
+		return new VolatileLabelMultisetArray( data, listData, nextListOffset, true );
+	}
+
+	@Test
+	public void testArgMaxSharedLists()
+	{
+		final VolatileLabelMultisetArray array = createArray();
+		final long[] expected = new long[]{ 7, 1, 7, Label.TRANSPARENT, 1, 7 };
+		for ( int i = 0; i < expected.length; ++i )
+			Assert.assertEquals( expected[ i ], array.argMax( i ) );
+
+		/* the table agrees with the lists it was computed from */
+		final LabelMultisetEntryList list = new LabelMultisetEntryList();
+		for ( int i = expected.length - 1; i >= 0; --i )
+		{
+			array.getValue( i, list );
+			Assert.assertEquals( list.argMax(), array.argMax( i ) );
+		}
+	}
+
+	@Test
+	public void testArgMaxPlaceholder()
+	{
+		/* as created by the loaders for blocks that are not loaded yet, all
+		 * voxels refer to the single zero count entry */
+		final VolatileLabelMultisetArray array = new VolatileLabelMultisetArray( 5, false );
+		for ( int i = 0; i < 5; ++i )
+			Assert.assertEquals( Label.TRANSPARENT, array.argMax( i ) );
+	}
+}
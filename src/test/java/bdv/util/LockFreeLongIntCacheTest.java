@@ -0,0 +1,86 @@
+package bdv.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LockFreeLongIntCacheTest
+{
+	final static long noEntryKey = -1;
+
+	final static int noEntryValue = 0;
+
+	@Test
+	public void testPutGetRemove()
+	{
+		final LockFreeLongIntCache cache = new LockFreeLongIntCache( noEntryKey, noEntryValue );
+
+		for ( long i = 0; i < 10000; ++i )
+			cache.put( i, ( int )i * 3 + 1 );
+
+		for ( long i = 0; i < 10000; ++i )
+			Assert.assertEquals( ( int )i * 3 + 1, cache.get( i ) );
+		Assert.assertEquals( noEntryValue, cache.get( 10000 ) );
+
+		cache.remove( 5 );
+		Assert.assertEquals( noEntryValue, cache.get( 5 ) );
+		cache.put( 5, 7 );
+		Assert.assertEquals( 7, cache.get( 5 ) );
+
+		/* the no entry key is ignored */
+		cache.put( noEntryKey, 1 );
+		Assert.assertEquals( noEntryValue, cache.get( noEntryKey ) );
+
+		cache.clear();
+		Assert.assertEquals( noEntryValue, cache.get( 1 ) );
+	}
+
+	@Test
+	public void testMaxCapacity()
+	{
+		final LockFreeLongIntCache cache = new LockFreeLongIntCache( 100, noEntryKey, noEntryValue );
+		Assert.assertEquals( 128, cache.capacity() );
+
+		/* the cache is emptied instead of growing beyond max capacity */
+		for ( long i = 0; i < 10000; ++i )
+		{
+			cache.put( i, 1 );
+			Assert.assertEquals( 1, cache.get( i ) );
+		}
+		Assert.assertEquals( 128, cache.capacity() );
+	}
+
+	@Test
+	public void testConcurrentPutGet() throws InterruptedException
+	{
+		final LockFreeLongIntCache cache = new LockFreeLongIntCache( noEntryKey, noEntryValue );
+		final int n = 100000;
+		final boolean[] failed = new boolean[ 1 ];
+
+		final Thread[] threads = new Thread[ 4 ];
+		for ( int t = 0; t < threads.length; ++t )
+		{
+			final long offset = t * n / 8;
+			threads[ t ] = new Thread( () -> {
+				for ( long i = 0; i < n; ++i )
+				{
+					final long key = ( i + offset ) % n;
+					final int value = cache.get( key );
+					if ( value == noEntryValue )
+						cache.put( key, ( int )key + 1 );
+					else if ( value != key + 1 )
+						failed[ 0 ] = true;
+				}
+			} );
+			threads[ t ].start();
+		}
+		for ( final Thread thread : threads )
+			thread.join();
+
+		Assert.assertFalse( failed[ 0 ] );
+		for ( long i = 0; i < n; ++i )
+		{
+			final int value = cache.get( i );
+			Assert.assertTrue( value == noEntryValue || value == i + 1 );
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package bdv.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+
+public class LockFreeLongLongHashMapTest
+{
+	final static long noEntry = -1;
+
+	@Test
+	public void testPutGetRemove()
+	{
+		final LockFreeLongLongHashMap map = new LockFreeLongLongHashMap( 4, noEntry, noEntry );
+
+		for ( long i = 0; i < 10000; ++i )
+			map.put( i, i * 3 );
+
+		Assert.assertEquals( 10000, map.size() );
+		for ( long i = 0; i < 10000; ++i )
+			Assert.assertEquals( i * 3, map.get( i ) );
+		Assert.assertEquals( noEntry, map.get( 10000 ) );
+		Assert.assertEquals( noEntry, map.get( noEntry ) );
+
+		Assert.assertEquals( 15, map.remove( 5 ) );
+		Assert.assertFalse( map.containsKey( 5 ) );
+		Assert.assertEquals( 9999, map.size() );
+
+		map.put( 5, 7 );
+		Assert.assertEquals( 7, map.get( 5 ) );
+		Assert.assertEquals( 10000, map.size() );
+
+		/* the no entry key is ignored */
+		map.put( noEntry, 1 );
+		Assert.assertEquals( 10000, map.size() );
+
+		final TLongLongHashMap copy = map.toTLongLongHashMap();
+		Assert.assertEquals( 10000, copy.size() );
+		Assert.assertEquals( 7, copy.get( 5 ) );
+
+		map.clear();
+		Assert.assertEquals( 0, map.size() );
+		Assert.assertEquals( noEntry, map.get( 1 ) );
+	}
+
+	@Test
+	public void testConcurrentReads() throws InterruptedException
+	{
+		final LockFreeLongLongHashMap map = new LockFreeLongLongHashMap( noEntry, noEntry );
+		final int n = 100000;
+		final boolean[] failed = new boolean[ 1 ];
+
+		final Thread reader = new Thread( () -> {
+			for ( int k = 0; k < 10; ++k )
+				for ( long i = 0; i < n; ++i )
+				{
+					final long value = map.get( i );
+					if ( value != noEntry && value != i + 1 )
+						failed[ 0 ] = true;
+				}
+		} );
+		reader.start();
+		for ( long i = 0; i < n; ++i )
+			map.put( i, i + 1 );
+		reader.join();
+
+		Assert.assertFalse( failed[ 0 ] );
+		Assert.assertEquals( n, map.size() );
+	}
+}
@@ -0,0 +1,75 @@
+package bdv.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+
+public class LongLongLutCodecTest
+{
+	static TLongLongHashMap createLut()
+	{
+		final TLongLongHashMap lut = new TLongLongHashMap();
+		for ( long i = 0; i < 1000; ++i )
+			lut.put( i * 7 + 1, i / 3 + 10000 );
+		lut.put( Long.MAX_VALUE, -1 );
+		lut.put( 5, Long.MIN_VALUE );
+		return lut;
+	}
+
+	static byte[] write( final TLongLongHashMap lut, final long version ) throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		LongLongLutCodec.write( lut, version, Channels.newChannel( bytes ) );
+		return bytes.toByteArray();
+	}
+
+	static long read( final byte[] bytes, final TLongLongHashMap lut ) throws IOException
+	{
+		return LongLongLutCodec.read( Channels.newChannel( new ByteArrayInputStream( bytes ) ), lut );
+	}
+
+	@Test
+	public void testUnversioned() throws IOException
+	{
+		final TLongLongHashMap lut = createLut();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		LongLongLutCodec.write( lut, Channels.newChannel( out ) );
+		final byte[] bytes = out.toByteArray();
+
+		Assert.assertTrue( LongLongLutCodec.isBinaryLut( bytes ) );
+		Assert.assertArrayEquals( bytes, write( lut, LongLongLutCodec.NO_VERSION ) );
+
+		final TLongLongHashMap copy = new TLongLongHashMap();
+		Assert.assertEquals( LongLongLutCodec.NO_VERSION, read( bytes, copy ) );
+		Assert.assertEquals( lut, copy );
+	}
+
+	@Test
+	public void testVersioned() throws IOException
+	{
+		final TLongLongHashMap lut = createLut();
+		for ( final long version : new long[]{ 0, 1, 12345, Long.MAX_VALUE, -2 } )
+		{
+			final byte[] bytes = write( lut, version );
+			Assert.assertTrue( LongLongLutCodec.isBinaryLut( bytes ) );
+
+			final TLongLongHashMap copy = new TLongLongHashMap();
+			Assert.assertEquals( version, read( bytes, copy ) );
+			Assert.assertEquals( lut, copy );
+		}
+	}
+
+	@Test( expected = IOException.class )
+	public void testNotALut() throws IOException
+	{
+		final byte[] bytes = "{\"type\":\"merge\"}".getBytes();
+		Assert.assertFalse( LongLongLutCodec.isBinaryLut( bytes ) );
+		read( bytes, new TLongLongHashMap() );
+	}
+}
@@ -0,0 +1,155 @@
+package bdv.util.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.ws.http.HTTPException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class PooledHttpClientTest
+{
+	/* "abcd", then 8 bytes matching at offset 4, then "e" */
+	final static byte[] lz4 = new byte[]{ 0x44, 'a', 'b', 'c', 'd', 4, 0, 0x10, 'e' };
+
+	final static byte[] lz4Decompressed = "abcdabcdabcde".getBytes();
+
+	final static byte[] payload = "0123456789".getBytes();
+
+	private HttpServer server;
+
+	private String url;
+
+	final private Set< Integer > remotePorts = Collections.synchronizedSet( new HashSet<>() );
+
+	static private void respond( final HttpExchange exchange, final byte[] bytes ) throws IOException
+	{
+		exchange.sendResponseHeaders( 200, bytes.length );
+		try ( final OutputStream out = exchange.getResponseBody() )
+		{
+			out.write( bytes );
+		}
+	}
+
+	@Before
+	public void startServer() throws IOException
+	{
+		server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+		server.createContext( "/plain", exchange -> {
+			remotePorts.add( exchange.getRemoteAddress().getPort() );
+			respond( exchange, payload );
+		} );
+		server.createContext( "/gzip", exchange -> {
+			final String acceptEncoding = exchange.getRequestHeaders().getFirst( "Accept-Encoding" );
+			if ( acceptEncoding != null && acceptEncoding.contains( "gzip" ) )
+			{
+				final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				try ( final GZIPOutputStream out = new GZIPOutputStream( bytes ) )
+				{
+					out.write( payload );
+				}
+				exchange.getResponseHeaders().set( "Content-Encoding", "gzip" );
+				respond( exchange, bytes.toByteArray() );
+			}
+			else
+				respond( exchange, payload );
+		} );
+		server.createContext( "/blocks", exchange -> {
+			final ByteBuffer buffer = ByteBuffer.allocate( 2 * 16 + lz4.length + payload.length ).order( ByteOrder.LITTLE_ENDIAN );
+			buffer.putInt( 1 ).putInt( 2 ).putInt( 3 ).putInt( lz4.length ).put( lz4 );
+			buffer.putInt( 2 ).putInt( 2 ).putInt( 3 ).putInt( payload.length ).put( payload );
+			respond( exchange, buffer.array() );
+		} );
+		server.createContext( "/missing", exchange -> {
+			exchange.sendResponseHeaders( 404, -1 );
+			exchange.close();
+		} );
+		server.start();
+		url = "http://localhost:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void stopServer()
+	{
+		server.stop( 0 );
+	}
+
+	@Test
+	public void testLz4() throws IOException
+	{
+		final byte[] decompressed = new byte[ lz4Decompressed.length ];
+		Assert.assertEquals( lz4Decompressed.length, Lz4.decompress( lz4, 0, lz4.length, decompressed, 0 ) );
+		Assert.assertArrayEquals( lz4Decompressed, decompressed );
+	}
+
+	@Test( expected = IOException.class )
+	public void testLz4OutputTooSmall() throws IOException
+	{
+		Lz4.decompress( lz4, 0, lz4.length, new byte[ 8 ], 0 );
+	}
+
+	@Test
+	public void testKeepAlive() throws IOException
+	{
+		final PooledHttpClient client = new PooledHttpClient( 1000, 1000 );
+		for ( int i = 0; i < 10; ++i )
+			Assert.assertArrayEquals( payload, client.get( url + "/plain" ) );
+
+		final byte[] bytes = new byte[ 4 ];
+		Assert.assertEquals( 4, client.get( url + "/plain", bytes ) );
+		Assert.assertEquals( '3', bytes[ 3 ] );
+
+		Assert.assertEquals( 1, remotePorts.size() );
+	}
+
+	@Test
+	public void testGzip() throws IOException
+	{
+		final PooledHttpClient client = new PooledHttpClient( 1000, 1000 );
+		Assert.assertArrayEquals( payload, client.get( url + "/gzip" ) );
+	}
+
+	@Test
+	public void testBlocks() throws IOException
+	{
+		final PooledHttpClient client = new PooledHttpClient( 1000, 1000 );
+		final List< String > blocks = new ArrayList<>();
+		final int n = client.getBlocks(
+				url + "/blocks",
+				( x, y, z, bytes, offset, length ) -> {
+					final byte[] data = new byte[ lz4Decompressed.length ];
+					final int m = x == 1 ?
+							Lz4.decompress( bytes, offset, length, data, 0 ) :
+							length;
+					if ( x != 1 )
+						System.arraycopy( bytes, offset, data, 0, length );
+					blocks.add( x + "_" + y + "_" + z + ":" + new String( data, 0, m ) );
+				} );
+
+		Assert.assertEquals( 2, n );
+		Assert.assertEquals( "1_2_3:abcdabcdabcde", blocks.get( 0 ) );
+		Assert.assertEquals( "2_2_3:0123456789", blocks.get( 1 ) );
+	}
+
+	@Test( expected = HTTPException.class )
+	public void testMissing() throws IOException
+	{
+		new PooledHttpClient( 1000, 1000 ).get( url + "/missing" );
+	}
+}